@@ -0,0 +1,56 @@
+package com.astro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appariement des étoiles par triangles, puis RANSAC sur les correspondances obtenues.
+ * Les catalogues sont détectés une fois sur deux images du même champ, décalées.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class AlignmentBenchmark {
+
+    @Param({"20", "100"})
+    public int maxStars;
+
+    private StarCatalog reference;
+    private StarCatalog shifted;
+    private ImageAligner.StarMatches matches;
+
+    @Setup(Level.Trial)
+    public void detect() {
+        reference = StarDetector.detectStars(BenchmarkData.mono(2048, 2048, 0, 0), maxStars);
+        shifted = StarDetector.detectStars(BenchmarkData.mono(2048, 2048, 13, -7), maxStars);
+        matches = ImageAligner.findStarMatches(reference, shifted);
+        if (matches.size() < 3) {
+            throw new IllegalStateException("Pas assez de correspondances pour RANSAC: " + matches.size());
+        }
+    }
+
+    @Benchmark
+    public ImageAligner.StarMatches findStarMatches() {
+        return ImageAligner.findStarMatches(reference, shifted);
+    }
+
+    @Benchmark
+    public ImageAligner.AlignmentResult ransac() {
+        return ImageAligner.estimateTransform(matches);
+    }
+}
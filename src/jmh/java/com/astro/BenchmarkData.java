@@ -0,0 +1,86 @@
+package com.astro;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Données communes aux bancs d'essai : images produites par {@link TestImageGenerator} et
+ * {@link TestImageGeneratorRGB}, en mémoire ou écrites dans un dossier temporaire
+ */
+final class BenchmarkData {
+    static final long SEED = 42;
+
+    private BenchmarkData() {
+        // Classe utilitaire, pas d'instanciation
+    }
+
+    static FitsImage mono(int width, int height, int offsetX, int offsetY) {
+        float[][] pixels = TestImageGenerator.generateImage(width, height, offsetX, offsetY, SEED);
+        FitsImage image = FitsImage.createEmpty(Path.of("bench_mono.fits"), width, height, false);
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels[y], 0, image.getData()[y], 0, width);
+        }
+        return image;
+    }
+
+    static FitsImage rgb(int width, int height, int offsetX, int offsetY, double rotationDeg) {
+        float[][][] pixels = TestImageGeneratorRGB.generateImage(width, height, offsetX, offsetY, rotationDeg, SEED);
+        FitsImage image = FitsImage.createEmpty(Path.of("bench_rgb.fits"), width, height, true);
+        for (int c = 0; c < 3; c++) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(pixels[c][y], 0, image.getColorData()[c][y], 0, width);
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels[1][y], 0, image.getData()[y], 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * Pixels mono convertis au type FITS du BITPIX demandé (16, 32, -32, -64)
+     */
+    static Object pixelsForBitpix(float[][] pixels, int bitpix) {
+        int height = pixels.length;
+        int width = pixels[0].length;
+        switch (bitpix) {
+            case 16 -> {
+                short[][] out = new short[height][width];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) out[y][x] = (short) Math.min(65535, Math.round(pixels[y][x]));
+                }
+                return out;
+            }
+            case 32 -> {
+                int[][] out = new int[height][width];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) out[y][x] = Math.round(pixels[y][x]);
+                }
+                return out;
+            }
+            case -32 -> {
+                return pixels;
+            }
+            case -64 -> {
+                double[][] out = new double[height][width];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) out[y][x] = pixels[y][x];
+                }
+                return out;
+            }
+            default -> throw new IllegalArgumentException("BITPIX non pris en charge par le chargeur: " + bitpix);
+        }
+    }
+
+    static void deleteRecursively(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.astro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Détection d'étoiles sur une image complète (sans le cache de détection)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class DetectionBenchmark {
+
+    @Param({"2048", "4096"})
+    public int size;
+
+    @Param({"100"})
+    public int maxStars;
+
+    private FitsImage image;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        image = BenchmarkData.mono(size, size, 0, 0);
+    }
+
+    @Benchmark
+    public StarCatalog detectStars() {
+        return StarDetector.detectStars(image, maxStars);
+    }
+}
@@ -0,0 +1,64 @@
+package com.astro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chargement complet d'un fichier FITS selon son BITPIX, et lecture d'une fenêtre de lignes
+ * (empilement distribué)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class FitsLoadBenchmark {
+
+    @Param({"16", "32", "-32", "-64"})
+    public int bitpix;
+
+    @Param({"2048", "4096"})
+    public int size;
+
+    private Path dir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void writeFile() throws Exception {
+        dir = Files.createTempDirectory("fitsstacker-bench");
+        file = dir.resolve("load_" + bitpix + ".fits");
+        float[][] pixels = TestImageGenerator.generateImage(size, size, 0, 0, BenchmarkData.SEED);
+        TestImageGenerator.saveAsFits(BenchmarkData.pixelsForBitpix(pixels, bitpix), file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws Exception {
+        BenchmarkData.deleteRecursively(dir);
+    }
+
+    @Benchmark
+    public FitsImage load() throws Exception {
+        return new FitsImage(file);
+    }
+
+    @Benchmark
+    public FitsImage readRowWindow() throws Exception {
+        return FitsImage.readRowWindow(file, size / 2, Config.DISTRIBUTED_TILE_ROWS);
+    }
+}
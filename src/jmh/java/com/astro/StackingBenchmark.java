@@ -0,0 +1,85 @@
+package com.astro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Noyaux de combinaison de chaque méthode sur N images déjà redressées, par bandes comme
+ * l'empilement réel (les lignes sont copiées depuis la mémoire : seule la combinaison est mesurée).
+ * Le coût est linéaire en nombre de pixels. Les images restent en mémoire : frames × size² × 4 octets,
+ * soit 200 Mo pour 200 images de 512 (tas du fork de 6 Go), mais 64 Mo par image en 4096,
+ * 12,8 Go pour 200 images. Les images de production se mesurent donc avec un tas adapté,
+ * {@code -p size=4096 -jvmArgs -Xmx16g}, ou avec moins d'images,
+ * {@code -p size=4096 -p frames=10,50} (3,2 Go au plus).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx6g"})
+public class StackingBenchmark {
+
+    @Param({"AVERAGE", "MEDIAN", "SIGMA_CLIP", "MAXIMUM", "MINIMUM", "WEIGHTED_AVERAGE"})
+    public StackingEngine.StackingMethod method;
+
+    @Param({"10", "50", "200"})
+    public int frames;
+
+    @Param({"512"})
+    public int size;
+
+    // Entiers 16 bits non interpolés : chemin de la médiane par comptage (au-delà du seuil)
+    @Param({"false", "true"})
+    public boolean integers;
+
+    private float[][][] pixels;
+    private double[] weights;
+    private ImageAligner.CanvasInfo canvas;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        pixels = new float[frames][][];
+        weights = new double[frames];
+        for (int i = 0; i < frames; i++) {
+            // Même champ, bruit propre à chaque image (le décalage sert de graine au bruit)
+            pixels[i] = TestImageGenerator.generateImage(size, size, i % 7, i / 7, BenchmarkData.SEED);
+            if (integers) {
+                for (float[] row : pixels[i]) {
+                    for (int x = 0; x < size; x++) {
+                        row[x] = Math.max(1, Math.min(65535, Math.round(row[x])));
+                    }
+                }
+            }
+            weights[i] = 1.0 + (i % 5) * 0.1;
+        }
+        canvas = new ImageAligner.CanvasInfo(size, size, 0, 0);
+    }
+
+    @Benchmark
+    public Map<StackingEngine.StackingMethod, FitsImage> combineBands() throws Exception {
+        return StackingEngine.combineBands(frames,
+                (i, c, y0, rows, dst) -> {
+                    for (int r = 0; r < rows; r++) {
+                        System.arraycopy(pixels[i][y0 + r], 0, dst[r], 0, size);
+                    }
+                },
+                weights, canvas, false, Path.of("bench_stack.fits"), EnumSet.of(method), integers,
+                64, 0, null, null);
+    }
+}
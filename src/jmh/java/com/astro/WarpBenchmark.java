@@ -0,0 +1,64 @@
+package com.astro;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redressement d'une image vers un canvas élargi : copie complète (createAlignedCopy) et
+ * bande de lignes (warpRows, chemin des empilements par bandes)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class WarpBenchmark {
+
+    @Param({"MONO", "RGB"})
+    public String type;
+
+    @Param({"2048"})
+    public int size;
+
+    private FitsImage image;
+    private ImageAligner.CanvasInfo canvas;
+    private float[][] rows;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        image = type.equals("RGB")
+                ? BenchmarkData.rgb(size, size, 0, 0, 0)
+                : BenchmarkData.mono(size, size, 0, 0);
+        // Rotation et décalage sous-pixel : interpolation bilinéaire complète
+        image.setTransform(new ImageAligner.AffineTransform(1.0, Math.toRadians(1.5), 12.3, -8.7));
+        canvas = new ImageAligner.CanvasInfo(size + 64, size + 64, 32, 32);
+        rows = new float[64][canvas.width];
+    }
+
+    @Benchmark
+    public FitsImage createAlignedCopy() {
+        return image.createAlignedCopy(canvas.width, canvas.height, canvas.offsetX, canvas.offsetY);
+    }
+
+    @Benchmark
+    public float[][] warpRows() {
+        int channels = image.isColor() ? 3 : 1;
+        for (int c = 0; c < channels; c++) {
+            image.warpRows(c, canvas, canvas.height / 2, rows.length, rows);
+        }
+        return rows;
+    }
+}
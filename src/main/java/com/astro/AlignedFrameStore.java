@@ -0,0 +1,349 @@
+package com.astro;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Réserve disque des images alignées, projetée en mémoire (hors tas Java).
+ * Chaque image est redressée une seule fois sur le canvas puis réutilisée par les
+ * empilements et sauvegardes suivants tant que sa transformation et le canvas ne changent pas.
+ * La clé combine le fichier source (chemin, taille, date), la transformation et le canvas.
+ *
+ * La réserve est plafonnée à {@link Config#ALIGNED_STORE_MAX_MB} : au-delà, les images les moins
+ * récemment utilisées sont évincées. Une image évincée reste lisible par qui la détient encore
+ * (sa projection vit jusqu'à sa collecte) ; son fichier est supprimé dès que le système le
+ * permet (sous Windows, pas tant qu'il est projeté), sinon à une éviction suivante ou à la fermeture.
+ */
+public class AlignedFrameStore implements AutoCloseable {
+    private static final int WARP_ROWS = 64;
+
+    /**
+     * Une image alignée stockée : un plan float par canal, lignes contiguës
+     */
+    public static class Frame {
+        private final Path file;
+        private final Path sourcePath;
+        private final int width;
+        private final int height;
+        private final FloatBuffer[] planes;
+        private final double noiseSigma;
+        private final double stackWeight;
+        private volatile long lastUsed;
+
+        private Frame(Path file, Path sourcePath, int width, int height,
+                      FloatBuffer[] planes, double noiseSigma, double stackWeight) {
+            this.file = file;
+            this.sourcePath = sourcePath;
+            this.width = width;
+            this.height = height;
+            this.planes = planes;
+            this.noiseSigma = noiseSigma;
+            this.stackWeight = stackWeight;
+        }
+
+        public Path getSourcePath() { return sourcePath; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public boolean isColor() { return planes.length == 3; }
+        public double getNoiseSigma() { return noiseSigma; }
+        public double getStackWeight() { return stackWeight; }
+
+        private long bytes() {
+            return (long) width * height * 4 * planes.length;
+        }
+
+        /**
+         * Copie les lignes [y0, y0 + rows) d'un canal dans dst (lecture concurrente possible)
+         */
+        public void readRows(int channel, int y0, int rows, float[][] dst) {
+            FloatBuffer plane = planes[channel];
+            for (int r = 0; r < rows; r++) {
+                plane.get((y0 + r) * width, dst[r], 0, width);
+            }
+        }
+
+        /**
+         * Reconstitue l'image alignée sur le tas (pour l'écrire en FITS par exemple)
+         */
+        public FitsImage toImage() {
+            FitsImage image = FitsImage.createEmpty(sourcePath, width, height, isColor());
+            if (isColor()) {
+                for (int c = 0; c < 3; c++) {
+                    readRows(c, 0, height, image.getColorData()[c]);
+                }
+                readRows(1, 0, height, image.getData());
+            } else {
+                readRows(0, 0, height, image.getData());
+            }
+            return image;
+        }
+    }
+
+    private final Path directory;
+    private final boolean deleteDirectory;
+    private final Map<String, Frame> frames = new ConcurrentHashMap<>();
+    private final Map<String, Object> pending = new ConcurrentHashMap<>();
+    // Fichiers évincés dont la suppression a échoué (encore projetés) : réessayés plus tard
+    private final Set<Path> retired = ConcurrentHashMap.newKeySet();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    public AlignedFrameStore(Path directory) throws IOException {
+        this(directory, false);
+    }
+
+    private AlignedFrameStore(Path directory, boolean deleteDirectory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.deleteDirectory = deleteDirectory;
+    }
+
+    /**
+     * Réserve dans un dossier temporaire, supprimé à la fermeture
+     */
+    public static AlignedFrameStore temporary() throws IOException {
+        return new AlignedFrameStore(Files.createTempDirectory("fitsstacker-aligned-"), true);
+    }
+
+    /**
+     * Clé d'une image pour un canvas : source, transformation et géométrie du canvas
+     */
+    public static String keyOf(FitsImage image, ImageAligner.CanvasInfo canvas) {
+        StringBuilder key = new StringBuilder();
+        Path path = image.getPath();
+        key.append(path != null ? path.toAbsolutePath() : "?");
+        if (image.isLoadedFromFile() && path != null) {
+            try {
+                key.append('|').append(Files.size(path))
+                   .append('|').append(Files.getLastModifiedTime(path).toMillis());
+            } catch (IOException e) {
+                key.append("|?");
+            }
+        } else {
+            // Image construite en mémoire : seule l'instance elle-même l'identifie
+            key.append("|mem").append(System.identityHashCode(image));
+        }
+        ImageAligner.AffineTransform t = image.getTransform();
+        key.append('|').append(t.scale).append('|').append(t.rotation)
+           .append('|').append(t.tx).append('|').append(t.ty);
+        key.append('|').append(canvas.width).append('x').append(canvas.height)
+           .append('+').append(canvas.offsetX).append('+').append(canvas.offsetY);
+        key.append('|').append(image.isColor() ? "rgb" : "mono");
+        return key.toString();
+    }
+
+    /**
+     * Image alignée déjà présente, ou null
+     */
+    public Frame lookup(FitsImage image, ImageAligner.CanvasInfo canvas) {
+        return touch(frames.get(keyOf(image, canvas)));
+    }
+
+    public boolean contains(FitsImage image, ImageAligner.CanvasInfo canvas) {
+        return frames.containsKey(keyOf(image, canvas));
+    }
+
+    /**
+     * Renvoie l'image alignée, en la redressant vers le disque si elle n'est pas encore stockée.
+     * Deux appels concurrents pour la même clé ne redressent l'image qu'une fois.
+     */
+    public Frame get(FitsImage image, ImageAligner.CanvasInfo canvas) throws IOException {
+        String key = keyOf(image, canvas);
+        Frame frame = frames.get(key);
+        if (frame != null) return touch(frame);
+
+        synchronized (pending.computeIfAbsent(key, k -> new Object())) {
+            frame = frames.get(key);
+            if (frame == null) {
+                frame = touch(write(image, canvas));
+                frames.put(key, frame);
+                storedBytes.addAndGet(frame.bytes());
+                trim(key);
+            }
+        }
+        pending.remove(key);
+        return frame;
+    }
+
+    private Frame touch(Frame frame) {
+        if (frame != null) {
+            frame.lastUsed = clock.incrementAndGet();
+        }
+        return frame;
+    }
+
+    /**
+     * Évince les images les moins récemment utilisées tant que la réserve dépasse son plafond,
+     * sauf celle qui vient d'être ajoutée
+     */
+    private synchronized void trim(String keep) {
+        long limit = (long) Config.ALIGNED_STORE_MAX_MB << 20;
+        while (storedBytes.get() > limit) {
+            String oldest = null;
+            long oldestUse = Long.MAX_VALUE;
+            for (Map.Entry<String, Frame> entry : frames.entrySet()) {
+                if (!entry.getKey().equals(keep) && entry.getValue().lastUsed < oldestUse) {
+                    oldest = entry.getKey();
+                    oldestUse = entry.getValue().lastUsed;
+                }
+            }
+            if (oldest == null) return;
+            evict(oldest);
+        }
+    }
+
+    /**
+     * Redresse en parallèle toutes les images absentes de la réserve
+     */
+    public List<Frame> getAll(List<FitsImage> images, ImageAligner.CanvasInfo canvas,
+                              ImageAligner.ProgressCallback callback) throws Exception {
+        // Images gardées au fur et à mesure : une image évincée par le plafond reste lisible
+        Frame[] result = new Frame[images.size()];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++) {
+            result[i] = lookup(images.get(i), canvas);
+            if (result[i] == null) missing.add(i);
+        }
+        System.out.println("Réserve alignée: " + (images.size() - missing.size()) + " image(s) réutilisée(s), " +
+                missing.size() + " à redresser");
+
+        if (!missing.isEmpty()) {
+            int total = missing.size();
+            AtomicInteger done = new AtomicInteger();
+            new FramePipeline<Integer>("réserve alignée", Config.PIPELINE_QUEUE_DEPTH)
+                    .stage("redressement", Runtime.getRuntime().availableProcessors(), i -> {
+                        result[i] = get(images.get(i), canvas);
+                        if (callback != null) {
+                            int count = done.incrementAndGet();
+                            callback.onProgress(count * 100 / total, "Redressement " + count + "/" + total);
+                        }
+                        return null;
+                    })
+                    .run(missing);
+        }
+        return List.of(result);
+    }
+
+    /**
+     * Supprime les images qui ne correspondent plus à la session (transformation ou canvas changés,
+     * fichier retiré)
+     */
+    public void retainOnly(List<FitsImage> images, ImageAligner.CanvasInfo canvas) {
+        Set<String> keep = new HashSet<>();
+        for (FitsImage image : images) {
+            keep.add(keyOf(image, canvas));
+        }
+        for (String key : new ArrayList<>(frames.keySet())) {
+            if (!keep.contains(key)) {
+                evict(key);
+            }
+        }
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public void clear() {
+        for (String key : new ArrayList<>(frames.keySet())) {
+            evict(key);
+        }
+    }
+
+    @Override
+    public void close() {
+        clear();
+        for (Path file : retired) {
+            if (deleteIfPossible(file)) {
+                retired.remove(file);
+            } else {
+                // Encore projeté : dernier essai à l'arrêt de la JVM
+                file.toFile().deleteOnExit();
+            }
+        }
+        if (deleteDirectory) {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(AlignedFrameStore::deleteQuietly);
+            } catch (IOException e) {
+                // Dossier déjà supprimé
+            }
+            deleteQuietly(directory);
+        }
+    }
+
+    private void evict(String key) {
+        Frame frame = frames.remove(key);
+        if (frame == null) return;
+        storedBytes.addAndGet(-frame.bytes());
+        // Java ne libère une projection qu'à sa collecte : tant qu'elle existe, Windows refuse
+        // la suppression. Le fichier est alors gardé de côté et réessayé aux évictions suivantes.
+        retired.add(frame.file);
+        for (Path file : retired) {
+            if (deleteIfPossible(file)) {
+                retired.remove(file);
+            }
+        }
+    }
+
+    private static boolean deleteIfPossible(Path path) {
+        try {
+            Files.deleteIfExists(path);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Impossible de supprimer " + path + ": " + e.getMessage());
+        }
+    }
+
+    private Frame write(FitsImage image, ImageAligner.CanvasInfo canvas) throws IOException {
+        int channels = image.isColor() ? 3 : 1;
+        long planeBytes = (long) canvas.width * canvas.height * 4;
+        if (planeBytes > Integer.MAX_VALUE) {
+            throw new IOException("Canvas trop grand pour la réserve alignée: " + canvas.width + "x" + canvas.height);
+        }
+
+        Path file = Files.createTempFile(directory, "aligned-", ".raw");
+        FloatBuffer[] planes = new FloatBuffer[channels];
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (int c = 0; c < channels; c++) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, c * planeBytes, planeBytes);
+                planes[c] = mapped.order(ByteOrder.nativeOrder()).asFloatBuffer();
+            }
+        }
+
+        float[][] rows = new float[WARP_ROWS][canvas.width];
+        for (int c = 0; c < channels; c++) {
+            for (int y0 = 0; y0 < canvas.height; y0 += WARP_ROWS) {
+                int count = Math.min(WARP_ROWS, canvas.height - y0);
+                image.warpRows(c, canvas, y0, count, rows);
+                for (int r = 0; r < count; r++) {
+                    planes[c].put((y0 + r) * canvas.width, rows[r], 0, canvas.width);
+                }
+            }
+        }
+
+        return new Frame(file, image.getPath(), canvas.width, canvas.height, planes,
+                image.getNoiseSigma(), image.getStackWeight());
+    }
+}
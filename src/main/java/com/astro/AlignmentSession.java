@@ -0,0 +1,321 @@
+package com.astro;
+
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Session d'alignement incrémentale.
+ * Conserve pour chaque fichier l'image chargée, son catalogue d'étoiles et sa transformation :
+ * quand la liste de fichiers change, seules les nouvelles images sont chargées, détectées et
+ * alignées sur la référence existante ; les images retirées sont simplement oubliées et le
+ * canvas est recalculé à partir des transformations mémorisées.
+ *
+ * Une session sans pixels ({@link #withoutPixels}) relâche chaque image dès sa détection et sa
+ * mesure : seuls le catalogue, la géométrie, le bruit et la transformation sont gardés, et
+ * l'empilement relit les sources depuis le disque. La mémoire ne dépend plus du nombre d'images,
+ * et une image déjà détectée ({@link DetectionCache}) est reprise du cache sans lire ses pixels.
+ */
+public class AlignmentSession {
+    private static final int MAX_STARS = 100;
+
+    /**
+     * État d'une image dans la session
+     */
+    public static class Frame {
+        private final Path path;
+        private FitsImage image;
+        private MemoryPlanner.FrameInfo info;
+        private double noiseSigma;
+        private StarCatalog stars;
+        private FrameQuality quality;
+        private String rejectReason;
+        private ImageAligner.AlignmentResult result;
+
+        Frame(Path path) {
+            this.path = path;
+        }
+
+        public Path getPath() { return path; }
+        /** Image chargée, ou null si la session relâche les pixels */
+        public FitsImage getImage() { return image; }
+        public MemoryPlanner.FrameInfo getInfo() { return info; }
+        public double getNoiseSigma() { return noiseSigma; }
+        public StarCatalog getStars() { return stars; }
+        public FrameQuality getQuality() { return quality; }
+        /** Raison du rejet qualité, ou null si l'image est retenue */
+        public String getRejectReason() { return rejectReason; }
+        public boolean isAligned() { return result != null; }
+        public boolean isAccepted() { return rejectReason == null && result != null && result.accepted; }
+        public ImageAligner.AffineTransform getTransform() {
+            return result != null ? result.transform : ImageAligner.AffineTransform.identity();
+        }
+    }
+
+    private final Map<Path, Frame> frames = new LinkedHashMap<>();
+    private final FrameQuality.Rules rules;
+    private final boolean keepPixels;
+    private Path referencePath;
+    private ImageAligner.CanvasInfo canvasInfo;
+    private List<Path> syncedPaths = List.of();
+
+    public AlignmentSession() {
+        this(FrameQuality.Rules.defaults());
+    }
+
+    public AlignmentSession(FrameQuality.Rules rules) {
+        this(rules, true);
+    }
+
+    private AlignmentSession(FrameQuality.Rules rules, boolean keepPixels) {
+        this.rules = rules;
+        this.keepPixels = keepPixels;
+    }
+
+    /**
+     * Session qui ne garde que catalogues, géométrie et transformations (empilement depuis le disque)
+     */
+    public static AlignmentSession withoutPixels() {
+        return new AlignmentSession(FrameQuality.Rules.defaults(), false);
+    }
+
+    /**
+     * Met la session en phase avec la liste de fichiers : retire les images disparues,
+     * charge et aligne les nouvelles, puis recalcule le canvas.
+     *
+     * @return les erreurs de chargement, par fichier
+     */
+    public synchronized Map<Path, Exception> synchronize(List<Path> paths, ImageAligner.ProgressCallback callback) {
+        Map<Path, Exception> failures = new LinkedHashMap<>();
+        List<Path> wanted = new ArrayList<>(new LinkedHashSet<>(paths));
+
+        // Images retirées
+        int removed = 0;
+        for (Iterator<Path> it = frames.keySet().iterator(); it.hasNext(); ) {
+            if (!wanted.contains(it.next())) {
+                it.remove();
+                removed++;
+            }
+        }
+
+        // Réordonner selon la liste courante et créer les entrées manquantes
+        Map<Path, Frame> ordered = new LinkedHashMap<>();
+        for (Path path : wanted) {
+            ordered.put(path, frames.getOrDefault(path, new Frame(path)));
+        }
+        frames.clear();
+        frames.putAll(ordered);
+
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("🔁 SESSION D'ALIGNEMENT INCRÉMENTALE");
+        System.out.println("=".repeat(80));
+        System.out.println("Images dans la liste: " + frames.size() + " (retirées: " + removed + ")");
+
+        // Chargement et détection des nouvelles images seulement
+        List<Frame> pending = new ArrayList<>();
+        for (Frame frame : frames.values()) {
+            if (frame.stars == null) {
+                pending.add(frame);
+            }
+        }
+        System.out.println("Nouvelles images à traiter: " + pending.size());
+
+        for (int i = 0; i < pending.size(); i++) {
+            // Annulation : les images non traitées le seront à la prochaine synchronisation
+            StackingEngine.checkCancelled();
+            Frame frame = pending.get(i);
+            if (callback != null) {
+                int progress = (int) ((i * 30.0) / pending.size());
+                callback.onProgress(progress, "Chargement: " + frame.path.getFileName());
+            }
+            try {
+                DetectionCache.Entry cached = keepPixels ? null : DetectionCache.lookup(frame.path, MAX_STARS);
+                if (cached != null) {
+                    // Tout ce que la session garde est dans le cache : le fichier n'est pas relu
+                    frame.stars = cached.catalog;
+                    frame.quality = FrameQuality.fromCatalog(frame.stars);
+                    frame.info = cached.getInfo();
+                    frame.noiseSigma = cached.noiseSigma;
+                    System.out.println("  ✓ " + frame.path.getFileName() + ": " + frame.stars.size() +
+                            " étoiles (cache)");
+                    continue;
+                }
+                FitsImage image = new FitsImage(frame.path);
+                frame.stars = DetectionCache.detectStars(image, MAX_STARS);
+                frame.quality = FrameQuality.fromCatalog(frame.stars);
+                frame.info = MemoryPlanner.FrameInfo.of(image);
+                frame.noiseSigma = image.getNoiseSigma();
+                frame.image = keepPixels ? image : null;
+                System.out.println("  ✓ " + frame.path.getFileName() + ": " + frame.stars.size() + " étoiles");
+            } catch (Exception e) {
+                failures.put(frame.path, e);
+                System.out.println("  ✗ " + frame.path.getFileName() + ": " + e.getMessage());
+            }
+        }
+        frames.values().removeIf(frame -> frame.stars == null);
+
+        if (frames.isEmpty()) {
+            referencePath = null;
+            canvasInfo = null;
+            syncedPaths = List.copyOf(paths);
+            return failures;
+        }
+
+        // Rejet qualité réévalué à chaque synchronisation (la médiane dépend de toute la session)
+        evaluateQuality();
+
+        // Référence : conservée si toujours présente et retenue, sinon nouvelle sélection et réalignement complet
+        Frame current = referencePath != null ? frames.get(referencePath) : null;
+        if (current == null || current.rejectReason != null) {
+            List<Frame> all = new ArrayList<>(frames.values());
+            List<StarCatalog> catalogs = new ArrayList<>();
+            boolean[] excluded = new boolean[all.size()];
+            for (int i = 0; i < all.size(); i++) {
+                catalogs.add(all.get(i).stars);
+                excluded[i] = all.get(i).rejectReason != null;
+            }
+            int referenceIndex = ImageAligner.findReferenceImage(catalogs, excluded);
+            for (Frame frame : all) {
+                frame.result = null;
+            }
+            if (referenceIndex < 0) {
+                // Toutes rejetées : aucune image acceptée, les appelants le signalent
+                referencePath = null;
+                canvasInfo = null;
+                syncedPaths = List.copyOf(paths);
+                return failures;
+            }
+            referencePath = all.get(referenceIndex).path;
+            System.out.println("Nouvelle image de référence: " + referencePath.getFileName());
+        }
+        Frame reference = frames.get(referencePath);
+
+        if (callback != null) {
+            callback.onProgress(30, "Référence: " + referencePath.getFileName());
+        }
+
+        // Alignement des images retenues qui n'ont pas encore de transformation
+        List<Frame> toAlign = new ArrayList<>();
+        for (Frame frame : frames.values()) {
+            if (frame.result == null && frame.rejectReason == null) {
+                toAlign.add(frame);
+            }
+        }
+
+        for (int i = 0; i < toAlign.size(); i++) {
+            StackingEngine.checkCancelled();
+            Frame frame = toAlign.get(i);
+            if (callback != null) {
+                int progress = 30 + (int) ((i * 40.0) / toAlign.size());
+                callback.onProgress(progress, "Alignement: " + frame.path.getFileName());
+            }
+            if (frame == reference) {
+                frame.result = new ImageAligner.AlignmentResult(ImageAligner.AffineTransform.identity(),
+                        frame.stars.size(), frame.stars.size());
+            } else {
+                frame.result = ImageAligner.findAffineTransformWithQuality(reference.stars, frame.stars);
+            }
+            if (frame.image != null) {
+                frame.image.setTransform(frame.result.transform);
+            }
+        }
+        System.out.println("Images alignées: " + toAlign.size() + ", réutilisées: " + (frames.size() - toAlign.size()));
+
+        // Canvas recalculé depuis les transformations mémorisées
+        if (callback != null) {
+            callback.onProgress(75, "Calcul du canvas...");
+        }
+        List<Frame> accepted = new ArrayList<>();
+        for (Frame frame : frames.values()) {
+            if (frame.isAccepted()) accepted.add(frame);
+        }
+        int[] widths = new int[accepted.size()];
+        int[] heights = new int[accepted.size()];
+        ImageAligner.AffineTransform[] transforms = new ImageAligner.AffineTransform[accepted.size()];
+        for (int i = 0; i < accepted.size(); i++) {
+            widths[i] = accepted.get(i).info.width;
+            heights[i] = accepted.get(i).info.height;
+            transforms[i] = accepted.get(i).getTransform();
+        }
+        canvasInfo = ImageAligner.calculateExpandedCanvas(widths, heights, transforms);
+        for (Frame frame : accepted) {
+            if (frame.image != null) {
+                frame.image.setCanvasInfo(canvasInfo);
+            }
+        }
+        System.out.println("Canvas élargi: " + canvasInfo.width + "x" + canvasInfo.height);
+
+        syncedPaths = List.copyOf(paths);
+        if (callback != null) {
+            callback.onProgress(100, "Alignement terminé: " + accepted.size() + " images prêtes");
+        }
+        return failures;
+    }
+
+    private void evaluateQuality() {
+        List<FrameQuality> qualities = new ArrayList<>();
+        for (Frame frame : frames.values()) {
+            qualities.add(frame.quality);
+            frame.rejectReason = null;
+        }
+        if (!rules.enabled || qualities.size() < Config.FRAME_REJECTION_MIN_FRAMES) {
+            return;
+        }
+
+        FrameQuality median = FrameQuality.sessionMedian(qualities);
+        System.out.println("Qualité médiane: " + median);
+        int rejected = 0;
+        for (Frame frame : frames.values()) {
+            frame.rejectReason = rules.evaluate(frame.quality, median);
+            if (frame.rejectReason != null) {
+                rejected++;
+                System.out.println("  ❌ " + frame.path.getFileName() + ": " + frame.rejectReason);
+            }
+        }
+        System.out.println("Images rejetées (qualité): " + rejected + "/" + frames.size());
+    }
+
+    /**
+     * Vrai si la dernière synchronisation correspond exactement à cette liste de fichiers
+     */
+    public synchronized boolean isUpToDate(List<Path> paths) {
+        return !frames.isEmpty() && syncedPaths.equals(paths);
+    }
+
+    /**
+     * Images acceptées, dans l'ordre de la liste, prêtes pour l'empilement (session avec pixels)
+     */
+    public synchronized List<FitsImage> getAlignedImages() {
+        if (!keepPixels) {
+            throw new IllegalStateException("Session sans pixels : empiler depuis les fichiers");
+        }
+        List<FitsImage> images = new ArrayList<>();
+        for (Frame frame : frames.values()) {
+            if (frame.isAccepted()) {
+                images.add(frame.image);
+            }
+        }
+        return images;
+    }
+
+    public synchronized List<Frame> getFrames() {
+        return new ArrayList<>(frames.values());
+    }
+
+    public synchronized FitsImage getReferenceImage() {
+        Frame reference = referencePath != null ? frames.get(referencePath) : null;
+        return reference != null ? reference.image : null;
+    }
+
+    public synchronized Path getReferencePath() { return referencePath; }
+
+    public synchronized ImageAligner.CanvasInfo getCanvasInfo() {
+        return canvasInfo;
+    }
+
+    public synchronized void clear() {
+        frames.clear();
+        referencePath = null;
+        canvasInfo = null;
+        syncedPaths = List.of();
+    }
+}
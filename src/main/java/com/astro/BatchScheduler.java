@@ -0,0 +1,408 @@
+package com.astro;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Traitement d'une série de cibles (un dossier de poses par cible) en une seule exécution.
+ *
+ * Les travaux passent dans un {@link FramePipeline} à deux étapes : l'alignement (chargement
+ * des poses depuis le disque, détection) puis l'empilement (calcul). L'étape d'alignement
+ * prépare la cible suivante pendant que la précédente s'empile, ce qui recouvre les lectures
+ * disque d'un travail par le calcul d'un autre.
+ *
+ * Toutes les cibles partagent les mêmes ressources :
+ * - un réservoir de threads de calcul : l'alignement (détection sur un seul thread) en réserve
+ *   un, un empilement réserve les siens avant de démarrer ; le total ne dépasse jamais le
+ *   nombre de cœurs ;
+ * - un budget mémoire global : chaque étape réserve son estimation (plus grande source pour
+ *   l'alignement, qui charge une image à la fois ; plan {@link MemoryPlanner} pour l'empilement)
+ *   et attend qu'elle soit libre. Le plan d'un travail respecte aussi son propre --memory.
+ *   Un travail dont même le plan le plus économe dépasse le budget échoue au lieu de le dépasser.
+ *
+ * <pre>
+ * java -cp fits-stacker.jar com.astro.BatchScheduler cibles.txt [--threads 16] [--memory 12g]
+ *      [--parallel 2] [--summary resume.txt]
+ * </pre>
+ *
+ * Le fichier de travaux contient une cible par ligne, avec les options de {@link FitsStackerCli}
+ * (les chemins relatifs partent du dossier du fichier, # commence un commentaire) :
+ * <pre>
+ * M31/*.fits  --method SIGMA_CLIP --output M31.fits
+ * M42         -m MEDIAN -o M42.fits --threads 4
+ * </pre>
+ */
+public class BatchScheduler {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final long MB = 1L << 20;
+
+    public enum Status {
+        PENDING("En attente"),
+        DONE("Terminé"),
+        FAILED("Échec");
+
+        private final String displayName;
+
+        Status(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Une cible du lot et son bilan
+     */
+    public static class Job {
+        public final String name;
+        public final FitsStackerCli.Options options;
+        private volatile Status status = Status.PENDING;
+        private volatile String error;
+        private volatile FitsStackerCli.AlignedJob aligned;
+        private volatile String planDescription = "";
+        private volatile long queuedAt;
+        private volatile double alignSeconds;
+        private volatile double waitSeconds;
+        private volatile double stackSeconds;
+
+        public Job(String name, FitsStackerCli.Options options) {
+            this.name = name;
+            this.options = options;
+        }
+
+        public Status getStatus() { return status; }
+        public String getError() { return error; }
+        public double getAlignSeconds() { return alignSeconds; }
+        public double getWaitSeconds() { return waitSeconds; }
+        public double getStackSeconds() { return stackSeconds; }
+
+        public int getStackedCount() {
+            FitsStackerCli.AlignedJob a = aligned;
+            return a != null ? a.frames.size() : 0;
+        }
+
+        void fail(Exception e) {
+            status = Status.FAILED;
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            aligned = null;
+            System.err.println("✗ Travail " + name + ": " + error);
+        }
+
+        /**
+         * Ligne de bilan
+         */
+        public String describe() {
+            FitsStackerCli.AlignedJob a = aligned;
+            String frames = a != null
+                    ? String.format("%d/%d (rejetées %d, erreurs %d)", a.frames.size(), a.fileCount,
+                            a.getRejectedCount(), a.failedCount)
+                    : "-";
+            return String.format(Locale.ROOT, "%-16s %-10s %-32s %-44s %7.1f %7.1f %7.1f  %s",
+                    name, status.getDisplayName(), frames, planDescription,
+                    alignSeconds, waitSeconds, stackSeconds,
+                    status == Status.FAILED ? error : options.output);
+        }
+    }
+
+    private final int cpuThreads;
+    private final int parallelStacks;
+    private final long memoryBudget;
+    private final Semaphore cpu;
+    private final Semaphore memory;
+
+    /**
+     * @param cpuThreads     threads de calcul partagés par tous les empilements
+     * @param memoryBudget   mémoire partagée par tous les travaux en cours
+     * @param parallelStacks nombre d'empilements pouvant tourner en même temps
+     */
+    public BatchScheduler(int cpuThreads, long memoryBudget, int parallelStacks) {
+        this.cpuThreads = Math.max(1, cpuThreads);
+        this.parallelStacks = Math.max(1, parallelStacks);
+        this.memoryBudget = Math.max(MB, memoryBudget);
+        this.cpu = new Semaphore(this.cpuThreads, true);
+        this.memory = new Semaphore((int) Math.min(Integer.MAX_VALUE, this.memoryBudget / MB), true);
+    }
+
+    /**
+     * Lit un fichier de travaux : une cible par ligne, au format des options de {@link FitsStackerCli}
+     */
+    public static List<Job> readJobs(Path file) throws IOException {
+        Path base = file.toAbsolutePath().getParent();
+        List<Job> jobs = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).strip();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            FitsStackerCli.Options options;
+            try {
+                options = FitsStackerCli.Options.parse(tokenize(line));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(file.getFileName() + ":" + (i + 1) + ": " + e.getMessage());
+            }
+            options.inputs.replaceAll(input -> Paths.get(input).isAbsolute() ? input : base.resolve(input).toString());
+            options.output = base.resolve(options.output);
+            if (options.saveAlignedDir != null) {
+                options.saveAlignedDir = base.resolve(options.saveAlignedDir);
+            }
+            options.quiet = true;
+            jobs.add(new Job(jobName(options.output), options));
+        }
+        return jobs;
+    }
+
+    private static String jobName(Path output) {
+        return output.getFileName().toString().replaceFirst("[.][^.]+$", "");
+    }
+
+    /**
+     * Découpe une ligne en arguments ; les guillemets simples ou doubles protègent les espaces
+     */
+    static String[] tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char quote = 0;
+        boolean inToken = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+                else current.append(c);
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(current.toString());
+                    current.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                current.append(c);
+                inToken = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Guillemet non fermé");
+        }
+        if (inToken) {
+            tokens.add(current.toString());
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * Exécute tous les travaux. Un travail en échec n'arrête pas les autres.
+     */
+    public void run(List<Job> jobs) throws Exception {
+        System.out.println(String.format("Lot: %d travaux, %d threads de calcul, %d Mo, %d empilement(s) en parallèle",
+                jobs.size(), cpuThreads, memoryBudget / MB, parallelStacks));
+
+        // File de profondeur 1 : au plus une cible alignée attend son empilement
+        new FramePipeline<Job>("lot", 1)
+                .stage("alignement", 1, this::align)
+                .stage("empilement", parallelStacks, this::stack)
+                .run(jobs);
+    }
+
+    private Job align(Job job) throws InterruptedException {
+        long t0 = System.nanoTime();
+        int reserved = 0;
+        try {
+            List<Path> files = FitsStackerCli.expandInputs(job.options.inputs);
+            // Alignement sans pixels : une seule source chargée à la fois
+            long bytes = 0;
+            for (Path file : files) {
+                try {
+                    bytes = Math.max(bytes, MemoryPlanner.readFrameInfo(file).residentBytes());
+                } catch (Exception e) {
+                    // En-tête illisible : l'alignement signalera l'erreur de chargement
+                }
+            }
+            reserved = reserve(bytes);
+            // Mémoire puis thread, dans le même ordre que l'empilement
+            cpu.acquire();
+            try {
+                System.out.println("▶ Alignement " + job.name + " (" + files.size() + " fichiers)");
+                job.aligned = FitsStackerCli.align(files, job.options, null);
+            } finally {
+                cpu.release();
+            }
+            return job;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            job.fail(e);
+            return null;
+        } finally {
+            memory.release(reserved);
+            job.alignSeconds = (System.nanoTime() - t0) / 1e9;
+            job.queuedAt = System.nanoTime();
+        }
+    }
+
+    private Job stack(Job job) throws InterruptedException {
+        FitsStackerCli.AlignedJob aligned = job.aligned;
+        MemoryPlanner.Plan plan;
+        int reserved;
+        try {
+            // Le planificateur retient déjà le mode le plus économe qui tient dans le budget,
+            // celui du lot ou celui du travail s'il est plus petit
+            long budget = job.options.memoryBudget > 0
+                    ? Math.min(memoryBudget, job.options.memoryBudget) : memoryBudget;
+            plan = FitsStackerCli.plan(aligned, job.options.method, budget);
+            job.planDescription = plan.mode.getDisplayName() + " " + (plan.estimatedBytes / MB) + " Mo";
+            // Toujours mémoire puis threads : un travail qui attend des threads ne bloque jamais la mémoire d'un autre
+            reserved = reserve(plan.estimatedBytes);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            job.fail(e);
+            return job;
+        }
+        int threads = Math.min(cpuThreads,
+                job.options.threads > 0 ? job.options.threads : Math.max(1, cpuThreads / parallelStacks));
+
+        try {
+            cpu.acquire(threads);
+            try {
+                job.waitSeconds = (System.nanoTime() - job.queuedAt) / 1e9;
+                long t0 = System.nanoTime();
+                System.out.println("▶ Empilement " + job.name + " (" + threads + " threads, " + plan.describe() + ")");
+                try {
+                    FitsStackerCli.stack(aligned, job.options, plan, threads, null);
+                    job.status = Status.DONE;
+                    System.out.println(String.format(Locale.ROOT, "✓ Travail %s terminé: %s", job.name, job.options.output));
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    job.fail(e);
+                }
+                job.stackSeconds = (System.nanoTime() - t0) / 1e9;
+            } finally {
+                cpu.release(threads);
+            }
+        } finally {
+            memory.release(reserved);
+        }
+        return job;
+    }
+
+    /**
+     * Réserve une part du budget global ; une demande plus grande que le budget entier ne serait
+     * jamais satisfaite sans le dépasser, elle est refusée
+     */
+    private int reserve(long bytes) throws InterruptedException {
+        long needed = Math.max(1, (bytes + MB - 1) / MB);
+        if (needed > memoryBudget / MB) {
+            throw new IllegalStateException("Mémoire insuffisante: besoin estimé " + needed + " Mo, budget du lot " +
+                    (memoryBudget / MB) + " Mo (augmenter --memory ou -Xmx)");
+        }
+        int permits = (int) needed;
+        memory.acquire(permits);
+        return permits;
+    }
+
+    /**
+     * Bilan du lot : une ligne par travail, temps cumulés et temps réel
+     */
+    public static List<String> summary(List<Job> jobs, double wallSeconds) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-16s %-10s %-32s %-44s %7s %7s %7s  %s",
+                "Travail", "État", "Images", "Plan", "Align.", "Attente", "Empil.", "Sortie"));
+        double sequential = 0;
+        int done = 0;
+        for (Job job : jobs) {
+            lines.add(job.describe());
+            sequential += job.alignSeconds + job.stackSeconds;
+            if (job.status == Status.DONE) done++;
+        }
+        lines.add(String.format(Locale.ROOT, "%d/%d travaux terminés en %.1f s (%.1f s de travail cumulé)",
+                done, jobs.size(), wallSeconds, sequential));
+        return lines;
+    }
+
+    public static void main(String[] args) {
+        Path jobsFile = null;
+        Path summaryFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int parallel = 2;
+        long budget = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-t", "--threads" -> threads = Integer.parseInt(next(args, ++i, arg));
+                    case "-p", "--parallel" -> parallel = Integer.parseInt(next(args, ++i, arg));
+                    case "--memory" -> budget = FitsStackerCli.Options.parseSize(next(args, ++i, arg));
+                    case "-s", "--summary" -> summaryFile = Paths.get(next(args, ++i, arg));
+                    default -> {
+                        if (arg.startsWith("-") || jobsFile != null) {
+                            throw new IllegalArgumentException("Argument inattendu: " + arg);
+                        }
+                        jobsFile = Paths.get(arg);
+                    }
+                }
+            }
+            if (jobsFile == null) {
+                throw new IllegalArgumentException("Fichier de travaux manquant");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erreur: " + e.getMessage());
+            System.err.println("Usage: BatchScheduler <travaux.txt> [--threads N] [--parallel N] " +
+                    "[--memory 12g] [--summary resume.txt]");
+            System.exit(EXIT_USAGE);
+            return;
+        }
+
+        long heap = MemoryPlanner.availableHeap();
+        if (budget <= 0 || budget > heap) {
+            if (budget > heap) {
+                System.out.println("Budget mémoire " + (budget / MB) + " Mo > tas disponible " + (heap / MB) +
+                        " Mo (augmenter -Xmx)");
+            }
+            budget = heap;
+        }
+        if (summaryFile == null) {
+            summaryFile = jobsFile.toAbsolutePath().resolveSibling(
+                    jobsFile.getFileName().toString().replaceFirst("[.][^.]+$", "") + "_resume.txt");
+        }
+
+        try {
+            List<Job> jobs = readJobs(jobsFile);
+            long start = System.nanoTime();
+            new BatchScheduler(threads, budget, parallel).run(jobs);
+            List<String> lines = summary(jobs, (System.nanoTime() - start) / 1e9);
+            Files.write(summaryFile, lines);
+            System.out.println();
+            lines.forEach(System.out::println);
+            System.out.println("Bilan: " + summaryFile);
+            // Travaux concurrents : les mesures par étape sont celles du lot entier
+            StageMetrics.report(FitsStackerCli.metricsFileFor(jobsFile));
+            boolean allDone = jobs.stream().allMatch(job -> job.getStatus() == Status.DONE);
+            System.exit(allDone ? EXIT_OK : EXIT_FAILURE);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erreur: " + e.getMessage());
+            System.exit(EXIT_USAGE);
+        } catch (Exception e) {
+            System.err.println("ÉCHEC: " + e.getMessage());
+            System.exit(EXIT_FAILURE);
+        }
+    }
+
+    private static String next(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Valeur manquante pour " + option);
+        }
+        return args[i];
+    }
+}
@@ -17,30 +17,94 @@ public class Config {
     public static final double TRIANGLE_MATCH_TOLERANCE = 0.1;
     public static final int MAX_TRIANGLE_STARS = 20;
     
+    // Cache de détection (fichiers annexes dans un sous-dossier des images)
+    public static final boolean DETECTION_CACHE_ENABLED = true;
+    public static final String CACHE_DIR_NAME = ".fitsstacker";
+    
+    // Qualité des images : rejet avant redressement (seuils relatifs à la médiane de la session)
+    public static final boolean ALIGNMENT_QUALITY_FILTERING = false; // filtrage sur le score RANSAC
+    public static final boolean FRAME_REJECTION_ENABLED = true;
+    public static final int FRAME_REJECTION_MIN_FRAMES = 3;
+    public static final double REJECT_MIN_STAR_RATIO = 0.5;
+    public static final double REJECT_MAX_FWHM_RATIO = 1.5;
+    public static final double REJECT_MAX_ECCENTRICITY = 0.8;
+    public static final double REJECT_MAX_BACKGROUND_RATIO = 1.5;
+    public static final double REJECT_MAX_NOISE_RATIO = 2.0;
+    
     // Sigma Clipping
     public static final double SIGMA_CLIP_THRESHOLD = 2.0;
     public static final int MIN_VALUES_FOR_SIGMA_CLIP = 4;
     
+    // Réserve disque des images alignées (images les moins récemment utilisées évincées au-delà)
+    public static final int ALIGNED_STORE_MAX_MB = 32768;
+    
+    // Pipeline d'empilement (files bornées entre étapes)
+    public static final int PIPELINE_QUEUE_DEPTH = 4;
+    public static final int PIPELINE_IO_WORKERS = 2;
+    
+    // Surveillance de dossier (empilement en direct)
+    public static final long WATCH_STABLE_MS = 1000;      // taille et date inchangées depuis au moins ce délai
+    public static final long WATCH_POLL_MS = 250;
+    public static final long WATCH_INCOMPLETE_TIMEOUT_MS = 30000;
+    public static final long WATCH_REPORT_INTERVAL_MS = 10000;
+    
+    // Empilement distribué par tuiles (coordinateur et workers reliés par socket)
+    public static final int DISTRIBUTED_TILE_ROWS = 64;
+    public static final int DISTRIBUTED_MAX_ATTEMPTS = 3;            // par tuile, avant abandon du travail
+    public static final int DISTRIBUTED_TILE_TIMEOUT_MS = 600000;    // attente maximale d'une tuile
+    public static final long DISTRIBUTED_WORKER_WAIT_MS = 60000;     // sans aucun worker connecté
+    public static final int DISTRIBUTED_WORKER_HEAP_MB = 2048;       // workers locaux lancés par le coordinateur
+    
+    // Points de reprise des empilements longs (sous-dossier du cache, à côté des FITS),
+    // seulement quand le plan mémoire passe par bandes ou par disque
+    public static final boolean CHECKPOINT_ENABLED = true;
+    public static final boolean CHECKPOINT_IN_MEMORY = false;       // aussi les travaux tenant en mémoire
+    public static final String CHECKPOINT_DIR_NAME = "checkpoints";
+    public static final long CHECKPOINT_INTERVAL_MS = 60000;        // accumulateurs et bandes terminées
+    
     // Interface
-    public static final int WINDOW_WIDTH = 1000;
-    public static final int WINDOW_HEIGHT = 700;
-    public static final int PROGRESS_UPDATE_INTERVAL = 10000; // pixels
-    
-    // Couleurs interface
-    public static final java.awt.Color TITLE_BG_COLOR = new java.awt.Color(40, 40, 50);
-    public static final java.awt.Color TITLE_FG_COLOR = new java.awt.Color(100, 180, 255);
-    public static final java.awt.Color SUBTITLE_COLOR = new java.awt.Color(180, 180, 180);
-    public static final java.awt.Color BORDER_COLOR = new java.awt.Color(70, 70, 80);
-    public static final java.awt.Color ALIGN_BUTTON_COLOR = new java.awt.Color(70, 130, 180);
-    public static final java.awt.Color STACK_BUTTON_COLOR = new java.awt.Color(60, 150, 90);
+    public static final int WINDOW_WIDTH = 1400;
+    public static final int WINDOW_HEIGHT = 850;
+    public static final long PROGRESS_SAMPLE_MS = 100;        // publication de la progression (10 Hz)
     
+    // Visionneuse (pyramide de tuiles, étirement automatique)
+    public static final int VIEWER_TILE_SIZE = 256;
+    public static final int VIEWER_TILE_CACHE = 512;          // tuiles converties gardées en mémoire
+    public static final int VIEWER_MIN_LEVEL_SIZE = 256;      // dernier niveau de la pyramide
+    public static final int STF_SAMPLE_PIXELS = 250_000;      // échantillon de l'histogramme
+    public static final double STF_SHADOWS_CLIP = -2.8;       // coupure des ombres, en MAD
+    public static final double STF_TARGET_BACKGROUND = 0.25;  // niveau d'affichage du fond
+    public static final long STACK_PREVIEW_MS = 2000;         // aperçu de l'empilement en cours
+    public static final int STACK_PREVIEW_SIZE = 1024;        // plus grande dimension de l'aperçu
+    public static final int THUMBNAIL_SIZE = 64;              // vignettes de la liste des fichiers
+    public static final int THUMBNAIL_MEMORY_CACHE = 1000;    // vignettes gardées en mémoire
+    public static final int THUMBNAIL_READERS = 4;            // lectures de fichiers simultanées
+    public static final long THUMBNAIL_RECHECK_MS = 5000;     // identité des fichiers revérifiée au plus ce délai
+
     // Performance
     public static final int RECOMMENDED_MEMORY_MB = 4096;
+    public static final int HISTOGRAM_MEDIAN_MIN_FRAMES = 20; // en deçà, trier est plus rapide que compter (StackingBenchmark)
     
     private Config() {
         // Classe utilitaire, pas d'instanciation
     }
     
+    /**
+     * Couleurs interface, dans une classe à part : AWT n'est chargé qu'au premier accès,
+     * jamais par le mode ligne de commande
+     */
+    public static final class Colors {
+        public static final java.awt.Color TITLE_BG_COLOR = new java.awt.Color(40, 40, 50);
+        public static final java.awt.Color TITLE_FG_COLOR = new java.awt.Color(100, 180, 255);
+        public static final java.awt.Color SUBTITLE_COLOR = new java.awt.Color(180, 180, 180);
+        public static final java.awt.Color BORDER_COLOR = new java.awt.Color(70, 70, 80);
+        public static final java.awt.Color ALIGN_BUTTON_COLOR = new java.awt.Color(70, 130, 180);
+        public static final java.awt.Color STACK_BUTTON_COLOR = new java.awt.Color(60, 150, 90);
+        
+        private Colors() {
+        }
+    }
+    
     /**
      * Retourne une description des réglages actuels
      */
@@ -0,0 +1,193 @@
+package com.astro;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.CRC32;
+
+/**
+ * Cache disque des détections d'étoiles.
+ * Un fichier annexe binaire par image (dossier {@link Config#CACHE_DIR_NAME} à côté des FITS)
+ * contient le catalogue, les statistiques de fond, la géométrie, le BITPIX et le bruit de
+ * l'image : une entrée valide suffit à aligner une image sans en lire les pixels
+ * ({@link #lookup}). La clé combine taille, date de
+ * modification, somme de contrôle de l'en-tête FITS et paramètres du détecteur :
+ * une image modifiée ou des réglages différents invalident l'entrée.
+ */
+public class DetectionCache {
+    private static final int MAGIC = 0x46534443; // "FSDC"
+    private static final int FORMAT_VERSION = 3;
+    private static final int FITS_BLOCK = 2880;
+    private static final int MAX_HEADER_BLOCKS = 16;
+
+    /**
+     * Entrée de cache : catalogue, géométrie et bruit de l'image source
+     */
+    public static class Entry {
+        public final StarCatalog catalog;
+        public final int width;
+        public final int height;
+        public final boolean isColor;
+        public final int bitpix;
+        public final double noiseSigma;
+
+        public Entry(StarCatalog catalog, int width, int height, boolean isColor, int bitpix, double noiseSigma) {
+            this.catalog = catalog;
+            this.width = width;
+            this.height = height;
+            this.isColor = isColor;
+            this.bitpix = bitpix;
+            this.noiseSigma = noiseSigma;
+        }
+
+        public MemoryPlanner.FrameInfo getInfo() {
+            return new MemoryPlanner.FrameInfo(width, height, isColor, bitpix);
+        }
+    }
+
+    private DetectionCache() {
+        // Classe utilitaire, pas d'instanciation
+    }
+
+    /**
+     * Détecte les étoiles en passant par le cache quand l'image vient directement d'un fichier
+     */
+    public static StarCatalog detectStars(FitsImage image, int maxStars) {
+        if (!Config.DETECTION_CACHE_ENABLED || !image.isLoadedFromFile()) {
+            return StarDetector.detectStars(image, maxStars);
+        }
+
+        Entry cached = lookup(image.getPath(), maxStars);
+        if (cached != null && cached.width == image.getWidth() && cached.height == image.getHeight()) {
+            System.out.println("  (cache) " + cached.catalog.size() + " étoiles relues");
+            return cached.catalog;
+        }
+
+        StarCatalog stars = StarDetector.detectStars(image, maxStars);
+        store(image.getPath(), maxStars, stars, image);
+        return stars;
+    }
+
+    /**
+     * Relit une détection en cache sans charger les pixels, ou null si absente/périmée
+     */
+    public static Entry lookup(Path imagePath, int maxStars) {
+        if (!Config.DETECTION_CACHE_ENABLED) return null;
+        Path sidecar = sidecarPath(imagePath);
+        if (!Files.isRegularFile(sidecar)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            long key = in.readLong();
+            if (key != computeKey(imagePath, maxStars)) return null;
+
+            int width = in.readInt();
+            int height = in.readInt();
+            boolean isColor = in.readBoolean();
+            int bitpix = in.readInt();
+            double noiseSigma = in.readDouble();
+            double bgMean = in.readDouble();
+            double bgSigma = in.readDouble();
+            int count = in.readInt();
+
+            StarCatalog catalog = new StarCatalog(count);
+            catalog.setBackground(bgMean, bgSigma);
+            for (int i = 0; i < count; i++) {
+                catalog.add(in.readDouble(), in.readDouble(), in.readDouble(),
+                        in.readDouble(), in.readDouble(), in.readDouble());
+            }
+            return new Entry(catalog, width, height, isColor, bitpix, noiseSigma);
+        } catch (IOException e) {
+            System.out.println("  ⚠️ Cache de détection illisible (" + sidecar.getFileName() + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Écrit une détection dans le cache (écriture atomique via fichier temporaire), avec la
+     * géométrie et le bruit de l'image dont elle vient
+     */
+    public static void store(Path imagePath, int maxStars, StarCatalog catalog, FitsImage image) {
+        if (!Config.DETECTION_CACHE_ENABLED) return;
+        Path sidecar = sidecarPath(imagePath);
+        try {
+            Files.createDirectories(sidecar.getParent());
+            Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(computeKey(imagePath, maxStars));
+                out.writeInt(image.getWidth());
+                out.writeInt(image.getHeight());
+                out.writeBoolean(image.isColor());
+                out.writeInt(image.getBitpix());
+                out.writeDouble(image.getNoiseSigma());
+                out.writeDouble(catalog.getBackgroundMean());
+                out.writeDouble(catalog.getBackgroundSigma());
+                out.writeInt(catalog.size());
+                for (int i = 0; i < catalog.size(); i++) {
+                    out.writeDouble(catalog.getX(i));
+                    out.writeDouble(catalog.getY(i));
+                    out.writeDouble(catalog.getPeak(i));
+                    out.writeDouble(catalog.getFlux(i));
+                    out.writeDouble(catalog.getFwhm(i));
+                    out.writeDouble(catalog.getEccentricity(i));
+                }
+            }
+            Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Dossier en lecture seule, disque plein... : le cache est facultatif
+            System.out.println("  ⚠️ Cache de détection non écrit: " + e.getMessage());
+        }
+    }
+
+    static Path sidecarPath(Path imagePath) {
+        Path absolute = imagePath.toAbsolutePath();
+        return absolute.resolveSibling(Config.CACHE_DIR_NAME)
+                .resolve(absolute.getFileName() + ".stars");
+    }
+
+    /**
+     * Clé d'identité du fichier : taille + mtime + CRC de l'en-tête FITS + paramètres
+     */
+    static long computeKey(Path imagePath, int maxStars) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(imagePath, BasicFileAttributes.class);
+        CRC32 crc = new CRC32();
+        crc.update(StarDetector.parameterSignature(maxStars).getBytes(StandardCharsets.US_ASCII));
+        long headerCrc = headerChecksum(imagePath);
+
+        long key = attrs.size();
+        key = key * 31 + attrs.lastModifiedTime().toMillis();
+        key = key * 31 + headerCrc;
+        key = key * 31 + crc.getValue();
+        return key;
+    }
+
+    /**
+     * CRC32 des blocs d'en-tête primaires (jusqu'à la carte END)
+     */
+    private static long headerChecksum(Path imagePath) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] block = new byte[FITS_BLOCK];
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(imagePath))) {
+            for (int b = 0; b < MAX_HEADER_BLOCKS; b++) {
+                int read = in.readNBytes(block, 0, FITS_BLOCK);
+                if (read <= 0) break;
+                crc.update(block, 0, read);
+                if (read < FITS_BLOCK || containsEndCard(block)) break;
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static boolean containsEndCard(byte[] block) {
+        for (int card = 0; card < FITS_BLOCK; card += 80) {
+            if (block[card] == 'E' && block[card + 1] == 'N' && block[card + 2] == 'D'
+                    && block[card + 3] == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -5,6 +5,7 @@ import nom.tam.util.BufferedDataOutputStream;
 
 import java.io.*;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 /**
  * VERSION CORRIGÉE avec débogage pour problème d'images noires
@@ -19,10 +20,17 @@ public class FitsImage {
     protected ImageAligner.AffineTransform transform = ImageAligner.AffineTransform.identity();
     protected ImageAligner.CanvasInfo canvasInfo = null;
     protected double alignmentQuality = 1.0;
+    protected boolean loadedFromFile = false;
+    protected boolean integerValued = false; // valeurs entières 16 bits (BITPIX 16)
+    protected int bitpix = -32;               // type stocké dans le fichier (float pour une image calculée)
+    protected double noiseSigma = Double.NaN; // calculé une seule fois, à la demande
 
     public FitsImage(Path path) throws Exception {
         this.path = path;
+        StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.LOAD);
         loadFits();
+        this.loadedFromFile = true;
+        span.end(1, (long) width * height * (isColor ? 3 : 1), path.toFile().length());
     }
 
     protected FitsImage(Path path, int width, int height, boolean isColor) {
@@ -42,6 +50,144 @@ public class FitsImage {
         return new FitsImage(path, width, height, isColor);
     }
 
+    /**
+     * Lit seulement les lignes [y0, y0 + rows) du fichier avec le tuilage de nom.tam, sans charger
+     * l'image entière. L'image garde ses dimensions complètes mais les autres lignes restent null :
+     * elle ne sert qu'à {@link #warpRows} pour des lignes de canvas qui retombent dans la fenêtre.
+     * Les conversions sont celles du chargement complet.
+     */
+    public static FitsImage readRowWindow(Path path, int y0, int rows) throws Exception {
+        StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.LOAD);
+        FitsImage window = readRowWindowData(path, y0, rows);
+        long pixels = 0;
+        for (float[] row : window.data) {
+            if (row != null) pixels += row.length;
+        }
+        pixels *= window.isColor ? 3 : 1;
+        // Octets lus estimés d'après le type stocké : entiers 16 bits, sinon 32 bits
+        span.end(0, pixels, pixels * (window.integerValued ? 2 : 4));
+        return window;
+    }
+
+    private static FitsImage readRowWindowData(Path path, int y0, int rows) throws Exception {
+        try (Fits fits = new Fits(path.toFile())) {
+            ImageHDU imageHdu = firstImage(fits);
+            int[] axes = imageHdu.getAxes();
+            FitsImage window = emptyWindow(path, axes);
+            window.bitpix = imageHdu.getHeader().getIntValue("BITPIX", -32);
+            int first = Math.max(0, y0);
+            int count = Math.max(0, Math.min(window.height, y0 + rows) - first);
+            if (count > 0) {
+                readWindowRows(imageHdu, axes, window, first, count);
+            }
+            return window;
+        }
+    }
+
+    /**
+     * Lit une ligne sur {@link #sampleStep} (lignes step/2, step/2 + step, ...) sans charger
+     * l'image entière : de quoi construire une vignette d'au plus maxSize pixels de côté.
+     * Comme pour {@link #readRowWindow}, les autres lignes restent null. Lecture non mesurée :
+     * les vignettes de l'interface ne doivent pas se mêler aux mesures de chargement des empilements.
+     */
+    public static FitsImage readRowSample(Path path, int maxSize) throws Exception {
+        try (Fits fits = new Fits(path.toFile())) {
+            ImageHDU imageHdu = firstImage(fits);
+            int[] axes = imageHdu.getAxes();
+            FitsImage sample = emptyWindow(path, axes);
+            int step = sampleStep(sample.width, sample.height, maxSize);
+            for (int y = step / 2; y < sample.height; y += step) {
+                readWindowRows(imageHdu, axes, sample, y, 1);
+            }
+            return sample;
+        }
+    }
+
+    /**
+     * Pas d'échantillonnage (en lignes et en colonnes) ramenant la plus grande dimension à maxSize
+     */
+    public static int sampleStep(int width, int height, int maxSize) {
+        return Math.max(1, (Math.max(width, height) + maxSize - 1) / maxSize);
+    }
+
+    private static ImageHDU firstImage(Fits fits) throws Exception {
+        BasicHDU<?> hdu = fits.readHDU();
+        if (!(hdu instanceof ImageHDU imageHdu)) {
+            throw new IllegalArgumentException("Fichier FITS vide ou corrompu");
+        }
+        int[] axes = imageHdu.getAxes();
+        if (axes == null || axes.length < 2) {
+            throw new IllegalArgumentException("Aucune donnée dans le fichier FITS");
+        }
+        return imageHdu;
+    }
+
+    /**
+     * Image aux dimensions du fichier dont aucune ligne n'est encore lue
+     */
+    private static FitsImage emptyWindow(Path path, int[] axes) {
+        FitsImage window = new FitsImage(path, 0, 0, false);
+        window.width = axes[axes.length - 1];
+        window.height = axes[axes.length - 2];
+        window.data = new float[window.height][];
+        if (axes.length >= 3 && axes[axes.length - 3] == 3) {
+            // Cube à 3 plans : RGB
+            window.isColor = true;
+            window.colorData = new float[3][window.height][];
+        }
+        return window;
+    }
+
+    /**
+     * Lit les lignes [first, first + count) dans la fenêtre, avec les conversions du chargement complet
+     */
+    private static void readWindowRows(ImageHDU imageHdu, int[] axes, FitsImage window,
+                                       int first, int count) throws Exception {
+        int width = window.width;
+        Object tile;
+        if (axes.length >= 3) {
+            // Cube : les 3 plans en RGB, sinon le premier plan seulement
+            int readPlanes = window.isColor ? 3 : 1;
+            tile = imageHdu.getTiler().getTile(new int[]{0, first, 0}, new int[]{readPlanes, count, width});
+            if (!(tile instanceof float[] values)) {
+                throw new IllegalArgumentException("Format FITS non supporté: " + tile.getClass().getName());
+            }
+            if (window.isColor) {
+                for (int c = 0; c < 3; c++) {
+                    for (int r = 0; r < count; r++) {
+                        float[] row = new float[width];
+                        System.arraycopy(values, (c * count + r) * width, row, 0, width);
+                        window.colorData[c][first + r] = row;
+                    }
+                }
+                for (int r = 0; r < count; r++) {
+                    window.data[first + r] = window.colorData[1][first + r].clone();
+                }
+                return;
+            }
+        } else {
+            tile = imageHdu.getTiler().getTile(new int[]{first, 0}, new int[]{count, width});
+        }
+
+        for (int r = 0; r < count; r++) {
+            float[] row = new float[width];
+            int base = r * width;
+            if (tile instanceof float[] values) {
+                System.arraycopy(values, base, row, 0, width);
+            } else if (tile instanceof short[] values) {
+                for (int x = 0; x < width; x++) row[x] = values[base + x] & 0xFFFF;
+                window.integerValued = true;
+            } else if (tile instanceof int[] values) {
+                for (int x = 0; x < width; x++) row[x] = values[base + x];
+            } else if (tile instanceof double[] values) {
+                for (int x = 0; x < width; x++) row[x] = (float) values[base + x];
+            } else {
+                throw new IllegalArgumentException("Format FITS non supporté: " + tile.getClass().getName());
+            }
+            window.data[first + r] = row;
+        }
+    }
+
     protected void loadFits() throws Exception {
         try (Fits fits = new Fits(path.toFile())) {
             BasicHDU<?> hdu = fits.readHDU();
@@ -51,6 +197,7 @@ public class FitsImage {
             }
 
             Object rawData = hdu.getData().getData();
+            this.bitpix = hdu.getHeader().getIntValue("BITPIX", -32);
 
             if (rawData == null) {
                 throw new IllegalArgumentException("Aucune donnée dans le fichier FITS");
@@ -72,6 +219,7 @@ public class FitsImage {
                 this.data = floatData;
             } else if (rawData instanceof short[][] shortData) {
                 this.data = convertToFloat(shortData);
+                this.integerValued = true;
             } else if (rawData instanceof int[][] intData) {
                 this.data = convertToFloat(intData);
             } else if (rawData instanceof double[][] doubleData) {
@@ -206,6 +354,20 @@ public class FitsImage {
     public int getHeight() { return height; }
     public Path getPath() { return path; }
     public String getFileName() { return path.getFileName().toString(); }
+    /**
+     * Vrai si les pixels sont des entiers 16 bits non signés (données BITPIX 16)
+     */
+    public boolean isIntegerValued() {
+        return integerValued;
+    }
+
+    /**
+     * BITPIX du fichier source : taille du tableau brut lu par la bibliothèque FITS au chargement
+     */
+    public int getBitpix() { return bitpix; }
+
+    /** Vrai si les pixels sont ceux du fichier (et non une copie alignée ou un résultat) */
+    public boolean isLoadedFromFile() { return loadedFromFile; }
 
     public void setTransform(ImageAligner.AffineTransform transform) {
         this.transform = transform;
@@ -217,6 +379,66 @@ public class FitsImage {
     }
     public ImageAligner.CanvasInfo getCanvasInfo() { return canvasInfo; }
 
+    /**
+     * Bruit de fond estimé (MAD échantillonnée), mis en cache sur l'image
+     */
+    public double getNoiseSigma() {
+        if (Double.isNaN(noiseSigma)) {
+            noiseSigma = NoiseEstimator.estimateSigma(data);
+        }
+        return noiseSigma;
+    }
+
+    /**
+     * Bruit déjà mesuré sur l'image complète (fenêtre de lignes, image relue)
+     */
+    void setNoiseSigma(double sigma) {
+        this.noiseSigma = sigma;
+    }
+
+    /**
+     * Poids d'empilement en variance inverse (1/σ²) ; NaN si le bruit n'est pas mesurable,
+     * à remplacer à l'échelle du lot par {@link #fillUnknownWeights}
+     */
+    public double getStackWeight() {
+        return stackWeight(getNoiseSigma());
+    }
+
+    static double stackWeight(double sigma) {
+        return sigma > 0 ? 1.0 / (sigma * sigma) : Double.NaN;
+    }
+
+    /**
+     * Remplace les poids inconnus par la médiane des poids mesurés du lot : une valeur fixe
+     * comme 1 n'est pas à l'échelle de 1/σ². Sans aucun poids mesuré, toutes les images pèsent 1.
+     */
+    static double[] fillUnknownWeights(double[] weights) {
+        double median = medianWeight(weights, weights.length);
+        double fallback = Double.isNaN(median) ? 1.0 : median;
+        for (int i = 0; i < weights.length; i++) {
+            if (Double.isNaN(weights[i])) {
+                weights[i] = fallback;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Médiane des n premiers poids, inconnus (NaN) exclus ; NaN s'il n'y en a aucun de mesuré
+     */
+    static double medianWeight(double[] weights, int n) {
+        double[] known = new double[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            if (!Double.isNaN(weights[i])) {
+                known[count++] = weights[i];
+            }
+        }
+        if (count == 0) return Double.NaN;
+        Arrays.sort(known, 0, count);
+        return count % 2 == 1 ? known[count / 2] : (known[count / 2 - 1] + known[count / 2]) / 2;
+    }
+
     public void setAlignmentQuality(double quality) {
         this.alignmentQuality = quality;
     }
@@ -227,6 +449,7 @@ public class FitsImage {
      * AVEC DÉBOGAGE DÉTAILLÉ
      */
     public FitsImage createAlignedCopy(int canvasWidth, int canvasHeight, int offsetX, int offsetY) {
+        StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.WARP);
         try {
             System.out.println("\n=== Création copie alignée ===");
             System.out.println("Image source: " + getFileName());
@@ -240,6 +463,8 @@ public class FitsImage {
             System.out.println("    ty = " + transform.ty);
 
             FitsImage copy = FitsImage.createEmpty(this.path, canvasWidth, canvasHeight, this.isColor);
+            // Le bruit est mesuré sur l'image source : la copie contient des zones vides et est interpolée
+            copy.noiseSigma = getNoiseSigma();
 
             // Compteurs pour diagnostic
             int validPixels = 0;
@@ -334,6 +559,7 @@ public class FitsImage {
                 System.out.println("  ⚠️ Couverture moyenne: vérifier les paramètres");
             }
 
+            span.end(1, (long) totalPixels * (isColor && colorData != null ? 3 : 1), 0);
             return copy;
         } catch (Exception e) {
             System.err.println("ERREUR dans createAlignedCopy: " + e.getMessage());
@@ -342,6 +568,54 @@ public class FitsImage {
         }
     }
 
+    /**
+     * Copie alignée compacte en entiers 16 bits non signés, pour les images entières dont la
+     * transformation est un décalage entier : aucune interpolation n'est alors nécessaire et les
+     * valeurs sont celles de createAlignedCopy (mêmes pixels nuls en bordure). Null sinon.
+     */
+    public short[][] createAlignedShortCopy(ImageAligner.CanvasInfo canvas) {
+        if (!integerValued || isColor || !transform.isIntegerShift()) {
+            return null;
+        }
+        StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.WARP);
+        int shiftX = canvas.offsetX + (int) transform.tx;
+        int shiftY = canvas.offsetY + (int) transform.ty;
+        short[][] copy = new short[canvas.height][canvas.width];
+        for (int y = 0; y < canvas.height; y++) {
+            int srcY = y - shiftY;
+            // Même domaine valide que l'interpolation bilinéaire
+            if (srcY < 0 || srcY >= height - 1) continue;
+            float[] src = data[srcY];
+            short[] dst = copy[y];
+            int x0 = Math.max(0, shiftX);
+            int x1 = Math.min(canvas.width, width - 1 + shiftX);
+            for (int x = x0; x < x1; x++) {
+                dst[x] = (short) (int) src[x - shiftX];
+            }
+        }
+        span.end(1, (long) canvas.width * canvas.height, 0);
+        return copy;
+    }
+
+    /**
+     * Redresse seulement les lignes [y0, y0 + rows) du canvas pour un canal, dans dst.
+     * Mêmes valeurs que createAlignedCopy, sans allouer la copie complète.
+     */
+    public void warpRows(int channel, ImageAligner.CanvasInfo canvas, int y0, int rows, float[][] dst) {
+        StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.WARP);
+        boolean useColor = isColor && colorData != null;
+        for (int r = 0; r < rows; r++) {
+            float[] out = dst[r];
+            int y = y0 + r;
+            for (int x = 0; x < canvas.width; x++) {
+                double[] srcPoint = transform.applyInverse(x - canvas.offsetX, y - canvas.offsetY);
+                out[x] = useColor ? interpolateChannel(channel, srcPoint[0], srcPoint[1])
+                                  : interpolate(srcPoint[0], srcPoint[1]);
+            }
+        }
+        span.end(0, (long) rows * canvas.width, 0);
+    }
+
     /**
      * 🔧 TRANSFORMATION INVERSE CORRIGÉE
      * Applique la transformation inverse complète
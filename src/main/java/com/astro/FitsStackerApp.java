@@ -12,6 +12,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class FitsStackerApp extends JFrame {
     private final DefaultListModel<FileItem> fileListModel;
@@ -24,12 +29,23 @@ public class FitsStackerApp extends JFrame {
     private final JButton alignButton;
     private final JButton saveAlignedButton;
     private final JButton stackButton;
+    private final JButton watchButton;
+    private final JButton cancelButton;
     private final JProgressBar progressBar;
     private final JLabel statusLabel;
     private final JTextArea logArea;
-
+    private final ImageViewer viewer;
+    private final JCheckBox alignedViewBox;
+    private final JCheckBox stackPreviewBox;
+    private final ThumbnailCache thumbnails;
+
+    private final AlignmentSession alignmentSession = new AlignmentSession();
+    private AlignedFrameStore alignedStore;
+    private FolderWatcher folderWatcher;
+    private LiveStackSession liveSession;
     private final List<FitsImage> loadedImages = new ArrayList<>();
     private boolean imagesAligned = false;
+    private SwingWorker<?, ?> currentTask;
 
     public FitsStackerApp() {
         super("FITS Stacker - Alignement et Empilement d'Images Astronomiques");
@@ -45,16 +61,33 @@ public class FitsStackerApp extends JFrame {
         alignButton = new JButton("Aligner Images");
         saveAlignedButton = new JButton("Sauvegarder Alignées");
         stackButton = new JButton("Empiler Images");
+        watchButton = new JButton("Surveiller Dossier");
+        cancelButton = new JButton("Annuler");
         progressBar = new JProgressBar(0, 100);
         statusLabel = new JLabel("Prêt");
         logArea = new JTextArea(8, 50);
+        viewer = new ImageViewer();
+        alignedViewBox = new JCheckBox("Vue alignée");
+        stackPreviewBox = new JCheckBox("Suivre l'empilement", true);
+        thumbnails = new ThumbnailCache(path -> SwingUtilities.invokeLater(fileList::repaint));
 
         setupUI();
         setupListeners();
 
-        setSize(1000, 750);
+        setSize(Config.WINDOW_WIDTH, Config.WINDOW_HEIGHT);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
+        // Fermeture de la fenêtre : terminer les images stables et libérer le dossier surveillé
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                FolderWatcher watcher = folderWatcher;
+                if (watcher != null) {
+                    folderWatcher = null;
+                    watcher.close();
+                }
+            }
+        });
     }
 
     private void setupUI() {
@@ -71,9 +104,12 @@ public class FitsStackerApp extends JFrame {
         // Center panel with file list and controls
         JPanel centerPanel = new JPanel(new BorderLayout(15, 15));
 
-        // Left: File list
+        // Left: File list, center: viewer
         JPanel filePanel = createFilePanel();
-        centerPanel.add(filePanel, BorderLayout.CENTER);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, filePanel, createViewerPanel());
+        splitPane.setResizeWeight(0.3);
+        splitPane.setBorder(null);
+        centerPanel.add(splitPane, BorderLayout.CENTER);
 
         // Right: Controls
         JPanel controlPanel = createControlPanel();
@@ -120,7 +156,10 @@ public class FitsStackerApp extends JFrame {
 
         // File list
         fileList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
-        fileList.setCellRenderer(new FileItemRenderer());
+        fileList.setCellRenderer(new FileItemRenderer(thumbnails));
+        // Cellules de taille fixe : seules les cellules visibles sont rendues (et leurs vignettes demandées)
+        fileList.setFixedCellHeight(Config.THUMBNAIL_SIZE + 8);
+        fileList.setFixedCellWidth(240);
 
         JScrollPane scrollPane = new JScrollPane(fileList);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(70, 70, 80)));
@@ -138,6 +177,27 @@ public class FitsStackerApp extends JFrame {
         return panel;
     }
 
+    private JPanel createViewerPanel() {
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+
+        JPanel header = new JPanel(new BorderLayout());
+        JLabel label = new JLabel("Aperçu");
+        label.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        header.add(label, BorderLayout.WEST);
+        alignedViewBox.setToolTipText("Afficher l'image sélectionnée redressée sur le canvas d'alignement");
+        stackPreviewBox.setToolTipText("Afficher régulièrement le résultat partiel pendant l'empilement");
+        JPanel options = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        options.add(stackPreviewBox);
+        options.add(alignedViewBox);
+        header.add(options, BorderLayout.EAST);
+        panel.add(header, BorderLayout.NORTH);
+
+        viewer.setBorder(BorderFactory.createLineBorder(new Color(70, 70, 80)));
+        panel.add(viewer, BorderLayout.CENTER);
+
+        return panel;
+    }
+
     private JPanel createControlPanel() {
         JPanel panel = new JPanel();
         panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
@@ -185,11 +245,18 @@ public class FitsStackerApp extends JFrame {
         stackButton.setMaximumSize(new Dimension(Integer.MAX_VALUE, 45));
         stackButton.setBackground(new Color(60, 150, 90));
 
+        watchButton.setFont(new Font("Segoe UI", Font.BOLD, 13));
+        watchButton.setPreferredSize(new Dimension(280, 40));
+        watchButton.setMaximumSize(new Dimension(Integer.MAX_VALUE, 40));
+        watchButton.setBackground(new Color(150, 110, 60));
+
         panel.add(alignButton);
         panel.add(Box.createVerticalStrut(10));
         panel.add(saveAlignedButton);
         panel.add(Box.createVerticalStrut(15));
         panel.add(stackButton);
+        panel.add(Box.createVerticalStrut(10));
+        panel.add(watchButton);
 
         panel.add(Box.createVerticalStrut(30));
 
@@ -220,17 +287,50 @@ public class FitsStackerApp extends JFrame {
         progressBar.setPreferredSize(new Dimension(0, 25));
         panel.add(progressBar, BorderLayout.CENTER);
 
+        cancelButton.setEnabled(false);
+        panel.add(cancelButton, BorderLayout.EAST);
+
         return panel;
     }
 
     private void setupListeners() {
         addFilesButton.addActionListener(e -> addFiles());
+        cancelButton.addActionListener(e -> cancelTask());
         addFolderButton.addActionListener(e -> addFolder());
         removeButton.addActionListener(e -> removeSelected());
         clearButton.addActionListener(e -> clearAll());
         alignButton.addActionListener(e -> alignImages());
         saveAlignedButton.addActionListener(e -> saveAlignedImages());
         stackButton.addActionListener(e -> stackImages());
+        watchButton.addActionListener(e -> toggleWatch());
+        fileList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) previewSelected();
+        });
+        alignedViewBox.addActionListener(e -> previewSelected());
+    }
+
+    /**
+     * Affiche l'image sélectionnée dans la visionneuse : celle déjà chargée par l'alignement si
+     * possible, sinon relue depuis le fichier ; redressée si « Vue alignée » est cochée
+     */
+    private void previewSelected() {
+        FileItem item = fileList.getSelectedValue();
+        if (item == null) return;
+
+        FitsImage loaded = null;
+        for (FitsImage image : loadedImages) {
+            if (image.getPath().equals(item.path)) {
+                loaded = image;
+                break;
+            }
+        }
+        FitsImage source = loaded;
+        ImageAligner.CanvasInfo canvas = source != null ? source.getCanvasInfo() : null;
+        if (alignedViewBox.isSelected() && imagesAligned && canvas != null) {
+            viewer.display(item + " (alignée)", () -> alignedStore().get(source, canvas).toImage());
+        } else {
+            viewer.display(item.toString(), () -> source != null ? source : new FitsImage(item.path));
+        }
     }
 
     private void addFiles() {
@@ -283,8 +383,13 @@ public class FitsStackerApp extends JFrame {
     private void clearAll() {
         fileListModel.clear();
         loadedImages.clear();
+        alignmentSession.clear();
+        if (alignedStore != null) {
+            alignedStore.clear();
+        }
         imagesAligned = false;
         saveAlignedButton.setEnabled(false);
+        viewer.clear("Sélectionnez une image");
         log("Liste effacée");
     }
 
@@ -296,40 +401,57 @@ public class FitsStackerApp extends JFrame {
             return;
         }
 
-        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+        Task<Void> worker = new Task<>() {
             @Override
-            protected Void doInBackground() throws Exception {
+            protected Void work() throws Exception {
                 setButtonsEnabled(false);
                 log("=== Début de l'alignement ===");
+                StageMetrics.reset();
 
-                // Load images
-                loadedImages.clear();
+                // Synchroniser la session : seules les nouvelles images sont chargées et alignées
+                List<Path> paths = new ArrayList<>();
                 for (int i = 0; i < fileListModel.size(); i++) {
-                    FileItem item = fileListModel.get(i);
-                    updateStatus("Chargement de " + item.path.getFileName() + "...");
-                    try {
-                        FitsImage img = new FitsImage(item.path);
-                        loadedImages.add(img);
-                        log("✓ Chargé: " + item.path.getFileName() +
-                                " (" + img.getWidth() + "x" + img.getHeight() + ")");
-                    } catch (IllegalArgumentException e) {
-                        log("✗ ERREUR - " + item.path.getFileName() + ": " + e.getMessage());
+                    paths.add(fileListModel.get(i).path);
+                }
+
+                Map<Path, Exception> failures = alignmentSession.synchronize(paths, statusProgress());
+
+                for (Map.Entry<Path, Exception> failure : failures.entrySet()) {
+                    Path path = failure.getKey();
+                    Exception e = failure.getValue();
+                    if (e instanceof IllegalArgumentException) {
+                        log("✗ ERREUR - " + path.getFileName() + ": " + e.getMessage());
                         SwingUtilities.invokeLater(() -> {
                             JOptionPane.showMessageDialog(FitsStackerApp.this,
                                     "Erreur de chargement:\n" +
-                                            item.path.getFileName() + "\n\n" +
+                                            path.getFileName() + "\n\n" +
                                             e.getMessage() + "\n\n" +
                                             "Vérifiez que le fichier est un FITS valide.",
                                     "Erreur de format",
                                     JOptionPane.ERROR_MESSAGE);
                         });
-                    } catch (Exception e) {
-                        log("✗ ERREUR lors du chargement de " + item.path.getFileName() +
+                    } else {
+                        log("✗ ERREUR lors du chargement de " + path.getFileName() +
                                 ": " + e.getMessage());
                         e.printStackTrace();
                     }
                 }
 
+                loadedImages.clear();
+                loadedImages.addAll(alignmentSession.getAlignedImages());
+
+                if (loadedImages.isEmpty() && alignmentSession.getReferencePath() == null
+                        && !alignmentSession.getFrames().isEmpty()) {
+                    log("✗ Aucune image acceptable comme référence: toutes rejetées (qualité)");
+                    SwingUtilities.invokeLater(() -> {
+                        JOptionPane.showMessageDialog(FitsStackerApp.this,
+                                "Toutes les images ont été rejetées par le contrôle qualité.\n" +
+                                        "Aucune ne peut servir de référence d'alignement.",
+                                "Erreur",
+                                JOptionPane.ERROR_MESSAGE);
+                    });
+                    return null;
+                }
                 if (loadedImages.isEmpty()) {
                     log("✗ Aucune image n'a pu être chargée");
                     SwingUtilities.invokeLater(() -> {
@@ -342,29 +464,33 @@ public class FitsStackerApp extends JFrame {
                     return null;
                 }
 
-                log("Images chargées avec succès: " + loadedImages.size() + "/" + fileListModel.size());
+                log("Images prêtes: " + loadedImages.size() + "/" + fileListModel.size());
 
-                // Align
-                ImageAligner.alignImages(loadedImages, (progress, message) -> {
-                    SwingUtilities.invokeLater(() -> {
-                        progressBar.setValue(progress);
-                        updateStatus(message);
-                    });
-                });
+                // Les images alignées déjà sur disque restent valables si leur transformation n'a pas changé
+                ImageAligner.CanvasInfo canvas = loadedImages.get(0).getCanvasInfo();
+                if (alignedStore != null && canvas != null) {
+                    alignedStore.retainOnly(loadedImages, canvas);
+                }
 
                 imagesAligned = true;
                 log("✓ Alignement terminé avec succès");
+                log(StageMetrics.summary());
 
                 return null;
             }
 
             @Override
-            protected void done() {
-                setButtonsEnabled(true);
-                progressBar.setValue(0);
-                if (!loadedImages.isEmpty() && imagesAligned) {
+            protected void finished() {
+                String failure = taskFailure(this);
+                if (failure != null) {
+                    imagesAligned = false;
+                    log("✗ Alignement interrompu: " + failure);
+                    updateStatus("Alignement interrompu: " + failure);
+                    saveAlignedButton.setEnabled(false);
+                } else if (!loadedImages.isEmpty() && imagesAligned) {
                     updateStatus("Alignement terminé - Prêt pour l'empilement ou la sauvegarde");
                     saveAlignedButton.setEnabled(true);
+                    if (alignedViewBox.isSelected()) previewSelected();
                 } else {
                     updateStatus("Échec du chargement des images");
                     saveAlignedButton.setEnabled(false);
@@ -372,7 +498,7 @@ public class FitsStackerApp extends JFrame {
             }
         };
 
-        worker.execute();
+        startTask(worker);
     }
 
     private void saveAlignedImages() {
@@ -393,9 +519,9 @@ public class FitsStackerApp extends JFrame {
 
         Path outputDir = chooser.getSelectedFile().toPath();
 
-        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+        Task<Void> worker = new Task<>() {
             @Override
-            protected Void doInBackground() throws Exception {
+            protected Void work() throws Exception {
                 setButtonsEnabled(false);
                 log("=== Sauvegarde des images alignées ===");
                 log("Dossier: " + outputDir);
@@ -418,12 +544,15 @@ public class FitsStackerApp extends JFrame {
                             canvasInfo.width, canvasInfo.height));
                     writer.write(String.format("Offset global: dx=%d, dy=%d\n\n",
                             canvasInfo.offsetX, canvasInfo.offsetY));
-                    writer.write("Image de référence: " + loadedImages.get(0).getFileName() + "\n\n");
+                    FitsImage reference = alignmentSession.getReferenceImage();
+                    writer.write("Image de référence: " +
+                            (reference != null ? reference : loadedImages.get(0)).getFileName() + "\n\n");
                     writer.write("Détails par image:\n");
                     writer.write("================\n\n");
 
                     // Sauvegarder chaque image alignée
                     for (int i = 0; i < loadedImages.size(); i++) {
+                        StackingEngine.checkCancelled();
                         FitsImage img = loadedImages.get(i);
                         ImageAligner.AffineTransform transform = img.getTransform();
 
@@ -452,13 +581,8 @@ public class FitsStackerApp extends JFrame {
 
                         Path outputPath = outputDir.resolve(alignedFilename);
 
-                        // Créer l'image alignée
-                        FitsImage aligned = img.createAlignedCopy(
-                                canvasInfo.width,
-                                canvasInfo.height,
-                                canvasInfo.offsetX,
-                                canvasInfo.offsetY
-                        );
+                        // Image alignée : relue depuis la réserve, redressée seulement si absente
+                        FitsImage aligned = alignedStore().get(img, canvasInfo).toImage();
 
                         // Sauvegarder
                         aligned.saveFits(outputPath);
@@ -490,9 +614,13 @@ public class FitsStackerApp extends JFrame {
             }
 
             @Override
-            protected void done() {
-                setButtonsEnabled(true);
-                progressBar.setValue(0);
+            protected void finished() {
+                String failure = taskFailure(this);
+                if (failure != null) {
+                    log("✗ Sauvegarde interrompue: " + failure);
+                    updateStatus("Sauvegarde interrompue: " + failure);
+                    return;
+                }
                 updateStatus("Images alignées sauvegardées avec succès!");
                 JOptionPane.showMessageDialog(FitsStackerApp.this,
                         "Images alignées sauvegardées avec succès!\n\n" +
@@ -501,7 +629,7 @@ public class FitsStackerApp extends JFrame {
             }
         };
 
-        worker.execute();
+        startTask(worker);
     }
 
     private void stackImages() {
@@ -532,46 +660,273 @@ public class FitsStackerApp extends JFrame {
         Path outputPath = chooser.getSelectedFile().toPath();
         StackingEngine.StackingMethod method =
                 (StackingEngine.StackingMethod) methodCombo.getSelectedItem();
+        boolean followStack = stackPreviewBox.isSelected();
 
-        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+        Task<FitsImage> worker = new Task<>() {
             @Override
-            protected Void doInBackground() throws Exception {
+            protected FitsImage work() throws Exception {
                 setButtonsEnabled(false);
                 log("=== Début de l'empilement ===");
                 log("Méthode: " + method.getDisplayName());
                 log("Nombre d'images: " + loadedImages.size());
-
-                FitsImage result = StackingEngine.stackImages(loadedImages, method,
-                        (progress, message) -> {
-                            SwingUtilities.invokeLater(() -> {
-                                progressBar.setValue(progress);
-                                updateStatus(message);
-                            });
-                        });
+                StageMetrics.reset();
+
+                FitsImage result;
+                StackPreview.setListener(followStack ? preview -> showStackPreview(preview, this) : null);
+                try {
+                    result = StackingEngine.stackImages(loadedImages, method, alignedStore(), statusProgress());
+                } finally {
+                    StackPreview.setListener(null);
+                }
 
                 updateStatus("Enregistrement du résultat...");
                 result.saveFits(outputPath);
 
                 log("Image empilée enregistrée: " + outputPath.getFileName());
                 log("=== Empilement terminé ===");
+                log(StageMetrics.summary());
+                StageMetrics.report(FitsStackerCli.metricsFileFor(outputPath));
 
-                return null;
+                return result;
             }
 
             @Override
-            protected void done() {
-                setButtonsEnabled(true);
-                progressBar.setValue(0);
+            protected void finished() {
+                String failure = taskFailure(this);
+                if (failure != null) {
+                    // Les bandes terminées restent dans le point de reprise : relancer reprend où l'on s'est arrêté
+                    log("✗ Empilement interrompu: " + failure);
+                    updateStatus("Empilement interrompu: " + failure);
+                    return;
+                }
                 updateStatus("Empilement terminé avec succès!");
+                viewer.display(outputPath.getFileName().toString(), this::get);
                 JOptionPane.showMessageDialog(FitsStackerApp.this,
                         "Image empilée créée avec succès!",
                         "Succès", JOptionPane.INFORMATION_MESSAGE);
             }
         };
 
+        startTask(worker);
+    }
+
+    /**
+     * Aperçu publié pendant l'empilement : repris sur l'EDT tant que la tâche est en cours
+     */
+    private void showStackPreview(StackPreview preview, SwingWorker<?, ?> task) {
+        SwingUtilities.invokeLater(() -> {
+            if (currentTask != task) return;
+            StackPreview.Frame frame = preview.take();
+            if (frame != null) {
+                viewer.setContent("Empilement en cours (" + frame.getStatus() + ")",
+                        frame.getPyramid(), frame.getStretch());
+            }
+        });
+    }
+
+    /**
+     * Empilement en direct : démarre ou arrête la surveillance d'un dossier d'acquisition
+     */
+    private void toggleWatch() {
+        if (folderWatcher != null) {
+            stopWatch();
+            return;
+        }
+
+        StackingEngine.StackingMethod method = (StackingEngine.StackingMethod) methodCombo.getSelectedItem();
+        if (!LiveAccumulator.supports(method)) {
+            log("Méthode " + method.getDisplayName() + " non disponible en direct, utilisation de la moyenne");
+            method = StackingEngine.StackingMethod.AVERAGE;
+        }
+
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle("Dossier d'acquisition à surveiller");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path dir = chooser.getSelectedFile().toPath();
+
+        liveSession = new LiveStackSession(method);
+        folderWatcher = new FolderWatcher(dir, liveSession, new FolderWatcher.Listener() {
+            @Override
+            public void onFrame(Path file, ImageAligner.AlignmentResult result, FolderWatcher.Stats stats) {
+                log((result.accepted && result.inliers >= 3 ? "✓ " : "✗ ") + file.getFileName());
+                SwingUtilities.invokeLater(() -> updateStatus("Direct: " + stats.describe()));
+            }
+
+            @Override
+            public void onError(Path file, Exception error, FolderWatcher.Stats stats) {
+                log("✗ ERREUR - " + file.getFileName() + ": " + error.getMessage());
+            }
+
+            @Override
+            public void onReport(FolderWatcher.Stats stats) {
+                log("Direct: " + stats.describe());
+            }
+        });
+        try {
+            folderWatcher.start(true);
+        } catch (IOException e) {
+            folderWatcher = null;
+            JOptionPane.showMessageDialog(this, "Impossible de surveiller le dossier:\n" + e.getMessage(),
+                    "Erreur", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        log("=== Empilement en direct: " + dir + " (" + method.getDisplayName() + ") ===");
+        watchButton.setText("Arrêter la Surveillance");
+        setButtonsEnabled(false);
+        watchButton.setEnabled(true);
+    }
+
+    private void stopWatch() {
+        FolderWatcher watcher = folderWatcher;
+        LiveStackSession session = liveSession;
+        folderWatcher = null;
+        watchButton.setEnabled(false);
+        updateStatus("Arrêt de la surveillance...");
+
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                watcher.stop();
+                log("Surveillance arrêtée: " + watcher.getStats().describe());
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                watchButton.setText("Surveiller Dossier");
+                setButtonsEnabled(true);
+                updateStatus("Prêt");
+                if (session.getFrameCount() > 0) {
+                    saveLiveResult(session);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void saveLiveResult(LiveStackSession session) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Enregistrer l'empilement en direct");
+        chooser.setSelectedFile(new File("live_stack.fits"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            session.currentResult().saveFits(chooser.getSelectedFile().toPath());
+            log("Empilement en direct enregistré: " + chooser.getSelectedFile().getName() +
+                    " (" + session.getFrameCount() + " images)");
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(this, "Erreur d'enregistrement:\n" + e.getMessage(),
+                    "Erreur", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Réserve des images alignées, créée au premier besoin et supprimée à la fermeture
+     */
+    private synchronized AlignedFrameStore alignedStore() throws IOException {
+        if (alignedStore == null) {
+            AlignedFrameStore store = AlignedFrameStore.temporary();
+            Runtime.getRuntime().addShutdownHook(new Thread(store::close));
+            alignedStore = store;
+        }
+        return alignedStore;
+    }
+
+    /**
+     * Tâche de fond annulable. Sa fin ({@link #finished}) est traitée sur l'EDT seulement quand
+     * done() a été appelé et que le corps est sorti : cancel(true) appelle done() tout de suite,
+     * alors que le corps tourne encore jusqu'à sa prochaine vérification d'interruption, et
+     * l'interface ne doit pas être rendue avant.
+     */
+    private abstract class Task<T> extends SwingWorker<T, Void> {
+        private final AtomicBoolean started = new AtomicBoolean();
+        // done() et la sortie du corps : le dernier des deux termine la tâche
+        private final AtomicInteger remaining = new AtomicInteger(2);
+
+        protected abstract T work() throws Exception;
+
+        protected abstract void finished();
+
+        @Override
+        protected final T doInBackground() throws Exception {
+            // Annulée avant de démarrer : done() a déjà terminé la tâche
+            if (!started.compareAndSet(false, true)) return null;
+            try {
+                return work();
+            } finally {
+                if (remaining.decrementAndGet() == 0) {
+                    SwingUtilities.invokeLater(this::complete);
+                }
+            }
+        }
+
+        @Override
+        protected final void done() {
+            if (started.compareAndSet(false, true) || remaining.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            finishTask();
+            finished();
+        }
+    }
+
+    /**
+     * Lance une tâche de fond annulable par le bouton « Annuler »
+     */
+    private void startTask(SwingWorker<?, ?> worker) {
+        currentTask = worker;
+        cancelButton.setEnabled(true);
         worker.execute();
     }
 
+    /**
+     * Annulation : interrompt le thread de la tâche, les boucles de calcul s'arrêtent à la ligne ou l'image suivante
+     */
+    private void cancelTask() {
+        if (currentTask != null && currentTask.cancel(true)) {
+            cancelButton.setEnabled(false);
+            updateStatus("Annulation...");
+            log("Annulation demandée");
+        }
+    }
+
+    private void finishTask() {
+        currentTask = null;
+        cancelButton.setEnabled(false);
+        setButtonsEnabled(true);
+        progressBar.setValue(0);
+    }
+
+    /**
+     * Issue d'une tâche de fond terminée : null si elle a abouti, sinon la raison de l'échec
+     */
+    private static String taskFailure(SwingWorker<?, ?> worker) {
+        if (worker.isCancelled()) {
+            return "annulé";
+        }
+        try {
+            worker.get();
+            return null;
+        } catch (InterruptedException | CancellationException e) {
+            return "annulé";
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CancellationException || cause instanceof InterruptedException) {
+                return "annulé";
+            }
+            cause.printStackTrace();
+            return String.valueOf(cause.getMessage());
+        }
+    }
+
     private void setButtonsEnabled(boolean enabled) {
         addFilesButton.setEnabled(enabled);
         addFolderButton.setEnabled(enabled);
@@ -580,9 +935,27 @@ public class FitsStackerApp extends JFrame {
         alignButton.setEnabled(enabled);
         saveAlignedButton.setEnabled(enabled && imagesAligned);
         stackButton.setEnabled(enabled);
+        watchButton.setEnabled(enabled);
         methodCombo.setEnabled(enabled);
     }
 
+    /**
+     * Progression vers la barre d'état : au plus une mise à jour en attente sur l'EDT, la plus
+     * récente ; les appels intermédiaires sont fusionnés au lieu d'empiler des invokeLater
+     */
+    private ImageAligner.ProgressCallback statusProgress() {
+        AtomicReference<StatusUpdate> latest = new AtomicReference<>();
+        return (progress, message) -> {
+            if (latest.getAndSet(new StatusUpdate(progress, message)) == null) {
+                SwingUtilities.invokeLater(() -> {
+                    StatusUpdate update = latest.getAndSet(null);
+                    progressBar.setValue(update.percent);
+                    updateStatus(update.message);
+                });
+            }
+        };
+    }
+
     private void updateStatus(String message) {
         statusLabel.setText(message);
     }
@@ -594,6 +967,16 @@ public class FitsStackerApp extends JFrame {
         });
     }
 
+    private static class StatusUpdate {
+        final int percent;
+        final String message;
+
+        StatusUpdate(int percent, String message) {
+            this.percent = percent;
+            this.message = message;
+        }
+    }
+
     private static class FileItem {
         final Path path;
 
@@ -608,6 +991,14 @@ public class FitsStackerApp extends JFrame {
     }
 
     private static class FileItemRenderer extends DefaultListCellRenderer {
+        private final ThumbnailCache thumbnails;
+        private final ThumbnailIcon icon = new ThumbnailIcon();
+
+        FileItemRenderer(ThumbnailCache thumbnails) {
+            this.thumbnails = thumbnails;
+            setIconTextGap(10);
+        }
+
         @Override
         public Component getListCellRendererComponent(JList<?> list, Object value,
                                                       int index, boolean isSelected, boolean cellHasFocus) {
@@ -615,13 +1006,45 @@ public class FitsStackerApp extends JFrame {
 
             if (value instanceof FileItem item) {
                 setText((index + 1) + ". " + item.path.getFileName());
-                setIcon(UIManager.getIcon("FileView.fileIcon"));
+                // Vignette en mémoire, sinon cadre vide en attendant qu'elle soit prête
+                icon.image = thumbnails.get(item.path);
+                setIcon(icon);
             }
 
             return this;
         }
     }
 
+    /**
+     * Vignette centrée dans un carré de taille fixe, pour aligner les noms
+     */
+    private static class ThumbnailIcon implements Icon {
+        Image image;
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            int size = Config.THUMBNAIL_SIZE;
+            if (image == null) {
+                g.setColor(Config.Colors.BORDER_COLOR);
+                g.drawRect(x, y, size - 1, size - 1);
+                return;
+            }
+            int width = image.getWidth(null);
+            int height = image.getHeight(null);
+            g.drawImage(image, x + (size - width) / 2, y + (size - height) / 2, null);
+        }
+
+        @Override
+        public int getIconWidth() {
+            return Config.THUMBNAIL_SIZE;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return Config.THUMBNAIL_SIZE;
+        }
+    }
+
     public static void main(String[] args) {
         try {
             FlatDarkLaf.setup();
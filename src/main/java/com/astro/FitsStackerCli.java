@@ -0,0 +1,389 @@
+package com.astro;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Point d'entrée en ligne de commande, sans Swing ni FlatLaf : aligne et empile un lot
+ * d'images depuis un script ou une tâche cron.
+ *
+ * <pre>
+ * java -cp fits-stacker.jar com.astro.FitsStackerCli --input "nuit1/*.fits" --method MEDIAN \
+ *      --output nuit1_median.fits [--save-aligned dossier] [--threads 8] [--memory 4g]
+ * </pre>
+ */
+public class FitsStackerCli {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+
+    /**
+     * Options d'un travail d'empilement
+     */
+    public static class Options {
+        public final List<String> inputs = new ArrayList<>();
+        public StackingEngine.StackingMethod method = StackingEngine.StackingMethod.AVERAGE;
+        public Path output;
+        public Path saveAlignedDir;
+        public int threads = 0; // 0 = nombre de cœurs
+        public long memoryBudget = 0; // 0 = tas disponible
+        public boolean quiet = false;
+        public int listenPort = -1;   // >= 0 : empilement distribué, attente des workers sur ce port
+        public int localWorkers = 0;  // workers lancés sur cette machine (empilement distribué)
+        public int tileRows = Config.DISTRIBUTED_TILE_ROWS;
+        public Path metricsFile;      // null : <sortie>_mesures.json
+
+        public boolean isDistributed() {
+            return listenPort >= 0 || localWorkers > 0;
+        }
+
+        /**
+         * Lit les arguments ; lève IllegalArgumentException avec un message lisible
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-i", "--input" -> options.inputs.add(value(args, ++i, arg));
+                    case "-m", "--method" -> options.method = parseMethod(value(args, ++i, arg));
+                    case "-o", "--output" -> options.output = Paths.get(value(args, ++i, arg));
+                    case "-a", "--save-aligned" -> options.saveAlignedDir = Paths.get(value(args, ++i, arg));
+                    case "-t", "--threads" -> options.threads = Math.max(1, parseInt(value(args, ++i, arg), arg));
+                    case "--memory" -> options.memoryBudget = parseSize(value(args, ++i, arg));
+                    case "-q", "--quiet" -> options.quiet = true;
+                    case "--listen" -> options.listenPort = parseInt(value(args, ++i, arg), arg);
+                    case "--workers" -> options.localWorkers = Math.max(0, parseInt(value(args, ++i, arg), arg));
+                    case "--tile-rows" -> options.tileRows = Math.max(1, parseInt(value(args, ++i, arg), arg));
+                    case "--metrics" -> options.metricsFile = Paths.get(value(args, ++i, arg));
+                    default -> {
+                        if (arg.startsWith("-")) {
+                            throw new IllegalArgumentException("Option inconnue: " + arg);
+                        }
+                        options.inputs.add(arg);
+                    }
+                }
+            }
+            if (options.inputs.isEmpty()) {
+                throw new IllegalArgumentException("Aucune entrée (--input)");
+            }
+            if (options.output == null) {
+                throw new IllegalArgumentException("Aucun fichier de sortie (--output)");
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException("Valeur manquante pour " + option);
+            }
+            return args[i];
+        }
+
+        private static int parseInt(String text, String option) {
+            try {
+                return Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Nombre invalide pour " + option + ": " + text);
+            }
+        }
+
+        static StackingEngine.StackingMethod parseMethod(String text) {
+            try {
+                return StackingEngine.StackingMethod.valueOf(text.toUpperCase(Locale.ROOT).replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Méthode inconnue: " + text + " (" +
+                        java.util.Arrays.toString(StackingEngine.StackingMethod.values()) + ")");
+            }
+        }
+
+        /**
+         * Taille mémoire : "4096" (Mo), "512m", "4g"
+         */
+        static long parseSize(String text) {
+            String t = text.trim().toLowerCase(Locale.ROOT);
+            long unit = 1L << 20;
+            if (t.endsWith("g") || t.endsWith("gb")) {
+                unit = 1L << 30;
+                t = t.replaceAll("g?b?$", "");
+            } else if (t.endsWith("m") || t.endsWith("mb")) {
+                t = t.replaceAll("m?b?$", "");
+            }
+            try {
+                return (long) (Double.parseDouble(t) * unit);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Taille mémoire invalide: " + text);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || List.of(args).contains("-h") || List.of(args).contains("--help")) {
+            printUsage();
+            System.exit(args.length == 0 ? EXIT_USAGE : EXIT_OK);
+        }
+
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erreur: " + e.getMessage());
+            printUsage();
+            System.exit(EXIT_USAGE);
+            return;
+        }
+
+        try {
+            run(options);
+            System.exit(EXIT_OK);
+        } catch (Exception e) {
+            System.err.println("ÉCHEC: " + e.getMessage());
+            System.exit(EXIT_FAILURE);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("""
+            Usage: FitsStackerCli --input <motif> [--input <motif>...] --output <fichier.fits> [options]
+              -i, --input <motif>        fichiers ou motif glob (ex: "nuit1/*.fits", "lights/**/*.fit")
+              -m, --method <méthode>     AVERAGE, MEDIAN, SIGMA_CLIP, MAXIMUM, MINIMUM, WEIGHTED_AVERAGE
+              -o, --output <fichier>     image empilée
+              -a, --save-aligned <dir>   écrire aussi les images alignées
+              -t, --threads <n>          threads de calcul du pipeline (défaut: nombre de cœurs)
+                  --memory <taille>      budget mémoire (ex: 4096, 512m, 4g ; défaut: tas disponible)
+              -q, --quiet                pas de progression
+                  --listen <port>        empilement distribué : attendre les TileWorker sur ce port
+                  --workers <n>          empilement distribué avec n workers lancés sur cette machine
+                  --tile-rows <n>        hauteur des tuiles distribuées (défaut: %d)
+                  --metrics <fichier>    mesures par étape en JSON (défaut: <sortie>_mesures.json)
+            """.formatted(Config.DISTRIBUTED_TILE_ROWS));
+    }
+
+    /**
+     * Images alignées d'un travail, prêtes à empiler. Les pixels ont été relâchés : seuls les
+     * chemins, les transformations et la géométrie sont gardés.
+     */
+    public static class AlignedJob {
+        public final List<StackingPipeline.FrameJob> frames;
+        public final List<MemoryPlanner.FrameInfo> infos;
+        public final double[] weights;
+        public final ImageAligner.CanvasInfo canvas;
+        public final boolean isColor;
+        public final int fileCount;
+        public final int failedCount;
+        public final Path reference;  // image de référence de l'alignement
+
+        AlignedJob(List<StackingPipeline.FrameJob> frames, List<MemoryPlanner.FrameInfo> infos, double[] weights,
+                   ImageAligner.CanvasInfo canvas, boolean isColor, int fileCount, int failedCount, Path reference) {
+            this.frames = frames;
+            this.infos = infos;
+            this.weights = weights;
+            this.canvas = canvas;
+            this.isColor = isColor;
+            this.fileCount = fileCount;
+            this.failedCount = failedCount;
+            this.reference = reference;
+        }
+
+        public int getRejectedCount() {
+            return fileCount - failedCount - frames.size();
+        }
+    }
+
+    /**
+     * Exécute un travail complet : alignement, empilement, sauvegardes
+     */
+    public static void run(Options options) throws Exception {
+        long start = System.nanoTime();
+        StageMetrics.reset();
+        ImageAligner.ProgressCallback progress = options.quiet ? null : new ConsoleProgress();
+        AlignedJob aligned = align(expandInputs(options.inputs), options, progress);
+
+        long budget = MemoryPlanner.availableHeap();
+        if (options.memoryBudget > 0) {
+            if (options.memoryBudget > budget) {
+                System.out.println("Budget mémoire " + (options.memoryBudget >> 20) + " Mo > tas disponible " +
+                        (budget >> 20) + " Mo (augmenter -Xmx)");
+            }
+            budget = Math.min(budget, options.memoryBudget);
+        }
+        MemoryPlanner.Plan plan = plan(aligned, options.method, budget);
+        int threads = options.threads > 0 ? options.threads : Runtime.getRuntime().availableProcessors();
+        stack(aligned, options, plan, threads, progress);
+        System.out.println(String.format(Locale.ROOT, "✓ %s (%d images) en %.1f s", options.output,
+                aligned.frames.size(), (System.nanoTime() - start) / 1e9));
+        StageMetrics.report(options.metricsFile != null ? options.metricsFile : metricsFileFor(options.output));
+    }
+
+    /**
+     * Fichier de mesures par défaut, à côté de l'image produite
+     */
+    static Path metricsFileFor(Path output) {
+        String name = output.getFileName().toString().replaceFirst("[.][^.]+$", "");
+        return output.toAbsolutePath().resolveSibling(name + "_mesures.json");
+    }
+
+    /**
+     * Charge et aligne les fichiers ; échoue si aucune image n'est retenue
+     */
+    public static AlignedJob align(List<Path> files, Options options, ImageAligner.ProgressCallback progress)
+            throws Exception {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Aucun fichier FITS ne correspond à " + options.inputs);
+        }
+        System.out.println("Fichiers: " + files.size() + ", méthode: " + options.method.getDisplayName());
+
+        // Session sans pixels : une seule image en mémoire pendant la détection et la mesure
+        AlignmentSession session = AlignmentSession.withoutPixels();
+        Map<Path, Exception> failures = session.synchronize(files, progress);
+        for (Map.Entry<Path, Exception> failure : failures.entrySet()) {
+            System.err.println("✗ " + failure.getKey().getFileName() + ": " + failure.getValue().getMessage());
+        }
+        List<AlignmentSession.Frame> accepted = new ArrayList<>();
+        for (AlignmentSession.Frame frame : session.getFrames()) {
+            if (frame.isAccepted()) accepted.add(frame);
+        }
+        if (accepted.isEmpty()) {
+            throw new IllegalStateException(session.getReferencePath() == null && !session.getFrames().isEmpty()
+                    ? "Aucune image acceptable comme référence: toutes rejetées (qualité)"
+                    : "Aucune image alignée");
+        }
+        ImageAligner.CanvasInfo canvas = session.getCanvasInfo();
+        if (canvas == null) {
+            MemoryPlanner.FrameInfo first = accepted.get(0).getInfo();
+            canvas = new ImageAligner.CanvasInfo(first.width, first.height, 0, 0);
+        }
+        boolean isColor = accepted.get(0).getInfo().isColor;
+
+        // Les sources ont été relâchées après détection : l'empilement les relit selon le plan mémoire
+        List<StackingPipeline.FrameJob> jobs = new ArrayList<>();
+        List<MemoryPlanner.FrameInfo> infos = new ArrayList<>();
+        double[] weights = new double[accepted.size()];
+        for (AlignmentSession.Frame frame : accepted) {
+            weights[jobs.size()] = FitsImage.stackWeight(frame.getNoiseSigma());
+            jobs.add(StackingPipeline.FrameJob.of(jobs.size(), frame.getPath(), frame.getTransform(),
+                    frame.getNoiseSigma()));
+            infos.add(frame.getInfo());
+        }
+        FitsImage.fillUnknownWeights(weights);
+        Path reference = session.getReferencePath();
+        session.clear();
+        return new AlignedJob(jobs, infos, weights, canvas, isColor, files.size(), failures.size(), reference);
+    }
+
+    public static MemoryPlanner.Plan plan(AlignedJob aligned, StackingEngine.StackingMethod method, long budget) {
+        return MemoryPlanner.plan(aligned.infos, aligned.canvas, method, false, budget);
+    }
+
+    /**
+     * Empile selon le plan et écrit le résultat (et les images alignées si demandé)
+     */
+    public static void stack(AlignedJob aligned, Options options, MemoryPlanner.Plan plan, int threads,
+                             ImageAligner.ProgressCallback progress) throws Exception {
+        if (options.saveAlignedDir != null) {
+            saveAligned(aligned.frames, aligned.canvas, options.saveAlignedDir);
+        }
+
+        FitsImage result = options.isDistributed()
+                ? new TileCoordinator(aligned, options.method, options.tileRows)
+                        .run(Math.max(0, options.listenPort), options.localWorkers, progress)
+                : StackingEngine.stackFrames(aligned.frames, aligned.canvas, aligned.isColor,
+                        aligned.frames.get(0).path, options.method, plan,
+                        StackingPipeline.Settings.forThreads(threads), progress);
+
+        Path parent = options.output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        result.saveFits(options.output);
+    }
+
+    private static void saveAligned(List<StackingPipeline.FrameJob> jobs, ImageAligner.CanvasInfo canvas,
+                                    Path dir) throws Exception {
+        Files.createDirectories(dir);
+        for (int i = 0; i < jobs.size(); i++) {
+            StackingPipeline.FrameJob job = jobs.get(i);
+            FitsImage image = new FitsImage(job.path);
+            image.setTransform(job.transform);
+            String name = job.path.getFileName().toString().replaceFirst("[.][^.]+$", "");
+            Path out = dir.resolve(String.format("aligned_%03d_%s.fits", i + 1, name));
+            image.createAlignedCopy(canvas.width, canvas.height, canvas.offsetX, canvas.offsetY).saveFits(out);
+            System.out.println("✓ Alignée: " + out.getFileName());
+        }
+    }
+
+    /**
+     * Développe les entrées : fichiers, dossiers (tous leurs FITS) ou motifs glob, triés sans doublon
+     */
+    static List<Path> expandInputs(List<String> inputs) throws IOException {
+        TreeSet<Path> files = new TreeSet<>();
+        for (String input : inputs) {
+            int wildcard = firstWildcard(input);
+            if (wildcard < 0) {
+                Path path = Paths.get(input);
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> list = Files.list(path)) {
+                        list.filter(FolderWatcher::isFits).forEach(p -> files.add(p.toAbsolutePath().normalize()));
+                    }
+                } else if (Files.isRegularFile(path)) {
+                    files.add(path.toAbsolutePath().normalize());
+                } else {
+                    System.err.println("Introuvable: " + input);
+                }
+                continue;
+            }
+
+            // Dossier de base : partie du motif avant le premier caractère générique
+            String prefix = input.substring(0, wildcard);
+            int slash = Math.max(prefix.lastIndexOf('/'), prefix.lastIndexOf(java.io.File.separatorChar));
+            Path base = slash >= 0 ? Paths.get(input.substring(0, slash + 1)) : Paths.get(".");
+            String pattern = slash >= 0 ? input.substring(slash + 1) : input;
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("/").length;
+
+            if (!Files.isDirectory(base)) continue;
+            try (Stream<Path> walk = Files.walk(base, depth)) {
+                walk.filter(Files::isRegularFile)
+                    .filter(p -> matcher.matches(base.relativize(p)))
+                    .forEach(p -> files.add(p.toAbsolutePath().normalize()));
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static int firstWildcard(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Progression sur la console, une ligne tous les 5 %
+     */
+    static class ConsoleProgress implements ImageAligner.ProgressCallback {
+        private int lastPercent = -5;
+        private String lastPhase = "";
+
+        @Override
+        public synchronized void onProgress(int percent, String message) {
+            String phase = message.replaceAll("[0-9/%:.]+", "").trim();
+            if (percent >= lastPercent + 5 || percent < lastPercent || !phase.equals(lastPhase)) {
+                System.err.println(String.format("[%3d%%] %s", percent, message));
+                lastPercent = percent;
+                lastPhase = phase;
+            }
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package com.astro;
+
+import nom.tam.fits.Header;
+import nom.tam.util.FitsFile;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Surveillance d'un dossier d'acquisition pour l'empilement en direct.
+ * Les nouveaux fichiers FITS sont repérés par {@link WatchService}, puis retenus tant que leur
+ * taille ou leur date de modification change encore : le logiciel d'acquisition peut être en
+ * train de les écrire. Une fois stables, ils passent par un pipeline en tâche de fond
+ * (chargement, puis détection, alignement et cumul dans une {@link LiveStackSession}).
+ * Débit et profondeur des files sont rapportés régulièrement.
+ */
+public class FolderWatcher implements AutoCloseable {
+    private static final Object STOP = new Object();
+
+    /**
+     * Notifications de la surveillance (appelées depuis les threads de travail)
+     */
+    public interface Listener {
+        void onFrame(Path file, ImageAligner.AlignmentResult result, Stats stats);
+
+        default void onError(Path file, Exception error, Stats stats) {
+        }
+
+        default void onReport(Stats stats) {
+        }
+    }
+
+    /**
+     * Instantané des compteurs de la surveillance
+     */
+    public static class Stats {
+        public final int stacked;
+        public final int rejected;
+        public final int failed;
+        public final int waiting;      // fichiers en cours d'écriture
+        public final int queued;       // fichiers stables en attente de traitement
+        public final double framesPerMinute;
+        public final double averageSeconds;
+
+        Stats(int stacked, int rejected, int failed, int waiting, int queued,
+              double framesPerMinute, double averageSeconds) {
+            this.stacked = stacked;
+            this.rejected = rejected;
+            this.failed = failed;
+            this.waiting = waiting;
+            this.queued = queued;
+            this.framesPerMinute = framesPerMinute;
+            this.averageSeconds = averageSeconds;
+        }
+
+        public String describe() {
+            return String.format(Locale.ROOT,
+                    "%d empilée(s), %d écartée(s), %d erreur(s) - %.1f images/min, %.2f s/image - file: %d, en écriture: %d",
+                    stacked, rejected, failed, framesPerMinute, averageSeconds, queued, waiting);
+        }
+    }
+
+    /**
+     * Fichier en attente de stabilité
+     */
+    private static class Candidate {
+        long size = -1;
+        long modified = -1;
+        long changedAt;
+    }
+
+    /**
+     * Image en cours de traitement
+     */
+    private static class Frame {
+        final Path path;
+        final long discoveredAt;
+        FitsImage image;
+
+        Frame(Path path, long discoveredAt) {
+            this.path = path;
+            this.discoveredAt = discoveredAt;
+        }
+    }
+
+    private final Path directory;
+    private final LiveStackSession session;
+    private final Listener listener;
+    private final int loadWorkers;
+    private final int stackWorkers;
+    private final Map<Path, Candidate> candidates = new LinkedHashMap<>();
+    private final BlockingQueue<Object> ready = new LinkedBlockingQueue<>();
+    private final AtomicInteger stacked = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong processingNanos = new AtomicLong();
+    private final List<Thread> threads = new ArrayList<>();
+    private final Set<Path> ignored = ConcurrentHashMap.newKeySet();
+    private FramePipeline<Frame> pipeline;
+    private WatchService watchService;
+    private volatile boolean running;
+    private long startedAt;
+
+    public FolderWatcher(Path directory, LiveStackSession session, Listener listener) {
+        this(directory, session, listener, Config.PIPELINE_IO_WORKERS,
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public FolderWatcher(Path directory, LiveStackSession session, Listener listener,
+                         int loadWorkers, int stackWorkers) {
+        this.directory = directory;
+        this.session = session;
+        this.listener = listener;
+        this.loadWorkers = loadWorkers;
+        this.stackWorkers = stackWorkers;
+    }
+
+    /**
+     * Démarre la surveillance. Les fichiers FITS déjà présents sont traités d'abord si demandé.
+     */
+    public synchronized void start(boolean includeExisting) throws IOException {
+        if (running) return;
+        running = true;
+        startedAt = System.nanoTime();
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        if (includeExisting) {
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(FolderWatcher::isFits).sorted().forEach(this::offer);
+            }
+        }
+
+        pipeline = new FramePipeline<Frame>("surveillance", Config.PIPELINE_QUEUE_DEPTH)
+                .stage("chargement", loadWorkers, frame -> {
+                    try {
+                        frame.image = new FitsImage(frame.path);
+                        return frame;
+                    } catch (Exception e) {
+                        // Un fichier illisible ne doit pas arrêter la surveillance
+                        fail(frame, e);
+                        return null;
+                    }
+                })
+                .stage("empilement", stackWorkers, this::stack);
+
+        threads.add(new Thread(this::watchLoop, "surveillance-événements"));
+        threads.add(new Thread(this::stabilityLoop, "surveillance-stabilité"));
+        threads.add(new Thread(() -> {
+            try {
+                pipeline.run(this::readyFrames);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("ERREUR surveillance: " + e.getMessage());
+            }
+        }, "surveillance-pipeline"));
+        threads.add(new Thread(this::reportLoop, "surveillance-rapport"));
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        System.out.println("Surveillance de " + directory + " (" + loadWorkers + " chargement, " +
+                stackWorkers + " empilement)");
+    }
+
+    /**
+     * Arrête la surveillance ; les images déjà stables sont terminées avant le retour
+     */
+    public void stop() throws InterruptedException {
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Déjà fermé
+            }
+        }
+        ready.put(STOP);
+        for (Thread thread : threads) {
+            if (!thread.getName().endsWith("pipeline")) {
+                thread.interrupt();
+            }
+            thread.join();
+        }
+        threads.clear();
+        System.out.println("Surveillance arrêtée: " + getStats().describe());
+    }
+
+    @Override
+    public void close() {
+        try {
+            stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fichier du dossier à ne jamais empiler (par exemple le résultat écrit dans le dossier surveillé)
+     */
+    public void ignore(Path path) {
+        ignored.add(path.toAbsolutePath());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Stats getStats() {
+        int done = stacked.get() + rejected.get() + failed.get();
+        double minutes = (System.nanoTime() - startedAt) / 60e9;
+        int waiting;
+        synchronized (candidates) {
+            waiting = candidates.size();
+        }
+        int queued = ready.size();
+        if (pipeline != null) {
+            for (int i = 0; i < pipeline.getStageCount(); i++) {
+                queued += pipeline.getQueueSize(i);
+            }
+        }
+        return new Stats(stacked.get(), rejected.get(), failed.get(), waiting, queued,
+                minutes > 0 ? stacked.get() / minutes : 0,
+                done > 0 ? processingNanos.get() / 1e9 / done : 0);
+    }
+
+    static boolean isFits(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".fits") || name.endsWith(".fit") || name.endsWith(".fts");
+    }
+
+    private void offer(Path path) {
+        synchronized (candidates) {
+            candidates.computeIfAbsent(path, p -> new Candidate());
+        }
+    }
+
+    private void watchLoop() {
+        try {
+            while (running) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Événements perdus : relister le dossier
+                        try (Stream<Path> files = Files.list(directory)) {
+                            files.filter(FolderWatcher::isFits).forEach(this::offer);
+                        }
+                        continue;
+                    }
+                    Path file = directory.resolve((Path) event.context());
+                    if (isFits(file)) {
+                        offer(file);
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Arrêt demandé
+        } catch (IOException e) {
+            System.err.println("ERREUR surveillance du dossier: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Un fichier est prêt quand ni sa taille ni sa date de modification n'ont bougé depuis
+     * WATCH_STABLE_MS et que sa taille couvre les données annoncées par l'en-tête. Le fichier
+     * n'est jamais ouvert en écriture : un verrou pris ici gênerait le logiciel d'acquisition.
+     * Un fichier qui reste incomplet est quand même transmis après WATCH_INCOMPLETE_TIMEOUT_MS
+     * (il sera signalé en erreur au chargement).
+     */
+    private void stabilityLoop() {
+        // Un fichier déjà traité qui est réécrit (même nom) serait repris : on les retient
+        Set<Path> seen = new HashSet<>();
+        try {
+            while (running) {
+                Thread.sleep(Config.WATCH_POLL_MS);
+                long now = System.nanoTime();
+                List<Path> stable = new ArrayList<>();
+                synchronized (candidates) {
+                    Iterator<Map.Entry<Path, Candidate>> it = candidates.entrySet().iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<Path, Candidate> entry = it.next();
+                        Path path = entry.getKey();
+                        Candidate candidate = entry.getValue();
+                        if (seen.contains(path) || ignored.contains(path.toAbsolutePath())) {
+                            it.remove();
+                            continue;
+                        }
+                        long size;
+                        long modified;
+                        try {
+                            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                            size = attrs.size();
+                            modified = attrs.lastModifiedTime().toMillis();
+                        } catch (IOException e) {
+                            it.remove(); // supprimé ou renommé entre-temps
+                            continue;
+                        }
+                        if (size != candidate.size || modified != candidate.modified) {
+                            candidate.size = size;
+                            candidate.modified = modified;
+                            candidate.changedAt = now;
+                        } else {
+                            long stableMs = (now - candidate.changedAt) / 1_000_000;
+                            if (size > 0 && stableMs >= Config.WATCH_STABLE_MS
+                                    && (isComplete(path, size) || stableMs >= Config.WATCH_INCOMPLETE_TIMEOUT_MS)) {
+                                it.remove();
+                                stable.add(path);
+                            }
+                        }
+                    }
+                }
+                for (Path path : stable) {
+                    seen.add(path);
+                    ready.put(new Frame(path, System.nanoTime()));
+                }
+            }
+        } catch (InterruptedException e) {
+            // Arrêt demandé
+        }
+    }
+
+    /**
+     * Vrai si le fichier contient au moins l'en-tête primaire et toutes les données qu'il annonce
+     */
+    static boolean isComplete(Path path, long size) {
+        try (FitsFile in = new FitsFile(path.toFile(), "r")) {
+            Header header = Header.readHeader(in);
+            if (header == null) return false;
+            long dataBytes = 0;
+            int naxis = header.getIntValue("NAXIS", 0);
+            if (naxis > 0) {
+                dataBytes = Math.abs(header.getIntValue("BITPIX", 8)) / 8;
+                for (int i = 1; i <= naxis; i++) {
+                    dataBytes *= header.getLongValue("NAXIS" + i, 0);
+                }
+            }
+            return size >= header.getSize() + dataBytes;
+        } catch (Exception e) {
+            // En-tête encore incomplet
+            return false;
+        }
+    }
+
+    /**
+     * Source sans fin du pipeline : bloque jusqu'au prochain fichier stable ou à l'arrêt
+     */
+    private Iterator<Frame> readyFrames() {
+        return new Iterator<>() {
+            private Object next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = ready.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        next = STOP;
+                    }
+                }
+                return next != STOP;
+            }
+
+            @Override
+            public Frame next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Frame frame = (Frame) next;
+                next = null;
+                return frame;
+            }
+        };
+    }
+
+    private Frame stack(Frame frame) {
+        try {
+            ImageAligner.AlignmentResult result = session.addFrame(frame.image);
+            boolean accepted = result.accepted && result.inliers >= 3;
+            (accepted ? stacked : rejected).incrementAndGet();
+            processingNanos.addAndGet(System.nanoTime() - frame.discoveredAt);
+            listener.onFrame(frame.path, result, getStats());
+        } catch (Exception e) {
+            fail(frame, e);
+        }
+        frame.image = null;
+        return null;
+    }
+
+    private void fail(Frame frame, Exception e) {
+        failed.incrementAndGet();
+        processingNanos.addAndGet(System.nanoTime() - frame.discoveredAt);
+        System.err.println("ERREUR " + frame.path.getFileName() + ": " + e.getMessage());
+        listener.onError(frame.path, e, getStats());
+    }
+
+    private void reportLoop() {
+        try {
+            while (running) {
+                Thread.sleep(Config.WATCH_REPORT_INTERVAL_MS);
+                Stats stats = getStats();
+                System.out.println("Surveillance: " + stats.describe());
+                listener.onReport(stats);
+            }
+        } catch (InterruptedException e) {
+            // Arrêt demandé
+        }
+    }
+
+    /**
+     * Mode sans interface : surveille un dossier et réécrit l'empilement courant après chaque image.
+     * Usage : FolderWatcher &lt;dossier&gt; [méthode] [sortie.fits]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: FolderWatcher <dossier> [AVERAGE|WEIGHTED_AVERAGE|SIGMA_CLIP] [sortie.fits]");
+            System.exit(2);
+        }
+        Path dir = Paths.get(args[0]);
+        StackingEngine.StackingMethod method = args.length > 1
+                ? StackingEngine.StackingMethod.valueOf(args[1].toUpperCase(Locale.ROOT))
+                : StackingEngine.StackingMethod.AVERAGE;
+        Path output = args.length > 2 ? Paths.get(args[2]) : dir.resolve("live_stack.fits");
+
+        LiveStackSession session = new LiveStackSession(method);
+        Object saveLock = new Object();
+        FolderWatcher watcher = new FolderWatcher(dir, session, new Listener() {
+            @Override
+            public void onFrame(Path file, ImageAligner.AlignmentResult result, Stats stats) {
+                if (session.getFrameCount() == 0) return;
+                synchronized (saveLock) {
+                    try {
+                        session.currentResult().saveFits(output);
+                    } catch (Exception e) {
+                        System.err.println("ERREUR d'écriture de " + output + ": " + e.getMessage());
+                    }
+                }
+            }
+        });
+
+        watcher.ignore(output);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watcher.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        watcher.start(true);
+        System.out.println("Résultat écrit dans " + output + " (Ctrl+C pour arrêter)");
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,198 @@
+package com.astro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Moteur de pipeline par étapes, image par image.
+ * Chaque étape a son propre nombre de workers et lit une file bornée : quand une étape aval
+ * est saturée, l'étape amont bloque (contre-pression). La mémoire de pointe est donc fixée
+ * par la profondeur des files et non par le nombre d'images de la session.
+ *
+ * @param <T> l'élément qui circule (une étape renvoie null pour l'écarter)
+ */
+public class FramePipeline<T> {
+    private static final Object END = new Object();
+
+    @FunctionalInterface
+    public interface Stage<T> {
+        T process(T item) throws Exception;
+    }
+
+    private static class StageSpec<T> {
+        final String name;
+        final int workers;
+        final Stage<T> stage;
+        final AtomicInteger processed = new AtomicInteger();
+        final AtomicLong busyNanos = new AtomicLong();
+
+        StageSpec(String name, int workers, Stage<T> stage) {
+            this.name = name;
+            this.workers = workers;
+            this.stage = stage;
+        }
+    }
+
+    private final String name;
+    private final int queueDepth;
+    private final List<StageSpec<T>> stages = new ArrayList<>();
+    // Files de l'exécution en cours, publiées d'un bloc pour les lectures d'autres threads
+    private volatile List<BlockingQueue<Object>> queues = List.of();
+
+    public FramePipeline(String name, int queueDepth) {
+        this.name = name;
+        this.queueDepth = Math.max(1, queueDepth);
+    }
+
+    public FramePipeline<T> stage(String stageName, int workers, Stage<T> stage) {
+        stages.add(new StageSpec<>(stageName, Math.max(1, workers), stage));
+        return this;
+    }
+
+    /**
+     * Nombre d'éléments en attente devant l'étape donnée (0 si le pipeline ne tourne pas)
+     */
+    public int getQueueSize(int stageIndex) {
+        List<BlockingQueue<Object>> current = queues;
+        return stageIndex < current.size() ? current.get(stageIndex).size() : 0;
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public String getStageName(int stageIndex) {
+        return stages.get(stageIndex).name;
+    }
+
+    /**
+     * Fait passer tous les éléments dans les étapes et attend la fin.
+     * La première erreur d'une étape arrête tout le pipeline et est relancée ici.
+     */
+    public void run(Iterable<T> inputs) throws Exception {
+        if (stages.isEmpty()) return;
+
+        List<BlockingQueue<Object>> created = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            created.add(new ArrayBlockingQueue<>(queueDepth));
+        }
+        List<BlockingQueue<Object>> current = List.copyOf(created);
+        queues = current;
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+
+        Thread feeder = new Thread(() -> {
+            try {
+                for (T item : inputs) {
+                    current.get(0).put(item);
+                }
+                for (int w = 0; w < stages.get(0).workers; w++) {
+                    current.get(0).put(END);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                // Itérateur des entrées en échec : sans fin de flux, les workers attendraient toujours
+                fail("source", t, failure, threads);
+            }
+        }, name + "-source");
+        threads.add(feeder);
+
+        for (int s = 0; s < stages.size(); s++) {
+            StageSpec<T> spec = stages.get(s);
+            BlockingQueue<Object> input = current.get(s);
+            BlockingQueue<Object> output = s + 1 < stages.size() ? current.get(s + 1) : null;
+            int downstreamWorkers = output != null ? stages.get(s + 1).workers : 0;
+            AtomicInteger remaining = new AtomicInteger(spec.workers);
+
+            for (int w = 0; w < spec.workers; w++) {
+                threads.add(new Thread(() -> runWorker(spec, input, output, downstreamWorkers, remaining, failure, threads),
+                        name + "-" + spec.name + "-" + w));
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            // Annulation par l'appelant : arrêter toutes les étapes
+            threads.forEach(Thread::interrupt);
+            throw e;
+        }
+
+        Throwable error = failure.get();
+        if (error != null) {
+            if (error instanceof Exception exception) throw exception;
+            throw new RuntimeException(error);
+        }
+
+        logStats(System.nanoTime() - start);
+    }
+
+    private void runWorker(StageSpec<T> spec, BlockingQueue<Object> input, BlockingQueue<Object> output,
+                           int downstreamWorkers, AtomicInteger remaining,
+                           AtomicReference<Throwable> failure, List<Thread> threads) {
+        try {
+            while (true) {
+                Object next = input.take();
+                if (next == END) break;
+
+                @SuppressWarnings("unchecked")
+                T item = (T) next;
+                long t0 = System.nanoTime();
+                T result = spec.stage.process(item);
+                spec.busyNanos.addAndGet(System.nanoTime() - t0);
+                spec.processed.incrementAndGet();
+
+                if (result != null && output != null) {
+                    output.put(result);
+                }
+            }
+            // Le dernier worker de l'étape propage la fin aux workers de l'étape suivante
+            if (remaining.decrementAndGet() == 0 && output != null) {
+                for (int w = 0; w < downstreamWorkers; w++) {
+                    output.put(END);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            fail(spec.name, t, failure, threads);
+        }
+    }
+
+    /**
+     * Garde la première erreur et interrompt les autres threads du pipeline
+     */
+    private static void fail(String stageName, Throwable t, AtomicReference<Throwable> failure, List<Thread> threads) {
+        if (failure.compareAndSet(null, t)) {
+            System.err.println("ERREUR dans l'étape " + stageName + ": " + t.getMessage());
+            for (Thread thread : threads) {
+                if (thread != Thread.currentThread()) {
+                    thread.interrupt();
+                }
+            }
+        }
+    }
+
+    private void logStats(long totalNanos) {
+        System.out.println(String.format("Pipeline %s terminé en %.1f s", name, totalNanos / 1e9));
+        for (StageSpec<T> spec : stages) {
+            System.out.println(String.format("  %-12s %d worker(s), %d élément(s), occupation %.1f s",
+                    spec.name, spec.workers, spec.processed.get(), spec.busyNanos.get() / 1e9));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.astro;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mesures de qualité d'une image, issues de la détection d'étoiles (sans passe pixel
+ * supplémentaire) : nombre d'étoiles, FWHM et excentricité médianes, niveau de fond et bruit.
+ * Les règles de rejet comparent chaque image à la médiane de la session pour écarter
+ * nuages, vent et étoiles filées avant tout redressement.
+ */
+public class FrameQuality {
+    public final int starCount;
+    public final double medianFwhm;
+    public final double medianEccentricity;
+    public final double backgroundLevel;
+    public final double noise;
+
+    public FrameQuality(int starCount, double medianFwhm, double medianEccentricity,
+                        double backgroundLevel, double noise) {
+        this.starCount = starCount;
+        this.medianFwhm = medianFwhm;
+        this.medianEccentricity = medianEccentricity;
+        this.backgroundLevel = backgroundLevel;
+        this.noise = noise;
+    }
+
+    public static FrameQuality fromCatalog(StarCatalog stars) {
+        int n = stars.size();
+        double[] fwhm = new double[n];
+        double[] eccentricity = new double[n];
+        for (int i = 0; i < n; i++) {
+            fwhm[i] = stars.getFwhm(i);
+            eccentricity[i] = stars.getEccentricity(i);
+        }
+        return new FrameQuality(n, median(fwhm), median(eccentricity),
+                stars.getBackgroundMean(), stars.getBackgroundSigma());
+    }
+
+    /**
+     * Image « typique » de la session : médiane de chaque mesure
+     */
+    public static FrameQuality sessionMedian(List<FrameQuality> qualities) {
+        int n = qualities.size();
+        double[] count = new double[n];
+        double[] fwhm = new double[n];
+        double[] eccentricity = new double[n];
+        double[] background = new double[n];
+        double[] noise = new double[n];
+        for (int i = 0; i < n; i++) {
+            FrameQuality q = qualities.get(i);
+            count[i] = q.starCount;
+            fwhm[i] = q.medianFwhm;
+            eccentricity[i] = q.medianEccentricity;
+            background[i] = q.backgroundLevel;
+            noise[i] = q.noise;
+        }
+        return new FrameQuality((int) Math.round(median(count)), median(fwhm), median(eccentricity),
+                median(background), median(noise));
+    }
+
+    private static double median(double[] values) {
+        if (values.length == 0) return 0;
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 0 ? (sorted[mid - 1] + sorted[mid]) / 2 : sorted[mid];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("étoiles=%d, FWHM=%.2f px, excentricité=%.2f, fond=%.1f, bruit=%.1f",
+                starCount, medianFwhm, medianEccentricity, backgroundLevel, noise);
+    }
+
+    /**
+     * Règles de rejet, relatives à la médiane de la session sauf l'excentricité (absolue)
+     */
+    public static class Rules {
+        public final boolean enabled;
+        public final double minStarRatio;
+        public final double maxFwhmRatio;
+        public final double maxEccentricity;
+        public final double maxBackgroundRatio;
+        public final double maxNoiseRatio;
+
+        public Rules(boolean enabled, double minStarRatio, double maxFwhmRatio, double maxEccentricity,
+                     double maxBackgroundRatio, double maxNoiseRatio) {
+            this.enabled = enabled;
+            this.minStarRatio = minStarRatio;
+            this.maxFwhmRatio = maxFwhmRatio;
+            this.maxEccentricity = maxEccentricity;
+            this.maxBackgroundRatio = maxBackgroundRatio;
+            this.maxNoiseRatio = maxNoiseRatio;
+        }
+
+        public static Rules defaults() {
+            return new Rules(
+                    Config.FRAME_REJECTION_ENABLED,
+                    Config.REJECT_MIN_STAR_RATIO,
+                    Config.REJECT_MAX_FWHM_RATIO,
+                    Config.REJECT_MAX_ECCENTRICITY,
+                    Config.REJECT_MAX_BACKGROUND_RATIO,
+                    Config.REJECT_MAX_NOISE_RATIO
+            );
+        }
+
+        /**
+         * @return la raison du rejet, ou null si l'image est acceptée
+         */
+        public String evaluate(FrameQuality frame, FrameQuality session) {
+            if (!enabled) return null;
+
+            if (frame.starCount < session.starCount * minStarRatio) {
+                return String.format("Trop peu d'étoiles (%d < %.0f)", frame.starCount, session.starCount * minStarRatio);
+            }
+            if (session.medianFwhm > 0 && frame.medianFwhm > session.medianFwhm * maxFwhmRatio) {
+                return String.format("FWHM trop grande (%.2f > %.2f px)", frame.medianFwhm, session.medianFwhm * maxFwhmRatio);
+            }
+            if (frame.medianEccentricity > maxEccentricity) {
+                return String.format("Étoiles allongées (excentricité %.2f > %.2f)", frame.medianEccentricity, maxEccentricity);
+            }
+            if (session.backgroundLevel > 0 && frame.backgroundLevel > session.backgroundLevel * maxBackgroundRatio) {
+                return String.format("Fond trop élevé (%.1f > %.1f)", frame.backgroundLevel, session.backgroundLevel * maxBackgroundRatio);
+            }
+            if (session.noise > 0 && frame.noise > session.noise * maxNoiseRatio) {
+                return String.format("Bruit trop élevé (%.1f > %.1f)", frame.noise, session.noise * maxNoiseRatio);
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.astro;
+
+import java.util.Arrays;
+
+/**
+ * Médiane et percentiles par comptage pour les valeurs entières 16 bits (ADU non signés).
+ * Au lieu de trier, deux histogrammes de 256 cases (octet de poids fort, puis octet de poids
+ * faible dans la case retenue) localisent la k-ième valeur : coût linéaire en N, ce qui
+ * reste rapide pour des piles de plusieurs milliers d'images. Sur de petites piles, le tri
+ * reste plus rapide : voir {@link Config#HISTOGRAM_MEDIAN_MIN_FRAMES}.
+ * Les valeurs sont lues comme non signées ({@code value & 0xFFFF}), comme à la conversion
+ * des données BITPIX 16 en float.
+ */
+public class HistogramMedian {
+    private static final int BINS = 256;
+
+    private HistogramMedian() {
+        // Classe utilitaire, pas d'instanciation
+    }
+
+    /**
+     * Tampon de comptage à réutiliser d'un pixel à l'autre
+     */
+    public static int[] newCounts() {
+        return new int[BINS];
+    }
+
+    /**
+     * k-ième plus petite valeur (0 ≤ k < n) des n premières valeurs, sans modifier le tableau
+     */
+    public static int select(short[] values, int n, int k, int[] counts) {
+        // Octet de poids fort
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < n; i++) {
+            counts[(values[i] & 0xFFFF) >>> 8]++;
+        }
+        int high = 0;
+        while (k >= counts[high]) {
+            k -= counts[high];
+            high++;
+        }
+
+        // Octet de poids faible, parmi les valeurs de la case retenue
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < n; i++) {
+            int v = values[i] & 0xFFFF;
+            if (v >>> 8 == high) {
+                counts[v & 0xFF]++;
+            }
+        }
+        int low = 0;
+        while (k >= counts[low]) {
+            k -= counts[low];
+            low++;
+        }
+        return (high << 8) | low;
+    }
+
+    /**
+     * Médiane, moyenne des deux valeurs centrales pour n pair (même résultat que le tri en float)
+     */
+    public static float median(short[] values, int n, int[] counts) {
+        if (n == 0) return 0;
+        if (n % 2 == 0) {
+            return (select(values, n, n / 2 - 1, counts) + select(values, n, n / 2, counts)) / 2f;
+        }
+        return select(values, n, n / 2, counts);
+    }
+
+    /**
+     * Percentile p (0 à 100) par la méthode du rang le plus proche
+     */
+    public static int percentile(short[] values, int n, double p, int[] counts) {
+        if (n == 0) return 0;
+        int k = (int) Math.ceil(p / 100.0 * n) - 1;
+        return select(values, n, Math.max(0, Math.min(n - 1, k)), counts);
+    }
+}
@@ -11,9 +11,11 @@ public class ImageAligner {
     private static final double MAX_DISTANCE_TOLERANCE = 10.0; // Augmenté de 5 à 10
     private static final int RANSAC_ITERATIONS = 1000; // Augmenté de 500 à 1000
     private static final double RANSAC_THRESHOLD = 5.0; // Augmenté de 3 à 5
+    private static final double TRIANGLE_RATIO_TOLERANCE = 0.01; // écart relatif des rapports de côtés
+    private static final int MIN_PAIR_VOTES = 2;
 
-    // ⚠️ DÉSACTIVÉ COMPLÈTEMENT - On accepte TOUT
-    private static final boolean ENABLE_QUALITY_FILTERING = false;
+    // Filtrage sur le score RANSAC (désactivé par défaut - on accepte TOUT)
+    private static final boolean ENABLE_QUALITY_FILTERING = Config.ALIGNMENT_QUALITY_FILTERING;
     private static final double MIN_QUALITY_SCORE = 0.01; // 1% seulement
     private static final int MIN_ABSOLUTE_INLIERS = 3; // 3 au lieu de 8
 
@@ -82,7 +84,7 @@ public class ImageAligner {
         }
 
         // Detect stars
-        List<List<Star>> allStars = new ArrayList<>();
+        List<StarCatalog> allStars = new ArrayList<>();
         System.out.println("📍 DÉTECTION DES ÉTOILES");
         System.out.println("-".repeat(80));
 
@@ -90,7 +92,7 @@ public class ImageAligner {
             FitsImage image = images.get(i);
             System.out.println("\nImage " + (i+1) + ": " + image.getFileName());
 
-            List<Star> stars = StarDetector.detectStars(image, 100);
+            StarCatalog stars = DetectionCache.detectStars(image, 100);
             allStars.add(stars);
 
             System.out.println("  ✓ Étoiles détectées: " + stars.size());
@@ -105,9 +107,8 @@ public class ImageAligner {
             if (!stars.isEmpty()) {
                 System.out.println("  Top 5 étoiles:");
                 for (int j = 0; j < Math.min(5, stars.size()); j++) {
-                    Star s = stars.get(j);
                     System.out.println(String.format("    %d. Position (%.1f, %.1f), Flux: %.1f",
-                            j+1, s.getX(), s.getY(), s.getFlux()));
+                            j+1, stars.getX(j), stars.getY(j), stars.getFlux(j)));
                 }
             }
 
@@ -117,14 +118,20 @@ public class ImageAligner {
             }
         }
 
+        // Frame quality from detection, reject bad frames before they are matched and warped
+        boolean[] rejectedFrames = evaluateFrameQuality(images, allStars, FrameQuality.Rules.defaults());
+
         // Find reference image
         System.out.println("\n" + "=".repeat(80));
         System.out.println("🎯 SÉLECTION IMAGE DE RÉFÉRENCE");
         System.out.println("-".repeat(80));
 
-        int refIndex = findReferenceImage(images, allStars);
+        int refIndex = findReferenceImage(allStars, rejectedFrames);
+        if (refIndex < 0) {
+            throw new IllegalStateException("Aucune image acceptable comme référence: toutes rejetées (qualité)");
+        }
         FitsImage reference = images.get(refIndex);
-        List<Star> referenceStars = allStars.get(refIndex);
+        StarCatalog referenceStars = allStars.get(refIndex);
 
         System.out.println("Image de référence: #" + (refIndex+1) + " - " + reference.getFileName());
         System.out.println("  Étoiles: " + referenceStars.size());
@@ -159,7 +166,13 @@ public class ImageAligner {
             }
 
             FitsImage image = images.get(i);
-            List<Star> imageStars = allStars.get(i);
+            StarCatalog imageStars = allStars.get(i);
+
+            if (rejectedFrames[i]) {
+                rejectedImages.add(image.getFileName() + " - qualité insuffisante");
+                System.out.println("→ IGNORÉE (rejet qualité, pas d'alignement)");
+                continue;
+            }
 
             System.out.println("Étoiles dans cette image: " + imageStars.size());
             System.out.println("Étoiles dans référence: " + referenceStars.size());
@@ -213,13 +226,13 @@ public class ImageAligner {
             }
         }
 
-        // NE PAS MODIFIER LA LISTE si filtrage désactivé
-        if (ENABLE_QUALITY_FILTERING && !rejectedImages.isEmpty()) {
+        // La liste n'est modifiée que s'il y a des rejets (qualité d'image ou filtrage RANSAC)
+        if (!rejectedImages.isEmpty()) {
             images.clear();
             images.addAll(acceptedImages);
             System.out.println("\n⚠️ Liste modifiée: " + images.size() + " images conservées");
         } else {
-            System.out.println("\n✓ Toutes les " + images.size() + " images conservées (filtrage désactivé)");
+            System.out.println("\n✓ Toutes les " + images.size() + " images conservées");
         }
 
         if (images.isEmpty()) {
@@ -264,8 +277,24 @@ public class ImageAligner {
         System.out.println();
     }
 
-    private static CanvasInfo calculateExpandedCanvas(List<FitsImage> images) {
-        if (images.isEmpty()) {
+    static CanvasInfo calculateExpandedCanvas(List<FitsImage> images) {
+        int[] widths = new int[images.size()];
+        int[] heights = new int[images.size()];
+        AffineTransform[] transforms = new AffineTransform[images.size()];
+        for (int i = 0; i < images.size(); i++) {
+            widths[i] = images.get(i).getWidth();
+            heights[i] = images.get(i).getHeight();
+            transforms[i] = images.get(i).getTransform();
+        }
+        return calculateExpandedCanvas(widths, heights, transforms);
+    }
+
+    /**
+     * Canvas englobant toutes les images transformées, calculé à partir des seules
+     * dimensions et transformations (sans accès aux pixels)
+     */
+    static CanvasInfo calculateExpandedCanvas(int[] widths, int[] heights, AffineTransform[] transforms) {
+        if (widths.length == 0) {
             return new CanvasInfo(0, 0, 0, 0);
         }
 
@@ -274,13 +303,12 @@ public class ImageAligner {
         double maxX = Double.MIN_VALUE;
         double maxY = Double.MIN_VALUE;
 
-        System.out.println("Calcul des limites pour " + images.size() + " images:");
+        System.out.println("Calcul des limites pour " + widths.length + " images:");
 
-        for (int i = 0; i < images.size(); i++) {
-            FitsImage image = images.get(i);
-            int w = image.getWidth();
-            int h = image.getHeight();
-            AffineTransform transform = image.getTransform();
+        for (int i = 0; i < widths.length; i++) {
+            int w = widths[i];
+            int h = heights[i];
+            AffineTransform transform = transforms[i];
 
             double[][] corners = {
                     {0, 0}, {w, 0}, {w, h}, {0, h}
@@ -306,24 +334,71 @@ public class ImageAligner {
         return new CanvasInfo(canvasWidth, canvasHeight, offsetX, offsetY);
     }
 
-    private static int findReferenceImage(List<FitsImage> images, List<List<Star>> allStars) {
+    /**
+     * Calcule la qualité de chaque image et marque celles à rejeter selon les règles
+     */
+    static boolean[] evaluateFrameQuality(List<FitsImage> images, List<StarCatalog> allStars,
+                                          FrameQuality.Rules rules) {
+        boolean[] rejected = new boolean[allStars.size()];
+        List<FrameQuality> qualities = new ArrayList<>();
+        for (StarCatalog stars : allStars) {
+            qualities.add(FrameQuality.fromCatalog(stars));
+        }
+        if (!rules.enabled || qualities.size() < Config.FRAME_REJECTION_MIN_FRAMES) {
+            return rejected;
+        }
+
+        FrameQuality session = FrameQuality.sessionMedian(qualities);
+        System.out.println("\n🧪 QUALITÉ DES IMAGES (médiane: " + session + ")");
+        for (int i = 0; i < qualities.size(); i++) {
+            String reason = rules.evaluate(qualities.get(i), session);
+            rejected[i] = reason != null;
+            System.out.println("  Image " + (i+1) + " (" + images.get(i).getFileName() + "): " + qualities.get(i) +
+                    (reason != null ? "  ❌ " + reason : ""));
+        }
+        return rejected;
+    }
+
+    static int findReferenceImage(List<StarCatalog> allStars) {
+        return findReferenceImage(allStars, new boolean[allStars.size()]);
+    }
+
+    /**
+     * Meilleure référence : beaucoup d'étoiles, bien réparties, fines et rondes
+     *
+     * @return l'index de la référence, ou -1 si toutes les images sont exclues
+     */
+    static int findReferenceImage(List<StarCatalog> allStars, boolean[] excluded) {
         int bestIndex = 0;
         double bestScore = 0;
+        while (bestIndex < excluded.length && excluded[bestIndex]) {
+            bestIndex++;
+        }
+        if (bestIndex == excluded.length) {
+            System.out.println("→ Aucune image acceptable comme référence: toutes rejetées (qualité)");
+            return -1;
+        }
 
         System.out.println("Évaluation des images pour la référence:");
 
-        for (int i = 0; i < images.size(); i++) {
-            List<Star> stars = allStars.get(i);
+        for (int i = 0; i < allStars.size(); i++) {
+            StarCatalog stars = allStars.get(i);
+            if (excluded[i]) {
+                System.out.println("  Image " + (i+1) + ": rejetée (qualité)");
+                continue;
+            }
             if (stars.size() < 10) {
                 System.out.println("  Image " + (i+1) + ": " + stars.size() + " étoiles (trop peu)");
                 continue;
             }
 
             double avgDistance = calculateAverageStarDistance(stars);
-            double score = stars.size() / (avgDistance + 1.0);
+            FrameQuality quality = FrameQuality.fromCatalog(stars);
+            double shapeFactor = (1.0 - 0.5 * quality.medianEccentricity) / Math.max(1.0, quality.medianFwhm);
+            double score = stars.size() / (avgDistance + 1.0) * shapeFactor;
 
-            System.out.println(String.format("  Image %d: %d étoiles, dist moy=%.1f, score=%.3f",
-                    i+1, stars.size(), avgDistance, score));
+            System.out.println(String.format("  Image %d: %d étoiles, dist moy=%.1f, FWHM=%.2f, exc=%.2f, score=%.4f",
+                    i+1, stars.size(), avgDistance, quality.medianFwhm, quality.medianEccentricity, score));
 
             if (score > bestScore) {
                 bestScore = score;
@@ -331,11 +406,11 @@ public class ImageAligner {
             }
         }
 
-        System.out.println("→ Meilleure image: #" + (bestIndex+1) + " (score: " + String.format("%.3f", bestScore) + ")");
+        System.out.println("→ Meilleure image: #" + (bestIndex+1) + " (score: " + String.format("%.4f", bestScore) + ")");
         return bestIndex;
     }
 
-    private static double calculateAverageStarDistance(List<Star> stars) {
+    private static double calculateAverageStarDistance(StarCatalog stars) {
         if (stars.size() < 10) return Double.MAX_VALUE;
 
         int numPairs = Math.min(30, stars.size() / 2);
@@ -344,7 +419,7 @@ public class ImageAligner {
 
         for (int i = 0; i < numPairs && i < stars.size(); i++) {
             for (int j = i + 1; j < numPairs && j < stars.size(); j++) {
-                sumDistances += stars.get(i).distanceTo(stars.get(j));
+                sumDistances += stars.distance(i, j);
                 count++;
             }
         }
@@ -352,10 +427,12 @@ public class ImageAligner {
         return count > 0 ? sumDistances / count : Double.MAX_VALUE;
     }
 
-    private static AlignmentResult findAffineTransformWithQuality(List<Star> referenceStars, List<Star> imageStars) {
+    static AlignmentResult findAffineTransformWithQuality(StarCatalog referenceStars, StarCatalog imageStars) {
         System.out.println("  Recherche de correspondances de triangles...");
 
-        List<StarMatch> matches = findStarMatches(referenceStars, imageStars);
+        StageMetrics.Span matching = StageMetrics.begin(StageMetrics.Stage.MATCHING);
+        StarMatches matches = findStarMatches(referenceStars, imageStars);
+        matching.end(1, 0, 0);
 
         System.out.println("  → Correspondances brutes: " + matches.size());
 
@@ -364,29 +441,33 @@ public class ImageAligner {
             return new AlignmentResult(AffineTransform.identity(), 0, matches.size());
         }
 
+        return estimateTransform(matches);
+    }
+
+    /**
+     * RANSAC sur les correspondances (au moins 3) : transformation ayant le plus d'inliers
+     * parmi {@link #RANSAC_ITERATIONS} tirages de 3 correspondances
+     */
+    static AlignmentResult estimateTransform(StarMatches matches) {
         System.out.println("  Lancement RANSAC (" + RANSAC_ITERATIONS + " itérations)...");
 
+        StageMetrics.Span ransac = StageMetrics.begin(StageMetrics.Stage.RANSAC);
         AffineTransform bestTransform = null;
         int bestInliers = 0;
         Random random = new Random(42);
+        int[] sample = new int[3];
 
         for (int iter = 0; iter < RANSAC_ITERATIONS; iter++) {
-            if (matches.size() < 3) break;
-
-            List<StarMatch> sample = new ArrayList<>();
-            Set<Integer> used = new HashSet<>();
-
-            while (sample.size() < 3 && used.size() < matches.size()) {
+            // Tirage de 3 correspondances distinctes
+            int picked = 0;
+            while (picked < 3) {
                 int idx = random.nextInt(matches.size());
-                if (!used.contains(idx)) {
-                    sample.add(matches.get(idx));
-                    used.add(idx);
-                }
+                if (picked > 0 && sample[0] == idx) continue;
+                if (picked > 1 && sample[1] == idx) continue;
+                sample[picked++] = idx;
             }
 
-            if (sample.size() < 3) continue;
-
-            AffineTransform transform = computeAffineFromMatches(sample);
+            AffineTransform transform = computeAffineFromMatches(matches, sample);
             if (transform == null) continue;
 
             int inliers = countInliers(matches, transform);
@@ -396,6 +477,7 @@ public class ImageAligner {
                 bestTransform = transform;
             }
         }
+        ransac.end(1, 0, 0);
 
         if (bestTransform == null) {
             System.out.println("  ❌ ÉCHEC: RANSAC n'a pas convergé");
@@ -407,8 +489,8 @@ public class ImageAligner {
         return new AlignmentResult(bestTransform, bestInliers, matches.size());
     }
 
-    private static List<StarMatch> findStarMatches(List<Star> referenceStars, List<Star> imageStars) {
-        List<StarMatch> matches = new ArrayList<>();
+    static StarMatches findStarMatches(StarCatalog referenceStars, StarCatalog imageStars) {
+        StarMatches matches = new StarMatches(referenceStars, imageStars);
 
         List<StarTriangle> refTriangles = createTriangles(referenceStars);
         List<StarTriangle> imgTriangles = createTriangles(imageStars);
@@ -416,47 +498,55 @@ public class ImageAligner {
         System.out.println("    Triangles référence: " + refTriangles.size());
         System.out.println("    Triangles image: " + imgTriangles.size());
 
+        // Chaque paire de triangles semblables vote pour ses trois paires de sommets homologues
+        int imgCount = imageStars.size();
+        int[] votes = new int[referenceStars.size() * imgCount];
+
         int matchCount = 0;
         for (StarTriangle refTri : refTriangles) {
             for (StarTriangle imgTri : imgTriangles) {
                 if (trianglesMatch(refTri, imgTri)) {
-                    matches.add(new StarMatch(refTri.s1, imgTri.s1));
-                    matches.add(new StarMatch(refTri.s2, imgTri.s2));
-                    matches.add(new StarMatch(refTri.s3, imgTri.s3));
+                    votes[refTri.s1 * imgCount + imgTri.s1]++;
+                    votes[refTri.s2 * imgCount + imgTri.s2]++;
+                    votes[refTri.s3 * imgCount + imgTri.s3]++;
                     matchCount++;
                 }
             }
         }
 
-        System.out.println("    Triangles correspondants: " + matchCount);
-
-        // Remove duplicates
-        Set<String> seen = new HashSet<>();
-        List<StarMatch> uniqueMatches = new ArrayList<>();
-
-        for (StarMatch match : matches) {
-            String key = String.format("%.1f,%.1f-%.1f,%.1f",
-                    match.ref.getX(), match.ref.getY(),
-                    match.img.getX(), match.img.getY());
-            if (!seen.contains(key)) {
-                seen.add(key);
-                uniqueMatches.add(match);
-            }
+        // Paires les mieux soutenues d'abord, chaque étoile appariée une seule fois : les
+        // triangles fortuits dispersent leurs votes, les vrais homologues les accumulent
+        Integer[] order = new Integer[votes.length];
+        int candidates = 0;
+        for (int key = 0; key < votes.length; key++) {
+            if (votes[key] >= MIN_PAIR_VOTES) order[candidates++] = key;
+        }
+        Arrays.sort(order, 0, candidates, (a, b) -> Integer.compare(votes[b], votes[a]));
+        boolean[] refUsed = new boolean[referenceStars.size()];
+        boolean[] imgUsed = new boolean[imgCount];
+        for (int c = 0; c < candidates; c++) {
+            int ref = order[c] / imgCount;
+            int img = order[c] % imgCount;
+            if (refUsed[ref] || imgUsed[img]) continue;
+            refUsed[ref] = true;
+            imgUsed[img] = true;
+            matches.add(ref, img);
         }
 
-        System.out.println("    Correspondances uniques: " + uniqueMatches.size());
+        System.out.println("    Triangles correspondants: " + matchCount);
+        System.out.println("    Correspondances uniques: " + matches.size());
 
-        return uniqueMatches;
+        return matches;
     }
 
-    private static List<StarTriangle> createTriangles(List<Star> stars) {
+    private static List<StarTriangle> createTriangles(StarCatalog stars) {
         List<StarTriangle> triangles = new ArrayList<>();
         int maxStars = Math.min(20, stars.size());
 
         for (int i = 0; i < maxStars - 2; i++) {
             for (int j = i + 1; j < maxStars - 1; j++) {
                 for (int k = j + 1; k < maxStars; k++) {
-                    triangles.add(new StarTriangle(stars.get(i), stars.get(j), stars.get(k)));
+                    triangles.add(new StarTriangle(stars, i, j, k));
                 }
             }
         }
@@ -465,36 +555,30 @@ public class ImageAligner {
     }
 
     private static boolean trianglesMatch(StarTriangle t1, StarTriangle t2) {
-        double[] sides1 = t1.getSortedSides();
-        double[] sides2 = t2.getSortedSides();
-
-        double ratio1_1 = sides1[1] / sides1[0];
-        double ratio1_2 = sides1[2] / sides1[0];
-        double ratio2_1 = sides2[1] / sides2[0];
-        double ratio2_2 = sides2[2] / sides2[0];
-
-        double tolerance = 0.20; // Augmenté de 0.15 à 0.20
-
-        return Math.abs(ratio1_1 - ratio2_1) < tolerance &&
-                Math.abs(ratio1_2 - ratio2_2) < tolerance;
+        // Les rapports de côtés sont exacts à l'erreur de centroïde près : une tolérance large
+        // fait correspondre presque tous les triangles entre eux. Cette erreur croît avec le
+        // rapport (côté long / côté court) : la tolérance lui est proportionnelle, sinon les
+        // triangles allongés ne s'apparient plus et les triangles équilatéraux trop facilement
+        return Math.abs(t1.ratio1 - t2.ratio1) < TRIANGLE_RATIO_TOLERANCE * t1.ratio1 &&
+                Math.abs(t1.ratio2 - t2.ratio2) < TRIANGLE_RATIO_TOLERANCE * t1.ratio2;
     }
 
-    private static AffineTransform computeAffineFromMatches(List<StarMatch> matches) {
-        if (matches.size() < 3) return null;
-
-        StarMatch m1 = matches.get(0);
-        StarMatch m2 = matches.get(1);
-        StarMatch m3 = matches.get(2);
+    private static AffineTransform computeAffineFromMatches(StarMatches matches, int[] sample) {
+        StarCatalog ref = matches.reference;
+        StarCatalog img = matches.image;
+        int r1 = matches.refIndex[sample[0]], i1 = matches.imgIndex[sample[0]];
+        int r2 = matches.refIndex[sample[1]], i2 = matches.imgIndex[sample[1]];
+        int r3 = matches.refIndex[sample[2]], i3 = matches.imgIndex[sample[2]];
 
-        double refCx = (m1.ref.getX() + m2.ref.getX() + m3.ref.getX()) / 3.0;
-        double refCy = (m1.ref.getY() + m2.ref.getY() + m3.ref.getY()) / 3.0;
-        double imgCx = (m1.img.getX() + m2.img.getX() + m3.img.getX()) / 3.0;
-        double imgCy = (m1.img.getY() + m2.img.getY() + m3.img.getY()) / 3.0;
+        double refCx = (ref.getX(r1) + ref.getX(r2) + ref.getX(r3)) / 3.0;
+        double refCy = (ref.getY(r1) + ref.getY(r2) + ref.getY(r3)) / 3.0;
+        double imgCx = (img.getX(i1) + img.getX(i2) + img.getX(i3)) / 3.0;
+        double imgCy = (img.getY(i1) + img.getY(i2) + img.getY(i3)) / 3.0;
 
-        double refDx = m2.ref.getX() - m1.ref.getX();
-        double refDy = m2.ref.getY() - m1.ref.getY();
-        double imgDx = m2.img.getX() - m1.img.getX();
-        double imgDy = m2.img.getY() - m1.img.getY();
+        double refDx = ref.getX(r2) - ref.getX(r1);
+        double refDy = ref.getY(r2) - ref.getY(r1);
+        double imgDx = img.getX(i2) - img.getX(i1);
+        double imgDy = img.getY(i2) - img.getY(i1);
 
         double refDist = Math.sqrt(refDx * refDx + refDy * refDy);
         double imgDist = Math.sqrt(imgDx * imgDx + imgDy * imgDy);
@@ -512,16 +596,23 @@ public class ImageAligner {
         return new AffineTransform(scale, rotation, tx, ty);
     }
 
-    private static int countInliers(List<StarMatch> matches, AffineTransform transform) {
+    private static int countInliers(StarMatches matches, AffineTransform transform) {
+        StarCatalog ref = matches.reference;
+        StarCatalog img = matches.image;
+        double a = transform.scale * Math.cos(transform.rotation);
+        double b = transform.scale * Math.sin(transform.rotation);
+        double threshold2 = RANSAC_THRESHOLD * RANSAC_THRESHOLD;
         int inliers = 0;
 
-        for (StarMatch match : matches) {
-            double[] transformed = transform.apply(match.img.getX(), match.img.getY());
-            double dx = transformed[0] - match.ref.getX();
-            double dy = transformed[1] - match.ref.getY();
-            double error = Math.sqrt(dx * dx + dy * dy);
+        for (int m = 0; m < matches.size(); m++) {
+            int r = matches.refIndex[m];
+            int i = matches.imgIndex[m];
+            double ix = img.getX(i);
+            double iy = img.getY(i);
+            double dx = a * ix - b * iy + transform.tx - ref.getX(r);
+            double dy = b * ix + a * iy + transform.ty - ref.getY(r);
 
-            if (error < RANSAC_THRESHOLD) {
+            if (dx * dx + dy * dy < threshold2) {
                 inliers++;
             }
         }
@@ -529,33 +620,64 @@ public class ImageAligner {
         return inliers;
     }
 
+    /**
+     * Triangle d'étoiles par indices dans le catalogue, rapports de côtés précalculés.
+     * Les sommets sont rangés selon le côté opposé, du plus court au plus long : deux triangles
+     * semblables ont ainsi leurs sommets homologues au même rang, quel que soit l'ordre des
+     * étoiles dans les catalogues.
+     */
     private static class StarTriangle {
-        final Star s1, s2, s3;
-        final double side1, side2, side3;
-
-        StarTriangle(Star s1, Star s2, Star s3) {
-            this.s1 = s1;
-            this.s2 = s2;
-            this.s3 = s3;
-            this.side1 = s1.distanceTo(s2);
-            this.side2 = s2.distanceTo(s3);
-            this.side3 = s3.distanceTo(s1);
+        final int s1, s2, s3;
+        final double ratio1, ratio2;
+
+        StarTriangle(StarCatalog stars, int a, int b, int c) {
+            // Côté opposé à chaque sommet
+            double oppositeA = stars.distance(b, c);
+            double oppositeB = stars.distance(c, a);
+            double oppositeC = stars.distance(a, b);
+            int[] vertices = {a, b, c};
+            double[] sides = {oppositeA, oppositeB, oppositeC};
+            for (int i = 1; i < 3; i++) {
+                for (int j = i; j > 0 && sides[j] < sides[j - 1]; j--) {
+                    double side = sides[j]; sides[j] = sides[j - 1]; sides[j - 1] = side;
+                    int vertex = vertices[j]; vertices[j] = vertices[j - 1]; vertices[j - 1] = vertex;
+                }
+            }
+            this.s1 = vertices[0];
+            this.s2 = vertices[1];
+            this.s3 = vertices[2];
+            this.ratio1 = sides[1] / sides[0];
+            this.ratio2 = sides[2] / sides[0];
         }
+    }
 
-        double[] getSortedSides() {
-            double[] sides = {side1, side2, side3};
-            Arrays.sort(sides);
-            return sides;
+    /**
+     * Correspondances référence/image stockées en tableaux d'indices parallèles
+     */
+    static class StarMatches {
+        final StarCatalog reference;
+        final StarCatalog image;
+        int[] refIndex = new int[64];
+        int[] imgIndex = new int[64];
+        private int size;
+
+        StarMatches(StarCatalog reference, StarCatalog image) {
+            this.reference = reference;
+            this.image = image;
         }
-    }
 
-    private static class StarMatch {
-        final Star ref;
-        final Star img;
+        void add(int ref, int img) {
+            if (size == refIndex.length) {
+                refIndex = Arrays.copyOf(refIndex, size * 2);
+                imgIndex = Arrays.copyOf(imgIndex, size * 2);
+            }
+            refIndex[size] = ref;
+            imgIndex[size] = img;
+            size++;
+        }
 
-        StarMatch(Star ref, Star img) {
-            this.ref = ref;
-            this.img = img;
+        int size() {
+            return size;
         }
     }
 
@@ -575,6 +697,13 @@ public class ImageAligner {
             return new AffineTransform(1.0, 0.0, 0.0, 0.0);
         }
 
+        /**
+         * Vrai pour un simple décalage d'un nombre entier de pixels (ni rotation ni échelle)
+         */
+        public boolean isIntegerShift() {
+            return scale == 1.0 && rotation == 0.0 && tx == Math.rint(tx) && ty == Math.rint(ty);
+        }
+
         public double[] apply(double x, double y) {
             double cos = Math.cos(rotation);
             double sin = Math.sin(rotation);
@@ -0,0 +1,122 @@
+package com.astro;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pyramide d'affichage d'une image : le niveau 0 est l'image elle-même (sans copie), chaque
+ * niveau suivant est réduit de moitié par moyenne de blocs 2×2, jusqu'à
+ * {@link Config#VIEWER_MIN_LEVEL_SIZE} pixels. Les lignes de chaque niveau sont calculées en
+ * parallèle. Les niveaux réduits occupent au plus un tiers de l'image d'origine.
+ */
+public class ImagePyramid {
+    private static final int ROWS_PER_TASK = 32;
+
+    private final List<float[][][]> levels = new ArrayList<>();  // [niveau][canal][y][x]
+    private final List<int[]> sizes = new ArrayList<>();          // largeur, hauteur par niveau
+
+    private ImagePyramid() {
+    }
+
+    /**
+     * Construit la pyramide d'une image (canaux RGB, ou plan unique)
+     */
+    public static ImagePyramid build(FitsImage image) throws InterruptedException {
+        float[][][] planes = image.isColor() && image.getColorData() != null
+                ? image.getColorData() : new float[][][]{image.getData()};
+        return build(planes, image.getWidth(), image.getHeight());
+    }
+
+    public static ImagePyramid build(float[][][] planes, int width, int height) throws InterruptedException {
+        ImagePyramid pyramid = new ImagePyramid();
+        pyramid.levels.add(planes);
+        pyramid.sizes.add(new int[]{width, height});
+        while (Math.max(width, height) > Config.VIEWER_MIN_LEVEL_SIZE) {
+            float[][][] source = planes;
+            int sourceWidth = width;
+            int sourceHeight = height;
+            width = (width + 1) / 2;
+            height = (height + 1) / 2;
+            int levelWidth = width;
+            float[][][] level = new float[source.length][height][];
+            parallelRows(height, y -> {
+                int y0 = 2 * y;
+                int y1 = Math.min(y0 + 1, sourceHeight - 1);
+                for (int c = 0; c < source.length; c++) {
+                    float[] top = source[c][y0];
+                    float[] bottom = source[c][y1];
+                    float[] row = new float[levelWidth];
+                    for (int x = 0; x < levelWidth; x++) {
+                        int x0 = 2 * x;
+                        int x1 = Math.min(x0 + 1, sourceWidth - 1);
+                        row[x] = 0.25f * (top[x0] + top[x1] + bottom[x0] + bottom[x1]);
+                    }
+                    level[c][y] = row;
+                }
+            });
+            planes = level;
+            pyramid.levels.add(level);
+            pyramid.sizes.add(new int[]{width, height});
+        }
+        return pyramid;
+    }
+
+    /**
+     * Exécute task(y) pour chaque ligne, par paquets répartis entre les cœurs
+     */
+    private static void parallelRows(int rows, java.util.function.IntConsumer task) throws InterruptedException {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+                (rows + ROWS_PER_TASK - 1) / ROWS_PER_TASK);
+        if (threads <= 1) {
+            for (int y = 0; y < rows; y++) task.accept(y);
+            return;
+        }
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                int start;
+                while (failure.get() == null && (start = next.getAndAdd(ROWS_PER_TASK)) < rows) {
+                    try {
+                        for (int y = start; y < Math.min(rows, start + ROWS_PER_TASK); y++) task.accept(y);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, "pyramide-" + t);
+            workers[t].setDaemon(true);
+            workers[t].start();
+        }
+        try {
+            for (Thread worker : workers) worker.join();
+        } catch (InterruptedException e) {
+            for (Thread worker : workers) worker.interrupt();
+            throw e;
+        }
+        if (failure.get() != null) throw failure.get();
+    }
+
+    public int getLevelCount() { return levels.size(); }
+    public int getChannels() { return levels.get(0).length; }
+    public int getWidth(int level) { return sizes.get(level)[0]; }
+    public int getHeight(int level) { return sizes.get(level)[1]; }
+
+    public float[][] getPlane(int level, int channel) {
+        return levels.get(level)[channel];
+    }
+
+    /**
+     * Niveau à afficher pour un zoom donné : le plus réduit dont les pixels restent au moins
+     * aussi fins que ceux de l'écran
+     */
+    public int levelForZoom(double zoom) {
+        int level = 0;
+        while (level + 1 < levels.size() && zoom * (1 << (level + 1)) <= 1.0) {
+            level++;
+        }
+        return level;
+    }
+}
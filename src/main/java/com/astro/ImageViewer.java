@@ -0,0 +1,318 @@
+package com.astro;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Visionneuse intégrée : images brutes, alignées ou empilées, étirées par une STF automatique
+ * ({@link ScreenStretch}). L'image est découpée en tuiles de {@link Config#VIEWER_TILE_SIZE}
+ * pixels du niveau de pyramide adapté au zoom ({@link ImagePyramid}) ; seules les tuiles
+ * visibles sont converties en pixels d'écran, et les dernières utilisées restent en cache.
+ * Molette : zoom autour du curseur ; glisser : déplacement ; double clic : image entière.
+ */
+public class ImageViewer extends JPanel {
+    private static final double ZOOM_STEP = 1.25;
+    private static final double MAX_ZOOM = 32.0;
+
+    private ImagePyramid pyramid;
+    private ScreenStretch stretch;
+    private String title = "";
+    private String message = "Sélectionnez une image";
+    private double zoom = 1.0;
+    private double originX;          // coordonnées image du coin haut gauche de la vue
+    private double originY;
+    private boolean fitPending;
+    private Point dragStart;
+    private String cursorInfo = "";
+    private SwingWorker<?, ?> loading;
+
+    // Tuiles converties, de la moins récemment utilisée à la plus récente
+    private final Map<Long, BufferedImage> tiles = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+            return size() > Config.VIEWER_TILE_CACHE;
+        }
+    };
+
+    public ImageViewer() {
+        setBackground(Color.BLACK);
+        setPreferredSize(new Dimension(480, 480));
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart == null || pyramid == null) return;
+                originX -= (e.getX() - dragStart.x) / zoom;
+                originY -= (e.getY() - dragStart.y) / zoom;
+                dragStart = e.getPoint();
+                repaint();
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragStart = null;
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) fitToWindow();
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (pyramid == null) return;
+                double factor = Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation());
+                zoomAt(e.getX(), e.getY(), zoom * factor);
+            }
+
+            @Override
+            public void mouseMoved(MouseEvent e) {
+                updateCursorInfo(e.getX(), e.getY());
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    /**
+     * Affiche l'image fournie par source, chargée et préparée (pyramide, STF) hors de l'EDT.
+     * Un nouvel appel abandonne le chargement précédent.
+     */
+    public void display(String title, Callable<FitsImage> source) {
+        if (loading != null) {
+            loading.cancel(true);
+        }
+        message = "Chargement de " + title + "...";
+        repaint();
+
+        SwingWorker<Object[], Void> worker = new SwingWorker<>() {
+            @Override
+            protected Object[] doInBackground() throws Exception {
+                FitsImage image = source.call();
+                ScreenStretch stf = ScreenStretch.auto(image);
+                ImagePyramid levels = ImagePyramid.build(image);
+                return new Object[]{levels, stf};
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || loading != this) return;
+                loading = null;
+                try {
+                    Object[] result = get();
+                    setContent(title, (ImagePyramid) result[0], (ScreenStretch) result[1]);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    clear("Affichage impossible: " + cause.getMessage());
+                }
+            }
+        };
+        loading = worker;
+        worker.execute();
+    }
+
+    public void display(String title, FitsImage image) {
+        display(title, () -> image);
+    }
+
+    /**
+     * Remplace l'image affichée (EDT), en abandonnant un chargement en cours. Le cadrage est
+     * conservé si les dimensions n'ont pas changé, pour comparer des images successives d'une
+     * même série.
+     */
+    void setContent(String title, ImagePyramid pyramid, ScreenStretch stretch) {
+        if (loading != null) {
+            loading.cancel(true);
+            loading = null;
+        }
+        boolean sameGeometry = this.pyramid != null
+                && this.pyramid.getWidth(0) == pyramid.getWidth(0)
+                && this.pyramid.getHeight(0) == pyramid.getHeight(0);
+        this.pyramid = pyramid;
+        this.stretch = stretch;
+        this.title = title;
+        this.message = null;
+        tiles.clear();
+        if (!sameGeometry) fitToWindow();
+        repaint();
+    }
+
+    public void clear(String message) {
+        if (loading != null) {
+            loading.cancel(true);
+            loading = null;
+        }
+        pyramid = null;
+        stretch = null;
+        title = "";
+        cursorInfo = "";
+        this.message = message;
+        tiles.clear();
+        repaint();
+    }
+
+    public void fitToWindow() {
+        if (pyramid == null) return;
+        if (getWidth() <= 0 || getHeight() <= 0) {
+            fitPending = true;
+            return;
+        }
+        fitPending = false;
+        int width = pyramid.getWidth(0);
+        int height = pyramid.getHeight(0);
+        zoom = Math.min((double) getWidth() / width, (double) getHeight() / height);
+        originX = (width - getWidth() / zoom) / 2;
+        originY = (height - getHeight() / zoom) / 2;
+        repaint();
+    }
+
+    private void zoomAt(int screenX, int screenY, double newZoom) {
+        double minZoom = Math.min(1.0, 0.5 * Math.min((double) getWidth() / pyramid.getWidth(0),
+                (double) getHeight() / pyramid.getHeight(0)));
+        newZoom = Math.max(minZoom, Math.min(MAX_ZOOM, newZoom));
+        // Le point sous le curseur reste sous le curseur
+        double imageX = originX + screenX / zoom;
+        double imageY = originY + screenY / zoom;
+        zoom = newZoom;
+        originX = imageX - screenX / zoom;
+        originY = imageY - screenY / zoom;
+        updateCursorInfo(screenX, screenY);
+        repaint();
+    }
+
+    private void updateCursorInfo(int screenX, int screenY) {
+        if (pyramid == null) return;
+        int x = (int) Math.floor(originX + screenX / zoom);
+        int y = (int) Math.floor(originY + screenY / zoom);
+        if (x < 0 || y < 0 || x >= pyramid.getWidth(0) || y >= pyramid.getHeight(0)) {
+            cursorInfo = "";
+        } else if (pyramid.getChannels() == 3) {
+            cursorInfo = String.format(Locale.ROOT, "(%d, %d) R=%.5g G=%.5g B=%.5g", x, y,
+                    pyramid.getPlane(0, 0)[y][x], pyramid.getPlane(0, 1)[y][x], pyramid.getPlane(0, 2)[y][x]);
+        } else {
+            cursorInfo = String.format(Locale.ROOT, "(%d, %d) %.5g", x, y, pyramid.getPlane(0, 0)[y][x]);
+        }
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics graphics) {
+        super.paintComponent(graphics);
+        Graphics2D g = (Graphics2D) graphics.create();
+        try {
+            if (pyramid == null) {
+                paintMessage(g, message);
+                return;
+            }
+            if (fitPending) fitToWindow();
+
+            int level = pyramid.levelForZoom(zoom);
+            int scale = 1 << level;
+            int tileSize = Config.VIEWER_TILE_SIZE;
+            int levelWidth = pyramid.getWidth(level);
+            int levelHeight = pyramid.getHeight(level);
+
+            // Tuiles du niveau qui recoupent la vue
+            int firstX = Math.max(0, (int) Math.floor(originX / scale / tileSize));
+            int firstY = Math.max(0, (int) Math.floor(originY / scale / tileSize));
+            int lastX = Math.min((levelWidth - 1) / tileSize,
+                    (int) Math.floor((originX + getWidth() / zoom) / scale / tileSize));
+            int lastY = Math.min((levelHeight - 1) / tileSize,
+                    (int) Math.floor((originY + getHeight() / zoom) / scale / tileSize));
+
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, zoom >= 1.0
+                    ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+                    : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            for (int ty = firstY; ty <= lastY; ty++) {
+                for (int tx = firstX; tx <= lastX; tx++) {
+                    BufferedImage tile = tile(level, tx, ty);
+                    // Bords calculés depuis les coordonnées absolues : pas de jointure visible
+                    int x0 = (int) Math.round(((double) tx * tileSize * scale - originX) * zoom);
+                    int y0 = (int) Math.round(((double) ty * tileSize * scale - originY) * zoom);
+                    int x1 = (int) Math.round(((double) (tx * tileSize + tile.getWidth()) * scale - originX) * zoom);
+                    int y1 = (int) Math.round(((double) (ty * tileSize + tile.getHeight()) * scale - originY) * zoom);
+                    g.drawImage(tile, x0, y0, x1, y1, 0, 0, tile.getWidth(), tile.getHeight(), null);
+                }
+            }
+
+            String info = String.format(Locale.ROOT, "%s  %d×%d  %.0f%%  niveau %d  %s", title,
+                    pyramid.getWidth(0), pyramid.getHeight(0), zoom * 100, level, cursorInfo);
+            paintCaption(g, info);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Tuile (tx, ty) du niveau, convertie par la STF au premier affichage
+     */
+    private BufferedImage tile(int level, int tx, int ty) {
+        long key = ((long) level << 48) | ((long) ty << 24) | tx;
+        BufferedImage tile = tiles.get(key);
+        if (tile != null) return tile;
+
+        int tileSize = Config.VIEWER_TILE_SIZE;
+        int x0 = tx * tileSize;
+        int y0 = ty * tileSize;
+        int width = Math.min(tileSize, pyramid.getWidth(level) - x0);
+        int height = Math.min(tileSize, pyramid.getHeight(level) - y0);
+        int[] rgb = new int[width * height];
+        if (pyramid.getChannels() == 3) {
+            float[][] red = pyramid.getPlane(level, 0);
+            float[][] green = pyramid.getPlane(level, 1);
+            float[][] blue = pyramid.getPlane(level, 2);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    rgb[y * width + x] = stretch.apply(red[y0 + y][x0 + x]) << 16
+                            | stretch.apply(green[y0 + y][x0 + x]) << 8
+                            | stretch.apply(blue[y0 + y][x0 + x]);
+                }
+            }
+        } else {
+            float[][] plane = pyramid.getPlane(level, 0);
+            for (int y = 0; y < height; y++) {
+                float[] row = plane[y0 + y];
+                for (int x = 0; x < width; x++) {
+                    int v = stretch.apply(row[x0 + x]);
+                    rgb[y * width + x] = v << 16 | v << 8 | v;
+                }
+            }
+        }
+        tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        tile.setRGB(0, 0, width, height, rgb, 0, width);
+        tiles.put(key, tile);
+        return tile;
+    }
+
+    private void paintMessage(Graphics2D g, String text) {
+        if (text == null) return;
+        g.setColor(Config.Colors.SUBTITLE_COLOR);
+        g.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+        FontMetrics metrics = g.getFontMetrics();
+        g.drawString(text, (getWidth() - metrics.stringWidth(text)) / 2, getHeight() / 2);
+    }
+
+    private void paintCaption(Graphics2D g, String text) {
+        g.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        FontMetrics metrics = g.getFontMetrics();
+        int height = metrics.getHeight() + 6;
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(0, getHeight() - height, getWidth(), height);
+        g.setColor(Config.Colors.SUBTITLE_COLOR);
+        g.drawString(text, 6, getHeight() - 6 - metrics.getDescent());
+    }
+}
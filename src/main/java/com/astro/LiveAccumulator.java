@@ -0,0 +1,210 @@
+package com.astro;
+
+import java.nio.file.Path;
+
+/**
+ * État cumulé d'un empilement en direct, fusionnable.
+ * Par pixel et par canal : somme pondérée, poids total, et moments de Welford (nombre,
+ * moyenne, somme des carrés des écarts). Un sigma-clipping approché est tenu en parallèle :
+ * une nouvelle valeur n'est cumulée que si elle reste à moins de kappa·sigma des moments
+ * courants. Ajouter une image coûte O(pixels), sans revenir sur les images précédentes,
+ * et deux états (deux sessions, deux nuits) se fusionnent par {@link #merge}.
+ */
+public class LiveAccumulator {
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final double kappa;
+    private final float[][] weightedSum;
+    private final float[][] weight;
+    private final int[][] count;
+    private final float[][] mean;
+    private final float[][] m2;
+    private final float[][] clippedSum;
+    private final int[][] clippedCount;
+    private int frameCount;
+
+    public LiveAccumulator(int width, int height, boolean isColor) {
+        this(width, height, isColor, Config.SIGMA_CLIP_THRESHOLD);
+    }
+
+    public LiveAccumulator(int width, int height, boolean isColor, double kappa) {
+        this.width = width;
+        this.height = height;
+        this.channels = isColor ? 3 : 1;
+        this.kappa = kappa;
+        int pixels = width * height;
+        this.weightedSum = new float[channels][pixels];
+        this.weight = new float[channels][pixels];
+        this.count = new int[channels][pixels];
+        this.mean = new float[channels][pixels];
+        this.m2 = new float[channels][pixels];
+        this.clippedSum = new float[channels][pixels];
+        this.clippedCount = new int[channels][pixels];
+    }
+
+    /**
+     * Vrai si la méthode peut être lue sur l'état cumulé
+     */
+    public static boolean supports(StackingEngine.StackingMethod method) {
+        return switch (method) {
+            case AVERAGE, WEIGHTED_AVERAGE, SIGMA_CLIP -> true;
+            case MEDIAN, MAXIMUM, MINIMUM -> false;
+        };
+    }
+
+    /**
+     * Cumule des lignes alignées [y0, y0 + rows) d'un canal ; les pixels nuls (hors champ) sont ignorés
+     */
+    public synchronized void addRows(int channel, int y0, int rows, float[][] band, double frameWeight) {
+        float w = (float) frameWeight;
+        float[] ws = weightedSum[channel];
+        float[] wt = weight[channel];
+        int[] n = count[channel];
+        float[] mu = mean[channel];
+        float[] s2 = m2[channel];
+        float[] cs = clippedSum[channel];
+        int[] cn = clippedCount[channel];
+
+        for (int r = 0; r < rows; r++) {
+            float[] row = band[r];
+            int base = (y0 + r) * width;
+            for (int x = 0; x < width; x++) {
+                float v = row[x];
+                if (v <= 0) continue;
+                int i = base + x;
+
+                // Rejet approché : comparer aux moments avant d'y intégrer la valeur
+                int k = n[i];
+                boolean keep = true;
+                if (k >= Config.MIN_VALUES_FOR_SIGMA_CLIP) {
+                    double sigma = Math.sqrt(s2[i] / k);
+                    keep = Math.abs(v - mu[i]) <= kappa * sigma;
+                }
+                if (keep) {
+                    cs[i] += v;
+                    cn[i]++;
+                }
+
+                ws[i] += v * w;
+                wt[i] += w;
+                n[i] = k + 1;
+                float delta = v - mu[i];
+                mu[i] += delta / (k + 1);
+                s2[i] += delta * (v - mu[i]);
+            }
+        }
+    }
+
+    /**
+     * Image comptée une fois toutes ses lignes cumulées
+     */
+    public synchronized void frameAdded() {
+        frameCount++;
+    }
+
+    /**
+     * Fusionne un autre état de même géométrie (moments combinés par la formule de Chan).
+     * L'autre état est copié sous son propre verrou, puis fusionné sous celui-ci : les deux
+     * verrous ne sont jamais tenus ensemble, deux fusions croisées ne peuvent pas s'interbloquer.
+     */
+    public void merge(LiveAccumulator other) {
+        if (other == this) {
+            throw new IllegalArgumentException("Fusion d'un état avec lui-même");
+        }
+        if (other.width != width || other.height != height || other.channels != channels) {
+            throw new IllegalArgumentException("Géométries différentes: " + other.width + "x" + other.height +
+                    (other.channels == 3 ? " RGB" : " mono") + " vs " + width + "x" + height +
+                    (channels == 3 ? " RGB" : " mono"));
+        }
+        if (other.kappa != kappa) {
+            throw new IllegalArgumentException("Seuils de rejet différents: " + other.kappa + " vs " + kappa);
+        }
+        LiveAccumulator snapshot = other.copy();
+        synchronized (this) {
+            for (int c = 0; c < channels; c++) {
+                for (int i = 0; i < width * height; i++) {
+                    int nb = snapshot.count[c][i];
+                    if (nb == 0) continue;
+                    int na = count[c][i];
+                    int n = na + nb;
+                    float delta = snapshot.mean[c][i] - mean[c][i];
+                    mean[c][i] += delta * nb / n;
+                    m2[c][i] += snapshot.m2[c][i] + delta * delta * ((float) na * nb / n);
+                    count[c][i] = n;
+                    weightedSum[c][i] += snapshot.weightedSum[c][i];
+                    weight[c][i] += snapshot.weight[c][i];
+                    clippedSum[c][i] += snapshot.clippedSum[c][i];
+                    clippedCount[c][i] += snapshot.clippedCount[c][i];
+                }
+            }
+            frameCount += snapshot.frameCount;
+        }
+    }
+
+    /**
+     * Copie cohérente de l'état (aucun ajout en cours pendant la copie)
+     */
+    synchronized LiveAccumulator copy() {
+        LiveAccumulator copy = new LiveAccumulator(width, height, channels == 3, kappa);
+        for (int c = 0; c < channels; c++) {
+            System.arraycopy(weightedSum[c], 0, copy.weightedSum[c], 0, weightedSum[c].length);
+            System.arraycopy(weight[c], 0, copy.weight[c], 0, weight[c].length);
+            System.arraycopy(count[c], 0, copy.count[c], 0, count[c].length);
+            System.arraycopy(mean[c], 0, copy.mean[c], 0, mean[c].length);
+            System.arraycopy(m2[c], 0, copy.m2[c], 0, m2[c].length);
+            System.arraycopy(clippedSum[c], 0, copy.clippedSum[c], 0, clippedSum[c].length);
+            System.arraycopy(clippedCount[c], 0, copy.clippedCount[c], 0, clippedCount[c].length);
+        }
+        copy.frameCount = frameCount;
+        return copy;
+    }
+
+    /**
+     * Valeur courante d'un pixel pour la méthode donnée
+     */
+    public synchronized float value(StackingEngine.StackingMethod method, int channel, int index) {
+        return switch (method) {
+            case AVERAGE -> count[channel][index] > 0 ? mean[channel][index] : 0;
+            case WEIGHTED_AVERAGE -> {
+                float wt = weight[channel][index];
+                yield wt > 0 ? weightedSum[channel][index] / wt : 0;
+            }
+            case SIGMA_CLIP -> {
+                int kept = clippedCount[channel][index];
+                yield kept > 0 ? clippedSum[channel][index] / kept
+                        : (count[channel][index] > 0 ? mean[channel][index] : 0);
+            }
+            case MEDIAN, MAXIMUM, MINIMUM -> throw new IllegalArgumentException(
+                    "Méthode non disponible en direct: " + method.getDisplayName());
+        };
+    }
+
+    /**
+     * Image résultat courante (canal vert recopié dans la version mono pour le RGB)
+     */
+    public synchronized FitsImage toImage(Path path, StackingEngine.StackingMethod method) {
+        FitsImage result = FitsImage.createEmpty(path, width, height, channels == 3);
+        for (int c = 0; c < channels; c++) {
+            float[][] rows = channels == 3 ? result.getColorData()[c] : result.getData();
+            for (int y = 0; y < height; y++) {
+                float[] row = rows[y];
+                int base = y * width;
+                for (int x = 0; x < width; x++) {
+                    row[x] = value(method, c, base + x);
+                }
+            }
+        }
+        if (channels == 3) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(result.getColorData()[1][y], 0, result.getData()[y], 0, width);
+            }
+        }
+        return result;
+    }
+
+    public synchronized int getFrameCount() { return frameCount; }
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public boolean isColor() { return channels == 3; }
+}
@@ -0,0 +1,206 @@
+package com.astro;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Session d'empilement en direct : chaque nouvelle pose est alignée sur la référence de la
+ * session (la première image acceptée), redressée bande par bande et cumulée dans un
+ * {@link LiveAccumulator}. Le résultat courant peut être demandé à tout moment ; ajouter une
+ * image ne recalcule rien sur les précédentes.
+ * Le canvas est celui de l'image de référence : les parties d'une pose qui en sortent sont ignorées.
+ */
+public class LiveStackSession {
+    private static final int MAX_STARS = 100;
+    private static final int BAND_ROWS = 64;
+
+    private final StackingEngine.StackingMethod method;
+    private Path referencePath;
+    private StarCatalog referenceStars;
+    private ImageAligner.CanvasInfo canvas;
+    private LiveAccumulator accumulator;
+    private int rejectedCount;
+    // Poids 1/σ² mesurés des poses cumulées : référence des poses au bruit non mesurable
+    private double[] measuredWeights = new double[16];
+    private int measuredCount;
+
+    public LiveStackSession(StackingEngine.StackingMethod method) {
+        if (!LiveAccumulator.supports(method)) {
+            throw new IllegalArgumentException("Méthode non disponible en direct: " + method.getDisplayName());
+        }
+        this.method = method;
+    }
+
+    /**
+     * Aligne et cumule une nouvelle image. La première image devient la référence.
+     *
+     * @return le résultat d'alignement ; une image refusée n'est pas cumulée
+     */
+    public ImageAligner.AlignmentResult addFrame(FitsImage image) throws Exception {
+        StarCatalog stars = DetectionCache.detectStars(image, MAX_STARS);
+
+        ImageAligner.AlignmentResult result;
+        synchronized (this) {
+            if (accumulator == null) {
+                start(image, stars);
+                result = new ImageAligner.AlignmentResult(ImageAligner.AffineTransform.identity(),
+                        stars.size(), stars.size());
+            } else {
+                checkGeometry(image);
+                result = null;
+            }
+        }
+
+        if (result == null) {
+            result = ImageAligner.findAffineTransformWithQuality(referenceStars, stars);
+            if (!result.accepted || result.inliers < 3) {
+                synchronized (this) {
+                    rejectedCount++;
+                }
+                System.out.println("✗ Pose écartée: " + image.getFileName() + " - " +
+                        (result.rejectReason != null ? result.rejectReason : "alignement impossible"));
+                return result;
+            }
+        }
+
+        image.setTransform(result.transform);
+        fold(image);
+        System.out.println(String.format("✓ Pose %d cumulée: %s", getFrameCount(), image.getFileName()));
+        return result;
+    }
+
+    private void start(FitsImage image, StarCatalog stars) {
+        referencePath = image.getPath();
+        referenceStars = stars;
+        canvas = new ImageAligner.CanvasInfo(image.getWidth(), image.getHeight(), 0, 0);
+        accumulator = new LiveAccumulator(image.getWidth(), image.getHeight(), image.isColor());
+        System.out.println("Session en direct: référence " + image.getFileName() +
+                " (" + image.getWidth() + "x" + image.getHeight() + ", " + stars.size() + " étoiles)");
+    }
+
+    private void checkGeometry(FitsImage image) {
+        if (image.isColor() != accumulator.isColor()) {
+            throw new IllegalArgumentException("Type d'image différent de la référence: " + image.getFileName());
+        }
+    }
+
+    /**
+     * Poids 1/σ² de la pose ; un bruit non mesurable prend la médiane des poses déjà cumulées,
+     * ou 1 tant qu'aucune pose n'a été mesurée (comme {@link FitsImage#fillUnknownWeights})
+     */
+    private synchronized double weightOf(FitsImage image) {
+        double weight = image.getStackWeight();
+        if (Double.isNaN(weight)) {
+            double median = FitsImage.medianWeight(measuredWeights, measuredCount);
+            return Double.isNaN(median) ? 1.0 : median;
+        }
+        if (measuredCount == measuredWeights.length) {
+            measuredWeights = Arrays.copyOf(measuredWeights, measuredCount * 2);
+        }
+        measuredWeights[measuredCount++] = weight;
+        return weight;
+    }
+
+    /**
+     * Redresse l'image bande par bande directement dans l'accumulateur, sans copie alignée complète
+     */
+    private void fold(FitsImage image) {
+        double frameWeight = weightOf(image);
+        int channels = image.isColor() ? 3 : 1;
+        float[][] band = new float[BAND_ROWS][canvas.width];
+        for (int y0 = 0; y0 < canvas.height; y0 += BAND_ROWS) {
+            int rows = Math.min(BAND_ROWS, canvas.height - y0);
+            for (int c = 0; c < channels; c++) {
+                image.warpRows(c, canvas, y0, rows, band);
+                accumulator.addRows(c, y0, rows, band, frameWeight);
+            }
+        }
+        accumulator.frameAdded();
+    }
+
+    /**
+     * Fusionne une autre session de même référence (par exemple une autre nuit alignée sur la
+     * même image de référence). L'état de l'autre session est relevé sous son verrou, puis fusionné
+     * sous celui-ci : deux sessions fusionnées l'une dans l'autre en même temps ne s'interbloquent pas.
+     *
+     * @throws IllegalArgumentException si les sessions n'ont pas la même référence, le même canvas,
+     *                                  la même méthode ou les mêmes dimensions
+     */
+    public void merge(LiveStackSession other) {
+        if (other == this) {
+            throw new IllegalArgumentException("Fusion d'une session avec elle-même");
+        }
+        LiveAccumulator otherAccumulator;
+        Path otherReference;
+        ImageAligner.CanvasInfo otherCanvas;
+        int otherRejected;
+        double[] otherWeights;
+        synchronized (other) {
+            otherAccumulator = other.accumulator;
+            otherReference = other.referencePath;
+            otherCanvas = other.canvas;
+            otherRejected = other.rejectedCount;
+            otherWeights = Arrays.copyOf(other.measuredWeights, other.measuredCount);
+        }
+        if (otherAccumulator == null) return;
+        if (other.method != method) {
+            throw new IllegalArgumentException("Méthodes différentes: " + other.method.getDisplayName() +
+                    " vs " + method.getDisplayName());
+        }
+
+        synchronized (this) {
+            if (accumulator == null) {
+                throw new IllegalStateException("Session vide : ajouter d'abord une image de référence");
+            }
+            if (!referencePath.equals(otherReference)) {
+                throw new IllegalArgumentException("Images de référence différentes: " +
+                        otherReference.getFileName() + " vs " + referencePath.getFileName());
+            }
+            if (otherCanvas.width != canvas.width || otherCanvas.height != canvas.height
+                    || otherCanvas.offsetX != canvas.offsetX || otherCanvas.offsetY != canvas.offsetY) {
+                throw new IllegalArgumentException("Canvas différents: " + otherCanvas.width + "x" +
+                        otherCanvas.height + " vs " + canvas.width + "x" + canvas.height);
+            }
+            // Dimensions et type vérifiés par l'accumulateur, qui copie l'autre état sous son verrou
+            accumulator.merge(otherAccumulator);
+            rejectedCount += otherRejected;
+            measuredWeights = Arrays.copyOf(measuredWeights, Math.max(measuredWeights.length,
+                    measuredCount + otherWeights.length));
+            System.arraycopy(otherWeights, 0, measuredWeights, measuredCount, otherWeights.length);
+            measuredCount += otherWeights.length;
+        }
+    }
+
+    /**
+     * Empilement courant avec la méthode de la session
+     */
+    public FitsImage currentResult() {
+        return currentResult(method);
+    }
+
+    /**
+     * Empilement courant avec une autre méthode disponible en direct
+     */
+    public synchronized FitsImage currentResult(StackingEngine.StackingMethod resultMethod) {
+        if (accumulator == null) {
+            throw new IllegalStateException("Aucune image dans la session");
+        }
+        return accumulator.toImage(referencePath, resultMethod);
+    }
+
+    public synchronized int getFrameCount() {
+        return accumulator != null ? accumulator.getFrameCount() : 0;
+    }
+
+    public synchronized int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public synchronized Path getReferencePath() {
+        return referencePath;
+    }
+
+    public StackingEngine.StackingMethod getMethod() {
+        return method;
+    }
+}
@@ -0,0 +1,199 @@
+package com.astro;
+
+import nom.tam.fits.Header;
+import nom.tam.util.FitsFile;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Planification mémoire d'un empilement.
+ * Estime l'empreinte d'un travail à partir des seuls en-têtes (dimensions, canaux, nombre
+ * d'images, canvas issu des transformations, besoins de la méthode) et la compare au tas
+ * disponible pour choisir l'exécution : tout en mémoire, par bandes de lignes (sources en
+ * mémoire, ou fenêtres de lignes relues depuis le disque à chaque bande), sigma-clipping
+ * en deux passes, ou avec écriture des images alignées sur disque. Un OOM devient ainsi une exécution plus lente.
+ */
+public class MemoryPlanner {
+    private static final double SAFETY_FACTOR = 0.8;
+    private static final int MAX_BAND_ROWS = 512;
+
+    public enum Mode {
+        IN_MEMORY("Tout en mémoire"),
+        BAND_STREAMED("Par bandes"),
+        SPILL_TO_DISK("Images alignées sur disque"),
+        TWO_PASS_STREAMED("Deux passes en flux");
+
+        private final String displayName;
+
+        Mode(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * Géométrie d'une image lue dans l'en-tête FITS
+     */
+    public static class FrameInfo {
+        public final int width;
+        public final int height;
+        public final boolean isColor;
+        public final int bitpix;
+
+        public FrameInfo(int width, int height, boolean isColor, int bitpix) {
+            this.width = width;
+            this.height = height;
+            this.isColor = isColor;
+            this.bitpix = bitpix;
+        }
+
+        public static FrameInfo of(FitsImage image) {
+            return new FrameInfo(image.getWidth(), image.getHeight(), image.isColor(), image.getBitpix());
+        }
+
+        /**
+         * Mémoire occupée une fois l'image chargée : pixels float + tableau brut lu par la bibliothèque FITS
+         */
+        public long residentBytes() {
+            return (long) width * height * (4L * (isColor ? 4 : 1) + Math.abs(bitpix) / 8 * (isColor ? 3 : 1));
+        }
+    }
+
+    /**
+     * Plan retenu et estimation correspondante
+     */
+    public static class Plan {
+        public final Mode mode;
+        public final int bandRows;
+        public final long estimatedBytes;
+        public final long budgetBytes;
+
+        public Plan(Mode mode, int bandRows, long estimatedBytes, long budgetBytes) {
+            this.mode = mode;
+            this.bandRows = bandRows;
+            this.estimatedBytes = estimatedBytes;
+            this.budgetBytes = budgetBytes;
+        }
+
+        public String describe() {
+            return String.format("%s%s - besoin estimé %d Mo / budget %d Mo",
+                    mode.getDisplayName(),
+                    mode == Mode.IN_MEMORY || mode == Mode.TWO_PASS_STREAMED ? "" : " (" + bandRows + " lignes)",
+                    estimatedBytes >> 20, budgetBytes >> 20);
+        }
+    }
+
+    private MemoryPlanner() {
+        // Classe utilitaire, pas d'instanciation
+    }
+
+    /**
+     * Lit uniquement l'en-tête primaire (aucune donnée pixel)
+     */
+    public static FrameInfo readFrameInfo(Path path) throws Exception {
+        try (FitsFile in = new FitsFile(path.toFile(), "r")) {
+            Header header = Header.readHeader(in);
+            int naxis = header.getIntValue("NAXIS", 2);
+            int width = header.getIntValue("NAXIS1", 0);
+            int height = header.getIntValue("NAXIS2", 0);
+            int depth = naxis >= 3 ? header.getIntValue("NAXIS3", 1) : 1;
+            return new FrameInfo(width, height, depth == 3, header.getIntValue("BITPIX", -32));
+        }
+    }
+
+    /**
+     * Tas encore disponible : maximum de la JVM moins ce qui est déjà occupé
+     */
+    public static long availableHeap() {
+        Runtime rt = Runtime.getRuntime();
+        long used = rt.totalMemory() - rt.freeMemory();
+        return Math.max(0, rt.maxMemory() - used);
+    }
+
+    /**
+     * Choisit le mode d'exécution.
+     *
+     * @param frames            géométrie des images à empiler
+     * @param canvas            canvas final
+     * @param method            méthode d'empilement
+     * @param sourcesResident   vrai si les images sources sont déjà en mémoire (pas à compter)
+     * @param budgetBytes       mémoire utilisable pour ce travail
+     */
+    public static Plan plan(List<FrameInfo> frames, ImageAligner.CanvasInfo canvas,
+                            StackingEngine.StackingMethod method, boolean sourcesResident, long budgetBytes) {
+        int n = frames.size();
+        boolean isColor = !frames.isEmpty() && frames.get(0).isColor;
+        int channels = isColor ? 3 : 1;
+        // Une FitsImage couleur garde les 3 canaux plus une copie mono du vert
+        int planes = isColor ? 4 : 1;
+        long canvasPixels = (long) canvas.width * canvas.height;
+        long usable = (long) (budgetBytes * SAFETY_FACTOR);
+
+        long largestSource = 0;
+        long allSources = 0;
+        for (FrameInfo frame : frames) {
+            long bytes = frame.residentBytes();
+            largestSource = Math.max(largestSource, bytes);
+            allSources += bytes;
+        }
+        long sources = sourcesResident ? 0 : allSources;
+        long result = canvasPixels * 4 * planes;
+        long alignedCopy = canvasPixels * 4 * planes;
+
+        long inMemory;
+        if (StackAccumulator.supports(method)) {
+            // Pipeline : accumulateur + quelques copies alignées en vol
+            int accumulatorPlanes = method == StackingEngine.StackingMethod.AVERAGE
+                    || method == StackingEngine.StackingMethod.WEIGHTED_AVERAGE ? 2 : 1;
+            inMemory = sources + canvasPixels * 4 * channels * accumulatorPlanes
+                    + alignedCopy * (Config.PIPELINE_QUEUE_DEPTH + 1) + result;
+        } else {
+            inMemory = sources + alignedCopy * n + result;
+        }
+        if (inMemory <= usable) {
+            return new Plan(Mode.IN_MEMORY, canvas.height, inMemory, budgetBytes);
+        }
+
+        // Par bandes : N bandes redressées à la volée, depuis les sources en mémoire ou depuis des
+        // fenêtres de lignes relues à chaque bande (lignes de la bande, plus la marge due à la
+        // rotation, bornée par l'écart de hauteur entre canvas et image)
+        long bandRowBytes = (long) n * canvas.width * 4 * channels;
+        long bandFixed = result;
+        if (!sourcesResident) {
+            for (FrameInfo frame : frames) {
+                long sourceRowBytes = frame.residentBytes() / Math.max(1, frame.height);
+                bandRowBytes += sourceRowBytes;
+                bandFixed += sourceRowBytes * (Math.max(0, canvas.height - frame.height) + 2);
+            }
+        }
+        int bandRows = fitRows(usable - bandFixed, bandRowBytes, canvas.height);
+        // Sources déjà en mémoire : relire des bandes depuis le disque ne ferait rien gagner.
+        // Sinon, des bandes trop basses reliraient chaque fichier trop souvent
+        if (sourcesResident || bandRows >= Math.min(32, canvas.height)) {
+            bandRows = Math.max(1, bandRows);
+            return new Plan(Mode.BAND_STREAMED, bandRows, bandFixed + bandRows * bandRowBytes, budgetBytes);
+        }
+
+        // Sigma-clipping : quatre tableaux par canal suffisent, les images sont relues à la seconde passe
+        if (method == StackingEngine.StackingMethod.SIGMA_CLIP) {
+            long streamed = canvasPixels * 4 * 4 * channels + alignedCopy * (Config.PIPELINE_QUEUE_DEPTH + 1)
+                    + largestSource * (Config.PIPELINE_QUEUE_DEPTH + 1) + result;
+            return new Plan(Mode.TWO_PASS_STREAMED, 0, streamed, budgetBytes);
+        }
+
+        // Sur disque : une seule source à la fois, les bandes sont relues depuis le disque
+        long spillFixed = (sourcesResident ? 0 : largestSource) + result + (long) canvas.width * 4 * channels * 64;
+        int spillRows = Math.max(1, fitRows(usable - spillFixed, bandRowBytes, canvas.height));
+        return new Plan(Mode.SPILL_TO_DISK, spillRows, spillFixed + spillRows * bandRowBytes, budgetBytes);
+    }
+
+    private static int fitRows(long bytesAvailable, long bytesPerRow, int maxRows) {
+        if (bytesAvailable <= 0 || bytesPerRow <= 0) return 0;
+        long rows = bytesAvailable / bytesPerRow;
+        return (int) Math.min(Math.min(rows, maxRows), MAX_BAND_ROWS);
+    }
+}
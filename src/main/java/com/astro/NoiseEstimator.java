@@ -0,0 +1,78 @@
+package com.astro;
+
+/**
+ * Estimation rapide du bruit de fond par MAD (écart absolu médian) sur un sous-échantillon
+ * régulier de pixels. Les étoiles sont une petite fraction des pixels : la médiane et la MAD
+ * les ignorent, il n'y a donc pas besoin de masque. Coût : quelques millisecondes par image.
+ */
+public class NoiseEstimator {
+    private static final int SAMPLE_SIZE = 65536;
+    private static final double MAD_TO_SIGMA = 1.4826;
+
+    private NoiseEstimator() {
+        // Classe utilitaire, pas d'instanciation
+    }
+
+    /**
+     * Écart-type robuste du fond (1.4826 × MAD), pixels nuls (hors champ) exclus
+     */
+    public static double estimateSigma(float[][] data) {
+        int height = data.length;
+        int width = height > 0 ? data[0].length : 0;
+        if (width == 0) return 0;
+
+        int step = Math.max(1, (int) Math.sqrt((double) width * height / SAMPLE_SIZE));
+        float[] samples = new float[(height / step + 1) * (width / step + 1)];
+        int n = 0;
+        // Décalage d'une demi-maille pour ne pas retomber sur les mêmes colonnes à chaque ligne
+        for (int y = step / 2; y < height; y += step) {
+            float[] row = data[y];
+            for (int x = (y / step) % 2 == 0 ? 0 : step / 2; x < width; x += step) {
+                float v = row[x];
+                if (v > 0) {
+                    samples[n++] = v;
+                }
+            }
+        }
+        if (n < 2) return 0;
+
+        float median = select(samples, n, n / 2);
+        for (int i = 0; i < n; i++) {
+            samples[i] = Math.abs(samples[i] - median);
+        }
+        float mad = select(samples, n, n / 2);
+        return MAD_TO_SIGMA * mad;
+    }
+
+    /**
+     * k-ième plus petite valeur des n premiers éléments (sélection rapide, modifie le tableau)
+     */
+    static float select(float[] values, int n, int k) {
+        int left = 0;
+        int right = n - 1;
+        while (left < right) {
+            float pivot = values[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (values[i] < pivot) i++;
+                while (values[j] > pivot) j--;
+                if (i <= j) {
+                    float t = values[i];
+                    values[i] = values[j];
+                    values[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return values[k];
+    }
+}
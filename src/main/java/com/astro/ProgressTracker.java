@@ -0,0 +1,212 @@
+package com.astro;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progression structurée d'un calcul (phase, image courante, éléments faits / total, débit).
+ *
+ * Les threads de calcul ne font qu'incrémenter des compteurs sans verrou ({@link #advance}) :
+ * aucune chaîne construite, aucun appel d'écouteur dans les boucles. Un unique thread
+ * échantillonneur, partagé par tous les suivis actifs, publie un {@link Snapshot} aux écouteurs
+ * toutes les {@link Config#PROGRESS_SAMPLE_MS} ms, seulement si quelque chose a changé.
+ *
+ * <pre>
+ * try (ProgressTracker progress = ProgressTracker.start(callback)) {
+ *     progress.phase("Empilement", "lignes", height, 20, 99);
+ *     for (...) { ...; progress.advance(1); }
+ * }
+ * </pre>
+ */
+public class ProgressTracker implements AutoCloseable {
+
+    /**
+     * État publié : instantané immuable, calculé par l'échantillonneur
+     */
+    public static final class Snapshot {
+        public final String phase;
+        public final String unit;
+        public final int frame;         // image courante (base 1), 0 si sans objet
+        public final int frameCount;
+        public final long done;
+        public final long total;
+        public final double itemsPerSecond;
+        public final int percent;       // progression globale, bornes de la phase comprises
+
+        Snapshot(String phase, String unit, int frame, int frameCount, long done, long total,
+                 double itemsPerSecond, int percent) {
+            this.phase = phase;
+            this.unit = unit;
+            this.frame = frame;
+            this.frameCount = frameCount;
+            this.done = done;
+            this.total = total;
+            this.itemsPerSecond = itemsPerSecond;
+            this.percent = percent;
+        }
+
+        /**
+         * Texte court pour une barre d'état : "Empilement: 45% (12/30 images, 3.2 images/s)"
+         */
+        public String describe() {
+            StringBuilder text = new StringBuilder(phase);
+            if (total > 0) {
+                text.append(": ").append(done * 100 / total).append("% (").append(done).append('/').append(total)
+                        .append(' ').append(unit);
+                if (itemsPerSecond > 0) {
+                    text.append(String.format(", %.1f %s/s", itemsPerSecond, unit));
+                }
+                text.append(')');
+            }
+            if (frameCount > 0) {
+                text.append(" - image ").append(frame).append('/').append(frameCount);
+            }
+            return text.toString();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void onProgress(Snapshot snapshot);
+    }
+
+    private static final List<ProgressTracker> ACTIVE = new CopyOnWriteArrayList<>();
+    private static Thread sampler;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder done = new LongAdder();
+
+    // Écrits par le thread qui change de phase, lus par l'échantillonneur
+    private volatile String phase = "";
+    private volatile String unit = "";
+    private volatile long total;
+    private volatile int percentFrom;
+    private volatile int percentTo = 100;
+    private volatile long phaseStart = System.nanoTime();
+    private volatile int frame;
+    private volatile int frameCount;
+    private volatile int revision;
+
+    // Propres à l'échantillonneur
+    private long publishedDone = -1;
+    private int publishedRevision = -1;
+
+    /**
+     * Suivi actif, publié à l'appelant historique (peut être null : le suivi reste alors muet)
+     */
+    public static ProgressTracker start(ImageAligner.ProgressCallback callback) {
+        ProgressTracker tracker = new ProgressTracker();
+        if (callback != null) {
+            tracker.addListener(snapshot -> callback.onProgress(snapshot.percent, snapshot.describe()));
+        }
+        tracker.open();
+        return tracker;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Nouvelle phase : le compteur repart de zéro et couvre [percentFrom, percentTo] de la progression globale
+     */
+    public void phase(String name, String itemUnit, long itemTotal, int from, int to) {
+        done.reset();
+        phase = name;
+        unit = itemUnit;
+        total = itemTotal;
+        percentFrom = from;
+        percentTo = to;
+        frame = 0;
+        frameCount = 0;
+        phaseStart = System.nanoTime();
+        revision++;
+    }
+
+    /**
+     * Éléments terminés : seul appel fait dans les boucles de calcul, sûr depuis plusieurs threads
+     */
+    public void advance(long items) {
+        done.add(items);
+    }
+
+    public void frame(int index, int count) {
+        frame = index;
+        frameCount = count;
+        revision++;
+    }
+
+    public Snapshot snapshot() {
+        long current = done.sum();
+        long phaseTotal = total;
+        double seconds = (System.nanoTime() - phaseStart) / 1e9;
+        int from = percentFrom;
+        int percent = phaseTotal > 0
+                ? from + (int) (Math.min(current, phaseTotal) * (double) (percentTo - from) / phaseTotal)
+                : from;
+        return new Snapshot(phase, unit, frame, frameCount, current, phaseTotal,
+                seconds > 0.05 ? current / seconds : 0, percent);
+    }
+
+    /**
+     * Arrête le suivi et publie l'état final depuis le thread appelant
+     */
+    @Override
+    public void close() {
+        ACTIVE.remove(this);
+        publish(true);
+    }
+
+    private void open() {
+        ACTIVE.add(this);
+        synchronized (ProgressTracker.class) {
+            if (sampler == null || !sampler.isAlive()) {
+                sampler = new Thread(ProgressTracker::sample, "progression");
+                sampler.setDaemon(true);
+                sampler.start();
+            }
+        }
+    }
+
+    private synchronized void publish(boolean force) {
+        long current = done.sum();
+        int currentRevision = revision;
+        if (!force && current == publishedDone && currentRevision == publishedRevision) return;
+        publishedDone = current;
+        publishedRevision = currentRevision;
+        if (listeners.isEmpty() || phase.isEmpty()) return;
+
+        Snapshot snapshot = snapshot();
+        for (Listener listener : listeners) {
+            try {
+                listener.onProgress(snapshot);
+            } catch (RuntimeException e) {
+                // Un écouteur défaillant ne doit pas interrompre le calcul ni les autres suivis
+                System.err.println("Écouteur de progression: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Boucle de l'échantillonneur ; elle s'arrête d'elle-même quand plus aucun suivi n'est actif
+     */
+    private static void sample() {
+        while (true) {
+            try {
+                Thread.sleep(Config.PROGRESS_SAMPLE_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (ProgressTracker tracker : ACTIVE) {
+                tracker.publish(false);
+            }
+            synchronized (ProgressTracker.class) {
+                if (ACTIVE.isEmpty()) {
+                    sampler = null;
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package com.astro;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Banc de non-régression de bout en bout : alignement et empilement complets d'un jeu
+ * synthétique ({@link SyntheticDatasetGenerator}), comme {@link FitsStackerCli}.
+ * <ul>
+ *   <li>les transformations retrouvées sont comparées à la vérité terrain du manifeste
+ *       (écart maximal en pixels aux coins et au centre de chaque image) ;</li>
+ *   <li>l'image empilée est comparée à une image de référence (PSNR, écart maximal), lue par
+ *       bandes ; sans référence, elle est calculée par le moteur séquentiel de référence
+ *       ({@link StackingEngine#stackReference}) à partir du même alignement ;</li>
+ *   <li>durée, pic de mémoire résidente (VmHWM, Linux) et pic de tas vont dans un rapport JSON.</li>
+ * </ul>
+ * Le passage échoue (code de sortie 1) dès qu'un budget est dépassé. La référence ne dépend
+ * jamais du moteur mesuré : les moteurs parallèles, par bandes ({@code --memory}) ou distribué
+ * ({@code --workers}) sont tous validés contre le même étalon.
+ * <pre>
+ * java -cp fits-stacker.jar com.astro.RegressionHarness --dataset jeu --method MEDIAN \
+ *      --golden jeu/reference_MEDIAN.fits --threads 8 --memory 1g --max-seconds 120 --max-rss 4g
+ * </pre>
+ */
+public class RegressionHarness {
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final int COMPARE_ROWS = 256;
+
+    /**
+     * Jeu, moteur et budgets d'un passage
+     */
+    public static class Options {
+        public Path dataset;
+        public StackingEngine.StackingMethod method = StackingEngine.StackingMethod.AVERAGE;
+        public Path output;          // null : <jeu>/regression_<méthode>.fits
+        public Path golden;          // null : pas de comparaison d'image
+        public boolean updateGolden = false;
+        public Path report;          // null : <jeu>/rapport_regression.json
+        public int threads = 0;
+        public long memoryBudget = 0;
+        public int workers = 0;
+        // Jeu généré s'il n'a pas encore de manifeste
+        public SyntheticDatasetGenerator.Options generator = new SyntheticDatasetGenerator.Options();
+        // Budgets (0 ou négatif : non vérifié)
+        public double maxTransformError = 0.5;   // pixels
+        public double minPsnr = 60.0;            // dB
+        public double maxPixelError = 0;
+        public double maxSeconds = 0;
+        public long maxRss = 0;
+        public long maxHeap = 0;
+        public int maxUnaligned = 0;
+
+        /**
+         * Lit les arguments ; un fichier de budgets ({@code --budgets}) donne des valeurs par
+         * défaut au format propriétés, avec les noms des options sans tirets (max-seconds=120).
+         */
+        public static Options parse(String[] args) throws IOException {
+            List<String> all = new ArrayList<>();
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--budgets") && i + 1 < args.length) {
+                    Properties budgets = new Properties();
+                    try (InputStream in = Files.newInputStream(Paths.get(args[++i]))) {
+                        budgets.load(in);
+                    }
+                    for (String key : budgets.stringPropertyNames()) {
+                        all.add("--" + key.trim());
+                        all.add(budgets.getProperty(key).trim());
+                    }
+                } else {
+                    all.add(args[i]);
+                }
+            }
+
+            Options options = new Options();
+            List<String> generatorArgs = new ArrayList<>();
+            for (int i = 0; i < all.size(); i++) {
+                String arg = all.get(i);
+                switch (arg) {
+                    case "-d", "--dataset" -> options.dataset = Paths.get(value(all, ++i, arg));
+                    case "-m", "--method" -> options.method = FitsStackerCli.Options.parseMethod(value(all, ++i, arg));
+                    case "-o", "--output" -> options.output = Paths.get(value(all, ++i, arg));
+                    case "-g", "--golden" -> options.golden = Paths.get(value(all, ++i, arg));
+                    case "--update-golden" -> options.updateGolden = true;
+                    case "-r", "--report" -> options.report = Paths.get(value(all, ++i, arg));
+                    case "-t", "--threads" -> options.threads = Math.max(1, (int) number(value(all, ++i, arg), arg));
+                    case "--memory" -> options.memoryBudget = FitsStackerCli.Options.parseSize(value(all, ++i, arg));
+                    case "--workers" -> options.workers = Math.max(0, (int) number(value(all, ++i, arg), arg));
+                    case "--max-transform-error" -> options.maxTransformError = number(value(all, ++i, arg), arg);
+                    case "--min-psnr" -> options.minPsnr = number(value(all, ++i, arg), arg);
+                    case "--max-pixel-error" -> options.maxPixelError = number(value(all, ++i, arg), arg);
+                    case "--max-seconds" -> options.maxSeconds = number(value(all, ++i, arg), arg);
+                    case "--max-rss" -> options.maxRss = FitsStackerCli.Options.parseSize(value(all, ++i, arg));
+                    case "--max-heap" -> options.maxHeap = FitsStackerCli.Options.parseSize(value(all, ++i, arg));
+                    case "--max-unaligned" -> options.maxUnaligned = (int) number(value(all, ++i, arg), arg);
+                    // Génération du jeu : options de SyntheticDatasetGenerator
+                    case "--count", "--size", "--bitpix", "--stars", "--seed", "--max-shift", "--max-rotation",
+                         "--max-scale", "--hot-pixels", "--trails", "--background", "--noise" -> {
+                        generatorArgs.add(arg);
+                        generatorArgs.add(value(all, ++i, arg));
+                    }
+                    case "--rgb" -> generatorArgs.add(arg);
+                    default -> throw new IllegalArgumentException("Option inconnue: " + arg);
+                }
+            }
+            if (options.dataset == null) {
+                throw new IllegalArgumentException("Aucun jeu (--dataset)");
+            }
+            options.generator = SyntheticDatasetGenerator.Options.parse(generatorArgs.toArray(new String[0]));
+            options.generator.outputDir = options.dataset;
+            return options;
+        }
+
+        private static String value(List<String> args, int i, String option) {
+            if (i >= args.size()) {
+                throw new IllegalArgumentException("Valeur manquante pour " + option);
+            }
+            return args.get(i);
+        }
+
+        private static double number(String text, String option) {
+            try {
+                return Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Nombre invalide pour " + option + ": " + text);
+            }
+        }
+    }
+
+    /**
+     * Écart entre la transformation retrouvée d'une image et la vérité terrain
+     */
+    public static class TransformCheck {
+        public final Path file;
+        public final boolean aligned;
+        public final double pixelError;      // écart maximal aux coins et au centre
+        public final double rotationError;   // degrés
+        public final double scaleError;
+
+        TransformCheck(Path file, boolean aligned, double pixelError, double rotationError, double scaleError) {
+            this.file = file;
+            this.aligned = aligned;
+            this.pixelError = pixelError;
+            this.rotationError = rotationError;
+            this.scaleError = scaleError;
+        }
+    }
+
+    /**
+     * Comparaison de deux images de même géométrie
+     */
+    public static class ImageComparison {
+        public final double psnr;       // infini si identiques
+        public final double maxError;
+        public final double rmsError;
+
+        ImageComparison(double psnr, double maxError, double rmsError) {
+            this.psnr = psnr;
+            this.maxError = maxError;
+            this.rmsError = rmsError;
+        }
+    }
+
+    private RegressionHarness() {
+        // Classe utilitaire, pas d'instanciation
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || List.of(args).contains("-h") || List.of(args).contains("--help")) {
+            printUsage();
+            System.exit(args.length == 0 ? EXIT_USAGE : EXIT_OK);
+        }
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Erreur: " + e.getMessage());
+            printUsage();
+            System.exit(EXIT_USAGE);
+            return;
+        }
+        try {
+            List<String> failures = run(options);
+            System.exit(failures.isEmpty() ? EXIT_OK : EXIT_FAILURE);
+        } catch (Exception e) {
+            System.err.println("ÉCHEC: " + e.getMessage());
+            System.exit(EXIT_FAILURE);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("""
+            Usage: RegressionHarness --dataset <dossier> [options]
+              -d, --dataset <dossier>        jeu synthétique (généré s'il n'a pas de manifest.txt)
+              -m, --method <méthode>         méthode d'empilement (défaut: AVERAGE)
+              -o, --output <fichier>         image empilée (défaut: <jeu>/regression_<méthode>.fits)
+              -g, --golden <fichier>         image de référence ; calculée par le moteur séquentiel si absente
+                  --update-golden            recalculer la référence (moteur séquentiel)
+              -r, --report <fichier>         rapport JSON (défaut: <jeu>/rapport_regression.json)
+              -t, --threads <n>              threads du pipeline (1 = moteur séquentiel)
+                  --memory <taille>          budget mémoire de l'empilement (force les moteurs par bandes)
+                  --workers <n>              empilement distribué sur n workers locaux
+            Budgets (0 = non vérifié) :
+                  --max-transform-error <px> écart maximal à la vérité terrain (défaut: 0.5)
+                  --min-psnr <dB>            PSNR minimal contre la référence (défaut: 60)
+                  --max-pixel-error <v>      écart maximal d'un pixel contre la référence
+                  --max-seconds <s>          durée maximale alignement + empilement
+                  --max-rss <taille>         pic de mémoire résidente (ex: 4g)
+                  --max-heap <taille>        pic de tas Java
+                  --max-unaligned <n>        images non alignées tolérées (défaut: 0)
+                  --budgets <fichier>        budgets en propriétés (max-seconds=120, max-rss=4g...)
+            Génération : --count --size --bitpix --rgb --stars --seed --max-shift --max-rotation
+                         --max-scale --hot-pixels --trails --background --noise (voir SyntheticDatasetGenerator)
+            """);
+    }
+
+    /**
+     * Exécute un passage complet ; renvoie la liste des budgets dépassés (vide si réussi)
+     */
+    public static List<String> run(Options options) throws Exception {
+        Path manifest = options.dataset.resolve(SyntheticDatasetGenerator.MANIFEST_NAME);
+        if (!Files.isRegularFile(manifest)) {
+            System.out.println("Pas de manifeste dans " + options.dataset + ": génération du jeu");
+            SyntheticDatasetGenerator.generate(options.generator);
+        }
+        List<SyntheticDatasetGenerator.FrameTruth> truths = SyntheticDatasetGenerator.readManifest(manifest);
+        String methodName = options.method.name();
+        Path output = options.output != null ? options.output
+                : options.dataset.resolve("regression_" + methodName + ".fits");
+        Path report = options.report != null ? options.report : options.dataset.resolve("rapport_regression.json");
+
+        FitsStackerCli.Options cli = new FitsStackerCli.Options();
+        for (SyntheticDatasetGenerator.FrameTruth truth : truths) {
+            cli.inputs.add(truth.file.toString());
+        }
+        cli.method = options.method;
+        cli.output = output;
+        cli.threads = options.threads;
+        cli.memoryBudget = options.memoryBudget;
+        cli.localWorkers = options.workers;
+        cli.quiet = true;
+
+        // Passage mesuré : alignement puis empilement, comme FitsStackerCli.run
+        resetPeaks();
+        StageMetrics.reset();
+        long start = System.nanoTime();
+        FitsStackerCli.AlignedJob aligned = FitsStackerCli.align(FitsStackerCli.expandInputs(cli.inputs), cli, null);
+        long alignEnd = System.nanoTime();
+        long budget = MemoryPlanner.availableHeap();
+        if (options.memoryBudget > 0) {
+            budget = Math.min(budget, options.memoryBudget);
+        }
+        MemoryPlanner.Plan plan = FitsStackerCli.plan(aligned, options.method, budget);
+        int threads = options.threads > 0 ? options.threads : Runtime.getRuntime().availableProcessors();
+        FitsStackerCli.stack(aligned, cli, plan, threads, null);
+        long end = System.nanoTime();
+        long peakHeap = peakHeap();
+        long peakRss = peakRss();
+        double seconds = (end - start) / 1e9;
+        StageMetrics.report(FitsStackerCli.metricsFileFor(report));
+
+        List<TransformCheck> checks = checkTransforms(truths, aligned);
+        ImageComparison comparison = null;
+        boolean goldenCreated = false;
+        if (options.golden != null) {
+            if (options.updateGolden || !Files.isRegularFile(options.golden)) {
+                // Hors mesure : moteur séquentiel de référence, tout en mémoire
+                Path parent = options.golden.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                StackingEngine.stackReference(aligned.frames, aligned.canvas, aligned.isColor,
+                        aligned.frames.get(0).path, options.method).saveFits(options.golden);
+                goldenCreated = true;
+                System.out.println("Référence enregistrée (moteur séquentiel): " + options.golden);
+            }
+            comparison = compare(output, options.golden);
+        }
+
+        // Budgets
+        List<String> failures = new ArrayList<>();
+        int unaligned = 0;
+        double worstTransform = 0;
+        for (TransformCheck check : checks) {
+            if (!check.aligned) {
+                unaligned++;
+            } else {
+                worstTransform = Math.max(worstTransform, check.pixelError);
+            }
+        }
+        if (unaligned > options.maxUnaligned) {
+            failures.add(String.format(Locale.ROOT, "%d images non alignées (max %d)", unaligned, options.maxUnaligned));
+        }
+        if (options.maxTransformError > 0 && worstTransform > options.maxTransformError) {
+            failures.add(String.format(Locale.ROOT, "écart de transformation %.3f px > %.3f px",
+                    worstTransform, options.maxTransformError));
+        }
+        if (comparison != null && options.minPsnr > 0 && comparison.psnr < options.minPsnr) {
+            failures.add(String.format(Locale.ROOT, "PSNR %.2f dB < %.2f dB", comparison.psnr, options.minPsnr));
+        }
+        if (comparison != null && options.maxPixelError > 0 && comparison.maxError > options.maxPixelError) {
+            failures.add(String.format(Locale.ROOT, "écart maximal %.4g > %.4g", comparison.maxError,
+                    options.maxPixelError));
+        }
+        if (options.maxSeconds > 0 && seconds > options.maxSeconds) {
+            failures.add(String.format(Locale.ROOT, "durée %.1f s > %.1f s", seconds, options.maxSeconds));
+        }
+        if (options.maxRss > 0 && peakRss > options.maxRss) {
+            failures.add(String.format(Locale.ROOT, "mémoire résidente %d Mo > %d Mo", peakRss >> 20,
+                    options.maxRss >> 20));
+        }
+        if (options.maxHeap > 0 && peakHeap > options.maxHeap) {
+            failures.add(String.format(Locale.ROOT, "tas %d Mo > %d Mo", peakHeap >> 20, options.maxHeap >> 20));
+        }
+
+        System.out.printf(Locale.ROOT, "=== Non-régression %s : %d images, %s, %d threads ===%n",
+                methodName, truths.size(), plan.mode, threads);
+        System.out.printf(Locale.ROOT, "Durée: %.1f s (alignement %.1f s, empilement %.1f s)%n",
+                seconds, (alignEnd - start) / 1e9, (end - alignEnd) / 1e9);
+        System.out.printf(Locale.ROOT, "Pic mémoire: résidente %s, tas %d Mo%n",
+                peakRss >= 0 ? (peakRss >> 20) + " Mo" : "indisponible", peakHeap >> 20);
+        System.out.printf(Locale.ROOT, "Transformations: écart max %.3f px, %d non alignées%n", worstTransform, unaligned);
+        if (comparison != null) {
+            System.out.printf(Locale.ROOT, "Référence: PSNR %s, écart max %.4g, RMS %.4g%n",
+                    Double.isInfinite(comparison.psnr) ? "∞ (identique)"
+                            : String.format(Locale.ROOT, "%.2f dB", comparison.psnr),
+                    comparison.maxError, comparison.rmsError);
+        }
+        writeReport(report, options, truths.size(), plan, threads, seconds, (alignEnd - start) / 1e9,
+                (end - alignEnd) / 1e9, peakRss, peakHeap, checks, comparison, goldenCreated, failures);
+        System.out.println("Rapport: " + report);
+        if (failures.isEmpty()) {
+            System.out.println("✓ Tous les budgets sont respectés");
+        } else {
+            for (String failure : failures) {
+                System.out.println("✗ " + failure);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Écarts aux vraies transformations. Le manifeste exprime chaque image dans le repère de la
+     * première ; l'alignement, dans celui de sa référence r : la vérité relative est
+     * T_r⁻¹ ∘ T_i, comparée à la transformation retrouvée aux coins et au centre de l'image.
+     */
+    static List<TransformCheck> checkTransforms(List<SyntheticDatasetGenerator.FrameTruth> truths,
+                                                FitsStackerCli.AlignedJob aligned) throws IOException {
+        Map<Path, ImageAligner.AffineTransform> recovered = new HashMap<>();
+        for (StackingPipeline.FrameJob job : aligned.frames) {
+            recovered.put(job.path.toAbsolutePath().normalize(), job.transform);
+        }
+        ImageAligner.AffineTransform reference = null;
+        for (SyntheticDatasetGenerator.FrameTruth truth : truths) {
+            if (truth.file.toAbsolutePath().normalize().equals(aligned.reference)) {
+                reference = truth.transform;
+            }
+        }
+        if (reference == null) {
+            throw new IllegalStateException("Référence d'alignement absente du manifeste: " + aligned.reference);
+        }
+
+        MemoryPlanner.FrameInfo info = aligned.infos.get(0);
+        double[][] points = {{0, 0}, {info.width, 0}, {0, info.height}, {info.width, info.height},
+                {info.width / 2.0, info.height / 2.0}};
+        List<TransformCheck> checks = new ArrayList<>();
+        for (SyntheticDatasetGenerator.FrameTruth truth : truths) {
+            ImageAligner.AffineTransform found = recovered.get(truth.file.toAbsolutePath().normalize());
+            if (found == null) {
+                checks.add(new TransformCheck(truth.file, false, Double.NaN, Double.NaN, Double.NaN));
+                continue;
+            }
+            double worst = 0;
+            for (double[] p : points) {
+                double[] field = truth.transform.apply(p[0], p[1]);
+                double[] expected = reference.applyInverse(field[0], field[1]);
+                double[] actual = found.apply(p[0], p[1]);
+                worst = Math.max(worst, Math.hypot(actual[0] - expected[0], actual[1] - expected[1]));
+            }
+            double rotation = Math.toDegrees(Math.IEEEremainder(
+                    found.rotation - (truth.transform.rotation - reference.rotation), 2 * Math.PI));
+            double scale = found.scale - truth.transform.scale / reference.scale;
+            checks.add(new TransformCheck(truth.file, true, worst, Math.abs(rotation), Math.abs(scale)));
+        }
+        return checks;
+    }
+
+    /**
+     * PSNR (crête = plus grande valeur de la référence), écart maximal et RMS, lus par bandes de
+     * {@value #COMPARE_ROWS} lignes dans les deux fichiers
+     */
+    public static ImageComparison compare(Path image, Path golden) throws Exception {
+        MemoryPlanner.FrameInfo a = MemoryPlanner.readFrameInfo(image);
+        MemoryPlanner.FrameInfo b = MemoryPlanner.readFrameInfo(golden);
+        if (a.width != b.width || a.height != b.height || a.isColor != b.isColor) {
+            throw new IllegalStateException(String.format("Géométrie différente de la référence: %dx%d%s au lieu de %dx%d%s",
+                    a.width, a.height, a.isColor ? " RGB" : "", b.width, b.height, b.isColor ? " RGB" : ""));
+        }
+        int channels = a.isColor ? 3 : 1;
+        double sumSquares = 0;
+        double maxError = 0;
+        double peak = 0;
+        for (int y0 = 0; y0 < a.height; y0 += COMPARE_ROWS) {
+            int rows = Math.min(COMPARE_ROWS, a.height - y0);
+            FitsImage bandA = FitsImage.readRowWindow(image, y0, rows);
+            FitsImage bandB = FitsImage.readRowWindow(golden, y0, rows);
+            for (int c = 0; c < channels; c++) {
+                for (int y = y0; y < y0 + rows; y++) {
+                    for (int x = 0; x < a.width; x++) {
+                        double expected = bandB.getPixel(c, x, y);
+                        double error = Math.abs(bandA.getPixel(c, x, y) - expected);
+                        sumSquares += error * error;
+                        maxError = Math.max(maxError, error);
+                        peak = Math.max(peak, Math.abs(expected));
+                    }
+                }
+            }
+        }
+        double mse = sumSquares / ((double) a.width * a.height * channels);
+        double psnr = mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(peak * peak / mse);
+        return new ImageComparison(psnr, maxError, Math.sqrt(mse));
+    }
+
+    private static void resetPeaks() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        // Linux : "5" dans clear_refs remet VmHWM à la mémoire résidente actuelle
+        try {
+            Files.writeString(Paths.get("/proc/self/clear_refs"), "5");
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // Pic depuis le lancement du processus
+        }
+    }
+
+    /**
+     * Somme des pics des pools du tas : majore le pic réel, les pools n'atteignant pas leur
+     * maximum au même instant
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Pic de mémoire résidente du processus (VmHWM) ; -1 hors Linux
+     */
+    private static long peakRss() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Pas de /proc
+        }
+        return -1;
+    }
+
+    private static void writeReport(Path file, Options options, int frameCount, MemoryPlanner.Plan plan, int threads,
+                                    double seconds, double alignSeconds, double stackSeconds, long peakRss,
+                                    long peakHeap, List<TransformCheck> checks, ImageComparison comparison,
+                                    boolean goldenCreated, List<String> failures) throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append(String.format(Locale.ROOT,
+                "  \"dataset\": \"%s\",\n  \"method\": \"%s\",\n  \"frames\": %d,\n  \"mode\": \"%s\",\n" +
+                        "  \"threads\": %d,\n  \"workers\": %d,\n  \"memoryBudget\": %d,\n",
+                escape(options.dataset.toAbsolutePath().toString()), options.method.name(), frameCount, plan.mode,
+                threads, options.workers, options.memoryBudget));
+        json.append(String.format(Locale.ROOT,
+                "  \"seconds\": %.3f,\n  \"alignSeconds\": %.3f,\n  \"stackSeconds\": %.3f,\n" +
+                        "  \"peakRssBytes\": %d,\n  \"peakHeapBytes\": %d,\n",
+                seconds, alignSeconds, stackSeconds, peakRss, peakHeap));
+        json.append("  \"transforms\": [");
+        for (int i = 0; i < checks.size(); i++) {
+            TransformCheck check = checks.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append(check.aligned
+                    ? String.format(Locale.ROOT,
+                            "    {\"file\": \"%s\", \"aligned\": true, \"pixelError\": %.6f, " +
+                                    "\"rotationErrorDeg\": %.6f, \"scaleError\": %.8f}",
+                            escape(check.file.getFileName().toString()), check.pixelError, check.rotationError,
+                            check.scaleError)
+                    : String.format("    {\"file\": \"%s\", \"aligned\": false}",
+                            escape(check.file.getFileName().toString())));
+        }
+        json.append("\n  ],\n");
+        if (comparison != null) {
+            json.append(String.format(Locale.ROOT,
+                    "  \"golden\": {\"file\": \"%s\", \"created\": %b, \"psnr\": %s, \"maxError\": %.6g, \"rmsError\": %.6g},\n",
+                    escape(options.golden.toString()), goldenCreated,
+                    Double.isInfinite(comparison.psnr) ? "null" : String.format(Locale.ROOT, "%.4f", comparison.psnr),
+                    comparison.maxError, comparison.rmsError));
+        }
+        json.append(String.format(Locale.ROOT,
+                "  \"budgets\": {\"maxTransformError\": %s, \"minPsnr\": %s, \"maxPixelError\": %s, " +
+                        "\"maxSeconds\": %s, \"maxRssBytes\": %d, \"maxHeapBytes\": %d, \"maxUnaligned\": %d},\n",
+                options.maxTransformError, options.minPsnr, options.maxPixelError, options.maxSeconds,
+                options.maxRss, options.maxHeap, options.maxUnaligned));
+        json.append("  \"failures\": [");
+        for (int i = 0; i < failures.size(); i++) {
+            json.append(i == 0 ? "" : ", ").append('"').append(escape(failures.get(i))).append('"');
+        }
+        json.append("],\n  \"passed\": ").append(failures.isEmpty()).append("\n}\n");
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, json, StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,136 @@
+package com.astro;
+
+/**
+ * Fonction de transfert d'écran (STF) automatique, à la manière de l'AutoSTF de PixInsight :
+ * les ombres sont coupées à {@link Config#STF_SHADOWS_CLIP} MAD sous la médiane, puis une
+ * fonction de demi-teintes amène le fond du ciel à {@link Config#STF_TARGET_BACKGROUND}.
+ * Médiane et MAD viennent de l'histogramme d'un échantillon régulier des pixels (jamais d'un
+ * tri de l'image entière) ; l'affichage passe ensuite par une table de correspondance vers
+ * des octets. Les canaux d'une image couleur partagent la même fonction (STF liée).
+ */
+public class ScreenStretch {
+    private static final int HISTOGRAM_BINS = 65536;
+    private static final int LUT_SIZE = 65536;
+    private static final double MAD_TO_SIGMA = 1.4826;
+
+    private final double low;        // plage des valeurs échantillonnées
+    private final double high;
+    private final double shadows;    // coupure des ombres, normalisée dans [0, 1]
+    private final double midtones;   // équilibre des demi-teintes
+    private final byte[] lut = new byte[LUT_SIZE];
+    private final float lutOrigin;
+    private final float lutScale;
+
+    private ScreenStretch(double low, double high, double shadows, double midtones) {
+        this.low = low;
+        this.high = high;
+        this.shadows = shadows;
+        this.midtones = midtones;
+        // La table couvre [ombres, max] : tout ce qui est sous la coupure est noir
+        double origin = low + shadows * (high - low);
+        this.lutOrigin = (float) origin;
+        this.lutScale = (float) ((LUT_SIZE - 1) / Math.max(high - origin, 1e-30));
+        for (int i = 0; i < LUT_SIZE; i++) {
+            double x = (double) i / (LUT_SIZE - 1);
+            lut[i] = (byte) Math.round(255 * midtonesTransfer(midtones, x));
+        }
+    }
+
+    /**
+     * STF automatique d'une image (tous les canaux)
+     */
+    public static ScreenStretch auto(FitsImage image) {
+        float[][][] planes = image.isColor() && image.getColorData() != null
+                ? image.getColorData() : new float[][][]{image.getData()};
+        return auto(planes, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * STF automatique de plans [canal][y][x] de mêmes dimensions
+     */
+    public static ScreenStretch auto(float[][][] planes, int width, int height) {
+        // Grille régulière d'environ STF_SAMPLE_PIXELS valeurs, tous canaux confondus
+        long total = (long) width * height * planes.length;
+        int step = (int) Math.max(1, Math.sqrt((double) total / Config.STF_SAMPLE_PIXELS));
+        float[] samples = new float[(int) Math.min(Integer.MAX_VALUE - 8,
+                (long) planes.length * ((height + step - 1) / step) * ((width + step - 1) / step))];
+        int n = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (float[][] plane : planes) {
+            for (int y = 0; y < height; y += step) {
+                float[] row = plane[y];
+                if (row == null) continue;
+                for (int x = 0; x < width; x += step) {
+                    float v = row[x];
+                    if (Float.isNaN(v) || Float.isInfinite(v)) continue;
+                    samples[n++] = v;
+                    if (v < min) min = v;
+                    if (v > max) max = v;
+                }
+            }
+        }
+        if (n == 0 || max <= min) {
+            return new ScreenStretch(n == 0 ? 0 : min, n == 0 ? 1 : min + 1, 0, 0.5);
+        }
+
+        // Médiane et MAD sur l'histogramme normalisé
+        int[] histogram = new int[HISTOGRAM_BINS];
+        double binScale = (HISTOGRAM_BINS - 1) / (max - min);
+        for (int i = 0; i < n; i++) {
+            histogram[(int) ((samples[i] - min) * binScale)]++;
+        }
+        int medianBin = percentileBin(histogram, n / 2);
+        int[] deviations = new int[HISTOGRAM_BINS];
+        for (int b = 0; b < HISTOGRAM_BINS; b++) {
+            deviations[Math.abs(b - medianBin)] += histogram[b];
+        }
+        double median = (medianBin + 0.5) / HISTOGRAM_BINS;
+        double mad = (percentileBin(deviations, n / 2) + 0.5) / HISTOGRAM_BINS * MAD_TO_SIGMA;
+
+        double shadows = Math.min(1, Math.max(0, median + Config.STF_SHADOWS_CLIP * mad));
+        double midtones = midtonesTransfer(Config.STF_TARGET_BACKGROUND, median - shadows);
+        return new ScreenStretch(min, max, shadows, midtones);
+    }
+
+    private static int percentileBin(int[] histogram, int rank) {
+        int cumulative = 0;
+        for (int b = 0; b < histogram.length; b++) {
+            cumulative += histogram[b];
+            if (cumulative > rank) return b;
+        }
+        return histogram.length - 1;
+    }
+
+    /**
+     * Fonction de transfert des demi-teintes : MTF(m, 0) = 0, MTF(m, m) = 0.5, MTF(m, 1) = 1
+     */
+    static double midtonesTransfer(double m, double x) {
+        if (x <= 0) return 0;
+        if (x >= 1) return 1;
+        if (m <= 0) return 1;
+        if (m >= 1) return 0;
+        return (m - 1) * x / ((2 * m - 1) * x - m);
+    }
+
+    /**
+     * Niveau d'affichage (0 à 255) d'une valeur brute
+     */
+    public int apply(float value) {
+        float index = (value - lutOrigin) * lutScale;
+        if (!(index > 0)) return 0;  // aussi NaN
+        if (index >= LUT_SIZE - 1) return lut[LUT_SIZE - 1] & 0xFF;
+        return lut[(int) index] & 0xFF;
+    }
+
+    public double getLow() { return low; }
+    public double getHigh() { return high; }
+    public double getShadows() { return shadows; }
+    public double getMidtones() { return midtones; }
+
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.ROOT, "STF ombres=%.5f demi-teintes=%.5f plage=[%.4g, %.4g]",
+                shadows, midtones, low, high);
+    }
+}
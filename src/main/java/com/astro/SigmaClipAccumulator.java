@@ -0,0 +1,234 @@
+package com.astro;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Sigma-clipping en flux, en deux passes sur les images alignées.
+ * Passe 1 : moyenne et variance de chaque pixel par l'algorithme de Welford.
+ * Passe 2 : seules les valeurs à moins de kappa·sigma de la moyenne sont cumulées.
+ * La mémoire se limite à quatre tableaux de la taille du canvas par canal, quel que soit
+ * le nombre d'images. Mêmes règles que le sigma-clipping classique : pixels nuls ignorés,
+ * moyenne simple sous {@link Config#MIN_VALUES_FOR_SIGMA_CLIP} valeurs.
+ */
+public class SigmaClipAccumulator {
+    private static final int BAND_ROWS = 64;
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final double kappa;
+    // Passe 1 : moyenne et somme des carrés des écarts ; passe 2 : bornes basse et haute
+    private final float[][] meanOrLower;
+    private final float[][] m2OrUpper;
+    // Passe 1 : nombre de valeurs ; passe 2 : nombre de valeurs conservées
+    private final int[][] count;
+    private final float[][] clippedSum;
+    private final Object[] bandLocks;
+    private volatile boolean secondPass;
+    private int frameCount;
+
+    public SigmaClipAccumulator(int width, int height, boolean isColor) {
+        this(width, height, isColor, Config.SIGMA_CLIP_THRESHOLD);
+    }
+
+    public SigmaClipAccumulator(int width, int height, boolean isColor, double kappa) {
+        this.width = width;
+        this.height = height;
+        this.channels = isColor ? 3 : 1;
+        this.kappa = kappa;
+        int pixels = width * height;
+        this.meanOrLower = new float[channels][pixels];
+        this.m2OrUpper = new float[channels][pixels];
+        this.count = new int[channels][pixels];
+        this.clippedSum = new float[channels][pixels];
+
+        int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+        this.bandLocks = new Object[Math.max(1, bands)];
+        for (int b = 0; b < bandLocks.length; b++) {
+            bandLocks[b] = new Object();
+        }
+    }
+
+    /**
+     * Ajoute une image alignée à la passe en cours (le poids est ignoré)
+     */
+    public void add(FitsImage aligned, double frameWeight) {
+        boolean pass2;
+        synchronized (this) {
+            pass2 = secondPass;
+        }
+        int start = (int) (Thread.currentThread().threadId() % bandLocks.length);
+        for (int i = 0; i < bandLocks.length; i++) {
+            int band = (start + i) % bandLocks.length;
+            int y0 = band * BAND_ROWS;
+            int y1 = Math.min(height, y0 + BAND_ROWS);
+            synchronized (bandLocks[band]) {
+                for (int c = 0; c < channels; c++) {
+                    float[][] rows = channels == 3 ? aligned.getColorData()[c] : aligned.getData();
+                    for (int y = y0; y < y1; y++) {
+                        if (pass2) {
+                            clipRow(c, y, rows[y]);
+                        } else {
+                            welfordRow(c, y, rows[y]);
+                        }
+                    }
+                }
+            }
+        }
+        if (!pass2) {
+            synchronized (this) {
+                frameCount++;
+            }
+        }
+    }
+
+    private void welfordRow(int channel, int y, float[] row) {
+        int base = y * width;
+        float[] mean = meanOrLower[channel];
+        float[] m2 = m2OrUpper[channel];
+        int[] n = count[channel];
+        for (int x = 0; x < width; x++) {
+            float v = row[x];
+            if (v > 0) {
+                int i = base + x;
+                int k = ++n[i];
+                float delta = v - mean[i];
+                mean[i] += delta / k;
+                m2[i] += delta * (v - mean[i]);
+            }
+        }
+    }
+
+    private void clipRow(int channel, int y, float[] row) {
+        int base = y * width;
+        float[] lower = meanOrLower[channel];
+        float[] upper = m2OrUpper[channel];
+        int[] kept = count[channel];
+        float[] sum = clippedSum[channel];
+        for (int x = 0; x < width; x++) {
+            float v = row[x];
+            int i = base + x;
+            if (v > 0 && v >= lower[i] && v <= upper[i]) {
+                sum[i] += v;
+                kept[i]++;
+            }
+        }
+    }
+
+    /**
+     * Termine la passe 1 : transforme moyenne et variance en bornes de rejet
+     */
+    public synchronized void finishFirstPass() {
+        if (secondPass) return;
+        for (int c = 0; c < channels; c++) {
+            float[] mean = meanOrLower[c];
+            float[] m2 = m2OrUpper[c];
+            int[] n = count[c];
+            for (int i = 0; i < mean.length; i++) {
+                if (n[i] < Config.MIN_VALUES_FOR_SIGMA_CLIP) {
+                    // Trop peu de valeurs : tout garder (moyenne simple)
+                    m2[i] = Float.POSITIVE_INFINITY;
+                    mean[i] = Float.NEGATIVE_INFINITY;
+                } else {
+                    double stdDev = Math.sqrt(Math.max(0, m2[i]) / n[i]);
+                    double m = mean[i];
+                    mean[i] = (float) (m - kappa * stdDev);
+                    m2[i] = (float) (m + kappa * stdDev);
+                }
+                n[i] = 0;
+            }
+        }
+        secondPass = true;
+    }
+
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    public boolean isSecondPass() {
+        return secondPass;
+    }
+
+    /**
+     * Valeur courante d'un pixel : moyenne pendant la passe 1, moyenne des valeurs conservées
+     * pendant la passe 2
+     */
+    public float value(int channel, int index) {
+        if (!secondPass) {
+            return count[channel][index] > 0 ? meanOrLower[channel][index] : 0;
+        }
+        int kept = count[channel][index];
+        if (kept > 0) {
+            return clippedSum[channel][index] / kept;
+        }
+        // Aucune valeur conservée : revenir à la moyenne (milieu des bornes)
+        float lower = meanOrLower[channel][index];
+        return lower != Float.NEGATIVE_INFINITY ? (lower + m2OrUpper[channel][index]) / 2 : 0;
+    }
+
+    /**
+     * Écrit l'état des deux passes (point de reprise). L'appelant garantit qu'aucun ajout n'est en cours.
+     */
+    public synchronized void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(channels);
+        out.writeDouble(kappa);
+        out.writeBoolean(secondPass);
+        out.writeInt(frameCount);
+        for (int c = 0; c < channels; c++) {
+            StackCheckpoint.writeFloats(out, meanOrLower[c]);
+            StackCheckpoint.writeFloats(out, m2OrUpper[c]);
+            StackCheckpoint.writeInts(out, count[c]);
+            StackCheckpoint.writeFloats(out, clippedSum[c]);
+        }
+    }
+
+    /**
+     * Recharge un état écrit par {@link #writeState} pour la même géométrie et le même kappa
+     */
+    public synchronized void readState(DataInputStream in) throws IOException {
+        if (in.readInt() != width || in.readInt() != height || in.readInt() != channels) {
+            throw new IOException("géométrie différente");
+        }
+        if (in.readDouble() != kappa) {
+            throw new IOException("kappa différent");
+        }
+        boolean pass2 = in.readBoolean();
+        int frames = in.readInt();
+        for (int c = 0; c < channels; c++) {
+            StackCheckpoint.readFloats(in, meanOrLower[c]);
+            StackCheckpoint.readFloats(in, m2OrUpper[c]);
+            StackCheckpoint.readInts(in, count[c]);
+            StackCheckpoint.readFloats(in, clippedSum[c]);
+        }
+        frameCount = frames;
+        secondPass = pass2;
+    }
+
+    /**
+     * Image résultat après la passe 2 (canal vert recopié dans la version mono pour le RGB)
+     */
+    public FitsImage toImage(Path path) {
+        FitsImage result = FitsImage.createEmpty(path, width, height, channels == 3);
+        for (int c = 0; c < channels; c++) {
+            float[][] rows = channels == 3 ? result.getColorData()[c] : result.getData();
+            for (int y = 0; y < height; y++) {
+                float[] row = rows[y];
+                int base = y * width;
+                for (int x = 0; x < width; x++) {
+                    row[x] = value(c, base + x);
+                }
+            }
+        }
+        if (channels == 3) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(result.getColorData()[1][y], 0, result.getData()[y], 0, width);
+            }
+        }
+        return result;
+    }
+}
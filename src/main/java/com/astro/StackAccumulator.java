@@ -0,0 +1,207 @@
+package com.astro;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Accumulateur d'empilement à la taille du canvas.
+ * Permet d'empiler image par image les méthodes qui ne demandent pas toutes les valeurs
+ * d'un pixel à la fois (moyenne, moyenne pondérée, min, max) : une image alignée peut être
+ * libérée dès qu'elle a été ajoutée. Comme l'empilement classique, les pixels nuls
+ * (hors champ) sont ignorés. Les ajouts concurrents sont protégés par bandes de lignes.
+ */
+public class StackAccumulator {
+    private static final int BAND_ROWS = 64;
+
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final float[][] sum;
+    private final float[][] weight;
+    private final float[][] min;
+    private final float[][] max;
+    private final Object[] bandLocks;
+    private int frameCount;
+
+    public StackAccumulator(int width, int height, boolean isColor, StackingEngine.StackingMethod method) {
+        this.width = width;
+        this.height = height;
+        this.channels = isColor ? 3 : 1;
+        int pixels = width * height;
+
+        boolean needsSum = method == StackingEngine.StackingMethod.AVERAGE
+                || method == StackingEngine.StackingMethod.WEIGHTED_AVERAGE;
+        this.sum = needsSum ? new float[channels][pixels] : null;
+        this.weight = needsSum ? new float[channels][pixels] : null;
+        this.min = method == StackingEngine.StackingMethod.MINIMUM ? filled(channels, pixels, Float.MAX_VALUE) : null;
+        this.max = method == StackingEngine.StackingMethod.MAXIMUM ? filled(channels, pixels, 0f) : null;
+
+        int bands = (height + BAND_ROWS - 1) / BAND_ROWS;
+        this.bandLocks = new Object[Math.max(1, bands)];
+        for (int b = 0; b < bandLocks.length; b++) {
+            bandLocks[b] = new Object();
+        }
+    }
+
+    /**
+     * Vrai si la méthode peut être calculée image par image
+     */
+    public static boolean supports(StackingEngine.StackingMethod method) {
+        return switch (method) {
+            case AVERAGE, WEIGHTED_AVERAGE, MAXIMUM, MINIMUM -> true;
+            case MEDIAN, SIGMA_CLIP -> false;
+        };
+    }
+
+    private static float[][] filled(int channels, int pixels, float value) {
+        float[][] arrays = new float[channels][pixels];
+        for (float[] array : arrays) {
+            Arrays.fill(array, value);
+        }
+        return arrays;
+    }
+
+    /**
+     * Ajoute une image alignée (aux dimensions du canvas) avec son poids
+     */
+    public void add(FitsImage aligned, double frameWeight) {
+        float w = (float) frameWeight;
+        // Chaque thread commence par une bande différente pour limiter la contention
+        int start = (int) (Thread.currentThread().threadId() % bandLocks.length);
+        for (int i = 0; i < bandLocks.length; i++) {
+            int band = (start + i) % bandLocks.length;
+            int y0 = band * BAND_ROWS;
+            int y1 = Math.min(height, y0 + BAND_ROWS);
+            synchronized (bandLocks[band]) {
+                for (int c = 0; c < channels; c++) {
+                    float[][] rows = channels == 3 ? aligned.getColorData()[c] : aligned.getData();
+                    for (int y = y0; y < y1; y++) {
+                        addRow(c, y, rows[y], w);
+                    }
+                }
+            }
+        }
+        synchronized (this) {
+            frameCount++;
+        }
+    }
+
+    private void addRow(int channel, int y, float[] row, float w) {
+        int base = y * width;
+        if (sum != null) {
+            float[] s = sum[channel];
+            float[] wt = weight[channel];
+            for (int x = 0; x < width; x++) {
+                float v = row[x];
+                if (v > 0) {
+                    s[base + x] += v * w;
+                    wt[base + x] += w;
+                }
+            }
+        }
+        if (min != null) {
+            float[] m = min[channel];
+            for (int x = 0; x < width; x++) {
+                float v = row[x];
+                if (v > 0 && v < m[base + x]) m[base + x] = v;
+            }
+        }
+        if (max != null) {
+            float[] m = max[channel];
+            for (int x = 0; x < width; x++) {
+                float v = row[x];
+                if (v > m[base + x]) m[base + x] = v;
+            }
+        }
+    }
+
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Valeur courante d'un pixel pour la méthode donnée
+     */
+    public float value(StackingEngine.StackingMethod method, int channel, int index) {
+        return switch (method) {
+            case AVERAGE, WEIGHTED_AVERAGE -> {
+                float wt = weight[channel][index];
+                yield wt > 0 ? sum[channel][index] / wt : 0;
+            }
+            case MINIMUM -> {
+                float m = min[channel][index];
+                yield m == Float.MAX_VALUE ? 0 : m;
+            }
+            case MAXIMUM -> max[channel][index];
+            case MEDIAN, SIGMA_CLIP -> throw new IllegalArgumentException(
+                    "Méthode non cumulable: " + method.getDisplayName());
+        };
+    }
+
+    /**
+     * Produit l'image résultat (canal vert recopié dans la version mono pour le RGB)
+     */
+    public FitsImage toImage(Path path, StackingEngine.StackingMethod method) {
+        FitsImage result = FitsImage.createEmpty(path, width, height, channels == 3);
+        for (int c = 0; c < channels; c++) {
+            float[][] rows = channels == 3 ? result.getColorData()[c] : result.getData();
+            for (int y = 0; y < height; y++) {
+                float[] row = rows[y];
+                int base = y * width;
+                for (int x = 0; x < width; x++) {
+                    row[x] = value(method, c, base + x);
+                }
+            }
+        }
+        if (channels == 3) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(result.getColorData()[1][y], 0, result.getData()[y], 0, width);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Écrit l'état cumulé (point de reprise) ; aucun ajout ne doit être en cours
+     */
+    public synchronized void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(channels);
+        out.writeInt(frameCount);
+        for (float[][] arrays : new float[][][]{sum, weight, min, max}) {
+            out.writeBoolean(arrays != null);
+            if (arrays == null) continue;
+            for (float[] array : arrays) {
+                StackCheckpoint.writeFloats(out, array);
+            }
+        }
+    }
+
+    /**
+     * Recharge un état écrit par {@link #writeState} pour la même géométrie et la même méthode
+     */
+    public synchronized void readState(DataInputStream in) throws IOException {
+        if (in.readInt() != width || in.readInt() != height || in.readInt() != channels) {
+            throw new IOException("géométrie différente");
+        }
+        int frames = in.readInt();
+        for (float[][] arrays : new float[][][]{sum, weight, min, max}) {
+            if (in.readBoolean() != (arrays != null)) {
+                throw new IOException("méthode différente");
+            }
+            if (arrays == null) continue;
+            for (float[] array : arrays) {
+                StackCheckpoint.readFloats(in, array);
+            }
+        }
+        frameCount = frames;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getChannels() { return channels; }
+}
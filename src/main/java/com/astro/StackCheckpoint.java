@@ -0,0 +1,419 @@
+package com.astro;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Points de reprise d'un empilement long.
+ * Un dossier par travail ({@link Config#CHECKPOINT_DIR_NAME} dans le dossier cache à côté des
+ * FITS) contient le manifeste du travail (images avec taille et date, transformations, canvas,
+ * méthodes), les bandes de canvas déjà calculées et, pour les méthodes cumulables, l'état de
+ * l'accumulateur avec la liste des images déjà ajoutées (pour le sigma-clipping en deux passes,
+ * à la passe en cours). Le nom du dossier est une empreinte
+ * du manifeste : relancer le même travail retrouve le dossier et saute ce qui est fait, alors
+ * qu'une image modifiée, une autre transformation ou une autre méthode repartent de zéro.
+ * Le manifeste porte aussi la version du format et celle du programme : des fichiers écrits
+ * par une autre version ne sont jamais relus. Le dossier est supprimé quand l'empilement aboutit.
+ */
+public class StackCheckpoint {
+    private static final int BAND_MAGIC = 0x46534342;        // "FSCB"
+    private static final int ACCUMULATOR_MAGIC = 0x46534341; // "FSCA"
+    private static final int SIGMA_CLIP_MAGIC = 0x46534353;  // "FSCS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int BAND_HEADER_BYTES = 6 * 4;
+    private static final int IO_CHUNK = 1 << 16;
+
+    private final Path dir;
+    private long lastSave = System.nanoTime();
+
+    private StackCheckpoint(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Ouvre (ou crée) le point de reprise d'un travail ; null si la reprise est désactivée ou
+     * si une image n'est pas un fichier sur disque (image de test, copie en mémoire)
+     */
+    public static StackCheckpoint open(List<Path> paths, List<ImageAligner.AffineTransform> transforms,
+                                       ImageAligner.CanvasInfo canvas, boolean isColor,
+                                       Set<StackingEngine.StackingMethod> methods) {
+        if (!Config.CHECKPOINT_ENABLED || paths.isEmpty()) return null;
+
+        StringBuilder manifest = new StringBuilder("# FITS Stacker - manifeste de reprise\n");
+        manifest.append("format=").append(FORMAT_VERSION).append('\n');
+        manifest.append("version=").append(codeVersion()).append('\n');
+        manifest.append("methodes=").append(methods).append('\n');
+        manifest.append("canvas=").append(canvas.width).append('x').append(canvas.height)
+                .append(' ').append(canvas.offsetX).append(',').append(canvas.offsetY).append('\n');
+        manifest.append("couleur=").append(isColor).append('\n');
+        manifest.append("images=").append(paths.size()).append('\n');
+        try {
+            for (int i = 0; i < paths.size(); i++) {
+                Path path = paths.get(i).toAbsolutePath();
+                if (!Files.isRegularFile(path)) return null;
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                ImageAligner.AffineTransform t = transforms.get(i) != null
+                        ? transforms.get(i) : ImageAligner.AffineTransform.identity();
+                manifest.append(i).append('\t').append(path)
+                        .append('\t').append(attributes.size())
+                        .append('\t').append(attributes.lastModifiedTime().toMillis())
+                        .append('\t').append(t.scale).append('\t').append(t.rotation)
+                        .append('\t').append(t.tx).append('\t').append(t.ty).append('\n');
+            }
+
+            String text = manifest.toString();
+            Path dir = paths.get(0).toAbsolutePath().resolveSibling(Config.CACHE_DIR_NAME)
+                    .resolve(Config.CHECKPOINT_DIR_NAME).resolve(digest(text));
+            Path manifestFile = dir.resolve("manifest.txt");
+            StackCheckpoint checkpoint = new StackCheckpoint(dir);
+            if (Files.isRegularFile(manifestFile)) {
+                System.out.println("Reprise possible: " + dir);
+            } else {
+                Files.createDirectories(dir);
+                checkpoint.writeAtomically(manifestFile, out -> out.write(text.getBytes(StandardCharsets.UTF_8)));
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            // Dossier en lecture seule, disque plein... : la reprise est facultative
+            System.out.println("⚠️ Points de reprise désactivés: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public static StackCheckpoint forJobs(List<StackingPipeline.FrameJob> jobs, ImageAligner.CanvasInfo canvas,
+                                          boolean isColor, Set<StackingEngine.StackingMethod> methods) {
+        List<Path> paths = new ArrayList<>();
+        List<ImageAligner.AffineTransform> transforms = new ArrayList<>();
+        for (StackingPipeline.FrameJob job : jobs) {
+            paths.add(job.path);
+            transforms.add(job.transform);
+        }
+        return open(paths, transforms, canvas, isColor, methods);
+    }
+
+    public static StackCheckpoint forImages(List<FitsImage> images, ImageAligner.CanvasInfo canvas,
+                                            boolean isColor, Set<StackingEngine.StackingMethod> methods) {
+        List<Path> paths = new ArrayList<>();
+        List<ImageAligner.AffineTransform> transforms = new ArrayList<>();
+        for (FitsImage image : images) {
+            if (!image.isLoadedFromFile()) return null;
+            paths.add(image.getPath());
+            transforms.add(image.getTransform());
+        }
+        return open(paths, transforms, canvas, isColor, methods);
+    }
+
+    /**
+     * Version du programme (manifeste du jar), "dev" hors jar
+     */
+    private static String codeVersion() {
+        String version = StackCheckpoint.class.getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+
+    private static String digest(String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    // ========== Bandes de canvas ==========
+
+    /**
+     * Lignes de canvas couvertes par des bandes enregistrées, d'après leur seul en-tête et leur
+     * taille : permet de savoir, avant de charger ou de redresser les sources, s'il reste à calculer
+     *
+     * @param methods nombre de méthodes, channels nombre de canaux du résultat
+     */
+    public BitSet savedRows(int width, int height, int methods, int channels) {
+        BitSet saved = new BitSet();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().matches("band_\\d+\\.bin")) continue;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    if (in.readInt() != BAND_MAGIC) continue;
+                    int y0 = in.readInt();
+                    int rows = in.readInt();
+                    if (y0 < 0 || rows <= 0 || y0 + rows > height || in.readInt() != width
+                            || in.readInt() != methods || in.readInt() != channels) {
+                        continue;
+                    }
+                    long expected = BAND_HEADER_BYTES + (long) methods * channels * rows * width * 4;
+                    if (Files.size(file) == expected) {
+                        saved.set(y0, y0 + rows);
+                    }
+                } catch (IOException e) {
+                    // Bande illisible : elle sera recalculée
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️ Points de reprise illisibles: " + e.getMessage());
+        }
+        return saved;
+    }
+
+    /**
+     * Recopie dans les résultats toutes les bandes déjà calculées, quelle que soit leur hauteur
+     * (le découpage peut changer d'une exécution à l'autre avec la mémoire disponible).
+     *
+     * @param planes [méthode][canal] lignes du résultat (hauteur complète du canvas)
+     * @return les lignes de canvas restaurées
+     */
+    public BitSet restoreBands(float[][][][] planes) {
+        BitSet restored = new BitSet();
+        int width = planes[0][0][0].length;
+        int height = planes[0][0].length;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!file.getFileName().toString().matches("band_\\d+\\.bin")) continue;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                    if (in.readInt() != BAND_MAGIC) continue;
+                    int y0 = in.readInt();
+                    int rows = in.readInt();
+                    if (y0 < 0 || rows <= 0 || y0 + rows > height || in.readInt() != width
+                            || in.readInt() != planes.length || in.readInt() != planes[0].length) {
+                        continue;
+                    }
+                    for (float[][][] method : planes) {
+                        for (float[][] channel : method) {
+                            for (int r = 0; r < rows; r++) {
+                                readFloats(in, channel[y0 + r]);
+                            }
+                        }
+                    }
+                    restored.set(y0, y0 + rows);
+                } catch (IOException e) {
+                    // Bande tronquée ou illisible : elle sera recalculée
+                    System.out.println("⚠️ " + file.getFileName() + " illisible, bande recalculée: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("⚠️ Points de reprise illisibles: " + e.getMessage());
+        }
+        if (!restored.isEmpty()) {
+            System.out.println("Reprise: " + restored.cardinality() + "/" + height + " lignes déjà calculées");
+        }
+        return restored;
+    }
+
+    /**
+     * Enregistre des lignes terminées [y0, y0 + rows), en un seul fichier
+     */
+    public void saveBand(int y0, int rows, float[][][][] planes) {
+        int width = planes[0][0][y0].length;
+        try {
+            writeAtomically(bandFile(y0), out -> {
+                out.writeInt(BAND_MAGIC);
+                out.writeInt(y0);
+                out.writeInt(rows);
+                out.writeInt(width);
+                out.writeInt(planes.length);
+                out.writeInt(planes[0].length);
+                for (float[][][] method : planes) {
+                    for (float[][] channel : method) {
+                        for (int r = 0; r < rows; r++) {
+                            writeFloats(out, channel[y0 + r]);
+                        }
+                    }
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("⚠️ Bande " + y0 + " non enregistrée: " + e.getMessage());
+        }
+    }
+
+    private Path bandFile(int y0) {
+        return dir.resolve(String.format("band_%06d.bin", y0));
+    }
+
+    // ========== Accumulateur ==========
+
+    /**
+     * Recharge l'état cumulé et ajoute à frames les images qu'il contient ; null si absent ou illisible
+     */
+    public StackAccumulator restoreAccumulator(ImageAligner.CanvasInfo canvas, boolean isColor,
+                                               StackingEngine.StackingMethod method, Set<Integer> frames) {
+        Path file = dir.resolve("accumulator.bin");
+        if (!Files.isRegularFile(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != ACCUMULATOR_MAGIC) return null;
+            int count = in.readInt();
+            Set<Integer> restored = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                restored.add(in.readInt());
+            }
+            StackAccumulator accumulator = new StackAccumulator(canvas.width, canvas.height, isColor, method);
+            accumulator.readState(in);
+            frames.addAll(restored);
+            System.out.println("Reprise: " + restored.size() + " images déjà cumulées");
+            return accumulator;
+        } catch (IOException e) {
+            System.out.println("⚠️ État de l'accumulateur illisible, empilement repris au début: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Enregistre l'état cumulé. L'appelant garantit qu'aucun ajout n'est en cours.
+     */
+    public void saveAccumulator(StackAccumulator accumulator, Collection<Integer> frames) {
+        try {
+            writeAtomically(dir.resolve("accumulator.bin"), out -> {
+                out.writeInt(ACCUMULATOR_MAGIC);
+                out.writeInt(frames.size());
+                for (int frame : frames) {
+                    out.writeInt(frame);
+                }
+                accumulator.writeState(out);
+            });
+            System.out.println("Point de reprise: " + frames.size() + " images cumulées");
+        } catch (IOException e) {
+            System.out.println("⚠️ Point de reprise non enregistré: " + e.getMessage());
+        }
+    }
+
+    // ========== Sigma-clipping en deux passes ==========
+
+    /**
+     * Recharge l'état des deux passes et ajoute à frames les images déjà cumulées à la passe
+     * enregistrée ; null si absent ou illisible
+     */
+    public SigmaClipAccumulator restoreSigmaClip(ImageAligner.CanvasInfo canvas, boolean isColor, Set<Integer> frames) {
+        Path file = dir.resolve("sigmaclip.bin");
+        if (!Files.isRegularFile(file)) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SIGMA_CLIP_MAGIC) return null;
+            int count = in.readInt();
+            Set<Integer> restored = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                restored.add(in.readInt());
+            }
+            SigmaClipAccumulator accumulator = new SigmaClipAccumulator(canvas.width, canvas.height, isColor);
+            accumulator.readState(in);
+            frames.addAll(restored);
+            System.out.println("Reprise: passe " + (accumulator.isSecondPass() ? 2 : 1) + ", "
+                    + restored.size() + " images déjà cumulées");
+            return accumulator;
+        } catch (IOException e) {
+            System.out.println("⚠️ État du sigma-clipping illisible, empilement repris au début: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Enregistre l'état des deux passes avec les images cumulées à la passe en cours.
+     * L'appelant garantit qu'aucun ajout n'est en cours.
+     */
+    public void saveSigmaClip(SigmaClipAccumulator accumulator, Collection<Integer> frames) {
+        try {
+            writeAtomically(dir.resolve("sigmaclip.bin"), out -> {
+                out.writeInt(SIGMA_CLIP_MAGIC);
+                out.writeInt(frames.size());
+                for (int frame : frames) {
+                    out.writeInt(frame);
+                }
+                accumulator.writeState(out);
+            });
+            System.out.println("Point de reprise: passe " + (accumulator.isSecondPass() ? 2 : 1) + ", "
+                    + frames.size() + " images cumulées");
+        } catch (IOException e) {
+            System.out.println("⚠️ Point de reprise non enregistré: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Vrai au plus une fois par {@link Config#CHECKPOINT_INTERVAL_MS}
+     */
+    public synchronized boolean isDue() {
+        long now = System.nanoTime();
+        if ((now - lastSave) / 1_000_000 < Config.CHECKPOINT_INTERVAL_MS) return false;
+        lastSave = now;
+        return true;
+    }
+
+    /**
+     * Travail terminé : le point de reprise n'a plus d'utilité
+     */
+    public void finish() {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            System.out.println("⚠️ Points de reprise non supprimés (" + dir + "): " + e.getMessage());
+        }
+    }
+
+    // ========== Entrées/sorties ==========
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Écriture via un fichier temporaire : un arrêt brutal ne laisse jamais de fichier tronqué
+     */
+    private void writeAtomically(Path file, Writer writer) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            writer.write(out);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(values.length, IO_CHUNK) * 4);
+        for (int i = 0; i < values.length; i += IO_CHUNK) {
+            int count = Math.min(IO_CHUNK, values.length - i);
+            buffer.clear();
+            buffer.asFloatBuffer().put(values, i, count);
+            out.write(buffer.array(), 0, count * 4);
+        }
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(values.length, IO_CHUNK) * 4);
+        for (int i = 0; i < values.length; i += IO_CHUNK) {
+            int count = Math.min(IO_CHUNK, values.length - i);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, i, count);
+            out.write(buffer.array(), 0, count * 4);
+        }
+    }
+
+    static void readInts(DataInputStream in, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(values.length, IO_CHUNK) * 4);
+        for (int i = 0; i < values.length; i += IO_CHUNK) {
+            int count = Math.min(IO_CHUNK, values.length - i);
+            in.readFully(buffer.array(), 0, count * 4);
+            buffer.clear();
+            buffer.asIntBuffer().get(values, i, count);
+        }
+    }
+
+    static void readFloats(DataInputStream in, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.min(values.length, IO_CHUNK) * 4);
+        for (int i = 0; i < values.length; i += IO_CHUNK) {
+            int count = Math.min(IO_CHUNK, values.length - i);
+            in.readFully(buffer.array(), 0, count * 4);
+            buffer.clear();
+            buffer.asFloatBuffer().get(values, i, count);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.astro;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Aperçu de l'empilement en cours, réduit à {@link Config#STACK_PREVIEW_SIZE} pixels.
+ *
+ * Les threads de calcul ne font que signaler l'avancement ({@link #rowsDone}, {@link #changed}) :
+ * un thread d'aperçu de basse priorité relit le résultat en construction toutes les
+ * {@link Config#STACK_PREVIEW_MS} ms, seulement s'il a changé, le réduit par moyenne de blocs,
+ * l'étire et prépare sa pyramide. L'échange avec l'affichage est à double tampon : l'aperçu
+ * écrit toujours dans le tampon que l'affichage ne montre pas, et l'affichage reprend le
+ * dernier tampon publié par {@link #take}. Un aperçu pas encore repris est simplement réécrit ;
+ * aucun des deux côtés n'attend l'autre.
+ *
+ * Sans écouteur installé ({@link #setListener}), aucun thread n'est créé et les signalements
+ * ne coûtent rien.
+ */
+public class StackPreview implements AutoCloseable {
+
+    /**
+     * Valeur courante d'un pixel du résultat en construction
+     */
+    @FunctionalInterface
+    interface PixelSource {
+        float value(int channel, int x, int y);
+    }
+
+    /**
+     * Prévenu depuis le thread d'aperçu quand un aperçu est prêt à être repris par {@link #take}
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onPreview(StackPreview preview);
+    }
+
+    /**
+     * Un tampon d'aperçu : plans réduits, étirement et pyramide prêts à afficher
+     */
+    public static final class Frame {
+        private final float[][][] planes;
+        private ImagePyramid pyramid;
+        private ScreenStretch stretch;
+        private String status;
+
+        private Frame(int channels, int width, int height) {
+            planes = new float[channels][height][width];
+        }
+
+        public ImagePyramid getPyramid() { return pyramid; }
+        public ScreenStretch getStretch() { return stretch; }
+        public String getStatus() { return status; }
+    }
+
+    private static volatile Listener listener;
+
+    private final PixelSource source;
+    private final int width;
+    private final int height;
+    private final int channels;
+    private final int step;
+    private final int previewWidth;
+    private final int previewHeight;
+    // Lignes terminées par canal (résultats écrits en place), null pour un accumulateur
+    private final BitSet[] rowsDone;
+    private final Supplier<String> status;
+    private final Listener target;
+    private final AtomicInteger revision = new AtomicInteger();
+    private final Thread renderer;
+
+    // Échange à double tampon : publié non repris, puis libre pour l'aperçu suivant
+    private final AtomicReference<Frame> ready = new AtomicReference<>();
+    private final AtomicReference<Frame> spare = new AtomicReference<>();
+    private int allocated;    // thread d'aperçu
+    private Frame shown;      // thread de l'affichage
+
+    private StackPreview(PixelSource source, int width, int height, int channels, boolean rows,
+                         Supplier<String> status) {
+        this.source = source;
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+        this.step = Math.max(1, (Math.max(width, height) + Config.STACK_PREVIEW_SIZE - 1) / Config.STACK_PREVIEW_SIZE);
+        this.previewWidth = (width + step - 1) / step;
+        this.previewHeight = (height + step - 1) / step;
+        this.status = status;
+        this.target = listener;
+        if (rows) {
+            rowsDone = new BitSet[channels];
+            for (int c = 0; c < channels; c++) {
+                rowsDone[c] = new BitSet(height);
+            }
+        } else {
+            rowsDone = null;
+        }
+        if (target != null) {
+            renderer = new Thread(this::run, "aperçu-empilement");
+            renderer.setDaemon(true);
+            renderer.setPriority(Thread.MIN_PRIORITY);
+            renderer.start();
+        } else {
+            renderer = null;
+        }
+    }
+
+    /**
+     * Installe (ou retire, avec null) l'écouteur des prochains empilements
+     */
+    public static void setListener(Listener previewListener) {
+        listener = previewListener;
+    }
+
+    /**
+     * Aperçu d'un résultat écrit ligne à ligne en place, plans [canal][y][x] :
+     * seules les lignes signalées par {@link #rowsDone} sont lues
+     */
+    static StackPreview ofRows(float[][][] planes, int width, int height) {
+        return new StackPreview((c, x, y) -> planes[c][y][x], width, height, planes.length, true, null);
+    }
+
+    /**
+     * Aperçu d'un accumulateur, relu sans verrou : une bande en cours d'ajout peut y mêler
+     * deux états, ce qui est sans conséquence pour un aperçu
+     */
+    static StackPreview ofAccumulator(PixelSource source, int width, int height, int channels,
+                                      Supplier<String> status) {
+        return new StackPreview(source, width, height, channels, false, status);
+    }
+
+    /**
+     * Lignes [y0, y0 + rows) du canal terminées
+     */
+    void rowsDone(int channel, int y0, int rows) {
+        if (renderer == null) return;
+        synchronized (rowsDone) {
+            rowsDone[channel].set(y0, y0 + rows);
+        }
+        revision.incrementAndGet();
+    }
+
+    /**
+     * Le résultat en construction a changé (image ajoutée à l'accumulateur)
+     */
+    void changed() {
+        if (renderer == null) return;
+        revision.incrementAndGet();
+    }
+
+    /**
+     * Reprend le dernier aperçu publié (null s'il n'y en a pas de nouveau). Appelé depuis un seul
+     * thread d'affichage : le tampon rendu précédent redevient libre pour l'aperçu suivant.
+     */
+    public Frame take() {
+        Frame frame = ready.getAndSet(null);
+        if (frame == null) return null;
+        if (shown != null) spare.set(shown);
+        shown = frame;
+        return frame;
+    }
+
+    /**
+     * Arrête le thread d'aperçu (fin ou abandon de l'empilement)
+     */
+    @Override
+    public void close() {
+        if (renderer == null) return;
+        renderer.interrupt();
+        try {
+            renderer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        int rendered = 0;
+        try {
+            while (true) {
+                Thread.sleep(Config.STACK_PREVIEW_MS);
+                int current = revision.get();
+                if (current == rendered) continue;
+                try {
+                    if (render()) {
+                        rendered = current;
+                        target.onPreview(this);
+                    }
+                } catch (RuntimeException e) {
+                    // Un aperçu raté ne doit pas interrompre l'empilement
+                    System.err.println("Aperçu de l'empilement: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            // Fin de l'empilement
+        }
+    }
+
+    /**
+     * Rend l'état courant dans le tampon libre et le publie ; faux si aucun tampon n'est libre
+     * (l'affichage est en train de reprendre le précédent)
+     */
+    private boolean render() throws InterruptedException {
+        // Un aperçu publié mais pas encore repris est réécrit plutôt que d'attendre
+        Frame back = ready.getAndSet(null);
+        if (back == null) back = spare.getAndSet(null);
+        if (back == null) {
+            if (allocated == 2) return false;
+            back = new Frame(channels, previewWidth, previewHeight);
+            allocated++;
+        }
+
+        try {
+            fill(back);
+        } catch (RuntimeException e) {
+            spare.set(back);
+            throw e;
+        }
+        ready.set(back);
+        return true;
+    }
+
+    /**
+     * Réduit l'état courant dans le tampon, puis l'étire et prépare sa pyramide
+     */
+    private void fill(Frame back) throws InterruptedException {
+        BitSet[] done = null;
+        if (rowsDone != null) {
+            done = new BitSet[channels];
+            synchronized (rowsDone) {
+                for (int c = 0; c < channels; c++) {
+                    done[c] = (BitSet) rowsDone[c].clone();
+                }
+            }
+        }
+
+        long rows = 0;
+        for (int c = 0; c < channels; c++) {
+            for (int py = 0; py < previewHeight; py++) {
+                int y0 = py * step;
+                int y1 = Math.min(height, y0 + step);
+                float[] row = back.planes[c][py];
+                if (done != null && done[c].nextClearBit(y0) < y1) {
+                    // Bloc pas encore calculé : NaN, affiché en noir et ignoré par l'étirement
+                    Arrays.fill(row, Float.NaN);
+                    continue;
+                }
+                rows += y1 - y0;
+                for (int px = 0; px < previewWidth; px++) {
+                    int x0 = px * step;
+                    int x1 = Math.min(width, x0 + step);
+                    float sum = 0;
+                    for (int y = y0; y < y1; y++) {
+                        for (int x = x0; x < x1; x++) {
+                            sum += source.value(c, x, y);
+                        }
+                    }
+                    row[px] = sum / ((y1 - y0) * (x1 - x0));
+                }
+            }
+        }
+
+        back.stretch = ScreenStretch.auto(back.planes, previewWidth, previewHeight);
+        back.pyramid = ImagePyramid.build(back.planes, previewWidth, previewHeight);
+        String state = status != null ? status.get()
+                : (rows * 100 / ((long) height * channels)) + "% des lignes";
+        back.status = state + ", aperçu 1:" + step;
+    }
+}
@@ -1,9 +1,14 @@
 package com.astro;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 
 public class StackingEngine {
-    
+    // Hauteur maximale des bandes relues depuis la réserve alignée
+    private static final int STORE_BAND_ROWS = 128;
+
     public enum StackingMethod {
         AVERAGE("Moyenne"),
         MEDIAN("Médiane"),
@@ -29,14 +34,6 @@ public class StackingEngine {
             throw new IllegalArgumentException("Aucune image à empiler");
         }
 
-        // Vérifier si on travaille avec des images couleur ou mono
-        boolean isColor = images.get(0).isColor();
-        
-        System.out.println("=== Début de l'empilement ===");
-        System.out.println("Nombre d'images: " + images.size());
-        System.out.println("Type: " + (isColor ? "RGB" : "Mono"));
-        System.out.println("Méthode: " + method.getDisplayName());
-        
         // Récupérer les informations du canvas depuis la première image
         ImageAligner.CanvasInfo canvasInfo = images.get(0).getCanvasInfo();
         if (canvasInfo == null) {
@@ -48,107 +45,213 @@ public class StackingEngine {
             );
         }
 
-        int canvasWidth = canvasInfo.width;
-        int canvasHeight = canvasInfo.height;
-        int offsetX = canvasInfo.offsetX;
-        int offsetY = canvasInfo.offsetY;
-        
-        System.out.println("Canvas: " + canvasWidth + "x" + canvasHeight);
-        System.out.println("Offset: " + offsetX + ", " + offsetY);
-
-        // Create aligned copies with expanded canvas
-        if (callback != null) {
-            callback.onProgress(0, "Création des copies alignées...");
+        // Plan mémoire : les sources sont déjà chargées, seul le travail d'empilement compte
+        List<MemoryPlanner.FrameInfo> frames = new ArrayList<>();
+        for (FitsImage image : images) {
+            frames.add(MemoryPlanner.FrameInfo.of(image));
         }
+        MemoryPlanner.Plan plan = MemoryPlanner.plan(frames, canvasInfo, method, true, MemoryPlanner.availableHeap());
+
+        return stackImages(images, method, plan, callback);
+    }
 
-        List<FitsImage> alignedImages = new ArrayList<>();
+    /**
+     * Empile avec un plan mémoire imposé (tout en mémoire, par bandes ou sur disque)
+     */
+    public static FitsImage stackImages(List<FitsImage> images, StackingMethod method, MemoryPlanner.Plan plan,
+                                       ImageAligner.ProgressCallback callback) throws Exception {
+        List<StackingPipeline.FrameJob> jobs = new ArrayList<>();
         for (int i = 0; i < images.size(); i++) {
-            FitsImage img = images.get(i);
-            
-            System.out.println("Alignement image " + (i+1) + ": " + img.getFileName());
-            System.out.println("  Transformation: rot=" + Math.toDegrees(img.getTransform().rotation) + 
-                             "°, scale=" + img.getTransform().scale +
-                             ", tx=" + img.getTransform().tx + ", ty=" + img.getTransform().ty);
-            
-            FitsImage aligned = img.createAlignedCopy(canvasWidth, canvasHeight, offsetX, offsetY);
-            alignedImages.add(aligned);
-            
-            // Vérification: compter les pixels non-nuls
-            int nonZeroPixels = 0;
-            for (int y = 0; y < canvasHeight; y++) {
-                for (int x = 0; x < canvasWidth; x++) {
-                    if (aligned.getPixel(x, y) > 0) {
-                        nonZeroPixels++;
-                    }
-                }
-            }
-            System.out.println("  Pixels non-nuls: " + nonZeroPixels + " / " + (canvasWidth*canvasHeight) +
-                             " (" + (100.0*nonZeroPixels/(canvasWidth*canvasHeight)) + "%)");
-            
-            if (callback != null) {
-                int progress = (int) ((i * 20.0) / images.size());
-                callback.onProgress(progress, "Alignement image " + (i + 1) + "/" + images.size());
-            }
+            jobs.add(StackingPipeline.FrameJob.of(i, images.get(i)));
+        }
+        ImageAligner.CanvasInfo canvasInfo = images.get(0).getCanvasInfo();
+        if (canvasInfo == null) {
+            canvasInfo = new ImageAligner.CanvasInfo(images.get(0).getWidth(), images.get(0).getHeight(), 0, 0);
         }
+        return stackFrames(jobs, canvasInfo, images.get(0).isColor(), images.get(0).getPath(), method, plan,
+                StackingPipeline.Settings.defaults(), callback);
+    }
+
+    /**
+     * Empile des images chargées ou à charger depuis le disque, transformations connues.
+     * Le plan décide du mode d'exécution.
+     */
+    static FitsImage stackFrames(List<StackingPipeline.FrameJob> jobs, ImageAligner.CanvasInfo canvasInfo,
+                                 boolean isColor, Path resultPath, StackingMethod method,
+                                 MemoryPlanner.Plan plan, StackingPipeline.Settings settings,
+                                 ImageAligner.ProgressCallback callback) throws Exception {
+        if (jobs.isEmpty()) {
+            throw new IllegalArgumentException("Aucune image à empiler");
+        }
+
+        System.out.println("=== Début de l'empilement ===");
+        System.out.println("Nombre d'images: " + jobs.size());
+        System.out.println("Type: " + (isColor ? "RGB" : "Mono"));
+        System.out.println("Méthode: " + method.getDisplayName());
+        System.out.println("Canvas: " + canvasInfo.width + "x" + canvasInfo.height);
+        System.out.println("Offset: " + canvasInfo.offsetX + ", " + canvasInfo.offsetY);
+        System.out.println("Plan mémoire: " + plan.describe());
+
+        if (plan.mode == MemoryPlanner.Mode.TWO_PASS_STREAMED) {
+            return StackingPipeline.sigmaClip(jobs, null, canvasInfo, isColor, resultPath, settings,
+                    StackCheckpoint.forJobs(jobs, canvasInfo, isColor, EnumSet.of(method)), callback);
+        }
+        if (plan.mode != MemoryPlanner.Mode.IN_MEMORY) {
+            return stackInBands(jobs, canvasInfo, isColor, resultPath, method, plan,
+                    StackCheckpoint.forJobs(jobs, canvasInfo, isColor, EnumSet.of(method)), callback);
+        }
+
+        // Méthodes cumulables : pipeline image par image, sans garder toutes les copies alignées.
+        // Le travail tient en mémoire : point de reprise de l'accumulateur seulement sur demande
+        if (StackAccumulator.supports(method)) {
+            StackCheckpoint checkpoint = Config.CHECKPOINT_IN_MEMORY
+                    ? StackCheckpoint.forJobs(jobs, canvasInfo, isColor, EnumSet.of(method)) : null;
+            return StackingPipeline.run(jobs, null, canvasInfo, isColor, resultPath, method, settings,
+                    checkpoint, callback);
+        }
+
+        List<FitsImage> images = new ArrayList<>();
+        for (StackingPipeline.FrameJob job : jobs) {
+            images.add(loadSource(job));
+        }
+        if (method == StackingMethod.MEDIAN && images.size() >= Config.HISTOGRAM_MEDIAN_MIN_FRAMES
+                && integerSamples(images)) {
+            return stackMedianCompact(images, canvasInfo, resultPath, callback);
+        }
+        return stackAlignedCopies(images, canvasInfo, isColor, resultPath, method, callback);
+    }
+
+    /**
+     * Empilement de référence : images chargées en entier, copies alignées complètes et
+     * combinaison pixel par pixel sur un seul thread, sans pipeline, bandes, réserve ni médiane
+     * par comptage. Étalon des autres moteurs pour la non-régression.
+     */
+    static FitsImage stackReference(List<StackingPipeline.FrameJob> jobs, ImageAligner.CanvasInfo canvasInfo,
+                                    boolean isColor, Path resultPath, StackingMethod method) throws Exception {
+        List<FitsImage> images = new ArrayList<>();
+        for (StackingPipeline.FrameJob job : jobs) {
+            images.add(loadSource(job));
+        }
+        return stackAlignedCopies(images, canvasInfo, isColor, resultPath, method, null);
+    }
+
+    /**
+     * Copies alignées de toutes les images sur le canvas, puis combinaison pixel par pixel
+     */
+    private static FitsImage stackAlignedCopies(List<FitsImage> images, ImageAligner.CanvasInfo canvasInfo,
+                                                boolean isColor, Path resultPath, StackingMethod method,
+                                                ImageAligner.ProgressCallback callback) {
+        int canvasWidth = canvasInfo.width;
+        int canvasHeight = canvasInfo.height;
+        int offsetX = canvasInfo.offsetX;
+        int offsetY = canvasInfo.offsetY;
 
         // Create result image
         FitsImage result = FitsImage.createEmpty(
-            images.get(0).getPath(),
+            resultPath,
             canvasWidth,
             canvasHeight,
             isColor
         );
-
         int totalPixels = canvasWidth * canvasHeight;
-        int processedPixels = 0;
-
-        if (isColor) {
-            // Stack each channel separately
-            for (int c = 0; c < 3; c++) {
-                String channelName = c == 0 ? "Rouge" : (c == 1 ? "Vert" : "Bleu");
-                if (callback != null) {
-                    callback.onProgress(20 + c * 25, "Empilement canal " + channelName + "...");
-                }
 
+        float[][][] resultPlanes = isColor ? result.getColorData() : new float[][][]{result.getData()};
+        try (ProgressTracker progress = ProgressTracker.start(callback);
+             StackPreview preview = StackPreview.ofRows(resultPlanes, canvasWidth, canvasHeight)) {
+            // Create aligned copies with expanded canvas
+            progress.phase("Création des copies alignées", "images", images.size(), 0, 20);
+
+            List<FitsImage> alignedImages = new ArrayList<>();
+            for (int i = 0; i < images.size(); i++) {
+                checkCancelled();
+                progress.frame(i + 1, images.size());
+                FitsImage img = images.get(i);
+            
+                System.out.println("Alignement image " + (i+1) + ": " + img.getFileName());
+                System.out.println("  Transformation: rot=" + Math.toDegrees(img.getTransform().rotation) + 
+                                 "°, scale=" + img.getTransform().scale +
+                                 ", tx=" + img.getTransform().tx + ", ty=" + img.getTransform().ty);
+            
+                FitsImage aligned = img.createAlignedCopy(canvasWidth, canvasHeight, offsetX, offsetY);
+                alignedImages.add(aligned);
+            
+                // Vérification: compter les pixels non-nuls
+                int nonZeroPixels = 0;
                 for (int y = 0; y < canvasHeight; y++) {
                     for (int x = 0; x < canvasWidth; x++) {
-                        float stackedValue = stackPixelChannel(alignedImages, x, y, c, method);
-                        result.setPixel(c, x, y, stackedValue);
-
-                        processedPixels++;
-                        if (callback != null && processedPixels % 50000 == 0) {
-                            int progress = 20 + c * 25 + (int) (((double) processedPixels / totalPixels) * 25);
-                            callback.onProgress(progress, "Canal " + channelName + ": " + 
-                                (processedPixels * 100 / totalPixels) + "%");
+                        if (aligned.getPixel(x, y) > 0) {
+                            nonZeroPixels++;
                         }
                     }
                 }
+                System.out.println("  Pixels non-nuls: " + nonZeroPixels + " / " + (canvasWidth*canvasHeight) +
+                                 " (" + (100.0*nonZeroPixels/(canvasWidth*canvasHeight)) + "%)");
+                progress.advance(1);
             }
 
-            // Update mono version (green channel)
-            for (int y = 0; y < canvasHeight; y++) {
-                for (int x = 0; x < canvasWidth; x++) {
-                    result.setPixel(x, y, result.getPixel(1, x, y));
+            int n = alignedImages.size();
+            float[] values = new float[n];
+            double[] valueWeights = new double[n];
+            double[] frameWeights = frameWeights(alignedImages);
+
+            if (isColor) {
+                // Stack each channel separately
+                for (int c = 0; c < 3; c++) {
+                    String channelName = c == 0 ? "Rouge" : (c == 1 ? "Vert" : "Bleu");
+                    progress.phase("Empilement canal " + channelName, "lignes", canvasHeight, 20 + c * 25, 45 + c * 25);
+                    StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.COMBINE);
+
+                    for (int y = 0; y < canvasHeight; y++) {
+                        checkCancelled();
+                        for (int x = 0; x < canvasWidth; x++) {
+                            int count = 0;
+                            for (int i = 0; i < n; i++) {
+                                float value = alignedImages.get(i).getPixel(c, x, y);
+                                if (value > 0) {
+                                    values[count] = value;
+                                    valueWeights[count] = frameWeights[i];
+                                    count++;
+                                }
+                            }
+                            float stackedValue = combine(method, values, valueWeights, count);
+                            result.setPixel(c, x, y, stackedValue);
+                        }
+                        preview.rowsDone(c, y, 1);
+                        progress.advance(1);
+                    }
+                    span.end(0, (long) totalPixels * n, 0);
                 }
-            }
-        } else {
-            // Stack mono image
-            if (callback != null) {
-                callback.onProgress(20, "Empilement image mono...");
-            }
 
-            for (int y = 0; y < canvasHeight; y++) {
-                for (int x = 0; x < canvasWidth; x++) {
-                    float stackedValue = stackPixel(alignedImages, x, y, method);
-                    result.setPixel(x, y, stackedValue);
+                // Update mono version (green channel)
+                for (int y = 0; y < canvasHeight; y++) {
+                    for (int x = 0; x < canvasWidth; x++) {
+                        result.setPixel(x, y, result.getPixel(1, x, y));
+                    }
+                }
+            } else {
+                // Stack mono image
+                progress.phase("Empilement image mono", "lignes", canvasHeight, 20, 95);
+                StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.COMBINE);
 
-                    processedPixels++;
-                    if (callback != null && processedPixels % 10000 == 0) {
-                        int progress = 20 + (int) ((processedPixels * 75.0) / totalPixels);
-                        callback.onProgress(progress, "Empilement: " + 
-                            (processedPixels * 100 / totalPixels) + "%");
+                for (int y = 0; y < canvasHeight; y++) {
+                    checkCancelled();
+                    for (int x = 0; x < canvasWidth; x++) {
+                        int count = 0;
+                        for (int i = 0; i < n; i++) {
+                            float value = alignedImages.get(i).getPixel(x, y);
+                            if (value > 0) {
+                                values[count] = value;
+                                valueWeights[count] = frameWeights[i];
+                                count++;
+                            }
+                        }
+                        float stackedValue = combine(method, values, valueWeights, count);
+                        result.setPixel(x, y, stackedValue);
                     }
+                    preview.rowsDone(0, y, 1);
+                    progress.advance(1);
                 }
+                span.end(0, (long) totalPixels * n, 0);
             }
         }
         
@@ -182,286 +285,680 @@ public class StackingEngine {
         return result;
     }
 
-    private static float stackPixel(List<FitsImage> images, int x, int y, StackingMethod method) {
-        return switch (method) {
-            case AVERAGE -> stackAverage(images, x, y);
-            case MEDIAN -> stackMedian(images, x, y);
-            case SIGMA_CLIP -> stackSigmaClip(images, x, y);
-            case MAXIMUM -> stackMaximum(images, x, y);
-            case MINIMUM -> stackMinimum(images, x, y);
-            case WEIGHTED_AVERAGE -> stackWeightedAverage(images, x, y);
-        };
+    /**
+     * Annulation coopérative : le thread de calcul a été interrompu (bouton Annuler, arrêt du programme)
+     */
+    static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Empilement annulé");
+        }
     }
 
-    private static float stackPixelChannel(List<FitsImage> images, int x, int y, int channel, StackingMethod method) {
-        return switch (method) {
-            case AVERAGE -> stackAverageChannel(images, x, y, channel);
-            case MEDIAN -> stackMedianChannel(images, x, y, channel);
-            case SIGMA_CLIP -> stackSigmaClipChannel(images, x, y, channel);
-            case MAXIMUM -> stackMaximumChannel(images, x, y, channel);
-            case MINIMUM -> stackMinimumChannel(images, x, y, channel);
-            case WEIGHTED_AVERAGE -> stackWeightedAverageChannel(images, x, y, channel);
-        };
+    private static FitsImage loadSource(StackingPipeline.FrameJob job) throws Exception {
+        FitsImage image = job.image != null ? job.image : new FitsImage(job.path);
+        if (job.transform != null) {
+            image.setTransform(job.transform);
+        }
+        return image;
     }
 
-    // ========== Méthodes pour images mono ==========
-
-    private static float stackAverage(List<FitsImage> images, int x, int y) {
-        double sum = 0;
-        int count = 0;
-
+    /**
+     * Vrai si toutes les images sont des entiers 16 bits mono simplement décalés d'un nombre
+     * entier de pixels : les valeurs alignées restent alors entières
+     */
+    static boolean integerSamples(List<FitsImage> images) {
         for (FitsImage image : images) {
-            float value = image.getPixel(x, y);
-            if (value > 0) {
-                sum += value;
-                count++;
-            }
+            if (!integerSample(image)) return false;
         }
+        return !images.isEmpty();
+    }
 
-        return count > 0 ? (float) (sum / count) : 0;
+    private static boolean integerSample(FitsImage image) {
+        return image.isIntegerValued() && !image.isColor() && image.getTransform().isIntegerShift();
     }
 
-    private static float stackMedian(List<FitsImage> images, int x, int y) {
-        List<Float> values = new ArrayList<>();
+    /**
+     * Médiane des données entières : copies alignées compactes en short (deux fois moins de
+     * mémoire que les float) et sélection par comptage au lieu du tri
+     */
+    private static FitsImage stackMedianCompact(List<FitsImage> images, ImageAligner.CanvasInfo canvas,
+                                                Path resultPath, ImageAligner.ProgressCallback callback) {
+        int n = images.size();
+        System.out.println("Médiane par comptage sur copies 16 bits (" + n + " images)");
+
+        FitsImage result = FitsImage.createEmpty(resultPath, canvas.width, canvas.height, false);
+        try (ProgressTracker progress = ProgressTracker.start(callback);
+             StackPreview preview = StackPreview.ofRows(new float[][][]{result.getData()}, canvas.width, canvas.height)) {
+            progress.phase("Alignement", "images", n, 0, 20);
+            short[][][] aligned = new short[n][][];
+            for (int i = 0; i < n; i++) {
+                aligned[i] = images.get(i).createAlignedShortCopy(canvas);
+                progress.advance(1);
+            }
 
-        for (FitsImage image : images) {
-            float value = image.getPixel(x, y);
-            if (value > 0) {
-                values.add(value);
+            progress.phase("Empilement", "lignes", canvas.height, 20, 99);
+            StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.COMBINE);
+            short[] values = new short[n];
+            int[] counts = HistogramMedian.newCounts();
+            for (int y = 0; y < canvas.height; y++) {
+                checkCancelled();
+                float[] out = result.getData()[y];
+                for (int x = 0; x < canvas.width; x++) {
+                    int count = 0;
+                    for (int i = 0; i < n; i++) {
+                        short value = aligned[i][y][x];
+                        if (value != 0) {
+                            values[count++] = value;
+                        }
+                    }
+                    out[x] = HistogramMedian.median(values, count, counts);
+                }
+                preview.rowsDone(0, y, 1);
+                progress.advance(1);
             }
+            span.end(0, (long) canvas.width * canvas.height * n, 0);
         }
 
-        if (values.isEmpty()) return 0;
-
-        Collections.sort(values);
-        int size = values.size();
+        System.out.println("=== Empilement terminé ===");
+        if (callback != null) {
+            callback.onProgress(100, "Empilement terminé!");
+        }
+        return result;
+    }
 
-        if (size % 2 == 0) {
-            return (values.get(size / 2 - 1) + values.get(size / 2)) / 2;
-        } else {
-            return values.get(size / 2);
+    private static double[] frameWeights(List<FitsImage> images) {
+        double[] weights = new double[images.size()];
+        for (int i = 0; i < images.size(); i++) {
+            weights[i] = images.get(i).getStackWeight();
         }
+        return FitsImage.fillUnknownWeights(weights);
     }
 
-    private static float stackSigmaClip(List<FitsImage> images, int x, int y) {
-        List<Float> values = new ArrayList<>();
+    // ========== Exécution par bandes de lignes ==========
 
-        for (FitsImage image : images) {
-            float value = image.getPixel(x, y);
-            if (value > 0) {
-                values.add(value);
-            }
-        }
+    /**
+     * Lecture d'une bande de lignes alignées d'une image
+     */
+    @FunctionalInterface
+    interface RowReader {
+        void read(int frame, int channel, int y0, int rows, float[][] dst) throws IOException;
+    }
 
-        if (values.isEmpty()) return 0;
-        if (values.size() < 4) return stackAverage(images, x, y);
+    /**
+     * Empile à partir de la réserve d'images alignées : les images absentes (ou dont la
+     * transformation a changé) sont redressées une fois vers le disque, les autres sont relues
+     * directement. Aucune copie alignée complète n'est gardée sur le tas.
+     */
+    public static FitsImage stackImages(List<FitsImage> images, StackingMethod method, AlignedFrameStore store,
+                                       ImageAligner.ProgressCallback callback) throws Exception {
+        return stackImages(images, EnumSet.of(method), store, callback).get(method);
+    }
 
-        // Calculate mean and standard deviation
-        double mean = 0;
-        for (float value : values) {
-            mean += value;
-        }
-        mean /= values.size();
+    /**
+     * Calcule plusieurs méthodes en un seul parcours des piles de pixels, à partir de la réserve.
+     * La collecte des valeurs, le tri et les statistiques sont partagés entre les méthodes.
+     */
+    public static Map<StackingMethod, FitsImage> stackImages(List<FitsImage> images, Set<StackingMethod> methods,
+                                                             AlignedFrameStore store,
+                                                             ImageAligner.ProgressCallback callback) throws Exception {
+        ImageAligner.CanvasInfo canvas = checkMultiStack(images, methods);
+        boolean isColor = images.get(0).isColor();
 
-        double variance = 0;
-        for (float value : values) {
-            double diff = value - mean;
-            variance += diff * diff;
+        System.out.println("=== Début de l'empilement (réserve alignée) ===");
+        System.out.println("Nombre d'images: " + images.size());
+        System.out.println("Méthode(s): " + describe(methods));
+        System.out.println("Canvas: " + canvas.width + "x" + canvas.height);
+
+        MemoryPlanner.Plan plan = planFor(images, canvas, methods);
+        int bandRows = Math.min(bandRows(plan, canvas, methods), STORE_BAND_ROWS);
+        StackCheckpoint checkpoint = checkpointFor(plan, images, canvas, methods);
+        if (allRowsSaved(checkpoint, canvas, methods.size(), isColor ? 3 : 1)) {
+            // Tout est déjà calculé : la réserve n'est pas remplie
+            System.out.println("Reprise: toutes les bandes sont enregistrées");
+            return combineBands(images.size(), NO_ROWS, new double[images.size()], canvas, isColor,
+                    images.get(0).getPath(), methods, false, bandRows, 40, checkpoint, callback);
         }
-        double stdDev = Math.sqrt(variance / values.size());
 
-        // Remove outliers (values more than 2 sigma away)
-        List<Float> clipped = new ArrayList<>();
-        double lowerBound = mean - 2 * stdDev;
-        double upperBound = mean + 2 * stdDev;
+        List<AlignedFrameStore.Frame> frames = store.getAll(images, canvas, callback == null ? null :
+                (progress, message) -> callback.onProgress(progress * 40 / 100, message));
 
-        for (float value : values) {
-            if (value >= lowerBound && value <= upperBound) {
-                clipped.add(value);
-            }
+        double[] weights = new double[frames.size()];
+        for (int i = 0; i < frames.size(); i++) {
+            weights[i] = frames.get(i).getStackWeight();
         }
+        System.out.println("Bandes de " + bandRows + " lignes relues depuis la réserve");
 
-        if (clipped.isEmpty()) return (float) mean;
+        return combineBands(frames.size(), (i, c, y0, rows, dst) -> frames.get(i).readRows(c, y0, rows, dst),
+                weights, canvas, isColor, images.get(0).getPath(), methods, integerSamples(images),
+                bandRows, 40, checkpoint, callback);
+    }
 
-        // Calculate average of clipped values
-        double sum = 0;
-        for (float value : clipped) {
-            sum += value;
+    /**
+     * Calcule plusieurs méthodes en un seul parcours : les lignes alignées sont redressées
+     * une fois par bande depuis les images chargées, puis combinées pour toutes les méthodes.
+     */
+    public static Map<StackingMethod, FitsImage> stackImages(List<FitsImage> images, Set<StackingMethod> methods,
+                                                             ImageAligner.ProgressCallback callback) throws Exception {
+        ImageAligner.CanvasInfo canvas = checkMultiStack(images, methods);
+
+        System.out.println("=== Début de l'empilement multiple ===");
+        System.out.println("Nombre d'images: " + images.size());
+        System.out.println("Méthode(s): " + describe(methods));
+        System.out.println("Canvas: " + canvas.width + "x" + canvas.height);
+
+        double[] weights = new double[images.size()];
+        for (int i = 0; i < images.size(); i++) {
+            weights[i] = images.get(i).getStackWeight();
         }
+        MemoryPlanner.Plan plan = planFor(images, canvas, methods);
+        int bandRows = bandRows(plan, canvas, methods);
+        System.out.println("Bandes de " + bandRows + " lignes");
 
-        return (float) (sum / clipped.size());
+        return combineBands(images.size(), (i, c, y0, rows, dst) -> images.get(i).warpRows(c, canvas, y0, rows, dst),
+                weights, canvas, images.get(0).isColor(), images.get(0).getPath(), methods, integerSamples(images),
+                bandRows, 0, checkpointFor(plan, images, canvas, methods), callback);
     }
 
-    private static float stackMaximum(List<FitsImage> images, int x, int y) {
-        float max = Float.MIN_VALUE;
+    private static ImageAligner.CanvasInfo checkMultiStack(List<FitsImage> images, Set<StackingMethod> methods) {
+        if (images.isEmpty()) {
+            throw new IllegalArgumentException("Aucune image à empiler");
+        }
+        if (methods.isEmpty()) {
+            throw new IllegalArgumentException("Aucune méthode d'empilement demandée");
+        }
+        ImageAligner.CanvasInfo canvas = images.get(0).getCanvasInfo();
+        if (canvas == null) {
+            canvas = new ImageAligner.CanvasInfo(images.get(0).getWidth(), images.get(0).getHeight(), 0, 0);
+        }
+        return canvas;
+    }
 
+    /**
+     * Plan mémoire de la méthode la plus gourmande demandée (toutes les valeurs d'un pixel à la
+     * fois), les sources étant déjà chargées
+     */
+    private static MemoryPlanner.Plan planFor(List<FitsImage> images, ImageAligner.CanvasInfo canvas,
+                                              Set<StackingMethod> methods) {
+        List<MemoryPlanner.FrameInfo> infos = new ArrayList<>();
         for (FitsImage image : images) {
-            float value = image.getPixel(x, y);
-            if (value > max) {
-                max = value;
-            }
+            infos.add(MemoryPlanner.FrameInfo.of(image));
         }
+        return MemoryPlanner.plan(infos, canvas, costliest(methods), true, MemoryPlanner.availableHeap());
+    }
 
-        return max == Float.MIN_VALUE ? 0 : max;
+    private static StackingMethod costliest(Set<StackingMethod> methods) {
+        StackingMethod costliest = methods.iterator().next();
+        for (StackingMethod method : methods) {
+            if (!StackAccumulator.supports(method)) costliest = method;
+        }
+        return costliest;
     }
 
-    private static float stackMinimum(List<FitsImage> images, int x, int y) {
-        float min = Float.MAX_VALUE;
+    /**
+     * Hauteur de bande d'après le plan mémoire
+     */
+    private static int bandRows(MemoryPlanner.Plan plan, ImageAligner.CanvasInfo canvas, Set<StackingMethod> methods) {
+        return plan.mode == MemoryPlanner.Mode.IN_MEMORY && StackAccumulator.supports(costliest(methods))
+                ? Math.min(canvas.height, STORE_BAND_ROWS) : plan.bandRows;
+    }
 
-        for (FitsImage image : images) {
-            float value = image.getPixel(x, y);
-            if (value > 0 && value < min) {
-                min = value;
-            }
-        }
+    // Lecteur des travaux dont toutes les bandes sont restaurées : jamais appelé
+    private static final RowReader NO_ROWS = (i, c, y0, rows, dst) -> {
+        throw new IllegalStateException("Bande déjà restaurée relue: " + y0);
+    };
 
-        return min == Float.MAX_VALUE ? 0 : min;
+    private static boolean allRowsSaved(StackCheckpoint checkpoint, ImageAligner.CanvasInfo canvas,
+                                        int methods, int channels) {
+        return checkpoint != null && checkpoint.savedRows(canvas.width, canvas.height, methods, channels)
+                .nextClearBit(0) >= canvas.height;
     }
 
-    private static float stackWeightedAverage(List<FitsImage> images, int x, int y) {
-        double weightedSum = 0;
-        double totalWeight = 0;
+    /**
+     * Point de reprise si le plan mémoire passe par bandes ; un travail qui tient en mémoire est
+     * assez court pour être relancé, sauf demande contraire ({@link Config#CHECKPOINT_IN_MEMORY})
+     */
+    private static StackCheckpoint checkpointFor(MemoryPlanner.Plan plan, List<FitsImage> images,
+                                                 ImageAligner.CanvasInfo canvas, Set<StackingMethod> methods) {
+        if (plan.mode == MemoryPlanner.Mode.IN_MEMORY && !Config.CHECKPOINT_IN_MEMORY) return null;
+        return StackCheckpoint.forImages(images, canvas, images.get(0).isColor(), methods);
+    }
 
-        for (int i = 0; i < images.size(); i++) {
-            FitsImage image = images.get(i);
-            float value = image.getPixel(x, y);
-            
-            if (value > 0) {
-                double weight = 1.0 / (1.0 + i * 0.1);
-                weightedSum += value * weight;
-                totalWeight += weight;
-            }
+    private static String describe(Set<StackingMethod> methods) {
+        StringJoiner names = new StringJoiner(", ");
+        for (StackingMethod method : methods) {
+            names.add(method.getDisplayName());
         }
-
-        return totalWeight > 0 ? (float) (weightedSum / totalWeight) : 0;
+        return names.toString();
     }
 
-    // ========== Méthodes pour images RGB (par canal) ==========
+    /**
+     * Empile le canvas bande par bande : pour chaque bande, les lignes alignées de chaque
+     * image sont redressées à la volée depuis la source (mode par bandes) ou relues depuis
+     * une réserve temporaire remplie une source à la fois (mode disque).
+     */
+    private static FitsImage stackInBands(List<StackingPipeline.FrameJob> jobs, ImageAligner.CanvasInfo canvas,
+                                          boolean isColor, Path resultPath, StackingMethod method,
+                                          MemoryPlanner.Plan plan, StackCheckpoint checkpoint,
+                                          ImageAligner.ProgressCallback callback) throws Exception {
+        int n = jobs.size();
+        double[] weights = new double[n];
+
+        if (allRowsSaved(checkpoint, canvas, 1, isColor ? 3 : 1)) {
+            // Tout est déjà calculé : ni chargement des sources ni écriture sur disque
+            System.out.println("Reprise: toutes les bandes sont enregistrées");
+            return combineBands(n, NO_ROWS, weights, canvas, isColor, resultPath, EnumSet.of(method), false,
+                    plan.bandRows, 0, checkpoint, callback)
+                    .get(method);
+        }
 
-    private static float stackAverageChannel(List<FitsImage> images, int x, int y, int channel) {
-        double sum = 0;
-        int count = 0;
+        if (plan.mode == MemoryPlanner.Mode.SPILL_TO_DISK) {
+            try (AlignedFrameStore spill = AlignedFrameStore.temporary()) {
+                // Redresser chaque image une seule fois vers le disque, une source en mémoire à la fois
+                List<AlignedFrameStore.Frame> frames = new ArrayList<>();
+                boolean integers = true;
+                for (int i = 0; i < n; i++) {
+                    checkCancelled();
+                    FitsImage source = loadSource(jobs.get(i));
+                    integers &= integerSample(source);
+                    AlignedFrameStore.Frame frame = spill.get(source, canvas);
+                    weights[i] = frame.getStackWeight();
+                    frames.add(frame);
+                    if (callback != null) {
+                        callback.onProgress((int) ((i + 1) * 30.0 / n), "Écriture sur disque " + (i + 1) + "/" + n);
+                    }
+                }
+                return combineBands(n, (i, c, y0, rows, dst) -> frames.get(i).readRows(c, y0, rows, dst),
+                        weights, canvas, isColor, resultPath, EnumSet.of(method), integers,
+                        plan.bandRows, 30, checkpoint, callback)
+                        .get(method);
+            }
+        }
 
-        for (FitsImage image : images) {
-            float value = image.getPixel(channel, x, y);
-            if (value > 0) {
-                sum += value;
-                count++;
+        if (windowed(jobs)) {
+            // Sources sur disque, bruit connu : chaque bande ne lit que les lignes sources qu'elle recouvre
+            boolean integers = true;
+            for (int i = 0; i < n; i++) {
+                StackingPipeline.FrameJob job = jobs.get(i);
+                weights[i] = FitsImage.stackWeight(job.noiseSigma);
+                FitsImage header = FitsImage.readRowWindow(job.path, 0, 0);
+                header.setTransform(job.transform);
+                integers &= integerSample(header);
             }
+            return combineBands(n, new WindowReader(jobs, canvas), weights, canvas, isColor, resultPath,
+                    EnumSet.of(method), integers, plan.bandRows, 0, checkpoint, callback)
+                    .get(method);
         }
 
-        return count > 0 ? (float) (sum / count) : 0;
+        List<FitsImage> sources = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            checkCancelled();
+            FitsImage source = loadSource(jobs.get(i));
+            weights[i] = source.getStackWeight();
+            sources.add(source);
+        }
+        return combineBands(n, (i, c, y0, rows, dst) -> sources.get(i).warpRows(c, canvas, y0, rows, dst),
+                weights, canvas, isColor, resultPath, EnumSet.of(method), integerSamples(sources),
+                plan.bandRows, 0, checkpoint, callback)
+                .get(method);
     }
 
-    private static float stackMedianChannel(List<FitsImage> images, int x, int y, int channel) {
-        List<Float> values = new ArrayList<>();
+    /**
+     * Vrai si toutes les images sont à relire depuis le disque et que leur bruit est connu
+     */
+    private static boolean windowed(List<StackingPipeline.FrameJob> jobs) {
+        for (StackingPipeline.FrameJob job : jobs) {
+            if (job.image != null || Double.isNaN(job.noiseSigma)) return false;
+        }
+        return true;
+    }
 
-        for (FitsImage image : images) {
-            float value = image.getPixel(channel, x, y);
-            if (value > 0) {
-                values.add(value);
+    /**
+     * Lignes sources [début, fin) lues par l'interpolation bilinéaire pour des lignes de canvas :
+     * la transformation est affine, les extrêmes sont atteints aux coins de la bande
+     */
+    static int[] sourceRows(ImageAligner.AffineTransform transform, ImageAligner.CanvasInfo canvas,
+                            int y0, int rows) {
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int x : new int[]{0, canvas.width - 1}) {
+            for (int y : new int[]{y0, y0 + rows - 1}) {
+                double sy = transform.applyInverse(x - canvas.offsetX, y - canvas.offsetY)[1];
+                minY = Math.min(minY, sy);
+                maxY = Math.max(maxY, sy);
             }
         }
+        int first = (int) Math.max(0, Math.floor(minY));
+        int last = (int) Math.max(first, Math.floor(maxY) + 2);
+        return new int[]{first, last};
+    }
 
-        if (values.isEmpty()) return 0;
-
-        Collections.sort(values);
-        int size = values.size();
+    /**
+     * Lecture par fenêtres : pour la bande en cours, chaque image n'a en mémoire que les lignes
+     * sources que la bande recouvre une fois redressée ; les fenêtres de la bande précédente sont
+     * relâchées au passage à la suivante
+     */
+    private static final class WindowReader implements RowReader {
+        private final List<StackingPipeline.FrameJob> jobs;
+        private final ImageAligner.CanvasInfo canvas;
+        private final FitsImage[] windows;
+        private int bandY0 = -1;
+        private int bandRows;
+
+        WindowReader(List<StackingPipeline.FrameJob> jobs, ImageAligner.CanvasInfo canvas) {
+            this.jobs = jobs;
+            this.canvas = canvas;
+            this.windows = new FitsImage[jobs.size()];
+        }
 
-        if (size % 2 == 0) {
-            return (values.get(size / 2 - 1) + values.get(size / 2)) / 2;
-        } else {
-            return values.get(size / 2);
+        @Override
+        public void read(int frame, int channel, int y0, int rows, float[][] dst) throws IOException {
+            if (y0 != bandY0 || rows != bandRows) {
+                Arrays.fill(windows, null);
+                bandY0 = y0;
+                bandRows = rows;
+            }
+            if (windows[frame] == null) {
+                StackingPipeline.FrameJob job = jobs.get(frame);
+                int[] source = sourceRows(job.transform, canvas, y0, rows);
+                try {
+                    windows[frame] = FitsImage.readRowWindow(job.path, source[0], source[1] - source[0]);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(job.path.getFileName() + ": " + e.getMessage(), e);
+                }
+                windows[frame].setTransform(job.transform);
+            }
+            windows[frame].warpRows(channel, canvas, y0, rows, dst);
         }
     }
 
-    private static float stackSigmaClipChannel(List<FitsImage> images, int x, int y, int channel) {
-        List<Float> values = new ArrayList<>();
+    static Map<StackingMethod, FitsImage> combineBands(int n, RowReader reader, double[] frameWeights,
+                                                       ImageAligner.CanvasInfo canvas, boolean isColor,
+                                                       Path resultPath, Set<StackingMethod> methods,
+                                                       boolean integerSamples, int requestedRows, int progressBase,
+                                                       StackCheckpoint checkpoint,
+                                                       ImageAligner.ProgressCallback callback) throws IOException {
+        frameWeights = FitsImage.fillUnknownWeights(frameWeights.clone());
+        int channels = isColor ? 3 : 1;
+        int bandRows = Math.max(1, Math.min(requestedRows, canvas.height));
+        StackingMethod[] wanted = methods.toArray(new StackingMethod[0]);
+        Map<StackingMethod, FitsImage> results = new EnumMap<>(StackingMethod.class);
+        for (StackingMethod method : wanted) {
+            results.put(method, FitsImage.createEmpty(resultPath, canvas.width, canvas.height, isColor));
+        }
 
-        for (FitsImage image : images) {
-            float value = image.getPixel(channel, x, y);
-            if (value > 0) {
-                values.add(value);
+        float[][][] band = new float[n][bandRows][canvas.width];
+        float[] values = new float[n];
+        double[] valueWeights = new double[n];
+        float[] combined = new float[StackingMethod.values().length];
+        float[][][] targets = new float[wanted.length][][];
+        // Données entières non interpolées : médiane par comptage, linéaire en nombre d'images,
+        // plus rapide que le tri à partir de quelques dizaines d'images seulement
+        boolean countingMedian = integerSamples && n >= Config.HISTOGRAM_MEDIAN_MIN_FRAMES
+                && methods.contains(StackingMethod.MEDIAN);
+        short[] integers = countingMedian ? new short[n] : null;
+        int[] counts = countingMedian ? HistogramMedian.newCounts() : null;
+        if (countingMedian) {
+            System.out.println("Médiane par comptage (données entières 16 bits non interpolées)");
+        }
+
+        // Bandes déjà calculées par une exécution interrompue du même travail
+        float[][][][] planes = new float[wanted.length][channels][][];
+        for (int m = 0; m < wanted.length; m++) {
+            for (int c = 0; c < channels; c++) {
+                FitsImage result = results.get(wanted[m]);
+                planes[m][c] = isColor ? result.getColorData()[c] : result.getData();
             }
         }
+        BitSet restored = checkpoint != null ? checkpoint.restoreBands(planes) : new BitSet();
+
+        // Lignes calculées pas encore enregistrées : [pendingY0, pendingEnd), écrites d'un bloc
+        // toutes les CHECKPOINT_INTERVAL_MS, avant une bande déjà restaurée, ou en cas d'abandon
+        int pendingY0 = -1;
+        int pendingEnd = -1;
+        boolean completed = false;
+        // Aperçu de la première méthode demandée
+        try (ProgressTracker progress = ProgressTracker.start(callback);
+             StackPreview preview = StackPreview.ofRows(planes[0], canvas.width, canvas.height)) {
+            progress.phase("Empilement par bandes", "lignes", (long) canvas.height * channels, progressBase, 99);
+            for (int y0 = 0; y0 < canvas.height; y0 += bandRows) {
+                checkCancelled();
+                int count = Math.min(bandRows, canvas.height - y0);
+                if (restored.nextClearBit(y0) >= y0 + count) {
+                    if (pendingY0 >= 0) {
+                        checkpoint.saveBand(pendingY0, pendingEnd - pendingY0, planes);
+                        pendingY0 = -1;
+                    }
+                    for (int c = 0; c < channels; c++) {
+                        preview.rowsDone(c, y0, count);
+                    }
+                    progress.advance((long) count * channels);
+                    continue;
+                }
+                for (int c = 0; c < channels; c++) {
+                    for (int i = 0; i < n; i++) {
+                        reader.read(i, c, y0, count, band[i]);
+                    }
 
-        if (values.isEmpty()) return 0;
-        if (values.size() < 4) return stackAverageChannel(images, x, y, channel);
+                    for (int m = 0; m < wanted.length; m++) {
+                        FitsImage result = results.get(wanted[m]);
+                        targets[m] = isColor ? result.getColorData()[c] : result.getData();
+                    }
+                    StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.COMBINE);
+                    for (int r = 0; r < count; r++) {
+                        int y = y0 + r;
+                        for (int x = 0; x < canvas.width; x++) {
+                            int valueCount = 0;
+                            for (int i = 0; i < n; i++) {
+                                float value = band[i][r][x];
+                                if (value > 0) {
+                                    values[valueCount] = value;
+                                    valueWeights[valueCount] = frameWeights[i];
+                                    if (countingMedian) {
+                                        integers[valueCount] = (short) (int) value;
+                                    }
+                                    valueCount++;
+                                }
+                            }
+                            if (wanted.length == 1) {
+                                targets[0][y][x] = countingMedian
+                                        ? HistogramMedian.median(integers, valueCount, counts)
+                                        : combine(wanted[0], values, valueWeights, valueCount);
+                            } else {
+                                combineAll(methods, values, valueWeights, valueCount, combined, integers, counts);
+                                for (int m = 0; m < wanted.length; m++) {
+                                    targets[m][y][x] = combined[wanted[m].ordinal()];
+                                }
+                            }
+                        }
+                        preview.rowsDone(c, y, 1);
+                        progress.advance(1);
+                    }
+                    span.end(0, (long) count * canvas.width * n, 0);
+                }
 
-        double mean = 0;
-        for (float value : values) {
-            mean += value;
+                if (checkpoint != null) {
+                    if (pendingY0 < 0) pendingY0 = y0;
+                    pendingEnd = y0 + count;
+                    if (checkpoint.isDue()) {
+                        checkpoint.saveBand(pendingY0, pendingEnd - pendingY0, planes);
+                        pendingY0 = -1;
+                    }
+                }
+            }
+            completed = true;
+        } finally {
+            // Annulation ou erreur : garder ce qui est calculé pour la prochaine exécution
+            if (!completed && pendingY0 >= 0) {
+                checkpoint.saveBand(pendingY0, pendingEnd - pendingY0, planes);
+            }
+        }
+        if (checkpoint != null) {
+            checkpoint.finish();
         }
-        mean /= values.size();
 
-        double variance = 0;
-        for (float value : values) {
-            double diff = value - mean;
-            variance += diff * diff;
+        if (isColor) {
+            for (FitsImage result : results.values()) {
+                for (int y = 0; y < canvas.height; y++) {
+                    System.arraycopy(result.getColorData()[1][y], 0, result.getData()[y], 0, canvas.width);
+                }
+            }
         }
-        double stdDev = Math.sqrt(variance / values.size());
 
-        List<Float> clipped = new ArrayList<>();
-        double lowerBound = mean - 2 * stdDev;
-        double upperBound = mean + 2 * stdDev;
+        System.out.println("=== Empilement terminé ===");
+        if (callback != null) {
+            callback.onProgress(100, "Empilement terminé!");
+        }
+        return results;
+    }
 
-        for (float value : values) {
-            if (value >= lowerBound && value <= upperBound) {
-                clipped.add(value);
-            }
+    // ========== Noyaux de combinaison ==========
+
+    /**
+     * Combine les n valeurs valides (strictement positives) d'un pixel.
+     * weights[i] est le poids de l'image qui a fourni values[i] (moyenne pondérée).
+     */
+    static float combine(StackingMethod method, float[] values, double[] weights, int n) {
+        if (n == 0) return 0;
+        return switch (method) {
+            case AVERAGE -> average(values, n);
+            case MEDIAN -> median(values, n);
+            case SIGMA_CLIP -> sigmaClip(values, n);
+            case MAXIMUM -> maximum(values, n);
+            case MINIMUM -> minimum(values, n);
+            case WEIGHTED_AVERAGE -> weightedAverage(values, weights, n);
+        };
+    }
+
+    /**
+     * Combine les n valeurs d'un pixel pour plusieurs méthodes à la fois ; le résultat de chaque
+     * méthode est rangé dans out[method.ordinal()]. La somme est partagée par la moyenne et le
+     * sigma-clipping, et le tri de la médiane est fait en dernier car il réordonne les valeurs.
+     * Si integers n'est pas null (mêmes valeurs en entiers 16 bits), la médiane est obtenue par
+     * comptage au lieu du tri. Chaque résultat est identique à celui de {@link #combine}.
+     */
+    static void combineAll(Set<StackingMethod> methods, float[] values, double[] weights, int n, float[] out,
+                           short[] integers, int[] counts) {
+        if (n == 0) {
+            Arrays.fill(out, 0);
+            return;
         }
 
-        if (clipped.isEmpty()) return (float) mean;
+        boolean wantsAverage = methods.contains(StackingMethod.AVERAGE);
+        boolean wantsSigma = methods.contains(StackingMethod.SIGMA_CLIP);
+        if (wantsAverage || wantsSigma) {
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += values[i];
+            }
+            float average = (float) (sum / n);
+            if (wantsAverage) {
+                out[StackingMethod.AVERAGE.ordinal()] = average;
+            }
+            if (wantsSigma) {
+                out[StackingMethod.SIGMA_CLIP.ordinal()] = n < Config.MIN_VALUES_FOR_SIGMA_CLIP
+                        ? average : clipAroundMean(values, n, sum / n);
+            }
+        }
+        if (methods.contains(StackingMethod.WEIGHTED_AVERAGE)) {
+            out[StackingMethod.WEIGHTED_AVERAGE.ordinal()] = weightedAverage(values, weights, n);
+        }
+        if (methods.contains(StackingMethod.MEDIAN) && integers != null) {
+            out[StackingMethod.MEDIAN.ordinal()] = HistogramMedian.median(integers, n, counts);
+        }
+        if (methods.contains(StackingMethod.MEDIAN) && integers == null) {
+            // Après le tri, minimum et maximum sont aux extrémités
+            out[StackingMethod.MEDIAN.ordinal()] = median(values, n);
+            out[StackingMethod.MINIMUM.ordinal()] = values[0];
+            out[StackingMethod.MAXIMUM.ordinal()] = values[n - 1];
+        } else {
+            if (methods.contains(StackingMethod.MINIMUM)) {
+                out[StackingMethod.MINIMUM.ordinal()] = minimum(values, n);
+            }
+            if (methods.contains(StackingMethod.MAXIMUM)) {
+                out[StackingMethod.MAXIMUM.ordinal()] = maximum(values, n);
+            }
+        }
+    }
 
+    private static float average(float[] values, int n) {
         double sum = 0;
-        for (float value : clipped) {
-            sum += value;
+        for (int i = 0; i < n; i++) {
+            sum += values[i];
         }
+        return (float) (sum / n);
+    }
 
-        return (float) (sum / clipped.size());
+    private static float median(float[] values, int n) {
+        Arrays.sort(values, 0, n);
+        if (n % 2 == 0) {
+            return (values[n / 2 - 1] + values[n / 2]) / 2;
+        } else {
+            return values[n / 2];
+        }
     }
 
-    private static float stackMaximumChannel(List<FitsImage> images, int x, int y, int channel) {
-        float max = Float.MIN_VALUE;
+    private static float sigmaClip(float[] values, int n) {
+        if (n < Config.MIN_VALUES_FOR_SIGMA_CLIP) return average(values, n);
 
-        for (FitsImage image : images) {
-            float value = image.getPixel(channel, x, y);
-            if (value > max) {
-                max = value;
-            }
+        // Calculate mean and standard deviation
+        double mean = 0;
+        for (int i = 0; i < n; i++) {
+            mean += values[i];
         }
-
-        return max == Float.MIN_VALUE ? 0 : max;
+        mean /= n;
+        return clipAroundMean(values, n, mean);
     }
 
-    private static float stackMinimumChannel(List<FitsImage> images, int x, int y, int channel) {
-        float min = Float.MAX_VALUE;
+    private static float clipAroundMean(float[] values, int n, double mean) {
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            double diff = values[i] - mean;
+            variance += diff * diff;
+        }
+        double stdDev = Math.sqrt(variance / n);
 
-        for (FitsImage image : images) {
-            float value = image.getPixel(channel, x, y);
-            if (value > 0 && value < min) {
-                min = value;
+        // Remove outliers (values more than 2 sigma away) and average the rest
+        double lowerBound = mean - Config.SIGMA_CLIP_THRESHOLD * stdDev;
+        double upperBound = mean + Config.SIGMA_CLIP_THRESHOLD * stdDev;
+        double sum = 0;
+        int kept = 0;
+        for (int i = 0; i < n; i++) {
+            float value = values[i];
+            if (value >= lowerBound && value <= upperBound) {
+                sum += value;
+                kept++;
             }
         }
 
-        return min == Float.MAX_VALUE ? 0 : min;
+        if (kept == 0) return (float) mean;
+        return (float) (sum / kept);
     }
 
-    private static float stackWeightedAverageChannel(List<FitsImage> images, int x, int y, int channel) {
-        double weightedSum = 0;
-        double totalWeight = 0;
+    private static float maximum(float[] values, int n) {
+        float max = values[0];
+        for (int i = 1; i < n; i++) {
+            if (values[i] > max) max = values[i];
+        }
+        return max;
+    }
 
-        for (int i = 0; i < images.size(); i++) {
-            FitsImage image = images.get(i);
-            float value = image.getPixel(channel, x, y);
-            
-            if (value > 0) {
-                double weight = 1.0 / (1.0 + i * 0.1);
-                weightedSum += value * weight;
-                totalWeight += weight;
-            }
+    private static float minimum(float[] values, int n) {
+        float min = values[0];
+        for (int i = 1; i < n; i++) {
+            if (values[i] < min) min = values[i];
         }
+        return min;
+    }
 
+    private static float weightedAverage(float[] values, double[] weights, int n) {
+        double weightedSum = 0;
+        double totalWeight = 0;
+        for (int i = 0; i < n; i++) {
+            weightedSum += values[i] * weights[i];
+            totalWeight += weights[i];
+        }
         return totalWeight > 0 ? (float) (weightedSum / totalWeight) : 0;
     }
 }
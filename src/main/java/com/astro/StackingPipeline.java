@@ -0,0 +1,406 @@
+package com.astro;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Empilement en pipeline : chargement → détection → alignement → redressement → accumulation.
+ * Les images circulent une par une dans des files bornées ; chaque image est libérée dès
+ * qu'elle a été accumulée. Les entrées ou sorties disque et le calcul se recouvrent, et la
+ * mémoire ne dépend que de la profondeur des files (plus le canvas de l'accumulateur).
+ * Réservé aux méthodes cumulables (voir {@link StackAccumulator#supports}) et au
+ * sigma-clipping en deux passes (voir {@link #sigmaClip}).
+ */
+public class StackingPipeline {
+    private static final int MAX_STARS = 100;
+
+    /**
+     * Réglages du pipeline : profondeur des files et nombre de workers par étape
+     */
+    public static class Settings {
+        public final int queueDepth;
+        public final int loadWorkers;
+        public final int detectWorkers;
+        public final int alignWorkers;
+        public final int warpWorkers;
+        public final int accumulateWorkers;
+
+        public Settings(int queueDepth, int loadWorkers, int detectWorkers, int alignWorkers,
+                        int warpWorkers, int accumulateWorkers) {
+            this.queueDepth = queueDepth;
+            this.loadWorkers = loadWorkers;
+            this.detectWorkers = detectWorkers;
+            this.alignWorkers = alignWorkers;
+            this.warpWorkers = warpWorkers;
+            this.accumulateWorkers = accumulateWorkers;
+        }
+
+        public static Settings defaults() {
+            return forThreads(Runtime.getRuntime().availableProcessors());
+        }
+
+        /**
+         * Répartit un nombre total de threads de calcul entre les étapes
+         */
+        public static Settings forThreads(int threads) {
+            int cpu = Math.max(1, threads);
+            return new Settings(
+                    Config.PIPELINE_QUEUE_DEPTH,
+                    Config.PIPELINE_IO_WORKERS,
+                    Math.max(1, cpu / 2),
+                    1,
+                    cpu,
+                    Math.max(1, Math.min(2, cpu / 2))
+            );
+        }
+    }
+
+    /**
+     * Une image dans le pipeline. Les champs déjà connus (pixels, étoiles, transformation)
+     * font sauter l'étape correspondante.
+     */
+    public static class FrameJob {
+        final int index;
+        final Path path;
+        // Image fournie par l'appelant : reprise à chaque passe au lieu d'être rechargée
+        final FitsImage resident;
+        FitsImage image;
+        StarCatalog stars;
+        ImageAligner.AffineTransform transform;
+        // Bruit mesuré à l'alignement (NaN si inconnu) : pondération sans relire toute l'image
+        double noiseSigma = Double.NaN;
+        FitsImage aligned;
+        // Fixé avant le passage pour la moyenne pondérée (voir assignWeights)
+        double weight = 1.0;
+        boolean rejected;
+
+        public FrameJob(int index, Path path, FitsImage image, StarCatalog stars,
+                        ImageAligner.AffineTransform transform) {
+            this.index = index;
+            this.path = path;
+            this.resident = image;
+            this.image = image;
+            this.stars = stars;
+            this.transform = transform;
+        }
+
+        /** Image déjà chargée et alignée (transformation portée par l'image) */
+        public static FrameJob of(int index, FitsImage image) {
+            return new FrameJob(index, image.getPath(), image, null, image.getTransform());
+        }
+
+        /** Image à charger depuis le disque, éventuellement déjà alignée */
+        public static FrameJob of(int index, Path path, ImageAligner.AffineTransform transform) {
+            return new FrameJob(index, path, null, null, transform);
+        }
+
+        /** Image alignée puis relâchée : seuls son chemin, sa transformation et son bruit sont gardés */
+        public static FrameJob of(int index, Path path, ImageAligner.AffineTransform transform, double noiseSigma) {
+            FrameJob job = new FrameJob(index, path, null, null, transform);
+            job.noiseSigma = noiseSigma;
+            return job;
+        }
+    }
+
+    /**
+     * Destination des images redressées
+     */
+    @FunctionalInterface
+    interface FrameSink {
+        void add(FitsImage aligned, double weight, int frameIndex);
+    }
+
+    /**
+     * Empile des images déjà chargées et alignées (transformations et canvas portés par les images)
+     */
+    public static FitsImage stack(List<FitsImage> images, StackingEngine.StackingMethod method,
+                                  ImageAligner.ProgressCallback callback) throws Exception {
+        ImageAligner.CanvasInfo canvas = images.get(0).getCanvasInfo();
+        if (canvas == null) {
+            canvas = new ImageAligner.CanvasInfo(images.get(0).getWidth(), images.get(0).getHeight(), 0, 0);
+        }
+        List<FrameJob> jobs = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++) {
+            jobs.add(FrameJob.of(i, images.get(i)));
+        }
+        return run(jobs, null, canvas, images.get(0).isColor(), images.get(0).getPath(),
+                method, Settings.defaults(), callback);
+    }
+
+    /**
+     * Fait passer les images dans le pipeline et renvoie l'image empilée.
+     *
+     * @param referenceStars catalogue de référence pour les images sans transformation (null = identité)
+     */
+    public static FitsImage run(List<FrameJob> jobs, StarCatalog referenceStars,
+                                ImageAligner.CanvasInfo canvas, boolean isColor, Path resultPath,
+                                StackingEngine.StackingMethod method, Settings settings,
+                                ImageAligner.ProgressCallback callback) throws Exception {
+        return run(jobs, referenceStars, canvas, isColor, resultPath, method, settings, null, callback);
+    }
+
+    /**
+     * Comme {@link #run(List, StarCatalog, ImageAligner.CanvasInfo, boolean, Path,
+     * StackingEngine.StackingMethod, Settings, ImageAligner.ProgressCallback)}, avec un point de
+     * reprise : l'état de l'accumulateur est enregistré à intervalles réguliers et les images
+     * déjà cumulées par une exécution interrompue ne sont pas relues.
+     */
+    public static FitsImage run(List<FrameJob> jobs, StarCatalog referenceStars,
+                                ImageAligner.CanvasInfo canvas, boolean isColor, Path resultPath,
+                                StackingEngine.StackingMethod method, Settings settings,
+                                StackCheckpoint checkpoint, ImageAligner.ProgressCallback callback) throws Exception {
+        if (!StackAccumulator.supports(method)) {
+            throw new IllegalArgumentException("Méthode non cumulable en pipeline: " + method.getDisplayName());
+        }
+
+        System.out.println("=== Empilement en pipeline ===");
+        System.out.println("Images: " + jobs.size() + ", méthode: " + method.getDisplayName());
+        System.out.println("Canvas: " + canvas.width + "x" + canvas.height +
+                ", file: " + settings.queueDepth + ", workers redressement: " + settings.warpWorkers);
+
+        Set<Integer> stacked = ConcurrentHashMap.newKeySet();
+        StackAccumulator restored = checkpoint != null
+                ? checkpoint.restoreAccumulator(canvas, isColor, method, stacked) : null;
+        StackAccumulator accumulator = restored != null
+                ? restored : new StackAccumulator(canvas.width, canvas.height, isColor, method);
+        List<FrameJob> remaining = remaining(jobs, stacked);
+        if (method == StackingEngine.StackingMethod.WEIGHTED_AVERAGE) {
+            assignWeights(jobs);
+        }
+
+        try (StackPreview preview = StackPreview.ofAccumulator(
+                (c, x, y) -> accumulator.value(method, c, y * canvas.width + x),
+                canvas.width, canvas.height, isColor ? 3 : 1,
+                () -> accumulator.getFrameCount() + " images cumulées")) {
+            FrameSink sink = (aligned, weight, frame) -> {
+                accumulator.add(aligned, weight);
+                preview.changed();
+            };
+            if (checkpoint != null) {
+                // Les ajouts sont concurrents entre eux, l'enregistrement les exclut tous
+                ReadWriteLock lock = new ReentrantReadWriteLock();
+                sink = (aligned, weight, frame) -> {
+                    lock.readLock().lock();
+                    try {
+                        accumulator.add(aligned, weight);
+                        stacked.add(frame);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    preview.changed();
+                    if (checkpoint.isDue()) {
+                        lock.writeLock().lock();
+                        try {
+                            checkpoint.saveAccumulator(accumulator, new ArrayList<>(stacked));
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    }
+                };
+            }
+            runPass("empilement", remaining, referenceStars, canvas, method, settings, sink,
+                    callback, 0, 95, "Empilement");
+        }
+
+        if (accumulator.getFrameCount() == 0) {
+            throw new IllegalStateException("Aucune image n'a pu être empilée");
+        }
+        if (checkpoint != null) {
+            checkpoint.finish();
+        }
+
+        FitsImage result = accumulator.toImage(resultPath, method);
+        if (callback != null) {
+            callback.onProgress(100, "Empilement terminé!");
+        }
+        return result;
+    }
+
+    /**
+     * Sigma-clipping à mémoire constante : les images passent deux fois dans le pipeline
+     * (statistiques par pixel, puis cumul des valeurs conservées). Les images chargées depuis
+     * le disque sont relues à la seconde passe ; alignement et rejets de la première sont gardés.
+     */
+    public static FitsImage sigmaClip(List<FrameJob> jobs, StarCatalog referenceStars,
+                                      ImageAligner.CanvasInfo canvas, boolean isColor, Path resultPath,
+                                      Settings settings, ImageAligner.ProgressCallback callback) throws Exception {
+        return sigmaClip(jobs, referenceStars, canvas, isColor, resultPath, settings, null, callback);
+    }
+
+    /**
+     * Comme {@link #sigmaClip(List, StarCatalog, ImageAligner.CanvasInfo, boolean, Path, Settings,
+     * ImageAligner.ProgressCallback)}, avec un point de reprise : l'état des deux passes est
+     * enregistré à intervalles réguliers et à la fin de la passe 1. Une exécution interrompue
+     * reprend à la passe enregistrée sans relire les images qui y étaient déjà cumulées.
+     */
+    public static FitsImage sigmaClip(List<FrameJob> jobs, StarCatalog referenceStars,
+                                      ImageAligner.CanvasInfo canvas, boolean isColor, Path resultPath,
+                                      Settings settings, StackCheckpoint checkpoint,
+                                      ImageAligner.ProgressCallback callback) throws Exception {
+        System.out.println("=== Sigma-clipping en deux passes ===");
+        System.out.println("Images: " + jobs.size() + ", kappa: " + Config.SIGMA_CLIP_THRESHOLD);
+        System.out.println("Canvas: " + canvas.width + "x" + canvas.height +
+                ", file: " + settings.queueDepth + ", workers redressement: " + settings.warpWorkers);
+
+        // Images cumulées à la passe en cours
+        Set<Integer> stacked = ConcurrentHashMap.newKeySet();
+        SigmaClipAccumulator restored = checkpoint != null
+                ? checkpoint.restoreSigmaClip(canvas, isColor, stacked) : null;
+        SigmaClipAccumulator accumulator = restored != null
+                ? restored : new SigmaClipAccumulator(canvas.width, canvas.height, isColor);
+        StackingEngine.StackingMethod method = StackingEngine.StackingMethod.SIGMA_CLIP;
+        try (StackPreview preview = StackPreview.ofAccumulator(
+                (c, x, y) -> accumulator.value(c, y * canvas.width + x),
+                canvas.width, canvas.height, isColor ? 3 : 1,
+                () -> accumulator.isSecondPass() ? "passe 2 (rejet)" : "passe 1 (statistiques)")) {
+            FrameSink sink = (aligned, weight, frame) -> {
+                accumulator.add(aligned, weight);
+                preview.changed();
+            };
+            if (checkpoint != null) {
+                // Même schéma que run : ajouts concurrents, l'enregistrement les exclut tous
+                ReadWriteLock lock = new ReentrantReadWriteLock();
+                sink = (aligned, weight, frame) -> {
+                    lock.readLock().lock();
+                    try {
+                        accumulator.add(aligned, weight);
+                        stacked.add(frame);
+                    } finally {
+                        lock.readLock().unlock();
+                    }
+                    preview.changed();
+                    if (checkpoint.isDue()) {
+                        lock.writeLock().lock();
+                        try {
+                            checkpoint.saveSigmaClip(accumulator, new ArrayList<>(stacked));
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    }
+                };
+            }
+            if (!accumulator.isSecondPass()) {
+                runPass("sigma-passe1", remaining(jobs, stacked), referenceStars, canvas, method, settings, sink,
+                        callback, 0, 48, "Passe 1 (statistiques)");
+                if (accumulator.getFrameCount() == 0) {
+                    throw new IllegalStateException("Aucune image n'a pu être empilée");
+                }
+                accumulator.finishFirstPass();
+                stacked.clear();
+                if (checkpoint != null) {
+                    checkpoint.saveSigmaClip(accumulator, stacked);
+                }
+            }
+            runPass("sigma-passe2", remaining(jobs, stacked), referenceStars, canvas, method, settings, sink,
+                    callback, 50, 95, "Passe 2 (rejet)");
+        }
+        if (checkpoint != null) {
+            checkpoint.finish();
+        }
+
+        FitsImage result = accumulator.toImage(resultPath);
+        if (callback != null) {
+            callback.onProgress(100, "Empilement terminé!");
+        }
+        return result;
+    }
+
+    /**
+     * Images pas encore cumulées (reprise)
+     */
+    private static List<FrameJob> remaining(List<FrameJob> jobs, Set<Integer> stacked) {
+        List<FrameJob> remaining = new ArrayList<>();
+        for (FrameJob job : jobs) {
+            if (!stacked.contains(job.index)) remaining.add(job);
+        }
+        return remaining;
+    }
+
+    /**
+     * Poids 1/σ² de toutes les images du lot, fixés avant le passage : une image au bruit non
+     * mesurable (ou inconnu, sans pixels ni bruit d'alignement) prend la médiane du lot, une
+     * valeur à la même échelle que les autres, ce que le pipeline ne peut pas connaître en cours de route
+     */
+    private static void assignWeights(List<FrameJob> jobs) {
+        double[] weights = new double[jobs.size()];
+        for (int i = 0; i < weights.length; i++) {
+            FrameJob job = jobs.get(i);
+            weights[i] = job.resident != null ? job.resident.getStackWeight() : FitsImage.stackWeight(job.noiseSigma);
+        }
+        FitsImage.fillUnknownWeights(weights);
+        for (int i = 0; i < weights.length; i++) {
+            jobs.get(i).weight = weights[i];
+        }
+    }
+
+    /**
+     * Un passage de toutes les images dans le pipeline, chaque image redressée allant au collecteur
+     */
+    private static void runPass(String name, List<FrameJob> jobs, StarCatalog referenceStars,
+                                ImageAligner.CanvasInfo canvas, StackingEngine.StackingMethod method,
+                                Settings settings, FrameSink sink, ImageAligner.ProgressCallback callback,
+                                int progressFrom, int progressTo, String label) throws Exception {
+        ProgressTracker progress = ProgressTracker.start(callback);
+        progress.phase(label, "images", jobs.size(), progressFrom, progressTo);
+
+        FramePipeline<FrameJob> pipeline = new FramePipeline<FrameJob>(name, settings.queueDepth)
+                .stage("chargement", settings.loadWorkers, job -> {
+                    if (job.rejected) {
+                        return null;
+                    }
+                    if (job.image == null) {
+                        job.image = job.resident != null ? job.resident : new FitsImage(job.path);
+                    }
+                    return job;
+                })
+                .stage("détection", settings.detectWorkers, job -> {
+                    if (job.transform == null && referenceStars != null && job.stars == null) {
+                        job.stars = DetectionCache.detectStars(job.image, MAX_STARS);
+                    }
+                    return job;
+                })
+                .stage("alignement", settings.alignWorkers, job -> {
+                    if (job.transform == null) {
+                        if (referenceStars == null) {
+                            job.transform = ImageAligner.AffineTransform.identity();
+                        } else {
+                            ImageAligner.AlignmentResult result =
+                                    ImageAligner.findAffineTransformWithQuality(referenceStars, job.stars);
+                            if (!result.accepted) {
+                                System.out.println("✗ Image écartée: " + job.path.getFileName() + " - " + result.rejectReason);
+                                job.rejected = true;
+                                job.image = null;
+                                return null;
+                            }
+                            job.transform = result.transform;
+                        }
+                    }
+                    return job;
+                })
+                .stage("redressement", settings.warpWorkers, job -> {
+                    job.image.setTransform(job.transform);
+                    job.aligned = job.image.createAlignedCopy(canvas.width, canvas.height,
+                            canvas.offsetX, canvas.offsetY);
+                    // La source n'est plus utile : elle peut être libérée si elle a été chargée ici
+                    job.image = null;
+                    return job;
+                })
+                .stage("accumulation", settings.accumulateWorkers, job -> {
+                    StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.COMBINE);
+                    sink.add(job.aligned, job.weight, job.index);
+                    span.end(1, (long) canvas.width * canvas.height * (job.aligned.isColor() ? 3 : 1), 0);
+                    job.aligned = null;
+                    progress.advance(1);
+                    return null;
+                });
+
+        try (progress) {
+            pipeline.run(jobs);
+        }
+    }
+}
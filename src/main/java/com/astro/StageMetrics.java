@@ -0,0 +1,244 @@
+package com.astro;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mesures par étape de traitement (chargement, détection, appariement, RANSAC, redressement,
+ * combinaison) : durées, pixels, images, octets lus et octets alloués.
+ *
+ * Chaque mesure alimente deux sorties :
+ * <ul>
+ *   <li>le registre en mémoire du processus, résumé en fin de travail ({@link #summary()},
+ *       {@link #writeJson(Path)}) ;</li>
+ *   <li>un événement JFR {@code com.astro.Stage}, visible dans un enregistrement
+ *       ({@code java -XX:StartFlightRecording=filename=run.jfr ...}) et sans coût s'il n'y en a pas.</li>
+ * </ul>
+ * Les durées sont cumulées sur tous les threads : le débit affiché est celui d'un thread.
+ */
+public class StageMetrics {
+
+    public enum Stage {
+        LOAD("chargement"),
+        DETECTION("détection"),
+        MATCHING("appariement"),
+        RANSAC("RANSAC"),
+        WARP("redressement"),
+        COMBINE("combinaison");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    @Name("com.astro.Stage")
+    @Label("Étape FITS Stacker")
+    @Description("Durée d'une étape de traitement d'image")
+    @Category("FITS Stacker")
+    @StackTrace(false)
+    static class StageEvent extends Event {
+        @Label("Étape")
+        String stage;
+
+        @Label("Images")
+        int frames;
+
+        @Label("Pixels")
+        long pixels;
+
+        @Label("Octets lus")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Octets alloués")
+        @DataAmount
+        long allocated;
+    }
+
+    private static class Counters {
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder frames = new LongAdder();
+        final LongAdder pixels = new LongAdder();
+        final LongAdder bytesRead = new LongAdder();
+        final LongAdder allocated = new LongAdder();
+    }
+
+    private static final Map<Stage, Counters> COUNTERS = new EnumMap<>(Stage.class);
+    private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();
+
+    static {
+        for (Stage stage : Stage.values()) {
+            COUNTERS.put(stage, new Counters());
+        }
+    }
+
+    private StageMetrics() {
+        // Classe utilitaire, pas d'instanciation
+    }
+
+    /**
+     * Mesure en cours, terminée par {@link #end} dans le thread qui l'a commencée.
+     * Une mesure abandonnée (exception) n'est simplement pas comptée.
+     */
+    public static final class Span {
+        private final Stage stage;
+        private final long start;
+        private final long allocatedAtStart;
+        private final StageEvent event;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            this.event = new StageEvent();
+            this.event.begin();
+            this.allocatedAtStart = allocatedBytes();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * @param frames    images entières traitées (0 pour une portion d'image)
+         * @param pixels    pixels traités
+         * @param bytesRead octets lus sur disque
+         */
+        public void end(int frames, long pixels, long bytesRead) {
+            long nanos = System.nanoTime() - start;
+            long allocated = allocatedAtStart >= 0 ? Math.max(0, allocatedBytes() - allocatedAtStart) : 0;
+            Counters counters = COUNTERS.get(stage);
+            counters.calls.increment();
+            counters.nanos.add(nanos);
+            counters.frames.add(frames);
+            counters.pixels.add(pixels);
+            counters.bytesRead.add(bytesRead);
+            counters.allocated.add(allocated);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.getLabel();
+                event.frames = frames;
+                event.pixels = pixels;
+                event.bytesRead = bytesRead;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    public static Span begin(Stage stage) {
+        return new Span(stage);
+    }
+
+    /**
+     * Remet le registre à zéro (début d'un travail)
+     */
+    public static void reset() {
+        for (Counters counters : COUNTERS.values()) {
+            counters.calls.reset();
+            counters.nanos.reset();
+            counters.frames.reset();
+            counters.pixels.reset();
+            counters.bytesRead.reset();
+            counters.allocated.reset();
+        }
+    }
+
+    /**
+     * Tableau récapitulatif des étapes mesurées depuis le dernier {@link #reset()}
+     */
+    public static String summary() {
+        StringBuilder text = new StringBuilder();
+        text.append("=== Mesures par étape (temps cumulé sur tous les threads) ===\n");
+        text.append(String.format(Locale.ROOT, "%-14s %8s %10s %10s %10s %10s %12s%n",
+                "Étape", "Appels", "Temps (s)", "Images/s", "MPix/s", "Lu (Mo)", "Alloué (Mo)"));
+        for (Stage stage : Stage.values()) {
+            Counters c = COUNTERS.get(stage);
+            if (c.calls.sum() == 0) continue;
+            double seconds = c.nanos.sum() / 1e9;
+            text.append(String.format(Locale.ROOT, "%-14s %8d %10.2f %10s %10.1f %10.1f %12.1f%n",
+                    stage.getLabel(), c.calls.sum(), seconds,
+                    c.frames.sum() > 0 ? String.format(Locale.ROOT, "%.2f", rate(c.frames.sum(), seconds)) : "-",
+                    rate(c.pixels.sum(), seconds) / 1e6,
+                    c.bytesRead.sum() / 1048576.0, c.allocated.sum() / 1048576.0));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Écrit le registre en JSON (une entrée par étape mesurée), pour comparer des réglages ou des versions
+     */
+    public static void writeJson(Path file) throws IOException {
+        StringBuilder json = new StringBuilder("{\n  \"stages\": [");
+        boolean first = true;
+        for (Stage stage : Stage.values()) {
+            Counters c = COUNTERS.get(stage);
+            if (c.calls.sum() == 0) continue;
+            double seconds = c.nanos.sum() / 1e9;
+            json.append(first ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT,
+                    "    {\"stage\": \"%s\", \"calls\": %d, \"seconds\": %.6f, \"frames\": %d, \"pixels\": %d, " +
+                            "\"bytesRead\": %d, \"bytesAllocated\": %d, \"framesPerSecond\": %.3f, \"mpixPerSecond\": %.3f}",
+                    stage.name(), c.calls.sum(), seconds, c.frames.sum(), c.pixels.sum(),
+                    c.bytesRead.sum(), c.allocated.sum(), rate(c.frames.sum(), seconds),
+                    rate(c.pixels.sum(), seconds) / 1e6));
+            first = false;
+        }
+        json.append("\n  ]\n}\n");
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, json, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Résumé vers le journal et fichier JSON ; une erreur d'écriture n'échoue pas le travail
+     */
+    public static void report(Path jsonFile) {
+        System.out.print(summary());
+        if (jsonFile == null) return;
+        try {
+            writeJson(jsonFile);
+            System.out.println("Mesures: " + jsonFile);
+        } catch (IOException e) {
+            System.err.println("✗ Mesures non enregistrées (" + jsonFile + "): " + e.getMessage());
+        }
+    }
+
+    private static double rate(long count, double seconds) {
+        return seconds > 0 ? count / seconds : 0;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATION != null ? ALLOCATION.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean && sunBean.isThreadAllocatedMemorySupported()
+                && sunBean.isThreadAllocatedMemoryEnabled()) {
+            return sunBean;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,311 @@
+package com.astro;
+
+import java.util.Arrays;
+
+/**
+ * Catalogue d'étoiles en tableaux parallèles (x, y, pic, flux, FWHM, excentricité).
+ * Remplace les List&lt;Star&gt; dans les boucles chaudes de détection et d'alignement :
+ * pas d'objet par étoile, tri et top-K sur primitives, index spatial en grille.
+ */
+public class StarCatalog {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private double[] x;
+    private double[] y;
+    private double[] peak;
+    private double[] flux;
+    private double[] fwhm;
+    private double[] eccentricity;
+    private int size;
+
+    // Statistiques de fond de l'image d'origine
+    private double backgroundMean;
+    private double backgroundSigma;
+
+    // Index spatial (grille de cellules chaînées), reconstruit à la demande
+    private int gridCellSize;
+    private int gridCols;
+    private int gridRows;
+    private int[] gridHeads;
+    private int[] gridNext;
+    private boolean gridValid;
+
+    public StarCatalog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public StarCatalog(int capacity) {
+        int cap = Math.max(1, capacity);
+        x = new double[cap];
+        y = new double[cap];
+        peak = new double[cap];
+        flux = new double[cap];
+        fwhm = new double[cap];
+        eccentricity = new double[cap];
+    }
+
+    public void add(double starX, double starY, double starPeak, double starFlux,
+                    double starFwhm, double starEccentricity) {
+        if (size == x.length) {
+            grow(size * 2);
+        }
+        x[size] = starX;
+        y[size] = starY;
+        peak[size] = starPeak;
+        flux[size] = starFlux;
+        fwhm[size] = starFwhm;
+        eccentricity[size] = starEccentricity;
+        if (gridValid) {
+            insertInGrid(size);
+        }
+        size++;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public double getX(int i) { return x[i]; }
+    public double getY(int i) { return y[i]; }
+    public double getPeak(int i) { return peak[i]; }
+    public double getFlux(int i) { return flux[i]; }
+    public double getFwhm(int i) { return fwhm[i]; }
+    public double getEccentricity(int i) { return eccentricity[i]; }
+
+    public void setBackground(double mean, double sigma) {
+        this.backgroundMean = mean;
+        this.backgroundSigma = sigma;
+    }
+    public double getBackgroundMean() { return backgroundMean; }
+    public double getBackgroundSigma() { return backgroundSigma; }
+
+    /**
+     * Vue objet d'une entrée (pour le log et le code non critique)
+     */
+    public Star get(int i) {
+        return new Star(x[i], y[i], peak[i], flux[i]);
+    }
+
+    public double distance(int i, int j) {
+        double dx = x[i] - x[j];
+        double dy = y[i] - y[j];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // ========== Tri et sélection ==========
+
+    /**
+     * Trie le catalogue par flux décroissant (étoiles les plus brillantes d'abord)
+     */
+    public void sortByFluxDescending() {
+        quickSortDesc(0, size - 1);
+        gridValid = false;
+    }
+
+    /**
+     * Conserve les k étoiles les plus brillantes, triées par flux décroissant.
+     * Sélection rapide en O(n) puis tri des seules k retenues.
+     */
+    public void keepBrightest(int k) {
+        if (k < size) {
+            selectTopK(k);
+            size = Math.max(0, k);
+        }
+        sortByFluxDescending();
+    }
+
+    private void selectTopK(int k) {
+        int left = 0;
+        int right = size - 1;
+        while (left < right) {
+            int p = partitionDesc(left, right, left + (right - left) / 2);
+            if (p == k) {
+                return;
+            } else if (p < k) {
+                left = p + 1;
+            } else {
+                right = p - 1;
+            }
+        }
+    }
+
+    private void quickSortDesc(int left, int right) {
+        while (left < right) {
+            if (right - left < 16) {
+                insertionSortDesc(left, right);
+                return;
+            }
+            int p = partitionDesc(left, right, left + (right - left) / 2);
+            // Récursion sur la plus petite moitié pour borner la pile
+            if (p - left < right - p) {
+                quickSortDesc(left, p - 1);
+                left = p + 1;
+            } else {
+                quickSortDesc(p + 1, right);
+                right = p - 1;
+            }
+        }
+    }
+
+    private void insertionSortDesc(int left, int right) {
+        for (int i = left + 1; i <= right; i++) {
+            for (int j = i; j > left && flux[j] > flux[j - 1]; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int partitionDesc(int left, int right, int pivotIndex) {
+        double pivot = flux[pivotIndex];
+        swap(pivotIndex, right);
+        int store = left;
+        for (int i = left; i < right; i++) {
+            if (flux[i] > pivot) {
+                swap(i, store);
+                store++;
+            }
+        }
+        swap(store, right);
+        return store;
+    }
+
+    private void swap(int i, int j) {
+        if (i == j) return;
+        double t;
+        t = x[i]; x[i] = x[j]; x[j] = t;
+        t = y[i]; y[i] = y[j]; y[j] = t;
+        t = peak[i]; peak[i] = peak[j]; peak[j] = t;
+        t = flux[i]; flux[i] = flux[j]; flux[j] = t;
+        t = fwhm[i]; fwhm[i] = fwhm[j]; fwhm[j] = t;
+        t = eccentricity[i]; eccentricity[i] = eccentricity[j]; eccentricity[j] = t;
+    }
+
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        peak = Arrays.copyOf(peak, capacity);
+        flux = Arrays.copyOf(flux, capacity);
+        fwhm = Arrays.copyOf(fwhm, capacity);
+        eccentricity = Arrays.copyOf(eccentricity, capacity);
+        if (gridNext != null) {
+            gridNext = Arrays.copyOf(gridNext, capacity);
+        }
+    }
+
+    // ========== Requêtes spatiales ==========
+
+    /**
+     * Active l'index spatial en grille pour une image de la taille donnée.
+     * L'index est tenu à jour lors des ajouts et reconstruit après un tri.
+     */
+    public void enableSpatialIndex(int imageWidth, int imageHeight, int cellSize) {
+        gridCellSize = Math.max(1, cellSize);
+        gridCols = Math.max(1, (imageWidth + gridCellSize - 1) / gridCellSize);
+        gridRows = Math.max(1, (imageHeight + gridCellSize - 1) / gridCellSize);
+        rebuildGrid();
+    }
+
+    private void rebuildGrid() {
+        gridHeads = new int[gridCols * gridRows];
+        Arrays.fill(gridHeads, -1);
+        gridNext = new int[x.length];
+        gridValid = true;
+        for (int i = 0; i < size; i++) {
+            insertInGrid(i);
+        }
+    }
+
+    private void insertInGrid(int i) {
+        int cell = cellIndex(cellCol(x[i]), cellRow(y[i]));
+        gridNext[i] = gridHeads[cell];
+        gridHeads[cell] = i;
+    }
+
+    private int cellCol(double px) {
+        return Math.min(gridCols - 1, Math.max(0, (int) Math.floor(px / gridCellSize)));
+    }
+
+    private int cellRow(double py) {
+        return Math.min(gridRows - 1, Math.max(0, (int) Math.floor(py / gridCellSize)));
+    }
+
+    private int cellIndex(int col, int row) {
+        return row * gridCols + col;
+    }
+
+    private boolean ensureGrid() {
+        if (gridHeads == null) {
+            return false;
+        }
+        if (!gridValid) {
+            rebuildGrid();
+        }
+        return true;
+    }
+
+    /**
+     * Vrai si une étoile se trouve dans le carré de demi-côté {@code radius} centré en (px, py)
+     */
+    public boolean anyWithinBox(double px, double py, double radius) {
+        if (!ensureGrid()) {
+            for (int i = 0; i < size; i++) {
+                if (Math.abs(x[i] - px) <= radius && Math.abs(y[i] - py) <= radius) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int c0 = cellCol(px - radius), c1 = cellCol(px + radius);
+        int r0 = cellRow(py - radius), r1 = cellRow(py + radius);
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                for (int i = gridHeads[cellIndex(col, row)]; i >= 0; i = gridNext[i]) {
+                    if (Math.abs(x[i] - px) <= radius && Math.abs(y[i] - py) <= radius) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indice de l'étoile la plus proche de (px, py) à moins de {@code maxRadius}, ou -1
+     */
+    public int nearest(double px, double py, double maxRadius) {
+        double bestDist2 = maxRadius * maxRadius;
+        int best = -1;
+        if (!ensureGrid()) {
+            for (int i = 0; i < size; i++) {
+                double dx = x[i] - px;
+                double dy = y[i] - py;
+                double d2 = dx * dx + dy * dy;
+                if (d2 <= bestDist2) {
+                    bestDist2 = d2;
+                    best = i;
+                }
+            }
+            return best;
+        }
+        int c0 = cellCol(px - maxRadius), c1 = cellCol(px + maxRadius);
+        int r0 = cellRow(py - maxRadius), r1 = cellRow(py + maxRadius);
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                for (int i = gridHeads[cellIndex(col, row)]; i >= 0; i = gridNext[i]) {
+                    double dx = x[i] - px;
+                    double dy = y[i] - py;
+                    double d2 = dx * dx + dy * dy;
+                    if (d2 <= bestDist2) {
+                        bestDist2 = d2;
+                        best = i;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String toString() {
+        return "StarCatalog[" + size + " étoiles]";
+    }
+}
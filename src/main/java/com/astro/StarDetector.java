@@ -1,13 +1,22 @@
 package com.astro;
 
-import java.util.*;
-
 public class StarDetector {
     private static final int MIN_STAR_SIZE = 3;
     private static final int MAX_STAR_SIZE = 30;
     private static final double THRESHOLD_MULTIPLIER = 3.0;
 
-    public static List<Star> detectStars(FitsImage image, int maxStars) {
+    private static final double SIGMA_TO_FWHM = 2.0 * Math.sqrt(2.0 * Math.log(2.0));
+
+    /**
+     * Signature of the detection parameters, used to key cached detections
+     */
+    public static String parameterSignature(int maxStars) {
+        return "v1;min=" + MIN_STAR_SIZE + ";max=" + MAX_STAR_SIZE +
+                ";k=" + THRESHOLD_MULTIPLIER + ";maxStars=" + maxStars;
+    }
+
+    public static StarCatalog detectStars(FitsImage image, int maxStars) {
+        StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.DETECTION);
         float[][] data = image.getData();
         int width = image.getWidth();
         int height = image.getHeight();
@@ -17,36 +26,35 @@ public class StarDetector {
         double stdDev = calculateStdDev(data, mean);
         double threshold = mean + THRESHOLD_MULTIPLIER * stdDev;
 
-        // Find local maxima
-        List<Star> stars = new ArrayList<>();
-        boolean[][] processed = new boolean[height][width];
+        // Find local maxima; the catalog's spatial index replaces a full-frame "processed" mask
+        StarCatalog stars = new StarCatalog(256);
+        stars.setBackground(mean, stdDev);
+        stars.enableSpatialIndex(width, height, 16);
 
         for (int y = MAX_STAR_SIZE; y < height - MAX_STAR_SIZE; y++) {
             for (int x = MAX_STAR_SIZE; x < width - MAX_STAR_SIZE; x++) {
-                if (processed[y][x]) continue;
-
                 float value = data[y][x];
                 if (value > threshold) {
+                    // Skip seeds within 5 px of an already detected star
+                    if (stars.anyWithinBox(x + 0.5, y + 0.5, 5.5)) continue;
+
                     // Check if it's a local maximum
                     if (isLocalMaximum(data, x, y, 3)) {
                         // Calculate centroid
                         StarProperties props = calculateStarProperties(data, x, y, threshold);
                         if (props != null && props.flux > 0) {
-                            stars.add(new Star(props.centerX, props.centerY, value, props.flux));
-                            markProcessed(processed, (int) props.centerX, (int) props.centerY, 5);
+                            stars.add(props.centerX, props.centerY, value, props.flux,
+                                    props.fwhm, props.eccentricity);
                         }
                     }
                 }
             }
         }
 
-        // Sort by brightness and keep the brightest stars
-        stars.sort((a, b) -> Double.compare(b.getFlux(), a.getFlux()));
-        
-        if (stars.size() > maxStars) {
-            stars = stars.subList(0, maxStars);
-        }
+        // Keep the brightest stars, sorted by flux
+        stars.keepBrightest(maxStars);
 
+        span.end(1, (long) width * height, 0);
         return stars;
     }
 
@@ -77,6 +85,9 @@ public class StarDetector {
 
         double sumX = 0;
         double sumY = 0;
+        double sumXX = 0;
+        double sumYY = 0;
+        double sumXY = 0;
         double sumFlux = 0;
         int count = 0;
 
@@ -94,6 +105,9 @@ public class StarDetector {
                         double weight = value - threshold * 0.5;
                         sumX += x * weight;
                         sumY += y * weight;
+                        sumXX += (double) x * x * weight;
+                        sumYY += (double) y * y * weight;
+                        sumXY += (double) x * y * weight;
                         sumFlux += weight;
                         count++;
                     }
@@ -104,24 +118,25 @@ public class StarDetector {
         if (count >= MIN_STAR_SIZE && count <= MAX_STAR_SIZE * MAX_STAR_SIZE) {
             double centerX = sumX / sumFlux;
             double centerY = sumY / sumFlux;
-            return new StarProperties(centerX, centerY, sumFlux);
+            // Second-order moments give the star's shape (FWHM of the equivalent Gaussian)
+            double varX = sumXX / sumFlux - centerX * centerX;
+            double varY = sumYY / sumFlux - centerY * centerY;
+            double covXY = sumXY / sumFlux - centerX * centerY;
+            double sigma = Math.sqrt(Math.max(0, (varX + varY) / 2.0));
+
+            // Eccentricity from the eigenvalues of the moment matrix (0 = round, ->1 = trailed)
+            double half = (varX + varY) / 2.0;
+            double spread = Math.sqrt(((varX - varY) / 2.0) * ((varX - varY) / 2.0) + covXY * covXY);
+            double major = half + spread;
+            double minor = Math.max(0, half - spread);
+            double eccentricity = major > 0 ? Math.sqrt(1.0 - minor / major) : 0;
+
+            return new StarProperties(centerX, centerY, sumFlux, sigma * SIGMA_TO_FWHM, eccentricity);
         }
 
         return null;
     }
 
-    private static void markProcessed(boolean[][] processed, int x, int y, int radius) {
-        for (int dy = -radius; dy <= radius; dy++) {
-            for (int dx = -radius; dx <= radius; dx++) {
-                int ny = y + dy;
-                int nx = x + dx;
-                if (ny >= 0 && ny < processed.length && nx >= 0 && nx < processed[0].length) {
-                    processed[ny][nx] = true;
-                }
-            }
-        }
-    }
-
     private static double calculateMean(float[][] data) {
         double sum = 0;
         int count = 0;
@@ -155,11 +170,15 @@ public class StarDetector {
         final double centerX;
         final double centerY;
         final double flux;
+        final double fwhm;
+        final double eccentricity;
 
-        StarProperties(double centerX, double centerY, double flux) {
+        StarProperties(double centerX, double centerY, double flux, double fwhm, double eccentricity) {
             this.centerX = centerX;
             this.centerY = centerY;
             this.flux = flux;
+            this.fwhm = fwhm;
+            this.eccentricity = eccentricity;
         }
     }
 }
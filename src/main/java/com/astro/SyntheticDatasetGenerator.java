@@ -0,0 +1,619 @@
+package com.astro;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Générateur de jeux d'images synthétiques pour les tests de charge et de passage à l'échelle :
+ * centaines d'images jusqu'à 9576×6388, BITPIX au choix, transformations connues (décalage,
+ * rotation, échelle), pixels chauds fixes et traînées de satellites.
+ * <p>
+ * Chaque image est calculée et écrite par bandes de lignes : la mémoire tenue est d'une bande
+ * par thread, quelle que soit la taille des images. Les étoiles ont une PSF gaussienne séparable
+ * (deux noyaux 1D par étoile au lieu d'une exponentielle par pixel de la fenêtre) et le bruit
+ * de chaque bande a sa propre graine, si bien que le résultat ne dépend pas du nombre de threads.
+ * <p>
+ * Le manifeste {@value #MANIFEST_NAME} donne la vraie transformation de chaque image, dans la
+ * convention de {@link ImageAligner.AffineTransform} (coordonnées image → coordonnées de la
+ * première image) ; {@link #readManifest(Path)} le relit.
+ * <pre>
+ * java -cp fits-stacker.jar com.astro.SyntheticDatasetGenerator --out jeu --count 200 --size 9576x6388 --bitpix 16
+ * </pre>
+ */
+public class SyntheticDatasetGenerator {
+    public static final String MANIFEST_NAME = "manifest.txt";
+    private static final int FITS_BLOCK = 2880;
+    private static final int CARD = 80;
+    private static final int BAND_ROWS = 128;
+    private static final double PSF_RADIUS_SIGMAS = 4.0;
+    private static final double SHORT_MAX = Short.MAX_VALUE;
+    // Poids R, G, B des étoiles selon leur couleur (bleue → rouge)
+    private static final double[][] STAR_COLORS = {
+            {0.8, 0.9, 1.2}, {1.0, 1.0, 1.0}, {1.2, 1.0, 0.8}, {1.4, 0.9, 0.6}
+    };
+
+    /**
+     * Paramètres d'un jeu
+     */
+    public static class Options {
+        public Path outputDir = Paths.get("jeu_synthetique");
+        public int count = 20;
+        public int width = 2048;
+        public int height = 2048;
+        public int bitpix = 16;
+        public boolean color = false;
+        public int stars = 0;               // 0 : selon la surface
+        public long seed = 42;
+        public int threads = 0;             // 0 = nombre de cœurs
+        public double maxShift = 40.0;      // pixels
+        public double maxRotation = 2.0;    // degrés
+        public double maxScale = 0.01;      // écart relatif à 1
+        public int hotPixels = 200;
+        public double trailProbability = 0.1;
+        public double background = 100.0;
+        public double noise = 10.0;
+
+        int starCount() {
+            return stars > 0 ? stars : (int) Math.max(200, (long) width * height / 40_000);
+        }
+
+        /**
+         * Lit les arguments ; lève IllegalArgumentException avec un message lisible
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-o", "--out" -> options.outputDir = Paths.get(value(args, ++i, arg));
+                    case "-n", "--count" -> options.count = parseInt(value(args, ++i, arg), arg);
+                    case "--size" -> {
+                        String size = value(args, ++i, arg);
+                        String[] parts = size.toLowerCase(Locale.ROOT).split("x");
+                        if (parts.length != 2) {
+                            throw new IllegalArgumentException("Taille invalide (LxH attendu): " + size);
+                        }
+                        options.width = parseInt(parts[0], arg);
+                        options.height = parseInt(parts[1], arg);
+                    }
+                    case "--bitpix" -> options.bitpix = parseInt(value(args, ++i, arg), arg);
+                    case "--rgb" -> options.color = true;
+                    case "--stars" -> options.stars = parseInt(value(args, ++i, arg), arg);
+                    case "--seed" -> options.seed = Long.parseLong(value(args, ++i, arg));
+                    case "-t", "--threads" -> options.threads = Math.max(1, parseInt(value(args, ++i, arg), arg));
+                    case "--max-shift" -> options.maxShift = parseDouble(value(args, ++i, arg), arg);
+                    case "--max-rotation" -> options.maxRotation = parseDouble(value(args, ++i, arg), arg);
+                    case "--max-scale" -> options.maxScale = parseDouble(value(args, ++i, arg), arg);
+                    case "--hot-pixels" -> options.hotPixels = Math.max(0, parseInt(value(args, ++i, arg), arg));
+                    case "--trails" -> options.trailProbability = parseDouble(value(args, ++i, arg), arg);
+                    case "--background" -> options.background = parseDouble(value(args, ++i, arg), arg);
+                    case "--noise" -> options.noise = parseDouble(value(args, ++i, arg), arg);
+                    default -> throw new IllegalArgumentException("Option inconnue: " + arg);
+                }
+            }
+            options.validate();
+            return options;
+        }
+
+        void validate() {
+            if (count < 1 || width < 64 || height < 64) {
+                throw new IllegalArgumentException("Jeu trop petit: " + count + " images de " + width + "x" + height);
+            }
+            // Les autres BITPIX (8, entiers 64 bits) ne sont pas lus par FitsImage
+            if (bitpix != 16 && bitpix != 32 && bitpix != -32 && bitpix != -64) {
+                throw new IllegalArgumentException("BITPIX non pris en charge: " + bitpix + " (16, 32, -32, -64)");
+            }
+            // FitsImage ne lit la couleur qu'en cube de flottants
+            if (color && bitpix != -32) {
+                throw new IllegalArgumentException("Les images couleur sont écrites en BITPIX -32");
+            }
+            if (trailProbability < 0 || trailProbability > 1) {
+                throw new IllegalArgumentException("Probabilité de traînée hors de [0, 1]: " + trailProbability);
+            }
+        }
+
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException("Valeur manquante pour " + option);
+            }
+            return args[i];
+        }
+
+        private static int parseInt(String text, String option) {
+            try {
+                return Integer.parseInt(text.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Nombre invalide pour " + option + ": " + text);
+            }
+        }
+
+        private static double parseDouble(String text, String option) {
+            try {
+                return Double.parseDouble(text.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Nombre invalide pour " + option + ": " + text);
+            }
+        }
+    }
+
+    /**
+     * Vérité terrain d'une image du jeu
+     */
+    public static class FrameTruth {
+        public final Path file;
+        public final ImageAligner.AffineTransform transform;
+        public final boolean trail;
+
+        FrameTruth(Path file, ImageAligner.AffineTransform transform, boolean trail) {
+            this.file = file;
+            this.transform = transform;
+            this.trail = trail;
+        }
+    }
+
+    private static class FieldStar {
+        final double x, y, brightness, sigma;
+        final double[] color;
+
+        FieldStar(double x, double y, double brightness, double sigma, double[] color) {
+            this.x = x;
+            this.y = y;
+            this.brightness = brightness;
+            this.sigma = sigma;
+            this.color = color;
+        }
+    }
+
+    /**
+     * Étoile projetée dans une image, avec son noyau horizontal précalculé
+     */
+    private static class FrameStar {
+        final double y, sigma, brightness;
+        final int x0, y0, y1;
+        final float[] kernelX;
+        final double[] color;
+
+        FrameStar(double x, double y, double sigma, double brightness, double[] color) {
+            this.y = y;
+            this.sigma = sigma;
+            this.brightness = brightness;
+            this.color = color;
+            int radius = (int) Math.ceil(PSF_RADIUS_SIGMAS * sigma);
+            int cx = (int) Math.round(x);
+            int cy = (int) Math.round(y);
+            this.x0 = cx - radius;
+            this.y0 = cy - radius;
+            this.y1 = cy + radius;
+            this.kernelX = new float[2 * radius + 1];
+            double inv = 1.0 / (2 * sigma * sigma);
+            for (int k = 0; k < kernelX.length; k++) {
+                double dx = x0 + k - x;
+                kernelX[k] = (float) Math.exp(-dx * dx * inv);
+            }
+        }
+    }
+
+    /**
+     * Traînée de satellite : droite traversant l'image, profil gaussien transverse
+     */
+    private static class Trail {
+        final double px, py, nx, ny, sigma, brightness, reach;
+
+        Trail(double px, double py, double angle, double sigma, double brightness) {
+            this.px = px;
+            this.py = py;
+            this.nx = -Math.sin(angle);
+            this.ny = Math.cos(angle);
+            this.sigma = sigma;
+            this.brightness = brightness;
+            this.reach = PSF_RADIUS_SIGMAS * sigma;
+        }
+    }
+
+    private SyntheticDatasetGenerator() {
+        // Classe utilitaire, pas d'instanciation
+    }
+
+    public static void main(String[] args) {
+        if (List.of(args).contains("-h") || List.of(args).contains("--help")) {
+            printUsage();
+            return;
+        }
+        try {
+            generate(Options.parse(args));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Erreur: " + e.getMessage());
+            printUsage();
+            System.exit(2);
+        } catch (Exception e) {
+            System.err.println("ÉCHEC: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("""
+            Usage: SyntheticDatasetGenerator [options]
+              -o, --out <dossier>        dossier du jeu (défaut: jeu_synthetique)
+              -n, --count <n>            nombre d'images (défaut: 20)
+                  --size <LxH>           taille des images, jusqu'à 9576x6388 et au-delà (défaut: 2048x2048)
+                  --bitpix <b>           16, 32, -32 ou -64 (défaut: 16)
+                  --rgb                  cube couleur 3 plans (BITPIX -32)
+                  --stars <n>            étoiles du champ (défaut: une pour 40000 pixels, 200 au moins)
+                  --seed <n>             graine (défaut: 42)
+              -t, --threads <n>          images générées en parallèle (défaut: nombre de cœurs)
+                  --max-shift <px>       décalage maximal (défaut: 40)
+                  --max-rotation <deg>   rotation maximale (défaut: 2)
+                  --max-scale <r>        écart d'échelle maximal, 0.01 = ±1 % (défaut: 0.01)
+                  --hot-pixels <n>       pixels chauds du capteur (défaut: 200)
+                  --trails <p>           probabilité d'une traînée par image (défaut: 0.1)
+                  --background <v>       niveau du fond (défaut: 100)
+                  --noise <v>            écart-type du bruit (défaut: 10)
+            """);
+    }
+
+    /**
+     * Génère le jeu complet et son manifeste ; renvoie la vérité terrain de chaque image
+     */
+    public static List<FrameTruth> generate(Options options) throws Exception {
+        options.validate();
+        Files.createDirectories(options.outputDir);
+        long start = System.nanoTime();
+
+        SplittableRandom random = new SplittableRandom(options.seed);
+        List<FieldStar> field = createStarField(random, options);
+        int[][] hotPixels = createHotPixels(random, options);
+
+        List<FrameTruth> truths = new ArrayList<>(options.count);
+        List<Trail> trails = new ArrayList<>(options.count);
+        int digits = Math.max(4, String.valueOf(options.count).length());
+        for (int i = 0; i < options.count; i++) {
+            SplittableRandom frameRandom = new SplittableRandom(mix(options.seed, i, -1));
+            ImageAligner.AffineTransform transform = i == 0
+                    ? ImageAligner.AffineTransform.identity()
+                    : new ImageAligner.AffineTransform(
+                            1.0 + symmetric(frameRandom, options.maxScale),
+                            Math.toRadians(symmetric(frameRandom, options.maxRotation)),
+                            symmetric(frameRandom, options.maxShift),
+                            symmetric(frameRandom, options.maxShift));
+            Trail trail = frameRandom.nextDouble() < options.trailProbability
+                    ? new Trail(frameRandom.nextDouble() * options.width, frameRandom.nextDouble() * options.height,
+                                frameRandom.nextDouble() * Math.PI, 1.0 + frameRandom.nextDouble(),
+                                options.noise * (8 + 12 * frameRandom.nextDouble()))
+                    : null;
+            String name = String.format("synth_%0" + digits + "d.fits", i + 1);
+            truths.add(new FrameTruth(options.outputDir.resolve(name), transform, trail != null));
+            trails.add(trail);
+        }
+        writeManifest(options, truths);
+
+        int threads = Math.min(options.count,
+                options.threads > 0 ? options.threads : Runtime.getRuntime().availableProcessors());
+        System.out.printf("Génération de %d images %dx%d%s (BITPIX %d, %d étoiles) sur %d threads dans %s%n",
+                options.count, options.width, options.height, options.color ? " RGB" : "", options.bitpix,
+                field.size(), threads, options.outputDir);
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                int i;
+                while (failure.get() == null && (i = next.getAndIncrement()) < options.count) {
+                    try {
+                        FrameTruth truth = truths.get(i);
+                        writeFrame(truth.file, options, i, field, hotPixels, truth.transform, trails.get(i));
+                        System.out.printf("  ✓ %s (%d/%d)%n", truth.file.getFileName(),
+                                done.incrementAndGet(), options.count);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, "synthese-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() != null) {
+            throw new IOException("Génération interrompue: " + failure.get().getMessage(), failure.get());
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double megapixels = (double) options.width * options.height * options.count * (options.color ? 3 : 1) / 1e6;
+        System.out.printf("✓ %d images en %.1f s (%.0f Mpx/s), manifeste: %s%n", options.count, seconds,
+                megapixels / seconds, options.outputDir.resolve(MANIFEST_NAME));
+        return truths;
+    }
+
+    private static List<FieldStar> createStarField(SplittableRandom random, Options options) {
+        // Le champ déborde des images pour que les bords restent peuplés après transformation
+        double margin = options.maxShift + Math.max(options.width, options.height)
+                * (Math.toRadians(options.maxRotation) + options.maxScale);
+        int count = options.starCount();
+        List<FieldStar> stars = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double x = -margin + random.nextDouble() * (options.width + 2 * margin);
+            double y = -margin + random.nextDouble() * (options.height + 2 * margin);
+            // Beaucoup d'étoiles faibles, quelques brillantes
+            double u = random.nextDouble();
+            double brightness = 300 + 6000 * u * u * u;
+            double sigma = 1.0 + random.nextDouble() * 1.5;
+            stars.add(new FieldStar(x, y, brightness, sigma, STAR_COLORS[random.nextInt(STAR_COLORS.length)]));
+        }
+        return stars;
+    }
+
+    private static int[][] createHotPixels(SplittableRandom random, Options options) {
+        int[][] hot = new int[options.hotPixels][3];
+        for (int[] pixel : hot) {
+            pixel[0] = random.nextInt(options.width);
+            pixel[1] = random.nextInt(options.height);
+            pixel[2] = (int) (options.background + options.noise * (30 + 50 * random.nextDouble()));
+        }
+        // Triés par ligne pour les retrouver bande par bande
+        Arrays.sort(hot, Comparator.comparingInt((int[] p) -> p[1]));
+        return hot;
+    }
+
+    private static void writeFrame(Path file, Options options, int index, List<FieldStar> field,
+                                   int[][] hotPixels, ImageAligner.AffineTransform transform, Trail trail)
+            throws IOException {
+        int width = options.width;
+        int height = options.height;
+        int channels = options.color ? 3 : 1;
+        int bytesPerPixel = Math.abs(options.bitpix) / 8;
+
+        // Les étoiles du champ vues par cette image, triées par ligne
+        List<FrameStar> stars = new ArrayList<>();
+        for (FieldStar star : field) {
+            double[] p = transform.applyInverse(star.x, star.y);
+            double sigma = star.sigma / transform.scale;
+            double reach = PSF_RADIUS_SIGMAS * sigma + 1;
+            if (p[0] < -reach || p[0] > width + reach || p[1] < -reach || p[1] > height + reach) continue;
+            stars.add(new FrameStar(p[0], p[1], sigma, star.brightness, star.color));
+        }
+        stars.sort(Comparator.comparingInt(s -> s.y0));
+        int maxRadius = 0;
+        for (FrameStar star : stars) {
+            maxRadius = Math.max(maxRadius, (star.y1 - star.y0) / 2);
+        }
+
+        float[][] band = new float[BAND_ROWS][width];
+        ByteBuffer buffer = ByteBuffer.allocate(width * bytesPerPixel); // gros-boutiste comme FITS
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header(options, index, transform));
+            long dataBytes = 0;
+            for (int c = 0; c < channels; c++) {
+                for (int y0 = 0; y0 < height; y0 += BAND_ROWS) {
+                    int rows = Math.min(BAND_ROWS, height - y0);
+                    SplittableRandom noise = new SplittableRandom(mix(options.seed, index, c * 1_000_003L + y0));
+                    renderBand(band, y0, rows, width, c, options, noise, stars, maxRadius, hotPixels, trail);
+                    for (int r = 0; r < rows; r++) {
+                        buffer.clear();
+                        encodeRow(band[r], options.bitpix, buffer);
+                        buffer.flip();
+                        writeFully(channel, buffer);
+                    }
+                    dataBytes += (long) rows * width * bytesPerPixel;
+                }
+            }
+            int padding = (int) ((FITS_BLOCK - dataBytes % FITS_BLOCK) % FITS_BLOCK);
+            writeFully(channel, ByteBuffer.allocate(padding));
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void renderBand(float[][] band, int y0, int rows, int width, int channel, Options options,
+                                   SplittableRandom noise, List<FrameStar> stars, int maxRadius,
+                                   int[][] hotPixels, Trail trail) {
+        int y1 = y0 + rows;
+        // Fond et bruit de lecture
+        float background = (float) options.background;
+        float sigma = (float) options.noise;
+        for (int r = 0; r < rows; r++) {
+            float[] row = band[r];
+            for (int x = 0; x < width; x++) {
+                row[x] = background + sigma * (float) noise.nextGaussian();
+            }
+        }
+
+        // Étoiles touchant la bande : PSF séparable, produit des deux noyaux 1D
+        int first = firstStarFrom(stars, y0 - 2 * maxRadius);
+        for (int s = first; s < stars.size(); s++) {
+            FrameStar star = stars.get(s);
+            if (star.y0 >= y1) break;
+            if (star.y1 < y0) continue;
+            double amplitude = star.brightness * (options.color ? star.color[channel] : 1.0);
+            double inv = 1.0 / (2 * star.sigma * star.sigma);
+            int from = Math.max(star.y0, y0);
+            int to = Math.min(star.y1, y1 - 1);
+            int kx0 = Math.max(0, -star.x0);
+            int kx1 = Math.min(star.kernelX.length, width - star.x0);
+            for (int y = from; y <= to; y++) {
+                double dy = y - star.y;
+                float gy = (float) (amplitude * Math.exp(-dy * dy * inv));
+                float[] row = band[y - y0];
+                for (int k = kx0; k < kx1; k++) {
+                    row[star.x0 + k] += gy * star.kernelX[k];
+                }
+            }
+        }
+
+        // Traînée : distance à la droite linéaire en x sur chaque ligne
+        if (trail != null) {
+            double amplitude = trail.brightness * (options.color ? 0.9 + 0.1 * channel : 1.0);
+            double inv = 1.0 / (2 * trail.sigma * trail.sigma);
+            for (int r = 0; r < rows; r++) {
+                double c = (y0 + r - trail.py) * trail.ny - trail.px * trail.nx;
+                int from, to;
+                if (Math.abs(trail.nx) > 1e-9) {
+                    double a = (-trail.reach - c) / trail.nx;
+                    double b = (trail.reach - c) / trail.nx;
+                    from = (int) Math.max(0, Math.floor(Math.min(a, b)));
+                    to = (int) Math.min(width - 1, Math.ceil(Math.max(a, b)));
+                } else if (Math.abs(c) <= trail.reach) {
+                    from = 0;
+                    to = width - 1;
+                } else {
+                    continue;
+                }
+                float[] row = band[r];
+                for (int x = from; x <= to; x++) {
+                    double d = x * trail.nx + c;
+                    row[x] += (float) (amplitude * Math.exp(-d * d * inv));
+                }
+            }
+        }
+
+        // Pixels chauds : mêmes positions et niveaux sur toutes les images (le ciel bouge, pas le capteur)
+        int h = firstHotPixelFrom(hotPixels, y0);
+        for (; h < hotPixels.length && hotPixels[h][1] < y1; h++) {
+            band[hotPixels[h][1] - y0][hotPixels[h][0]] = hotPixels[h][2];
+        }
+    }
+
+    private static int firstStarFrom(List<FrameStar> stars, int y) {
+        int lo = 0, hi = stars.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (stars.get(mid).y0 < y) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static int firstHotPixelFrom(int[][] hotPixels, int y) {
+        int lo = 0, hi = hotPixels.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (hotPixels[mid][1] < y) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Ligne convertie au BITPIX du jeu. Les entiers 16 bits restent dans [0, 32767] et sont écrits
+     * sans BZERO : FitsImage lit les données 16 bits brutes, sans appliquer BZERO.
+     */
+    private static void encodeRow(float[] row, int bitpix, ByteBuffer out) {
+        switch (bitpix) {
+            case 16 -> {
+                for (float v : row) out.putShort((short) Math.max(0, Math.min(SHORT_MAX, Math.round(v))));
+            }
+            case 32 -> {
+                for (float v : row) out.putInt(Math.max(0, Math.round(v)));
+            }
+            case -32 -> {
+                for (float v : row) out.putFloat(Math.max(0f, v));
+            }
+            default -> {
+                for (float v : row) out.putDouble(Math.max(0f, v));
+            }
+        }
+    }
+
+    private static ByteBuffer header(Options options, int index, ImageAligner.AffineTransform transform) {
+        List<String> cards = new ArrayList<>();
+        cards.add(card("SIMPLE", "T", "fichier FITS standard"));
+        cards.add(card("BITPIX", String.valueOf(options.bitpix), "bits par pixel"));
+        cards.add(card("NAXIS", options.color ? "3" : "2", "nombre d'axes"));
+        cards.add(card("NAXIS1", String.valueOf(options.width), "largeur"));
+        cards.add(card("NAXIS2", String.valueOf(options.height), "hauteur"));
+        if (options.color) {
+            cards.add(card("NAXIS3", "3", "plans R, G, B"));
+        }
+        cards.add(card("SYNTSEED", String.valueOf(options.seed), "graine du jeu synthetique"));
+        cards.add(card("SYNTIDX", String.valueOf(index), "rang dans le jeu"));
+        cards.add(card("SYNTSCAL", String.format(Locale.ROOT, "%.12f", transform.scale), "echelle vraie"));
+        cards.add(card("SYNTROT", String.format(Locale.ROOT, "%.12f", transform.rotation), "rotation vraie (rad)"));
+        cards.add(card("SYNTTX", String.format(Locale.ROOT, "%.6f", transform.tx), "decalage vrai x"));
+        cards.add(card("SYNTTY", String.format(Locale.ROOT, "%.6f", transform.ty), "decalage vrai y"));
+        cards.add(String.format("%-" + CARD + "s", "END"));
+
+        int blocks = (cards.size() * CARD + FITS_BLOCK - 1) / FITS_BLOCK;
+        byte[] bytes = new byte[blocks * FITS_BLOCK];
+        Arrays.fill(bytes, (byte) ' ');
+        for (int i = 0; i < cards.size(); i++) {
+            byte[] card = cards.get(i).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(card, 0, bytes, i * CARD, CARD);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static String card(String key, String value, String comment) {
+        String text = String.format("%-8s= %20s / %s", key, value, comment);
+        return String.format("%-" + CARD + "." + CARD + "s", text);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeManifest(Options options, List<FrameTruth> truths) throws IOException {
+        StringBuilder text = new StringBuilder("# FITS Stacker - jeu synthetique\n");
+        text.append(String.format(Locale.ROOT, "# taille=%dx%d bitpix=%d couleur=%b etoiles=%d graine=%d " +
+                        "pixels_chauds=%d bruit=%.3f fond=%.3f%n", options.width, options.height, options.bitpix,
+                options.color, options.starCount(), options.seed, options.hotPixels, options.noise,
+                options.background));
+        text.append("# transformation : coordonnees image -> coordonnees de la premiere image\n");
+        text.append("# fichier\techelle\trotation_rad\ttx\tty\ttrainee\n");
+        for (FrameTruth truth : truths) {
+            ImageAligner.AffineTransform t = truth.transform;
+            text.append(String.format(Locale.ROOT, "%s\t%.12f\t%.12f\t%.6f\t%.6f\t%d%n",
+                    truth.file.getFileName(), t.scale, t.rotation, t.tx, t.ty, truth.trail ? 1 : 0));
+        }
+        Files.writeString(options.outputDir.resolve(MANIFEST_NAME), text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Relit un manifeste (fichier ou dossier du jeu) ; les chemins sont résolus dans son dossier
+     */
+    public static List<FrameTruth> readManifest(Path manifest) throws IOException {
+        if (Files.isDirectory(manifest)) {
+            manifest = manifest.resolve(MANIFEST_NAME);
+        }
+        Path dir = manifest.toAbsolutePath().getParent();
+        List<FrameTruth> truths = new ArrayList<>();
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] f = line.split("\t");
+            if (f.length < 6) {
+                throw new IOException("Ligne de manifeste invalide: " + line);
+            }
+            try {
+                truths.add(new FrameTruth(dir.resolve(f[0]), new ImageAligner.AffineTransform(
+                        Double.parseDouble(f[1]), Double.parseDouble(f[2]),
+                        Double.parseDouble(f[3]), Double.parseDouble(f[4])), f[5].equals("1")));
+            } catch (NumberFormatException e) {
+                throw new IOException("Ligne de manifeste invalide: " + line);
+            }
+        }
+        return truths;
+    }
+
+    private static double symmetric(SplittableRandom random, double max) {
+        return max == 0 ? 0 : (random.nextDouble() * 2 - 1) * max;
+    }
+
+    /**
+     * Graine dérivée pour (image, flux) : indépendante de l'ordre de traitement des threads
+     */
+    private static long mix(long seed, int frame, long stream) {
+        long z = seed * 0x9E3779B97F4A7C15L + frame * 0xBF58476D1CE4E5B9L + stream * 0x94D049BB133111EBL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -47,7 +47,7 @@ public class TestImageGenerator {
         
         // Générer un champ d'étoiles de base
         System.out.println("Création du champ d'étoiles de référence...");
-        StarField baseField = createStarField(random);
+        StarField baseField = createStarField(random, DEFAULT_WIDTH, DEFAULT_HEIGHT);
         
         // Générer plusieurs images avec décalages
         for (int i = 0; i < numImages; i++) {
@@ -57,7 +57,8 @@ public class TestImageGenerator {
             System.out.printf("Génération image %d/%d (offset: %+d, %+d)...%n", 
                 i + 1, numImages, offsetX, offsetY);
             
-            float[][] imageData = createShiftedImage(baseField, offsetX, offsetY, random);
+            float[][] imageData = createShiftedImage(baseField, DEFAULT_WIDTH, DEFAULT_HEIGHT,
+                    offsetX, offsetY, random);
             
             String filename = String.format("test_image_%03d.fits", i + 1);
             Path outputPath = dirPath.resolve(filename);
@@ -66,12 +67,23 @@ public class TestImageGenerator {
         }
     }
 
-    private static StarField createStarField(Random random) {
+    /**
+     * Une image du champ d'étoiles de la graine donnée, décalée de (offsetX, offsetY), sans
+     * l'écrire sur disque : deux appels avec la même graine donnent le même champ, le bruit
+     * dépend du décalage (bancs d'essai, tests de performance)
+     */
+    public static float[][] generateImage(int width, int height, int offsetX, int offsetY, long seed) {
+        StarField field = createStarField(new Random(seed), width, height);
+        return createShiftedImage(field, width, height, offsetX, offsetY,
+                new Random(seed * 31 + offsetX * 1009L + offsetY));
+    }
+
+    private static StarField createStarField(Random random, int width, int height) {
         StarField field = new StarField();
         
         for (int i = 0; i < DEFAULT_NUM_STARS; i++) {
-            int x = random.nextInt(DEFAULT_WIDTH - 100) + 50;
-            int y = random.nextInt(DEFAULT_HEIGHT - 100) + 50;
+            int x = random.nextInt(width - 100) + 50;
+            int y = random.nextInt(height - 100) + 50;
             double brightness = 500 + random.nextDouble() * 4500;
             double size = 2.0 + random.nextDouble() * 3.0;
             
@@ -81,13 +93,13 @@ public class TestImageGenerator {
         return field;
     }
 
-    private static float[][] createShiftedImage(StarField field, int offsetX, int offsetY, 
-                                               Random random) {
-        float[][] image = new float[DEFAULT_HEIGHT][DEFAULT_WIDTH];
+    private static float[][] createShiftedImage(StarField field, int width, int height,
+                                               int offsetX, int offsetY, Random random) {
+        float[][] image = new float[height][width];
         
         // Ajouter le fond avec bruit
-        for (int y = 0; y < DEFAULT_HEIGHT; y++) {
-            for (int x = 0; x < DEFAULT_WIDTH; x++) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
                 image[y][x] = (float) (BACKGROUND_LEVEL + random.nextGaussian() * NOISE_LEVEL);
             }
         }
@@ -102,8 +114,8 @@ public class TestImageGenerator {
         }
         
         // Ajouter du bruit supplémentaire unique à cette image
-        for (int y = 0; y < DEFAULT_HEIGHT; y++) {
-            for (int x = 0; x < DEFAULT_WIDTH; x++) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
                 image[y][x] += (float) (random.nextGaussian() * 5.0);
                 
                 // S'assurer que les valeurs sont positives
@@ -134,7 +146,7 @@ public class TestImageGenerator {
         }
     }
 
-    private static void saveAsFits(float[][] data, Path outputPath) throws Exception {
+    static void saveAsFits(Object data, Path outputPath) throws Exception {
         Fits fits = new Fits();
         ImageHDU hdu = (ImageHDU) Fits.makeHDU(data);
         fits.addHDU(hdu);
@@ -47,7 +47,7 @@ public class TestImageGeneratorRGB {
         
         // Générer un champ d'étoiles de base
         System.out.println("Création du champ d'étoiles de référence...");
-        StarField baseField = createStarField(random);
+        StarField baseField = createStarField(random, DEFAULT_WIDTH, DEFAULT_HEIGHT);
         
         // Générer plusieurs images RGB avec décalages et rotations
         for (int i = 0; i < numImages; i++) {
@@ -58,7 +58,8 @@ public class TestImageGeneratorRGB {
             System.out.printf("Génération image RGB %d/%d (offset: %+d, %+d, rot: %.1f°)...%n", 
                 i + 1, numImages, offsetX, offsetY, rotation);
             
-            float[][][] imageData = createShiftedRGBImage(baseField, offsetX, offsetY, rotation, random);
+            float[][][] imageData = createShiftedRGBImage(baseField, DEFAULT_WIDTH, DEFAULT_HEIGHT,
+                    offsetX, offsetY, rotation, random);
             
             String filename = String.format("test_rgb_%03d.fits", i + 1);
             Path outputPath = dirPath.resolve(filename);
@@ -67,12 +68,23 @@ public class TestImageGeneratorRGB {
         }
     }
 
-    private static StarField createStarField(Random random) {
+    /**
+     * Une image RGB [canal][y][x] du champ de la graine donnée, décalée et tournée, sans
+     * l'écrire sur disque (bancs d'essai, tests de performance)
+     */
+    public static float[][][] generateImage(int width, int height, int offsetX, int offsetY,
+                                            double rotationDeg, long seed) {
+        StarField field = createStarField(new Random(seed), width, height);
+        return createShiftedRGBImage(field, width, height, offsetX, offsetY, rotationDeg,
+                new Random(seed * 31 + offsetX * 1009L + offsetY));
+    }
+
+    private static StarField createStarField(Random random, int width, int height) {
         StarField field = new StarField();
         
         for (int i = 0; i < DEFAULT_NUM_STARS; i++) {
-            int x = random.nextInt(DEFAULT_WIDTH - 100) + 50;
-            int y = random.nextInt(DEFAULT_HEIGHT - 100) + 50;
+            int x = random.nextInt(width - 100) + 50;
+            int y = random.nextInt(height - 100) + 50;
             double brightness = 300 + random.nextDouble() * 4000;
             double size = 1.5 + random.nextDouble() * 2.5;
             
@@ -106,20 +118,21 @@ public class TestImageGeneratorRGB {
         return field;
     }
 
-    private static float[][][] createShiftedRGBImage(StarField field, int offsetX, int offsetY, 
+    private static float[][][] createShiftedRGBImage(StarField field, int width, int height,
+                                                    int offsetX, int offsetY,
                                                     double rotationDeg, Random random) {
-        float[][][] image = new float[3][DEFAULT_HEIGHT][DEFAULT_WIDTH]; // [canal][y][x]
+        float[][][] image = new float[3][height][width]; // [canal][y][x]
         
         double rotationRad = Math.toRadians(rotationDeg);
         double cos = Math.cos(rotationRad);
         double sin = Math.sin(rotationRad);
-        int centerX = DEFAULT_WIDTH / 2;
-        int centerY = DEFAULT_HEIGHT / 2;
+        int centerX = width / 2;
+        int centerY = height / 2;
         
         // Ajouter le fond avec bruit pour chaque canal
         for (int c = 0; c < 3; c++) {
-            for (int y = 0; y < DEFAULT_HEIGHT; y++) {
-                for (int x = 0; x < DEFAULT_WIDTH; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
                     image[c][y][x] = (float) (BACKGROUND_LEVEL + random.nextGaussian() * NOISE_LEVEL);
                 }
             }
@@ -144,8 +157,8 @@ public class TestImageGeneratorRGB {
         
         // Ajouter du bruit supplémentaire unique à cette image
         for (int c = 0; c < 3; c++) {
-            for (int y = 0; y < DEFAULT_HEIGHT; y++) {
-                for (int x = 0; x < DEFAULT_WIDTH; x++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
                     image[c][y][x] += (float) (random.nextGaussian() * 3.0);
                     
                     // S'assurer que les valeurs sont positives
@@ -0,0 +1,264 @@
+package com.astro;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Vignettes des fichiers FITS de la liste, d'au plus {@link Config#THUMBNAIL_SIZE} pixels de côté.
+ *
+ * {@link #get} ne bloque jamais : une vignette absente de la mémoire est préparée sur un thread
+ * virtuel, puis l'appelant est prévenu. Mémoire et cache disque identifient un fichier par son
+ * chemin, sa taille et sa date de modification, vérifiées en arrière-plan : un fichier réécrit
+ * a une nouvelle vignette.
+ * Elle est relue depuis le cache disque (fichier annexe dans {@link Config#CACHE_DIR_NAME}), sinon
+ * construite à partir d'une ligne sur n du fichier ({@link FitsImage#readRowSample}) étirée par
+ * une STF automatique. Au plus {@link Config#THUMBNAIL_READERS} fichiers sont lus à la fois ;
+ * les {@link Config#THUMBNAIL_MEMORY_CACHE} dernières vignettes utilisées restent en mémoire.
+ */
+public class ThumbnailCache {
+    private static final int MAGIC = 0x46535448; // "FSTH"
+    private static final int FORMAT_VERSION = 1;
+
+    // Fichier illisible : gardé en mémoire pour ne pas être retenté à chaque affichage
+    private static final BufferedImage UNREADABLE = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    /**
+     * Identité d'un fichier, la même que celle du cache disque
+     */
+    private record Identity(Path path, long size, long modified) {
+        static Identity of(Path path) throws IOException {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Identity(path, attrs.size(), attrs.lastModifiedTime().toMillis());
+        }
+    }
+
+    /**
+     * Vignette en mémoire et identité du fichier dont elle a été tirée
+     */
+    private static final class Cached {
+        final Identity identity;
+        final BufferedImage thumbnail;
+        volatile long checkedAt = System.nanoTime();
+
+        Cached(Identity identity, BufferedImage thumbnail) {
+            this.identity = identity;
+            this.thumbnail = thumbnail;
+        }
+    }
+
+    // Vignettes en mémoire par chemin, de la moins récemment utilisée à la plus récente
+    private final Map<Path, Cached> memory = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Cached> eldest) {
+            return size() > Config.THUMBNAIL_MEMORY_CACHE;
+        }
+    };
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore readers = new Semaphore(Config.THUMBNAIL_READERS);
+    private final Consumer<Path> onReady;
+
+    /**
+     * @param onReady prévenu (depuis un thread de fond) quand la vignette d'un fichier est prête
+     */
+    public ThumbnailCache(Consumer<Path> onReady) {
+        this.onReady = onReady;
+    }
+
+    /**
+     * Vignette du fichier si elle est en mémoire ; sinon null, et elle est préparée en arrière-plan.
+     * Aucun accès disque ici (appelé depuis l'EDT à chaque affichage) : l'identité du fichier est
+     * revérifiée en arrière-plan au plus toutes les {@link Config#THUMBNAIL_RECHECK_MS} ms, et un
+     * fichier réécrit garde son ancienne vignette jusqu'à ce que la nouvelle soit prête.
+     */
+    public BufferedImage get(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        Cached cached;
+        synchronized (memory) {
+            cached = memory.get(key);
+        }
+        if (cached == null || System.nanoTime() - cached.checkedAt > Config.THUMBNAIL_RECHECK_MS * 1_000_000) {
+            if (pending.add(key)) {
+                executor.execute(() -> load(key));
+            }
+        }
+        return cached == null || cached.thumbnail == UNREADABLE ? null : cached.thumbnail;
+    }
+
+    private void load(Path path) {
+        Cached cached;
+        synchronized (memory) {
+            cached = memory.get(path);
+        }
+        Identity identity = null;
+        BufferedImage thumbnail;
+        try {
+            identity = Identity.of(path);
+            if (cached != null && identity.equals(cached.identity)) {
+                // Fichier inchangé depuis la vignette en mémoire
+                cached.checkedAt = System.nanoTime();
+                pending.remove(path);
+                return;
+            }
+            readers.acquire();
+            try {
+                thumbnail = lookup(identity);
+                if (thumbnail == null) {
+                    thumbnail = render(path);
+                    store(identity, thumbnail);
+                }
+            } finally {
+                readers.release();
+            }
+        } catch (InterruptedException e) {
+            pending.remove(path);
+            return;
+        } catch (Exception e) {
+            if (identity == null && cached != null && cached.identity == null) {
+                // Toujours inaccessible : déjà signalé
+                cached.checkedAt = System.nanoTime();
+                pending.remove(path);
+                return;
+            }
+            System.out.println("⚠️ Vignette impossible (" + path.getFileName() + "): " + e.getMessage());
+            thumbnail = UNREADABLE;
+        }
+        synchronized (memory) {
+            memory.put(path, new Cached(identity, thumbnail));
+        }
+        pending.remove(path);
+        onReady.accept(path);
+    }
+
+    /**
+     * Construit la vignette : moyenne de blocs le long des lignes échantillonnées, puis STF automatique
+     */
+    static BufferedImage render(Path path) throws Exception {
+        FitsImage sample = FitsImage.readRowSample(path, Config.THUMBNAIL_SIZE);
+        int width = sample.getWidth();
+        int height = sample.getHeight();
+        int step = FitsImage.sampleStep(width, height, Config.THUMBNAIL_SIZE);
+        int thumbWidth = (width + step - 1) / step;
+        int thumbHeight = (height - step / 2 + step - 1) / step;   // lignes step/2 + k·step
+        float[][][] source = sample.isColor() ? sample.getColorData() : new float[][][]{sample.getData()};
+
+        float[][][] planes = new float[source.length][thumbHeight][thumbWidth];
+        for (int c = 0; c < source.length; c++) {
+            for (int ty = 0; ty < thumbHeight; ty++) {
+                float[] row = source[c][step / 2 + ty * step];
+                for (int tx = 0; tx < thumbWidth; tx++) {
+                    int x0 = tx * step;
+                    int x1 = Math.min(width, x0 + step);
+                    float sum = 0;
+                    for (int x = x0; x < x1; x++) {
+                        sum += row[x];
+                    }
+                    planes[c][ty][tx] = sum / (x1 - x0);
+                }
+            }
+        }
+
+        ScreenStretch stretch = ScreenStretch.auto(planes, thumbWidth, thumbHeight);
+        BufferedImage thumbnail = new BufferedImage(thumbWidth, thumbHeight, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < thumbHeight; y++) {
+            for (int x = 0; x < thumbWidth; x++) {
+                int rgb;
+                if (planes.length == 3) {
+                    rgb = stretch.apply(planes[0][y][x]) << 16 | stretch.apply(planes[1][y][x]) << 8
+                            | stretch.apply(planes[2][y][x]);
+                } else {
+                    int v = stretch.apply(planes[0][y][x]);
+                    rgb = v << 16 | v << 8 | v;
+                }
+                thumbnail.setRGB(x, y, rgb);
+            }
+        }
+        return thumbnail;
+    }
+
+    // ========== Cache disque ==========
+
+    /**
+     * Relit une vignette en cache, ou null si absente ou périmée
+     */
+    private static BufferedImage lookup(Identity key) throws IOException {
+        Path sidecar = sidecarPath(key.path());
+        if (!Files.isRegularFile(sidecar)) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            if (in.readLong() != computeKey(key)) return null;
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width <= 0 || height <= 0 || width > 4 * Config.THUMBNAIL_SIZE || height > 4 * Config.THUMBNAIL_SIZE) {
+                return null;
+            }
+            BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    thumbnail.setRGB(x, y, in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8
+                            | in.readUnsignedByte());
+                }
+            }
+            return thumbnail;
+        } catch (EOFException e) {
+            System.out.println("  ⚠️ Vignette en cache tronquée (" + sidecar.getFileName() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Écrit une vignette dans le cache (écriture atomique via fichier temporaire)
+     */
+    private static void store(Identity key, BufferedImage thumbnail) {
+        Path sidecar = sidecarPath(key.path());
+        try {
+            Files.createDirectories(sidecar.getParent());
+            Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(computeKey(key));
+                out.writeInt(thumbnail.getWidth());
+                out.writeInt(thumbnail.getHeight());
+                for (int y = 0; y < thumbnail.getHeight(); y++) {
+                    for (int x = 0; x < thumbnail.getWidth(); x++) {
+                        int rgb = thumbnail.getRGB(x, y);
+                        out.writeByte(rgb >> 16);
+                        out.writeByte(rgb >> 8);
+                        out.writeByte(rgb);
+                    }
+                }
+            }
+            Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Dossier en lecture seule, disque plein... : le cache est facultatif
+            System.out.println("  ⚠️ Vignette non mise en cache: " + e.getMessage());
+        }
+    }
+
+    static Path sidecarPath(Path imagePath) {
+        return imagePath.resolveSibling(Config.CACHE_DIR_NAME).resolve(imagePath.getFileName() + ".thumb");
+    }
+
+    /**
+     * Clé d'identité du fichier : chemin + taille + mtime + taille de vignette
+     */
+    private static long computeKey(Identity identity) {
+        long key = identity.path().toString().hashCode();
+        key = key * 31 + identity.size();
+        key = key * 31 + identity.modified();
+        key = key * 31 + Config.THUMBNAIL_SIZE;
+        return key;
+    }
+}
@@ -0,0 +1,317 @@
+package com.astro;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Coordinateur de l'empilement distribué : le canvas est découpé en tuiles (bandes de lignes)
+ * confiées à des processus {@link TileWorker}, locaux ou sur d'autres machines. Chaque worker
+ * relit lui-même dans les fichiers (stockage partagé, mêmes chemins) les lignes dont sa tuile a
+ * besoin, applique les noyaux habituels de {@link StackingEngine} et renvoie la tuile finie.
+ *
+ * Les workers se connectent au coordinateur ; une tuile perdue (connexion coupée, délai dépassé,
+ * erreur du worker) est remise en file pour un autre worker, jusqu'à
+ * {@link Config#DISTRIBUTED_MAX_ATTEMPTS} tentatives.
+ *
+ * Protocole (flux binaires big-endian) :
+ * <pre>
+ * worker → coordinateur   MAGIC, nom du worker
+ * coordinateur → worker   description du travail (méthode, canvas, chemins, transformations, poids)
+ * coordinateur → worker   TILE id y0 lignes   |  QUIT
+ * worker → coordinateur   RESULT id + canaux × lignes × largeur float   |  ERROR id message
+ * </pre>
+ */
+public class TileCoordinator {
+    static final int MAGIC = 0x46535431; // "FST1"
+    static final byte TILE = 'T';
+    static final byte QUIT = 'Q';
+    static final byte RESULT = 'R';
+    static final byte ERROR = 'E';
+
+    private static class Tile {
+        final int id;
+        final int y0;
+        final int rows;
+        int attempts;
+
+        Tile(int id, int y0, int rows) {
+            this.id = id;
+            this.y0 = y0;
+            this.rows = rows;
+        }
+    }
+
+    private final FitsStackerCli.AlignedJob job;
+    private final StackingEngine.StackingMethod method;
+    private final int tileRows;
+    private final FitsImage result;
+    private final LinkedBlockingDeque<Tile> pending = new LinkedBlockingDeque<>();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicReference<String> failure = new AtomicReference<>();
+    private final List<Socket> sockets = new ArrayList<>();
+    private int tileCount;
+    private volatile boolean finished;
+
+    public TileCoordinator(FitsStackerCli.AlignedJob job, StackingEngine.StackingMethod method, int tileRows) {
+        this.job = job;
+        this.method = method;
+        this.tileRows = Math.max(1, tileRows);
+        this.result = FitsImage.createEmpty(job.frames.get(0).path, job.canvas.width, job.canvas.height, job.isColor);
+    }
+
+    /**
+     * Distribue les tuiles et assemble le résultat.
+     *
+     * @param port         port d'écoute (0 = choisi par le système)
+     * @param localWorkers nombre de processus worker à lancer sur cette machine
+     */
+    public FitsImage run(int port, int localWorkers, ImageAligner.ProgressCallback callback) throws Exception {
+        ImageAligner.CanvasInfo canvas = job.canvas;
+        for (int y0 = 0; y0 < canvas.height; y0 += tileRows) {
+            pending.add(new Tile(tileCount++, y0, Math.min(tileRows, canvas.height - y0)));
+        }
+
+        System.out.println("=== Empilement distribué ===");
+        System.out.println("Images: " + job.frames.size() + ", méthode: " + method.getDisplayName() +
+                ", canvas " + canvas.width + "x" + canvas.height + ", " + tileCount + " tuiles de " + tileRows + " lignes");
+
+        List<Process> processes = new ArrayList<>();
+        try (ServerSocket server = new ServerSocket(port)) {
+            System.out.println("En attente des workers sur le port " + server.getLocalPort());
+            Thread acceptor = new Thread(() -> acceptLoop(server), "tuiles-accept");
+            acceptor.setDaemon(true);
+            acceptor.start();
+
+            Path logDir = localWorkers > 0 ? Files.createTempDirectory("fitsstacker-workers") : null;
+            for (int i = 0; i < localWorkers; i++) {
+                processes.add(startLocalWorker(server.getLocalPort(), logDir.resolve("worker-" + i + ".log")));
+            }
+            if (logDir != null) {
+                System.out.println(localWorkers + " worker(s) local(aux), journaux dans " + logDir);
+            }
+
+            waitForTiles(processes, callback);
+        } finally {
+            finished = true;
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    closeQuietly(socket);
+                }
+            }
+            for (Process process : processes) {
+                if (!process.waitFor(2, TimeUnit.SECONDS)) {
+                    process.destroy();
+                }
+            }
+        }
+
+        if (job.isColor) {
+            for (int y = 0; y < canvas.height; y++) {
+                System.arraycopy(result.getColorData()[1][y], 0, result.getData()[y], 0, canvas.width);
+            }
+        }
+        System.out.println("=== Empilement distribué terminé ===");
+        if (callback != null) {
+            callback.onProgress(100, "Empilement terminé!");
+        }
+        return result;
+    }
+
+    private void waitForTiles(List<Process> processes, ImageAligner.ProgressCallback callback) throws Exception {
+        long idleSince = System.nanoTime();
+        int reported = -1;
+        while (completed.get() < tileCount) {
+            String error = failure.get();
+            if (error != null) {
+                throw new IOException(error);
+            }
+            // Plus aucun worker : attendre qu'un autre se connecte, sans bloquer indéfiniment
+            boolean alive = connected.get() > 0 || processes.stream().anyMatch(Process::isAlive);
+            if (alive) {
+                idleSince = System.nanoTime();
+            } else if ((System.nanoTime() - idleSince) / 1_000_000 > Config.DISTRIBUTED_WORKER_WAIT_MS) {
+                throw new IOException("Aucun worker disponible depuis " + Config.DISTRIBUTED_WORKER_WAIT_MS / 1000 +
+                        " s (" + (tileCount - completed.get()) + " tuiles restantes)");
+            }
+            int done = completed.get();
+            if (callback != null && done != reported) {
+                callback.onProgress(done * 99 / tileCount, "Tuiles: " + done + "/" + tileCount);
+                reported = done;
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private void acceptLoop(ServerSocket server) {
+        try {
+            while (!finished) {
+                Socket socket = server.accept();
+                synchronized (sockets) {
+                    sockets.add(socket);
+                }
+                Thread thread = new Thread(() -> serve(socket), "tuiles-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException e) {
+            // Socket serveur fermé : fin du travail
+        }
+    }
+
+    /**
+     * Dialogue avec un worker : une tuile à la fois, remise en file si elle n'aboutit pas
+     */
+    private void serve(Socket socket) {
+        String name = String.valueOf(socket.getRemoteSocketAddress());
+        Tile current = null;
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setSoTimeout(Config.DISTRIBUTED_TILE_TIMEOUT_MS);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("protocole inconnu");
+            }
+            name = in.readUTF() + " (" + socket.getInetAddress().getHostAddress() + ")";
+            connected.incrementAndGet();
+            System.out.println("✓ Worker connecté: " + name);
+            try {
+                writeJob(out);
+                out.flush();
+
+                while (!finished) {
+                    current = pending.poll(200, TimeUnit.MILLISECONDS);
+                    if (current == null) continue;
+
+                    out.writeByte(TILE);
+                    out.writeInt(current.id);
+                    out.writeInt(current.y0);
+                    out.writeInt(current.rows);
+                    out.flush();
+
+                    byte reply = in.readByte();
+                    int id = in.readInt();
+                    if (id != current.id) {
+                        throw new IOException("tuile " + id + " reçue au lieu de " + current.id);
+                    }
+                    if (reply == RESULT) {
+                        readTile(in, current);
+                        completed.incrementAndGet();
+                        current = null;
+                    } else if (reply == ERROR) {
+                        String message = in.readUTF();
+                        retry(current, name + ": " + message);
+                        current = null;
+                    } else {
+                        throw new IOException("réponse inconnue " + reply);
+                    }
+                }
+                out.writeByte(QUIT);
+                out.flush();
+            } finally {
+                connected.decrementAndGet();
+            }
+        } catch (SocketTimeoutException e) {
+            System.err.println("✗ Worker " + name + ": délai dépassé");
+        } catch (EOFException | SocketException e) {
+            if (!finished) {
+                System.err.println("✗ Worker " + name + " déconnecté");
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Worker " + name + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (current != null) {
+                retry(current, "worker " + name + " perdu");
+            }
+        }
+    }
+
+    private void retry(Tile tile, String reason) {
+        tile.attempts++;
+        if (tile.attempts >= Config.DISTRIBUTED_MAX_ATTEMPTS) {
+            failure.compareAndSet(null, "Tuile " + tile.id + " (lignes " + tile.y0 + "-" + (tile.y0 + tile.rows - 1) +
+                    ") en échec après " + tile.attempts + " tentatives: " + reason);
+            return;
+        }
+        System.err.println("  Tuile " + tile.id + " réattribuée (" + reason + ")");
+        pending.addFirst(tile);
+    }
+
+    private void writeJob(DataOutputStream out) throws IOException {
+        ImageAligner.CanvasInfo canvas = job.canvas;
+        out.writeUTF(method.name());
+        out.writeBoolean(job.isColor);
+        out.writeInt(canvas.width);
+        out.writeInt(canvas.height);
+        out.writeInt(canvas.offsetX);
+        out.writeInt(canvas.offsetY);
+        out.writeInt(job.frames.size());
+        for (int i = 0; i < job.frames.size(); i++) {
+            StackingPipeline.FrameJob frame = job.frames.get(i);
+            ImageAligner.AffineTransform t = frame.transform != null
+                    ? frame.transform : ImageAligner.AffineTransform.identity();
+            out.writeUTF(frame.path.toAbsolutePath().toString());
+            out.writeDouble(t.scale);
+            out.writeDouble(t.rotation);
+            out.writeDouble(t.tx);
+            out.writeDouble(t.ty);
+            out.writeDouble(job.weights[i]);
+        }
+    }
+
+    /**
+     * Les tuiles couvrent des lignes disjointes : elles sont recopiées sans verrou
+     */
+    private void readTile(DataInputStream in, Tile tile) throws IOException {
+        int channels = job.isColor ? 3 : 1;
+        int width = job.canvas.width;
+        for (int c = 0; c < channels; c++) {
+            float[][] rows = job.isColor ? result.getColorData()[c] : result.getData();
+            for (int r = 0; r < tile.rows; r++) {
+                float[] row = rows[tile.y0 + r];
+                for (int x = 0; x < width; x++) {
+                    row[x] = in.readFloat();
+                }
+            }
+        }
+    }
+
+    private static Process startLocalWorker(int port, Path log) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java,
+                "-Xmx" + Config.DISTRIBUTED_WORKER_HEAP_MB + "m",
+                "-Djava.awt.headless=true",
+                "-cp", System.getProperty("java.class.path"),
+                TileWorker.class.getName(), "localhost", String.valueOf(port));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(log.toFile());
+        return builder.start();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Déjà fermé
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.astro;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Worker de l'empilement distribué (voir {@link TileCoordinator}).
+ * Pour chaque tuile reçue, il lit dans chaque image les seules lignes sources que la tuile
+ * recouvre une fois redressée, puis combine avec les noyaux de {@link StackingEngine} :
+ * le résultat est identique à celui d'un empilement sur une seule machine.
+ *
+ * <pre>
+ * java -cp fits-stacker.jar com.astro.TileWorker &lt;hôte du coordinateur&gt; &lt;port&gt; [connexions]
+ * </pre>
+ * Chaque connexion traite une tuile à la fois ; en ouvrir plusieurs occupe plusieurs cœurs.
+ */
+public class TileWorker {
+    private final StackingEngine.StackingMethod method;
+    private final boolean isColor;
+    private final ImageAligner.CanvasInfo canvas;
+    private final List<Path> paths;
+    private final List<ImageAligner.AffineTransform> transforms;
+    private final double[] weights;
+
+    private TileWorker(StackingEngine.StackingMethod method, boolean isColor, ImageAligner.CanvasInfo canvas,
+                       List<Path> paths, List<ImageAligner.AffineTransform> transforms, double[] weights) {
+        this.method = method;
+        this.isColor = isColor;
+        this.canvas = canvas;
+        this.paths = paths;
+        this.transforms = transforms;
+        this.weights = weights;
+    }
+
+    private static TileWorker readJob(DataInputStream in) throws IOException {
+        StackingEngine.StackingMethod method = StackingEngine.StackingMethod.valueOf(in.readUTF());
+        boolean isColor = in.readBoolean();
+        ImageAligner.CanvasInfo canvas = new ImageAligner.CanvasInfo(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        int n = in.readInt();
+        List<Path> paths = new ArrayList<>(n);
+        List<ImageAligner.AffineTransform> transforms = new ArrayList<>(n);
+        double[] weights = new double[n];
+        for (int i = 0; i < n; i++) {
+            paths.add(Paths.get(in.readUTF()));
+            transforms.add(new ImageAligner.AffineTransform(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble()));
+            weights[i] = in.readDouble();
+        }
+        return new TileWorker(method, isColor, canvas, paths, transforms, weights);
+    }
+
+    /**
+     * Empile les lignes [y0, y0 + rows) du canvas, par sous-bandes ajustées au tas disponible
+     *
+     * @return [canal][ligne de la tuile][x]
+     */
+    float[][][] stackTile(int y0, int rows) throws Exception {
+        int channels = isColor ? 3 : 1;
+        int n = paths.size();
+        float[][][] tile = new float[channels][][];
+
+        // Par ligne de canvas : la ligne redressée et la fenêtre source (float + brut) de chaque image
+        long bytesPerRow = (long) n * canvas.width * channels * 4 * 3;
+        int bandRows = (int) Math.max(1, Math.min(rows, MemoryPlanner.availableHeap() / 2 / bytesPerRow));
+
+        List<float[][]> parts = new ArrayList<>();
+        for (int b0 = y0; b0 < y0 + rows; b0 += bandRows) {
+            int count = Math.min(bandRows, y0 + rows - b0);
+            // Sous-canvas dont la ligne 0 est la ligne b0 du canvas complet (mêmes coordonnées sources)
+            ImageAligner.CanvasInfo band = new ImageAligner.CanvasInfo(canvas.width, count,
+                    canvas.offsetX, canvas.offsetY - b0);
+
+            List<FitsImage> windows = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int[] source = StackingEngine.sourceRows(transforms.get(i), canvas, b0, count);
+                FitsImage window = FitsImage.readRowWindow(paths.get(i), source[0], source[1] - source[0]);
+                window.setTransform(transforms.get(i));
+                windows.add(window);
+            }
+
+            FitsImage part = StackingEngine.combineBands(n,
+                    (i, c, yy, r, dst) -> windows.get(i).warpRows(c, band, yy, r, dst),
+                    weights, band, isColor, paths.get(0), EnumSet.of(method),
+                    StackingEngine.integerSamples(windows), count, 0, null, null).get(method);
+            for (int c = 0; c < channels; c++) {
+                float[][] data = isColor ? part.getColorData()[c] : part.getData();
+                if (parts.size() <= c) parts.add(new float[rows][]);
+                System.arraycopy(data, 0, parts.get(c), b0 - y0, count);
+            }
+        }
+        for (int c = 0; c < channels; c++) {
+            tile[c] = parts.get(c);
+        }
+        return tile;
+    }
+
+    /**
+     * Traite les tuiles d'une connexion jusqu'à QUIT ou fermeture par le coordinateur
+     */
+    static void serve(String host, int port) throws IOException {
+        try (Socket socket = new Socket(host, port);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            out.writeInt(TileCoordinator.MAGIC);
+            out.writeUTF(InetAddress.getLocalHost().getHostName() + "/" + ProcessHandle.current().pid());
+            out.flush();
+
+            TileWorker worker = readJob(in);
+            System.out.println("Travail reçu: " + worker.paths.size() + " images, " + worker.method.getDisplayName() +
+                    ", canvas " + worker.canvas.width + "x" + worker.canvas.height);
+
+            while (true) {
+                byte command = in.readByte();
+                if (command == TileCoordinator.QUIT) break;
+                if (command != TileCoordinator.TILE) {
+                    throw new IOException("Commande inconnue: " + command);
+                }
+                int id = in.readInt();
+                int y0 = in.readInt();
+                int rows = in.readInt();
+
+                long start = System.nanoTime();
+                float[][][] tile;
+                try {
+                    tile = worker.stackTile(y0, rows);
+                } catch (Exception e) {
+                    System.err.println("✗ Tuile " + id + ": " + e.getMessage());
+                    out.writeByte(TileCoordinator.ERROR);
+                    out.writeInt(id);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                    out.flush();
+                    continue;
+                }
+
+                out.writeByte(TileCoordinator.RESULT);
+                out.writeInt(id);
+                for (float[][] channel : tile) {
+                    for (float[] row : channel) {
+                        for (float value : row) {
+                            out.writeFloat(value);
+                        }
+                    }
+                }
+                out.flush();
+                System.out.println(String.format("✓ Tuile %d (lignes %d-%d) en %.1f s", id, y0, y0 + rows - 1,
+                        (System.nanoTime() - start) / 1e9));
+            }
+        } catch (EOFException e) {
+            // Coordinateur terminé
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: TileWorker <hôte du coordinateur> <port> [connexions]");
+            System.exit(2);
+        }
+        String host = args[0];
+        int port = Integer.parseInt(args[1]);
+        int connections = args.length > 2 ? Math.max(1, Integer.parseInt(args[2])) : 1;
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    serve(host, port);
+                } catch (IOException e) {
+                    System.err.println("ERREUR worker: " + e.getMessage());
+                }
+            }, "tuiles-worker-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        StageMetrics.report(null);
+    }
+}